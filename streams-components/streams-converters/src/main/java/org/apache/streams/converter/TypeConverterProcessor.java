@@ -65,11 +65,23 @@ public class TypeConverterProcessor implements StreamsProcessor, Serializable {
         List<StreamsDatum> result = Lists.newLinkedList();
         Object inDoc = entry.getDocument();
 
-        Object outDoc = TypeConverterUtil.convert(inDoc, outClass, mapper);
+        if( inDoc instanceof String && outClass == String.class ) {
+            // round trip through ObjectNode to validate the json
+            Object outDoc = TypeConverterUtil.convert(inDoc, outClass, mapper);
+            if( outDoc != null ) {
+                entry.setDocument(outDoc);
+                result.add(entry);
+            }
+            return result;
+        }
 
-        if( outDoc != null ) {
-            entry.setDocument(outDoc);
-            result.add(entry);
+        // convert through the datum's document holder, so later conversions back to a previous form are free
+        try {
+            if( entry.convertDocument(outClass, mapper) != null )
+                result.add(entry);
+        } catch (Throwable e) {
+            LOGGER.warn(e.getMessage());
+            LOGGER.warn(inDoc.toString());
         }
 
         return result;
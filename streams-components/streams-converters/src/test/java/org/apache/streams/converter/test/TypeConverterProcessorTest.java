@@ -187,4 +187,26 @@ public class TypeConverterProcessorTest {
     }
 
 
+    /**
+     * Tests that converting back to a previous form reuses it instead of serialising again
+     */
+    @Test
+    public void testTypeConverterRoundTripReusesOriginal() throws IOException {
+        final String ID = "1";
+        StreamsProcessor toActivity = new TypeConverterProcessor(Activity.class, Lists.newArrayList(DATASIFT_FORMAT));
+        toActivity.prepare(null);
+        StreamsProcessor toNode = new TypeConverterProcessor(ObjectNode.class, Lists.newArrayList(DATASIFT_FORMAT));
+        toNode.prepare(null);
+        StreamsDatum datum = new StreamsDatum(ACTIVITY_JSON, ID);
+        StreamsDatum resultDatum = toActivity.process(datum).get(0);
+        assertTrue(resultDatum.getDocument() instanceof Activity);
+        assertSame(ACTIVITY_JSON, resultDatum.getDocumentAs(String.class));
+        ObjectNode node = (ObjectNode) toNode.process(resultDatum).get(0).getDocument();
+        assertEquals("id", node.get("id").asText());
+        assertSame(ACTIVITY_JSON, resultDatum.getDocumentAs(String.class));
+        node.put("id", "changed");
+        resultDatum.documentModified();
+        assertTrue(resultDatum.getDocumentAs(String.class).contains("changed"));
+    }
+
 }
@@ -185,13 +185,13 @@ public class S3PersistReader implements StreamsPersistReader, DatumStatusCountab
 
         StreamsResultSet current;
 
-        synchronized( S3PersistReader.class ) {
-            current = new StreamsResultSet(Queues.newConcurrentLinkedQueue(persistQueue));
+        // drain the bounded queue itself, rather than a copy, so that the reader task blocks while downstream is full
+        synchronized( this ) {
+            current = StreamsResultCursor.draining(persistQueue);
             current.setCounter(new DatumStatusCounter());
             current.getCounter().add(countersCurrent);
             countersTotal.add(countersCurrent);
             countersCurrent = new DatumStatusCounter();
-            persistQueue.clear();
         }
         return current;
     }
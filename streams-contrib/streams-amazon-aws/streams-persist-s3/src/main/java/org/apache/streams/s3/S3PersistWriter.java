@@ -39,7 +39,7 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class S3PersistWriter implements StreamsPersistWriter, DatumStatusCountable
+public class S3PersistWriter implements StreamsPersistWriter, ReadOnlyDatumOperation, DatumStatusCountable
 {
     public final static String STREAMS_ID = "S3PersistWriter";
 
@@ -236,7 +236,7 @@ public class S3PersistWriter implements StreamsPersistWriter, DatumStatusCountab
         }
 
         // Save the class name that it came from
-        entry.metadata.put("class", entry.getDocument().getClass().getName());
+        entry.getMetadata().put("class", entry.getDocument().getClass().getName());
 
         if(Strings.isNullOrEmpty(documentJson))
             return null;
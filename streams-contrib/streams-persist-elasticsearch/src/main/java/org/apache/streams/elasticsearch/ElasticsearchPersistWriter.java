@@ -24,6 +24,7 @@ import com.google.common.base.Preconditions;
 import org.apache.streams.config.StreamsConfigurator;
 import org.apache.streams.core.*;
 import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
@@ -159,13 +160,22 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
 
 
     private String convertAndAppendMetadata(StreamsDatum streamsDatum) throws IOException {
-        Object object = streamsDatum.getDocument();
+        Object value = streamsDatum.getDocument();
+        // only a document that is already serialised can reuse the cached views, any other document may have been
+        // modified in place since they were made
+        StreamsDocument document = value instanceof String || value instanceof byte[] ? streamsDatum.getDocumentHolder() : null;
 
-        String docAsJson = (object instanceof String) ? object.toString() : OBJECT_MAPPER.writeValueAsString(object);
         if(streamsDatum.getMetadata() == null || streamsDatum.getMetadata().size() == 0) {
-            return docAsJson;
+            return document != null ? document.asString(OBJECT_MAPPER) : OBJECT_MAPPER.writeValueAsString(value);
         } else {
-            ObjectNode node = (ObjectNode)OBJECT_MAPPER.readTree(docAsJson);
+            ObjectNode node;
+            if(document != null) {
+                node = document.asTree(OBJECT_MAPPER).deepCopy();
+            } else if(value instanceof ObjectNode) {
+                node = ((ObjectNode) value).deepCopy();
+            } else {
+                node = OBJECT_MAPPER.convertValue(value, ObjectNode.class);
+            }
             try {
                 node.put("_metadata", OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsBytes(streamsDatum.getMetadata())));
             }
@@ -452,14 +462,18 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
         // add the total number of batches sent
         this.batchesSent.incrementAndGet();
 
+        // the flush event lasts from sending the batch until elasticsearch responds
+        final Object event = FlightRecorderEvents.WRITER_FLUSH.begin();
         try {
             bulkRequest.execute().addListener(new ActionListener<BulkResponse>() {
                 public void onResponse(BulkResponse bulkItemResponses) {
+                    FlightRecorderEvents.WRITER_FLUSH.commit(event, STREAMS_ID, sent, sizeInBytes);
                     batchesResponded.incrementAndGet();
                     updateTotals(bulkItemResponses, sent, sizeInBytes);
                 }
 
                 public void onFailure(Throwable throwable) {
+                    FlightRecorderEvents.WRITER_FLUSH.commit(event, STREAMS_ID, sent, sizeInBytes);
                     batchesResponded.incrementAndGet();
                     throwable.printStackTrace();
                 }
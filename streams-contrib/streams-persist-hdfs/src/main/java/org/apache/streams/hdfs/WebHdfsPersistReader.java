@@ -186,13 +186,13 @@ public class WebHdfsPersistReader implements StreamsPersistReader, DatumStatusCo
 
         StreamsResultSet current;
 
-        synchronized( WebHdfsPersistReader.class ) {
-            current = new StreamsResultSet(Queues.newConcurrentLinkedQueue(persistQueue));
+        // drain the bounded queue itself, rather than a copy, so that the reader task blocks while downstream is full
+        synchronized( this ) {
+            current = StreamsResultCursor.draining(persistQueue);
             current.setCounter(new DatumStatusCounter());
             current.getCounter().add(countersCurrent);
             countersTotal.add(countersCurrent);
             countersCurrent = new DatumStatusCounter();
-            persistQueue.clear();
         }
 
         return current;
@@ -43,7 +43,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Queue;
 
-public class WebHdfsPersistWriter implements StreamsPersistWriter, Flushable, Closeable, DatumStatusCountable {
+public class WebHdfsPersistWriter implements StreamsPersistWriter, ReadOnlyDatumOperation, Flushable, Closeable, DatumStatusCountable {
     public final static String STREAMS_ID = "WebHdfsPersistWriter";
 
     private final static Logger LOGGER = LoggerFactory.getLogger(WebHdfsPersistWriter.class);
@@ -33,6 +33,7 @@ import org.apache.streams.config.StreamsConfigurator;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsPersistWriter;
 import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -101,7 +102,9 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
         try {
             LOGGER.debug("Attempting to flush {} items to mongo", insertBatch.size());
             lock.writeLock().lock();
+            Object event = FlightRecorderEvents.WRITER_FLUSH.begin();
             collection.insert(insertBatch);
+            FlightRecorderEvents.WRITER_FLUSH.commit(event, collection.getFullName(), insertBatch.size(), 0);
             lastWrite.set(System.currentTimeMillis());
             insertBatch = Lists.newArrayList();
         } finally {
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.streams.core.util.CopyOnWriteMetadata;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * A {@link org.apache.streams.core.StreamsDatum} that keeps its timestamp as epoch milliseconds and its sequence id as a
+ * long, and allocates its metadata the first time it is asked for.  The {@link org.joda.time.DateTime} and
+ * {@link java.math.BigInteger} forms are only built when a getter asks for them.  Sequence ids that do not fit in a
+ * long are kept as a BigInteger.
+ *
+ * Use this class for providers that buffer large numbers of datums.  The public timestamp, sequenceid and metadata
+ * fields of a CompactStreamsDatum are only populated once the matching getter has been called, so code handling
+ * datums from any provider should use the getters.
+ */
+public class CompactStreamsDatum extends StreamsDatum {
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private long timestampMillis = NO_TIMESTAMP;
+    private long sequence;
+    private boolean hasLongSequence;
+
+    public CompactStreamsDatum(Object document) {
+        this(document, null);
+    }
+
+    public CompactStreamsDatum(Object document, String id) {
+        super(document, id, null, null, null);
+    }
+
+    public CompactStreamsDatum(Object document, String id, long timestampMillis) {
+        this(document, id);
+        this.timestampMillis = timestampMillis;
+    }
+
+    public CompactStreamsDatum(Object document, String id, long timestampMillis, long sequence) {
+        this(document, id, timestampMillis);
+        this.sequence = sequence;
+        this.hasLongSequence = true;
+    }
+
+    public CompactStreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid) {
+        this(document, id);
+        setTimestamp(timestamp);
+        setSequenceid(sequenceid);
+    }
+
+    /**
+     * Creates a copy sharing the document and, copy-on-write, the metadata of the given datum.
+     * @param datum datum to copy
+     */
+    public CompactStreamsDatum(CompactStreamsDatum datum) {
+        this(datum.getDocument(), datum.getId());
+        this.timestampMillis = datum.timestampMillis;
+        this.timestamp = datum.timestamp;
+        this.sequence = datum.sequence;
+        this.hasLongSequence = datum.hasLongSequence;
+        this.sequenceid = datum.sequenceid;
+        if(datum.metadata != null) {
+            this.metadata = CopyOnWriteMetadata.copyOf(datum.metadata);
+        }
+    }
+
+    @Override
+    public DateTime getTimestamp() {
+        if(this.timestamp == null && this.timestampMillis != NO_TIMESTAMP) {
+            this.timestamp = new DateTime(this.timestampMillis);
+        }
+        return this.timestamp;
+    }
+
+    @Override
+    public void setTimestamp(DateTime timestamp) {
+        this.timestamp = timestamp;
+        this.timestampMillis = timestamp == null ? NO_TIMESTAMP : timestamp.getMillis();
+    }
+
+    /**
+     * @return the timestamp in milliseconds since the epoch, or {@link java.lang.Long#MIN_VALUE} if there is none
+     */
+    @JsonIgnore
+    public long getTimestampMillis() {
+        return this.timestampMillis;
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+        this.timestamp = null;
+    }
+
+    @Override
+    public BigInteger getSequenceid() {
+        if(this.sequenceid == null && this.hasLongSequence) {
+            this.sequenceid = BigInteger.valueOf(this.sequence);
+        }
+        return this.sequenceid;
+    }
+
+    @Override
+    public void setSequenceid(BigInteger sequenceid) {
+        this.sequenceid = sequenceid;
+        this.hasLongSequence = sequenceid != null && sequenceid.bitLength() < Long.SIZE;
+        this.sequence = this.hasLongSequence ? sequenceid.longValue() : 0;
+    }
+
+    /**
+     * @return true, if the datum has a sequence id that fits in a long
+     */
+    public boolean hasLongSequence() {
+        return this.hasLongSequence;
+    }
+
+    /**
+     * @return the sequence id, only meaningful if {@link #hasLongSequence()} is true
+     */
+    @JsonIgnore
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+        this.hasLongSequence = true;
+        this.sequenceid = null;
+    }
+
+    @Override
+    public Map<String, Object> getMetadata() {
+        if(this.metadata == null) {
+            this.metadata = new CopyOnWriteMetadata();
+        }
+        return this.metadata;
+    }
+}
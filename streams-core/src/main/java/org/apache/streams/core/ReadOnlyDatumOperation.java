@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+/**
+ * Marker for a {@link org.apache.streams.core.StreamsOperation} that never modifies the
+ * {@link org.apache.streams.core.StreamsDatum}s it is handed, neither the document nor the metadata.
+ *
+ * Runtimes treat a datum handed to an operation as owned by that operation.  When a datum fans out to several
+ * operations, the runtime may hand the same instance to every operation that implements this interface, and only
+ * copies it for the operations that do not.  Operations that do not implement this interface are assumed to mutate
+ * their input.
+ *
+ * Because a read only operation may emit the datum it was handed, its output is treated as shared as well: runtimes
+ * clone it before handing it to an operation that does not implement this interface.
+ */
+public interface ReadOnlyDatumOperation extends StreamsOperation {
+}
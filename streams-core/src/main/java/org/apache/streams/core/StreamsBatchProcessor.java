@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import java.util.List;
+
+/**
+ * A {@link org.apache.streams.core.StreamsProcessor} that can process many
+ * {@link org.apache.streams.core.StreamsDatum}s in one call, so that remote calls and other per-call overhead can be
+ * amortised across a batch.  Runtimes that support batching hand implementations of this interface lists of datums
+ * through {@link #processBatch(java.util.List)}, and fall back to {@link #process(StreamsDatum)} for processors that
+ * do not implement it.
+ */
+public interface StreamsBatchProcessor extends StreamsProcessor {
+
+    /**
+     * Process/Analyze a batch of {@link org.apache.streams.core.StreamsDatum}s and return the StreamsDatums that will
+     * be passed to every down stream operation that reads from this processor.  If this method throws, every datum in
+     * the batch is treated as failed.
+     * @param entries StreamsDatums to be processed, in the order they were received
+     * @return resulting StreamDatums from process. Should never be null or contain null object.  Empty list OK.
+     */
+    public List<StreamsDatum> processBatch(List<StreamsDatum> entries);
+
+}
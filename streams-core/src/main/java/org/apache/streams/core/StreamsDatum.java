@@ -18,12 +18,15 @@
 
 package org.apache.streams.core;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.streams.core.util.CopyOnWriteMetadata;
 import org.apache.streams.pojo.json.Activity;
 import org.joda.time.DateTime;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -60,11 +63,19 @@ public class StreamsDatum implements Serializable {
     }
 
     public StreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid) {
+        this(document, id, timestamp, sequenceid, new CopyOnWriteMetadata());
+    }
+
+    /**
+     * For subclasses that store some of the fields differently.
+     * @param metadata the metadata map, may be null if the subclass allocates it lazily
+     */
+    protected StreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid, Map<String, Object> metadata) {
         this.document = document;
         this.id = id;
         this.timestamp = timestamp;
         this.sequenceid = sequenceid;
-        this.metadata = new HashMap<String, Object>();
+        this.metadata = metadata;
     }
 
     public DateTime timestamp;
@@ -73,10 +84,16 @@ public class StreamsDatum implements Serializable {
 
     public Map<String, Object> metadata;
 
-    public Object document;
+    /**
+     * Volatile because the methods keeping the document holder in step with it are synchronized, while the document
+     * itself is read through {@link #getDocument()} and this field without the lock.
+     */
+    public volatile Object document;
 
     private String id;
 
+    private transient StreamsDocument documentHolder;
+
     public DateTime getTimestamp() {
         return timestamp;
     }
@@ -105,10 +122,61 @@ public class StreamsDatum implements Serializable {
         return document;
     }
 
-    public void setDocument(Object document) {
+    /**
+     * Sets the document.  Cached views of the document are always rebuilt from it, even if it is the instance already
+     * held, so processors that modify the document in place and set it again never leave stale views behind.
+     * @param document the new or modified document
+     */
+    public synchronized void setDocument(Object document) {
         this.document = document;
+        if(this.documentHolder != null) {
+            this.documentHolder.modified(document);
+        }
+    }
+
+
+    /**
+     * Returns the holder caching the other representations of the document.  A new holder is created whenever the
+     * document has been replaced since the last call.
+     * @return holder for the current document
+     */
+    @JsonIgnore
+    public synchronized StreamsDocument getDocumentHolder() {
+        if(this.documentHolder == null || !this.documentHolder.holds(this.document)) {
+            this.documentHolder = new StreamsDocument(this.document);
+        }
+        return this.documentHolder;
+    }
+
+    /**
+     * Returns a view of the document as the given class without replacing the document.
+     * @see org.apache.streams.core.StreamsDocument#as(Class)
+     */
+    public <T> T getDocumentAs(Class<T> clazz) throws IOException {
+        return getDocumentHolder().as(clazz);
     }
 
+    /**
+     * Replaces the document with a view of it as the given class.  Views already materialised, including the
+     * previous document, are kept so that converting back does not parse or serialise the document again.
+     * @param clazz class to convert the document to
+     * @param mapper the mapper used to convert the document
+     * @return the converted document
+     */
+    public synchronized <T> T convertDocument(Class<T> clazz, ObjectMapper mapper) throws IOException {
+        StreamsDocument holder = getDocumentHolder();
+        T converted = holder.as(clazz, mapper);
+        holder.setValue(converted);
+        this.document = converted;
+        return converted;
+    }
+
+    /**
+     * Tells the datum that the document was modified in place, so that cached views are rebuilt from it.
+     */
+    public synchronized void documentModified() {
+        getDocumentHolder().modified(this.document);
+    }
 
     public String getId(){
         if(this.id == null && this.document instanceof Activity) {
@@ -126,8 +194,10 @@ public class StreamsDatum implements Serializable {
         if(o instanceof StreamsDatum) {
             StreamsDatum that = (StreamsDatum) o;
             if(this.document != null && this.document.equals(that.document)) {
-                return (this.timestamp != null ? this.timestamp.equals(that.timestamp) : that.timestamp == null) &&
-                        (this.sequenceid != null ? this.sequenceid.equals(that.sequenceid) : that.sequenceid == null);
+                DateTime timestamp = this.getTimestamp();
+                BigInteger sequenceid = this.getSequenceid();
+                return (timestamp != null ? timestamp.equals(that.getTimestamp()) : that.getTimestamp() == null) &&
+                        (sequenceid != null ? sequenceid.equals(that.getSequenceid()) : that.getSequenceid() == null);
             }
             else {
                 return that.document == null && this.document == null;
@@ -140,7 +210,7 @@ public class StreamsDatum implements Serializable {
 
     @Override
     public String toString() {
-        return this.id+"\tDocument="+this.document+"\ttimestamp="+this.timestamp+"\tsequence="+this.sequenceid;
+        return this.id+"\tDocument="+this.document+"\ttimestamp="+this.getTimestamp()+"\tsequence="+this.getSequenceid();
     }
 
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import java.io.Serializable;
+
+/**
+ * Extracts the key that a runtime partitions {@link org.apache.streams.core.StreamsDatum}s on.  Runtimes that support
+ * partitioned edges send every datum with an equal key to the same task, so datums that share a key are processed by
+ * one instance of the downstream operation in the order they were produced.
+ */
+public interface StreamsDatumKeyExtractor extends Serializable {
+
+    /**
+     * Returns the partition key of the datum.  Keys must implement {@link Object#hashCode()} consistently with
+     * {@link Object#equals(Object)}.
+     * @param datum datum to extract the key from
+     * @return the partition key, or null if the datum has no key and may be handled by any task
+     */
+    public Object getKey(StreamsDatum datum);
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds a {@link org.apache.streams.core.StreamsDatum} document together with lazily materialised views of it as a
+ * json String, UTF-8 json bytes, an {@link com.fasterxml.jackson.databind.node.ObjectNode} and any jackson-compatible
+ * POJO.  Each view is computed at most once, from the cheapest representation already available, so a document that
+ * arrives as a String is parsed once and a writer asking for the String back gets the original without re-serialising.
+ *
+ * The holder cannot see changes made to the objects it hands out.  Code that modifies the document, or any view of it,
+ * in place must call {@link #modified(Object)} so that the other views are rebuilt from the modified object.
+ */
+public class StreamsDocument {
+
+    private Object value;
+    private String json;
+    private byte[] bytes;
+    private ObjectNode tree;
+    private Map<Class<?>, Object> views = new HashMap<Class<?>, Object>();
+
+    public StreamsDocument(Object value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the document this holder was created with, or the last document set through
+     * {@link #setValue(Object)} or {@link #modified(Object)}
+     */
+    public synchronized Object getValue() {
+        return this.value;
+    }
+
+    /**
+     * @param document a document
+     * @return true, if the document is the instance this holder currently holds
+     */
+    public synchronized boolean holds(Object document) {
+        return this.value == document;
+    }
+
+    /**
+     * Replaces the held document with one of its views, keeping every view that has already been materialised.
+     * @param view an object returned by this holder
+     */
+    public synchronized void setValue(Object view) {
+        rememberView(this.value);
+        this.value = view;
+    }
+
+    /**
+     * Makes the given object the held document and drops every other view, because it was modified in place.
+     * @param document the modified document or view
+     */
+    public synchronized void modified(Object document) {
+        this.value = document;
+        this.json = null;
+        this.bytes = null;
+        this.tree = null;
+        this.views.clear();
+    }
+
+    /**
+     * @return the document as a json String
+     * @throws IOException if the document can not be serialised
+     */
+    public String asString() throws IOException {
+        return asString(StreamsJacksonMapper.getInstance());
+    }
+
+    /**
+     * @param mapper mapper used if the document has to be serialised
+     * @return the document as a json String
+     * @throws IOException if the document can not be serialised
+     */
+    public synchronized String asString(ObjectMapper mapper) throws IOException {
+        if(this.json == null) {
+            if(this.value instanceof String) {
+                this.json = (String) this.value;
+            } else if(this.bytes != null || this.value instanceof byte[]) {
+                this.json = new String(rawBytes(mapper), StandardCharsets.UTF_8);
+            } else {
+                this.json = mapper.writeValueAsString(this.tree != null ? this.tree : this.value);
+            }
+        }
+        return this.json;
+    }
+
+    /**
+     * @return the document as UTF-8 encoded json.  The returned array must not be modified.
+     * @throws IOException if the document can not be serialised
+     */
+    public byte[] asBytes() throws IOException {
+        return asBytes(StreamsJacksonMapper.getInstance());
+    }
+
+    /**
+     * @param mapper mapper used if the document has to be serialised
+     * @return the document as UTF-8 encoded json.  The returned array must not be modified.
+     * @throws IOException if the document can not be serialised
+     */
+    public synchronized byte[] asBytes(ObjectMapper mapper) throws IOException {
+        if(this.bytes == null) {
+            if(this.value instanceof byte[]) {
+                this.bytes = (byte[]) this.value;
+            } else if(this.json != null || this.value instanceof String) {
+                this.bytes = asString(mapper).getBytes(StandardCharsets.UTF_8);
+            } else {
+                this.bytes = mapper.writeValueAsBytes(this.tree != null ? this.tree : this.value);
+            }
+        }
+        return this.bytes;
+    }
+
+    /**
+     * @return the document as a json tree
+     * @throws IOException if the document can not be parsed or converted
+     */
+    public ObjectNode asTree() throws IOException {
+        return asTree(StreamsJacksonMapper.getInstance());
+    }
+
+    /**
+     * @param mapper mapper used if the document has to be parsed or converted
+     * @return the document as a json tree
+     * @throws IOException if the document can not be parsed or converted
+     */
+    public synchronized ObjectNode asTree(ObjectMapper mapper) throws IOException {
+        if(this.tree == null) {
+            if(this.value instanceof ObjectNode) {
+                this.tree = (ObjectNode) this.value;
+            } else if(hasSerialisedForm()) {
+                this.tree = readSerialisedForm(ObjectNode.class, mapper);
+            } else {
+                this.tree = mapper.convertValue(this.value, ObjectNode.class);
+            }
+        }
+        return this.tree;
+    }
+
+    /**
+     * Returns the document as an instance of the given class, converting it with the default
+     * {@link org.apache.streams.jackson.StreamsJacksonMapper} the first time the class is asked for.
+     * @param clazz class of the view
+     * @param <T> type of the view
+     * @return the document as an instance of clazz
+     * @throws IOException if the document can not be converted
+     */
+    public <T> T as(Class<T> clazz) throws IOException {
+        return as(clazz, StreamsJacksonMapper.getInstance());
+    }
+
+    /**
+     * Returns the document as an instance of the given class, converting it with the given mapper the first time the
+     * class is asked for.  Views that already exist are returned whichever mapper created them.
+     * @param clazz class of the view
+     * @param mapper mapper used if the view has to be created
+     * @param <T> type of the view
+     * @return the document as an instance of clazz
+     * @throws IOException if the document can not be converted
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T as(Class<T> clazz, ObjectMapper mapper) throws IOException {
+        if(clazz.isInstance(this.value)) {
+            return (T) this.value;
+        } else if(clazz == String.class) {
+            return (T) asString(mapper);
+        } else if(clazz == byte[].class) {
+            return (T) asBytes(mapper);
+        } else if(clazz == ObjectNode.class || clazz == JsonNode.class) {
+            return (T) asTree(mapper);
+        }
+        Object view = this.views.get(clazz);
+        if(view == null) {
+            if(this.tree != null) {
+                view = mapper.treeToValue(this.tree, clazz);
+            } else if(hasSerialisedForm()) {
+                view = readSerialisedForm(clazz, mapper);
+            } else {
+                view = mapper.convertValue(this.value, clazz);
+            }
+            this.views.put(clazz, view);
+        }
+        return (T) view;
+    }
+
+    private boolean hasSerialisedForm() {
+        return this.json != null || this.bytes != null || this.value instanceof String || this.value instanceof byte[];
+    }
+
+    private byte[] rawBytes(ObjectMapper mapper) throws IOException {
+        if(this.bytes != null) {
+            return this.bytes;
+        } else if(this.value instanceof byte[]) {
+            return (byte[]) this.value;
+        }
+        return asBytes(mapper);
+    }
+
+    private <T> T readSerialisedForm(Class<T> clazz, ObjectMapper mapper) throws IOException {
+        if(this.json != null || this.value instanceof String) {
+            return mapper.readValue(asString(mapper), clazz);
+        }
+        return mapper.readValue(rawBytes(mapper), clazz);
+    }
+
+    private void rememberView(Object view) {
+        if(view instanceof String) {
+            this.json = (String) view;
+        } else if(view instanceof byte[]) {
+            this.bytes = (byte[]) view;
+        } else if(view instanceof ObjectNode) {
+            this.tree = (ObjectNode) view;
+        } else if(view != null) {
+            this.views.put(view.getClass(), view);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link org.apache.streams.core.StreamsResultSet} that pulls its datums from an {@link java.util.Iterator} as the
+ * runtime asks for them rather than holding them in a queue.  The provider does no work until the runtime calls
+ * {@link #poll()}, and the runtime only polls once the previous datum has been accepted downstream, so a provider
+ * backed by a cursor reads exactly as fast as the stream can consume.  The source iterator may block in
+ * {@link java.util.Iterator#hasNext()} while it waits for more data, and should return false once this read is
+ * complete.
+ *
+ * A cursor can only be consumed once.  {@link #getQueue()} and {@link #size()} are supported for callers written
+ * against queue backed result sets, but they read the remaining datums into memory and should not be used on
+ * unbounded sources.
+ */
+public class StreamsResultCursor extends StreamsResultSet {
+
+    private final Iterator<StreamsDatum> source;
+
+    public StreamsResultCursor(Iterator<StreamsDatum> source) {
+        this.source = Preconditions.checkNotNull(source);
+    }
+
+    /**
+     * Returns a cursor that removes datums from the given queue as they are pulled, for providers that hand the
+     * runtime their live buffer.  Iterating the cursor drains the queue, so consumers that read a result set through
+     * {@link #iterator()} rather than {@link #poll()} do not see the same datums again on the next read.  The cursor
+     * ends as soon as the queue is empty.
+     * @param queue the provider's buffer
+     * @return cursor draining the queue
+     */
+    public static StreamsResultCursor draining(final Queue<StreamsDatum> queue) {
+        Preconditions.checkNotNull(queue);
+        return new StreamsResultCursor(new Iterator<StreamsDatum>() {
+
+            private StreamsDatum next;
+
+            @Override
+            public boolean hasNext() {
+                if(this.next == null) {
+                    this.next = queue.poll();
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public StreamsDatum next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                StreamsDatum datum = this.next;
+                this.next = null;
+                return datum;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Override
+    public synchronized StreamsDatum poll() {
+        if(this.queue != null && !this.queue.isEmpty()) {
+            return this.queue.poll();
+        }
+        if(this.source.hasNext()) {
+            return this.source.next();
+        }
+        return null;
+    }
+
+    /**
+     * Returns an iterator that removes each datum from this cursor as it is returned.
+     * @return draining iterator
+     */
+    @Override
+    public Iterator<StreamsDatum> iterator() {
+        return new Iterator<StreamsDatum>() {
+
+            private StreamsDatum next;
+
+            @Override
+            public boolean hasNext() {
+                if(this.next == null) {
+                    this.next = poll();
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public StreamsDatum next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                StreamsDatum datum = this.next;
+                this.next = null;
+                return datum;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return getQueue().size();
+    }
+
+    /**
+     * Reads every remaining datum from the source into a queue and returns it.
+     * @return queue holding the remaining datums of this cursor
+     */
+    @Override
+    public synchronized Queue<StreamsDatum> getQueue() {
+        if(this.queue == null) {
+            this.queue = new ConcurrentLinkedQueue<StreamsDatum>();
+        }
+        while(this.source.hasNext()) {
+            this.queue.add(this.source.next());
+        }
+        return this.queue;
+    }
+}
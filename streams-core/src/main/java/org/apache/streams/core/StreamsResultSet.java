@@ -21,6 +21,14 @@ package org.apache.streams.core;
 import java.util.Iterator;
 import java.util.Queue;
 
+/**
+ * The datums returned by a single read of a {@link org.apache.streams.core.StreamsProvider}.
+ *
+ * A result set built from a {@link java.util.Queue} is a view over that queue, not a copy of it.  Runtimes pull datums
+ * out of it one at a time through {@link #poll()}, so a provider can hand back its own live, bounded buffer and the
+ * threads filling that buffer will block once the runtime stops pulling because downstream is full.  Providers that
+ * can produce datums on demand should return a {@link org.apache.streams.core.StreamsResultCursor} instead.
+ */
 public class StreamsResultSet implements Iterable<StreamsDatum> {
 
     Queue<StreamsDatum> queue;
@@ -31,6 +39,22 @@ public class StreamsResultSet implements Iterable<StreamsDatum> {
         this.queue = queue;
     }
 
+    /**
+     * Constructor for result sets that are not backed by a queue until {@link #getQueue()} is called
+     */
+    protected StreamsResultSet() {
+    }
+
+    /**
+     * Removes and returns the next datum in this result set, or null if there is no datum available right now.  Each
+     * call is one datum of demand from the runtime; nothing is read ahead of it.
+     * @return the next datum, or null if there is none available
+     */
+    public StreamsDatum poll() {
+        Queue<StreamsDatum> queue = getQueue();
+        return queue == null ? null : queue.poll();
+    }
+
 
     @Override
     public Iterator<StreamsDatum> iterator() {
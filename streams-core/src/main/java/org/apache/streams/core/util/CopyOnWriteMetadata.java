@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core.util;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata map that shares its entries with other copies until it is written to.  The first write through any copy
+ * replaces that copy's view with a private {@link java.util.HashMap}, so the shared entries are never modified.  A new
+ * map starts out sharing an empty map, so datums that never get metadata never allocate one.
+ *
+ * Only the map itself is copied on write.  Values are shared between copies, so mutable values such as nested maps
+ * must be replaced rather than modified in place.
+ */
+public class CopyOnWriteMetadata extends AbstractMap<String, Object> implements Serializable {
+
+    private Map<String, Object> entries;
+    private boolean shared;
+
+    public CopyOnWriteMetadata() {
+        //no map is allocated until the first write
+        this(Collections.<String, Object>emptyMap());
+    }
+
+    private CopyOnWriteMetadata(Map<String, Object> sharedEntries) {
+        this.entries = sharedEntries;
+        this.shared = true;
+    }
+
+    /**
+     * Creates a copy of the given metadata.  If the metadata is already a CopyOnWriteMetadata the two instances share
+     * their entries until either one is written to.  Otherwise the entries are copied eagerly.
+     * @param metadata metadata to copy, may be null
+     * @return a copy of the metadata
+     */
+    public static CopyOnWriteMetadata copyOf(Map<String, Object> metadata) {
+        if(metadata instanceof CopyOnWriteMetadata) {
+            return ((CopyOnWriteMetadata) metadata).share();
+        }
+        CopyOnWriteMetadata copy = new CopyOnWriteMetadata();
+        if(metadata != null) {
+            copy.putAll(metadata);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a copy of this metadata that shares its entries.  After this call neither copy modifies the shared
+     * entries.
+     * @return copy sharing this metadata's entries
+     */
+    public synchronized CopyOnWriteMetadata share() {
+        this.shared = true;
+        return new CopyOnWriteMetadata(this.entries);
+    }
+
+    /**
+     * @return true, if this metadata has not taken a private copy of its entries since it was created or shared
+     */
+    public synchronized boolean isShared() {
+        return this.shared;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return this.entries.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        return writableEntries().put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        if(!this.entries.containsKey(key)) {
+            return null;
+        }
+        return writableEntries().remove(key);
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends String, ?> m) {
+        if(!m.isEmpty()) {
+            writableEntries().putAll(m);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        if(this.shared) {
+            this.entries = Collections.<String, Object>emptyMap();
+        } else {
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * While the entries are shared the returned set is read only.  Take a private copy of the entries first by
+     * writing to the map if the set needs to be modified.
+     */
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        if(this.shared) {
+            return Collections.unmodifiableMap(this.entries).entrySet();
+        }
+        return this.entries.entrySet();
+    }
+
+    private Map<String, Object> writableEntries() {
+        if(this.shared) {
+            this.entries = new HashMap<String, Object>(this.entries);
+            this.shared = false;
+        }
+        return this.entries;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core.util;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.util.SerializationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * First in first out store of {@link org.apache.streams.core.StreamsDatum}s in memory-mapped segment files, used by
+ * queues that spill the datums they can not keep in memory.  Segments are created on the first write and deleted once
+ * they have been read, except for one that is kept to write to next time.  All remaining segments are deleted by
+ * {@link #close()}.  Segments are unmapped as soon as they are deleted rather than when the garbage collector gets to
+ * their buffers, and the total size of the mapped segments is capped, so a consumer that falls far behind can not map
+ * an unbounded amount of address space.
+ * <p/>
+ * Only datums that read back unchanged are written.  A datum whose document is registered with the
+ * {@link org.apache.streams.core.util.StreamsDatumCodec} and whose metadata holds only json values is written with the
+ * codec, any other datum with java serialization.  Datums that can be written neither way are refused, and the caller
+ * has to keep them in memory, as are datums that would take the mapped segments over the cap.
+ * <p/>
+ * Not thread safe, callers must synchronize access.
+ */
+public class DatumSpill implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatumSpill.class);
+
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Default cap on the total size of the segments mapped at once
+     */
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 16L * DEFAULT_SEGMENT_BYTES;
+
+    /**
+     * Each record is written as the length of the encoded datum, the time it was queued, how it was encoded and the
+     * encoded datum
+     */
+    public static final int RECORD_HEADER_BYTES = 13;
+
+    private static final byte CODEC_ENCODING = 0;
+    private static final byte JAVA_ENCODING = 1;
+
+    private final File directory;
+    private final String filePrefix;
+    private final int segmentBytes;
+    private final long maxMappedBytes;
+    private final StreamsDatumCodec codec;
+
+    private final ArrayDeque<Segment> segments;
+    private Segment spare;
+    private long count;
+    private long bytes;
+    private long mappedBytes;
+
+    /**
+     * @param directory directory the segment files are created in, created if it does not exist
+     * @param filePrefix prefix of the segment file names
+     * @param segmentBytes size of each segment file. Datums larger than a segment get a segment of their own
+     */
+    public DatumSpill(File directory, String filePrefix, int segmentBytes) {
+        this(directory, filePrefix, segmentBytes, Math.max(DEFAULT_MAX_MAPPED_BYTES, segmentBytes));
+    }
+
+    /**
+     * @param directory directory the segment files are created in, created if it does not exist
+     * @param filePrefix prefix of the segment file names
+     * @param segmentBytes size of each segment file. Datums larger than a segment get a segment of their own
+     * @param maxMappedBytes cap on the total size of the segments mapped at once, at least one segment
+     */
+    public DatumSpill(File directory, String filePrefix, int segmentBytes, long maxMappedBytes) {
+        if (segmentBytes <= RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size must be larger than " + RECORD_HEADER_BYTES + " bytes : " + segmentBytes);
+        }
+        if (maxMappedBytes < segmentBytes) {
+            throw new IllegalArgumentException("Mapped size cap must be at least one segment : " + maxMappedBytes);
+        }
+        this.directory = directory;
+        this.filePrefix = filePrefix.replaceAll("[^A-Za-z0-9_\\-]", "_");
+        this.segmentBytes = segmentBytes;
+        this.maxMappedBytes = maxMappedBytes;
+        this.codec = StreamsDatumCodec.getInstance();
+        this.segments = new ArrayDeque<>();
+    }
+
+    /**
+     * Appends the datum to the last segment, creating a new segment if it does not fit.
+     * @param datum datum to write
+     * @param queuedTime time the datum was queued, returned by {@link #nextQueuedTime()}
+     * @return false, if the datum can not be written so that it reads back unchanged, a new segment would take the
+     * mapped segments over the cap, or writing failed
+     */
+    public boolean write(StreamsDatum datum, long queuedTime) {
+        byte encoding;
+        byte[] encoded;
+        try {
+            if (isCodecSafe(datum)) {
+                encoding = CODEC_ENCODING;
+                encoded = this.codec.encode(datum);
+            } else {
+                encoding = JAVA_ENCODING;
+                encoded = SerializationUtil.serialize(datum);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Datum can not be spilled : {}", e.getMessage());
+            return false;
+        }
+        int recordBytes = RECORD_HEADER_BYTES + encoded.length;
+        try {
+            Segment segment = this.segments.peekLast();
+            if (segment == null || !segment.hasRoom(recordBytes)) {
+                int capacity = Math.max(this.segmentBytes, recordBytes);
+                if (!canMap(capacity)) {
+                    LOGGER.debug("Spill is full, {} bytes mapped", this.mappedBytes);
+                    return false;
+                }
+                segment = createSegment(capacity);
+                this.segments.add(segment);
+            }
+            segment.write(encoded, encoding, queuedTime);
+        } catch (IOException ioe) {
+            LOGGER.error("Failed to spill datum : {}", ioe);
+            return false;
+        }
+        ++this.count;
+        this.bytes += recordBytes;
+        return true;
+    }
+
+    /**
+     * Removes the oldest datum.  If it can not be read, it is left in place.
+     * @return the oldest datum, or null if nothing is spilled
+     * @throws IOException if the oldest datum can not be read
+     */
+    public StreamsDatum read() throws IOException {
+        Segment segment = head();
+        if (segment == null) {
+            return null;
+        }
+        StreamsDatum datum = decode(segment);
+        int recordBytes = segment.skip();
+        --this.count;
+        this.bytes -= recordBytes;
+        if (this.count == 0) {
+            // everything has been read back, so start over in a single segment
+            retire(this.segments.poll());
+        }
+        return datum;
+    }
+
+    /**
+     * @return the oldest datum without removing it, or null if nothing is spilled
+     * @throws IOException if the oldest datum can not be read
+     */
+    public StreamsDatum peek() throws IOException {
+        Segment segment = head();
+        return segment == null ? null : decode(segment);
+    }
+
+    /**
+     * @return the time the oldest datum was queued, or -1 if nothing is spilled
+     */
+    public long nextQueuedTime() {
+        Segment segment = head();
+        return segment == null ? -1 : segment.nextQueuedTime();
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * @return number of datums written and not yet read
+     */
+    public long size() {
+        return this.count;
+    }
+
+    /**
+     * @return number of bytes of the datums written and not yet read
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return total size of the segments currently mapped, including the one kept to write to next time
+     */
+    public long getMappedBytes() {
+        return this.mappedBytes;
+    }
+
+    /**
+     * Deletes all segment files.  Datums that have not been read back are lost.
+     */
+    @Override
+    public void close() {
+        while (!this.segments.isEmpty()) {
+            delete(this.segments.poll());
+        }
+        if (this.spare != null) {
+            delete(this.spare);
+            this.spare = null;
+        }
+        this.count = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * The codec decodes metadata values as generic json types, so it is only used if that gives back equal values
+     */
+    private boolean isCodecSafe(StreamsDatum datum) {
+        if (datum.document != null && !this.codec.isRegistered(datum.document)) {
+            return false;
+        }
+        return datum.metadata == null || isJsonValue(datum.metadata);
+    }
+
+    private static boolean isJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Double) {
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isJsonValue(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private StreamsDatum decode(Segment segment) throws IOException {
+        byte[] encoded = segment.nextRecord();
+        if (segment.nextEncoding() == CODEC_ENCODING) {
+            return this.codec.decode(encoded);
+        }
+        try {
+            return (StreamsDatum) SerializationUtil.deserialize(encoded);
+        } catch (RuntimeException re) {
+            throw new IOException("Failed to deserialize spilled datum", re);
+        }
+    }
+
+    /**
+     * @return the segment holding the oldest datum, or null if nothing is spilled
+     */
+    private Segment head() {
+        Segment segment = this.segments.peek();
+        while (segment != null && !segment.hasUnread() && this.segments.size() > 1) {
+            retire(this.segments.poll());
+            segment = this.segments.peek();
+        }
+        return segment != null && segment.hasUnread() ? segment : null;
+    }
+
+    /**
+     * Returns true if a segment of the given size can be mapped without going over the cap.  The segment kept to write
+     * to next time is given up if that makes room for a larger one.
+     */
+    private boolean canMap(int capacity) {
+        if (this.spare != null && this.spare.capacity() >= capacity) {
+            return true;
+        }
+        if (this.spare != null && this.mappedBytes + capacity > this.maxMappedBytes) {
+            delete(this.spare);
+            this.spare = null;
+        }
+        return this.mappedBytes + capacity <= this.maxMappedBytes;
+    }
+
+    private Segment createSegment(int capacity) throws IOException {
+        if (this.spare != null && this.spare.capacity() >= capacity) {
+            Segment segment = this.spare;
+            this.spare = null;
+            return segment;
+        }
+        if (!this.directory.isDirectory() && !this.directory.mkdirs() && !this.directory.isDirectory()) {
+            throw new IOException("Unable to create spill directory " + this.directory);
+        }
+        File file = File.createTempFile(this.filePrefix, ".spill", this.directory);
+        LOGGER.debug("Spilling to new segment {}", file);
+        Segment segment = new Segment(file, capacity);
+        this.mappedBytes += capacity;
+        return segment;
+    }
+
+    /**
+     * Keeps a fully read segment of the default size to write to next time, and deletes any other.
+     */
+    private void retire(Segment segment) {
+        if (this.spare == null && segment.capacity() == this.segmentBytes) {
+            segment.reset();
+            this.spare = segment;
+        } else {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        this.mappedBytes -= segment.capacity();
+        segment.delete();
+    }
+
+    /**
+     * Releases the mapping of the buffer now instead of when it is garbage collected.  There is no public API for
+     * this, so it goes through the cleaner: Unsafe.invokeCleaner from java 9, the buffer's own cleaner before that.  If
+     * neither is available, the mapping is released by the garbage collector as before.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException nsme) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to unmap spill segment, leaving it to the garbage collector : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A memory-mapped file that records are appended to and read back from in order
+     */
+    private static class Segment {
+
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private Segment(File file, int capacity) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            try {
+                this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException ioe) {
+                this.raf.close();
+                this.file.delete();
+                throw ioe;
+            }
+            this.writePosition = 0;
+            this.readPosition = 0;
+        }
+
+        private int capacity() {
+            return this.buffer.capacity();
+        }
+
+        private boolean hasRoom(int recordBytes) {
+            return this.buffer.capacity() - this.writePosition >= recordBytes;
+        }
+
+        private boolean hasUnread() {
+            return this.readPosition < this.writePosition;
+        }
+
+        private void write(byte[] bytes, byte encoding, long queuedTime) {
+            this.buffer.putInt(this.writePosition, bytes.length);
+            this.buffer.putLong(this.writePosition + 4, queuedTime);
+            this.buffer.put(this.writePosition + 12, encoding);
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(this.writePosition + RECORD_HEADER_BYTES);
+            view.put(bytes);
+            this.writePosition += RECORD_HEADER_BYTES + bytes.length;
+        }
+
+        private long nextQueuedTime() {
+            return this.buffer.getLong(this.readPosition + 4);
+        }
+
+        private byte nextEncoding() {
+            return this.buffer.get(this.readPosition + 12);
+        }
+
+        private byte[] nextRecord() {
+            byte[] bytes = new byte[this.buffer.getInt(this.readPosition)];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(this.readPosition + RECORD_HEADER_BYTES);
+            view.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @return the number of bytes skipped
+         */
+        private int skip() {
+            int recordBytes = RECORD_HEADER_BYTES + this.buffer.getInt(this.readPosition);
+            this.readPosition += recordBytes;
+            return recordBytes;
+        }
+
+        private void reset() {
+            this.writePosition = 0;
+            this.readPosition = 0;
+        }
+
+        /**
+         * Unmaps and deletes the file.  The segment must not be used afterwards.
+         */
+        private void delete() {
+            unmap(this.buffer);
+            try {
+                this.raf.close();
+            } catch (IOException ioe) {
+                LOGGER.warn("Failed to close segment {} : {}", this.file, ioe.getMessage());
+            }
+            if (!this.file.delete()) {
+                this.file.deleteOnExit();
+            }
+        }
+    }
+}
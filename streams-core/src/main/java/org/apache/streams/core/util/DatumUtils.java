@@ -20,12 +20,12 @@
 package org.apache.streams.core.util;
 
 import com.google.common.collect.Maps;
+import org.apache.streams.core.CompactStreamsDatum;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsOperation;
 import org.joda.time.DateTime;
 
 import java.math.BigInteger;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -43,19 +43,41 @@ public class DatumUtils {
      */
     @SuppressWarnings("all")
     public static void addErrorToMetadata(StreamsDatum datum, Throwable e, Class<? extends StreamsOperation> operationClass) {
-        if(!datum.getMetadata().containsKey("errors")) {
-            datum.getMetadata().put("errors", Maps.<String, Throwable>newHashMap());
+        Map<String, Throwable> errors = Maps.<String, Throwable>newHashMap();
+        if(datum.getMetadata().containsKey("errors")) {
+            //metadata values may be shared with copies of this datum, so replace the errors rather than modifying them
+            errors.putAll((Map)datum.getMetadata().get("errors"));
         }
-        Map<String, Throwable> errors = (Map)datum.getMetadata().get("errors");
         errors.put(operationClass.getCanonicalName(), e);
+        datum.getMetadata().put("errors", errors);
+    }
+
+    /**
+     * Gives the target datum a copy-on-write copy of the source datum's metadata.  The metadata values themselves are
+     * shared, not cloned.
+     *
+     * @param copyFrom datum whose metadata is copied
+     * @param copyTo datum receiving the metadata
+     * @return copyTo
+     */
+    public static StreamsDatum copyMetadata(StreamsDatum copyFrom, StreamsDatum copyTo) {
+        //read the field, not the getter, so that datums allocating metadata lazily are not made to allocate it here
+        if(copyFrom.metadata != null) {
+            copyTo.setMetadata(CopyOnWriteMetadata.copyOf(copyFrom.metadata));
+        } else if(!(copyFrom instanceof CompactStreamsDatum)) {
+            copyTo.setMetadata(null);
+        }
+        return copyTo;
     }
 
     public static StreamsDatum cloneDatum(StreamsDatum datum) {
+        if(datum instanceof CompactStreamsDatum) {
+            return new CompactStreamsDatum((CompactStreamsDatum) datum);
+        }
         StreamsDatum clone = new StreamsDatum(datum.getDocument());
         clone.setId(datum.getId() == null ? null : new String(datum.getId()));
         clone.setTimestamp(datum.getTimestamp() == null ? null : new DateTime(datum.getTimestamp()));
         clone.setSequenceid(datum.getSequenceid() == null ? null : datum.getSequenceid());
-        clone.setMetadata(datum.getMetadata() == null ? null : new HashMap<>(datum.getMetadata()));
-        return clone;
+        return copyMetadata(datum, clone);
     }
 }
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.streams.core.CompactStreamsDatum;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.jackson.StreamsJacksonModule;
+import org.apache.streams.pojo.json.Activity;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary codec for {@link org.apache.streams.core.StreamsDatum}s, built on jackson's Smile format with the
+ * {@link org.apache.streams.jackson.StreamsJacksonModule} registered.  It is a faster and more compact alternative to
+ * java serialization for cloning datums, spilling them to disk or moving them between processes.
+ *
+ * The id, timestamp, sequence id, metadata and document are encoded along with the document's class, so the document
+ * is decoded back to the same type.  Document classes registered in the class table are written as a small integer,
+ * any other class by name.  Document classes must be jackson serializable.  Metadata values are decoded as the
+ * generic json types (Map, List, String, Number, Boolean).  Timestamps are decoded with their original time zone
+ * in the ISO chronology.
+ */
+public class StreamsDatumCodec {
+
+    /**
+     * Class ids below this value are reserved for the built in document classes
+     */
+    public static final int FIRST_USER_CLASS_ID = 64;
+
+    private static final String CLASS_ID_FIELD = "c";
+    private static final String CLASS_NAME_FIELD = "n";
+    private static final String COMPACT_FIELD = "k";
+    private static final String ID_FIELD = "i";
+    private static final String TIMESTAMP_FIELD = "t";
+    private static final String ZONE_FIELD = "z";
+    private static final String SEQUENCE_FIELD = "s";
+    private static final String METADATA_FIELD = "m";
+    private static final String DOCUMENT_FIELD = "d";
+
+    private static final StreamsDatumCodec INSTANCE = new StreamsDatumCodec();
+
+    private final ObjectMapper mapper;
+    private final Map<Integer, Class<?>> classesById = new ConcurrentHashMap<Integer, Class<?>>();
+    private final Map<Class<?>, Integer> idsByClass = new ConcurrentHashMap<Class<?>, Integer>();
+    private final Map<String, Class<?>> classesByName = new ConcurrentHashMap<String, Class<?>>();
+
+    /**
+     * @return a globally shared codec using the default date formats
+     */
+    public static StreamsDatumCodec getInstance() {
+        return INSTANCE;
+    }
+
+    public StreamsDatumCodec() {
+        this(createSmileMapper());
+    }
+
+    /**
+     * @param mapper mapper used to write and read the datum, normally one created with a binary
+     *               {@link com.fasterxml.jackson.core.JsonFactory}
+     */
+    public StreamsDatumCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        addDocumentClass(1, String.class);
+        addDocumentClass(2, byte[].class);
+        addDocumentClass(3, ObjectNode.class);
+        addDocumentClass(4, Activity.class);
+    }
+
+    private static ObjectMapper createSmileMapper() {
+        ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+        mapper.registerModule(new StreamsJacksonModule());
+        //same relevant settings as StreamsJacksonMapper, so documents survive the round trip the same way
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, Boolean.FALSE);
+        mapper.configure(DeserializationFeature.WRAP_EXCEPTIONS, Boolean.FALSE);
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, Boolean.FALSE);
+        mapper.configure(SerializationFeature.WRITE_NULL_MAP_VALUES, Boolean.FALSE);
+        return mapper;
+    }
+
+    /**
+     * Registers a document class so that it is written as an integer id rather than by name.  Every process reading
+     * the encoded datums must register the same ids.
+     * @param classId id for the class, at least {@link #FIRST_USER_CLASS_ID}
+     * @param clazz the document class
+     */
+    public void registerDocumentClass(int classId, Class<?> clazz) {
+        if(classId < FIRST_USER_CLASS_ID) {
+            throw new IllegalArgumentException("Class ids below " + FIRST_USER_CLASS_ID + " are reserved");
+        }
+        Class<?> existing = this.classesById.get(classId);
+        if(existing != null && !existing.equals(clazz)) {
+            throw new IllegalArgumentException("Class id " + classId + " is already registered to " + existing.getName());
+        }
+        addDocumentClass(classId, clazz);
+    }
+
+    /**
+     * @param document a document
+     * @return true, if the document's class is in the class table
+     */
+    public boolean isRegistered(Object document) {
+        return document != null && this.idsByClass.containsKey(document.getClass());
+    }
+
+    /**
+     * @param datum datum to encode
+     * @return the encoded datum
+     * @throws IOException if the datum can not be encoded
+     */
+    public byte[] encode(StreamsDatum datum) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(datum, out, true);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the encoded datum to the stream, preceded by its length as a four byte int, so that many datums can be
+     * written to and read back from one stream.  The stream is not closed.
+     * @param datum datum to encode
+     * @param out stream to write to
+     * @throws IOException if the datum can not be encoded or written
+     */
+    public void encode(StreamsDatum datum, OutputStream out) throws IOException {
+        byte[] bytes = encode(datum);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(bytes.length);
+        dataOut.write(bytes);
+        dataOut.flush();
+    }
+
+    /**
+     * @param bytes an encoded datum
+     * @return the decoded datum
+     * @throws IOException if the bytes are not an encoded datum
+     */
+    public StreamsDatum decode(byte[] bytes) throws IOException {
+        JsonParser parser = this.mapper.getFactory().createParser(bytes);
+        try {
+            return decode(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads one datum written by {@link #encode(org.apache.streams.core.StreamsDatum, java.io.OutputStream)} from the
+     * stream.  The stream is not closed.
+     * @param in stream holding an encoded datum
+     * @return the decoded datum
+     * @throws java.io.EOFException if the stream ends before the datum
+     * @throws IOException if the stream does not hold an encoded datum
+     */
+    public StreamsDatum decode(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        byte[] bytes = new byte[dataIn.readInt()];
+        dataIn.readFully(bytes);
+        return decode(bytes);
+    }
+
+    /**
+     * Clones a datum by encoding and decoding everything but its metadata, which the clone shares copy-on-write.
+     * @param datum datum to clone
+     * @return a clone of the datum
+     * @throws IOException if the datum can not be encoded
+     */
+    public StreamsDatum cloneDatum(StreamsDatum datum) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(datum, out, false);
+        StreamsDatum clone = decode(out.toByteArray());
+        return DatumUtils.copyMetadata(datum, clone);
+    }
+
+    private void encode(StreamsDatum datum, OutputStream out, boolean includeMetadata) throws IOException {
+        JsonGenerator generator = this.mapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            generator.writeStartObject();
+            Object document = datum.getDocument();
+            if(document != null) {
+                Integer classId = this.idsByClass.get(document.getClass());
+                if(classId != null) {
+                    generator.writeNumberField(CLASS_ID_FIELD, classId);
+                } else {
+                    generator.writeStringField(CLASS_NAME_FIELD, document.getClass().getName());
+                }
+            }
+            if(datum instanceof CompactStreamsDatum) {
+                CompactStreamsDatum compact = (CompactStreamsDatum) datum;
+                generator.writeBooleanField(COMPACT_FIELD, true);
+                if(compact.getTimestampMillis() != Long.MIN_VALUE) {
+                    generator.writeNumberField(TIMESTAMP_FIELD, compact.getTimestampMillis());
+                }
+                if(compact.hasLongSequence()) {
+                    generator.writeNumberField(SEQUENCE_FIELD, compact.getSequence());
+                } else if(compact.getSequenceid() != null) {
+                    generator.writeFieldName(SEQUENCE_FIELD);
+                    generator.writeNumber(compact.getSequenceid());
+                }
+            } else {
+                if(datum.getTimestamp() != null) {
+                    generator.writeNumberField(TIMESTAMP_FIELD, datum.getTimestamp().getMillis());
+                    generator.writeStringField(ZONE_FIELD, datum.getTimestamp().getZone().getID());
+                }
+                if(datum.getSequenceid() != null) {
+                    generator.writeFieldName(SEQUENCE_FIELD);
+                    generator.writeNumber(datum.getSequenceid());
+                }
+            }
+            if(datum.getId() != null) {
+                generator.writeStringField(ID_FIELD, datum.getId());
+            }
+            //read the field so datums allocating metadata lazily do not allocate it here
+            if(includeMetadata && datum.metadata != null && !datum.metadata.isEmpty()) {
+                generator.writeFieldName(METADATA_FIELD);
+                this.mapper.writeValue(generator, datum.metadata);
+            }
+            generator.writeFieldName(DOCUMENT_FIELD);
+            if(document instanceof String) {
+                generator.writeString((String) document);
+            } else if(document instanceof byte[]) {
+                generator.writeBinary((byte[]) document);
+            } else {
+                this.mapper.writeValue(generator, document);
+            }
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private StreamsDatum decode(JsonParser parser) throws IOException {
+        if(parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected an encoded StreamsDatum");
+        }
+        Class<?> documentClass = null;
+        boolean compact = false;
+        Long timestamp = null;
+        DateTimeZone zone = null;
+        BigInteger sequenceid = null;
+        String id = null;
+        Map<String, Object> metadata = null;
+        Object document = null;
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if(token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if(CLASS_ID_FIELD.equals(field)) {
+                documentClass = this.classesById.get(parser.getIntValue());
+                if(documentClass == null) {
+                    throw new IOException("Unknown document class id " + parser.getIntValue());
+                }
+            } else if(CLASS_NAME_FIELD.equals(field)) {
+                documentClass = classForName(parser.getText());
+            } else if(COMPACT_FIELD.equals(field)) {
+                compact = parser.getBooleanValue();
+            } else if(TIMESTAMP_FIELD.equals(field)) {
+                timestamp = parser.getLongValue();
+            } else if(ZONE_FIELD.equals(field)) {
+                zone = readZone(parser.getText());
+            } else if(SEQUENCE_FIELD.equals(field)) {
+                sequenceid = parser.getBigIntegerValue();
+            } else if(ID_FIELD.equals(field)) {
+                id = parser.getText();
+            } else if(METADATA_FIELD.equals(field)) {
+                metadata = this.mapper.readValue(parser, Map.class);
+            } else if(DOCUMENT_FIELD.equals(field)) {
+                document = readDocument(parser, documentClass);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        StreamsDatum datum;
+        if(compact) {
+            CompactStreamsDatum compactDatum = new CompactStreamsDatum(document, id);
+            if(timestamp != null) {
+                compactDatum.setTimestampMillis(timestamp);
+            }
+            if(sequenceid != null) {
+                if(sequenceid.bitLength() < Long.SIZE) {
+                    compactDatum.setSequence(sequenceid.longValue());
+                } else {
+                    compactDatum.setSequenceid(sequenceid);
+                }
+            }
+            datum = compactDatum;
+        } else {
+            datum = new StreamsDatum(document, id, timestamp == null ? null : new DateTime(timestamp.longValue(), zone), sequenceid);
+        }
+        if(metadata != null) {
+            datum.getMetadata().putAll(metadata);
+        }
+        return datum;
+    }
+
+    private static DateTimeZone readZone(String zoneId) throws IOException {
+        try {
+            return DateTimeZone.forID(zoneId);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown time zone " + zoneId, e);
+        }
+    }
+
+    private Object readDocument(JsonParser parser, Class<?> documentClass) throws IOException {
+        if(documentClass == null) {
+            throw new IOException("Encoded StreamsDatum has a document but no document class");
+        } else if(documentClass == String.class) {
+            return parser.getText();
+        } else if(documentClass == byte[].class) {
+            return parser.getBinaryValue();
+        } else if(JsonNode.class.isAssignableFrom(documentClass)) {
+            return this.mapper.readTree(parser);
+        }
+        return this.mapper.readValue(parser, documentClass);
+    }
+
+    private Class<?> classForName(String name) throws IOException {
+        Class<?> clazz = this.classesByName.get(name);
+        if(clazz == null) {
+            try {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                clazz = Class.forName(name, true, loader == null ? StreamsDatumCodec.class.getClassLoader() : loader);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown document class " + name, e);
+            }
+            this.classesByName.put(name, clazz);
+        }
+        return clazz;
+    }
+
+    private void addDocumentClass(int classId, Class<?> clazz) {
+        this.classesById.put(classId, clazz);
+        this.idsByClass.put(clazz, classId);
+    }
+}
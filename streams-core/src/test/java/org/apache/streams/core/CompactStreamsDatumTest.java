@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import org.joda.time.DateTime;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.core.CompactStreamsDatum}
+ */
+public class CompactStreamsDatumTest {
+
+    private static final int NUM_DATUMS = 100000;
+
+    @Test
+    public void testLazyTimestampAndSequence() {
+        long now = System.currentTimeMillis();
+        CompactStreamsDatum datum = new CompactStreamsDatum("doc", "id", now, 42L);
+        assertNull(datum.timestamp);
+        assertNull(datum.sequenceid);
+        assertEquals(now, datum.getTimestamp().getMillis());
+        assertEquals(BigInteger.valueOf(42L), datum.getSequenceid());
+        assertTrue(datum.hasLongSequence());
+        assertEquals(new StreamsDatum("doc", "id", new DateTime(now), BigInteger.valueOf(42L)), datum);
+    }
+
+    @Test
+    public void testSequenceOverflow() {
+        BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+        CompactStreamsDatum datum = new CompactStreamsDatum("doc", "id", null, big);
+        assertFalse(datum.hasLongSequence());
+        assertEquals(big, datum.getSequenceid());
+        datum.setSequenceid(BigInteger.TEN);
+        assertTrue(datum.hasLongSequence());
+        assertEquals(10L, datum.getSequence());
+    }
+
+    @Test
+    public void testLazyMetadata() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("doc");
+        assertNull(datum.metadata);
+        assertTrue(datum.getMetadata().isEmpty());
+        datum.getMetadata().put("key", "value");
+        assertEquals("value", datum.getMetadata().get("key"));
+    }
+
+    /**
+     * Compares the heap retained by datums with a timestamp and sequence id and no metadata
+     */
+    @Test
+    public void testMemoryFootprint() {
+        String document = "doc";
+        long now = System.currentTimeMillis();
+        //warm up so class loading is not measured
+        buildStandard(document, now, 1000);
+        buildCompact(document, now, 1000);
+
+        long start = usedHeapAfterGc();
+        StreamsDatum[] standard = buildStandard(document, now, NUM_DATUMS);
+        long standardBytes = usedHeapAfterGc() - start;
+        assertEquals(NUM_DATUMS, standard.length);
+        standard = null;
+
+        start = usedHeapAfterGc();
+        StreamsDatum[] compact = buildCompact(document, now, NUM_DATUMS);
+        long compactBytes = usedHeapAfterGc() - start;
+        assertEquals(NUM_DATUMS, compact.length);
+
+        // explicit garbage collection may be disabled
+        Assume.assumeTrue(standardBytes > 0 && compactBytes > 0);
+        assertTrue("Expected compact datums to retain less, standard=" + standardBytes + " compact=" + compactBytes, compactBytes < standardBytes);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for(int i=0; i < 3; ++i) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private StreamsDatum[] buildStandard(String document, long now, int count) {
+        StreamsDatum[] datums = new StreamsDatum[count];
+        for(int i=0; i < count; ++i) {
+            datums[i] = new StreamsDatum(document, new DateTime(now + i), BigInteger.valueOf(Integer.MAX_VALUE + (long) i));
+        }
+        return datums;
+    }
+
+    private StreamsDatum[] buildCompact(String document, long now, int count) {
+        StreamsDatum[] datums = new StreamsDatum[count];
+        for(int i=0; i < count; ++i) {
+            datums[i] = new CompactStreamsDatum(document, null, now + i, Integer.MAX_VALUE + (long) i);
+        }
+        return datums;
+    }
+}
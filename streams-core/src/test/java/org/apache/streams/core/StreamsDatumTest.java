@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the document views of {@link org.apache.streams.core.StreamsDatum}
+ */
+public class StreamsDatumTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testStringViewsAreReused() throws Exception {
+        String json = "{\"id\":\"1\"}";
+        StreamsDatum datum = new StreamsDatum(json);
+        ObjectNode tree = datum.getDocumentAs(ObjectNode.class);
+        assertEquals("1", tree.get("id").asText());
+        assertSame(json, datum.getDocumentHolder().asString(MAPPER));
+    }
+
+    @Test
+    public void testSetDocumentRebuildsViews() throws Exception {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", "1");
+        StreamsDatum datum = new StreamsDatum(node);
+        assertEquals("{\"id\":\"1\"}", datum.getDocumentHolder().asString(MAPPER));
+
+        node.put("tag", "extracted");
+        datum.setDocument(node);
+        assertEquals("{\"id\":\"1\",\"tag\":\"extracted\"}", datum.getDocumentHolder().asString(MAPPER));
+    }
+}
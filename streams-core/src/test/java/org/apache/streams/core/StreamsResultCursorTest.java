@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.streams.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.core.StreamsResultCursor}
+ */
+public class StreamsResultCursorTest {
+
+    @Test
+    public void testPollPullsOnDemand() {
+        CountingIterator source = new CountingIterator(5);
+        StreamsResultCursor cursor = new StreamsResultCursor(source);
+        assertEquals(0, source.produced);
+        for(int i=0; i < 5; ++i) {
+            StreamsDatum datum = cursor.poll();
+            assertNotNull(datum);
+            assertEquals(i, datum.getDocument());
+            assertEquals(i+1, source.produced);
+        }
+        assertNull(cursor.poll());
+    }
+
+    @Test
+    public void testIteratorDrains() {
+        StreamsResultCursor cursor = new StreamsResultCursor(new CountingIterator(3));
+        List<Object> documents = new ArrayList<>();
+        for(StreamsDatum datum : cursor) {
+            documents.add(datum.getDocument());
+        }
+        assertEquals(3, documents.size());
+        assertFalse(cursor.iterator().hasNext());
+        assertNull(cursor.poll());
+    }
+
+    @Test
+    public void testQueueMaterialisesRemainingDatums() {
+        StreamsResultCursor cursor = new StreamsResultCursor(new CountingIterator(4));
+        assertEquals(0, cursor.poll().getDocument());
+        assertEquals(3, cursor.size());
+        assertEquals(3, cursor.getQueue().size());
+        assertEquals(1, cursor.poll().getDocument());
+        assertEquals(2, cursor.getQueue().size());
+    }
+
+    @Test
+    public void testQueueAdapterPollsQueue() {
+        ConcurrentLinkedQueue<StreamsDatum> queue = new ConcurrentLinkedQueue<>();
+        queue.add(new StreamsDatum("a"));
+        StreamsResultSet resultSet = new StreamsResultSet(queue);
+        queue.add(new StreamsDatum("b"));
+        assertEquals("a", resultSet.poll().getDocument());
+        assertEquals("b", resultSet.poll().getDocument());
+        assertNull(resultSet.poll());
+        assertSame(queue, resultSet.getQueue());
+    }
+
+    @Test
+    public void testDrainingIteratorRemovesFromQueue() {
+        ConcurrentLinkedQueue<StreamsDatum> queue = new ConcurrentLinkedQueue<>();
+        queue.add(new StreamsDatum("a"));
+        queue.add(new StreamsDatum("b"));
+        List<Object> documents = new ArrayList<>();
+        for(StreamsDatum datum : StreamsResultCursor.draining(queue)) {
+            documents.add(datum.getDocument());
+        }
+        assertEquals(2, documents.size());
+        assertTrue(queue.isEmpty());
+        queue.add(new StreamsDatum("c"));
+        StreamsResultCursor next = StreamsResultCursor.draining(queue);
+        assertEquals("c", next.poll().getDocument());
+        assertNull(next.poll());
+        assertFalse(StreamsResultCursor.draining(queue).iterator().hasNext());
+    }
+
+    private static class CountingIterator implements Iterator<StreamsDatum> {
+
+        private final int total;
+        private int produced;
+
+        private CountingIterator(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.produced < this.total;
+        }
+
+        @Override
+        public StreamsDatum next() {
+            return new StreamsDatum(this.produced++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
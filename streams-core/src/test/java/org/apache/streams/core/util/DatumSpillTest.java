@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core.util;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.pojo.json.Activity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.core.util.DatumSpill}
+ */
+public class DatumSpillTest {
+
+    private File directory;
+    private DatumSpill spill;
+
+    @Before
+    public void createSpill() {
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "datum-spill-test-" + System.nanoTime());
+        this.spill = new DatumSpill(this.directory, "test-", 256);
+    }
+
+    @After
+    public void closeSpill() {
+        this.spill.close();
+        this.directory.delete();
+    }
+
+    @Test
+    public void testReadsBackInOrder() throws Exception {
+        for(int i=0; i < 100; ++i) {
+            assertTrue(this.spill.write(new StreamsDatum("document " + i, Integer.toString(i)), i));
+        }
+        assertEquals(100, this.spill.size());
+        assertTrue(this.directory.listFiles().length > 1);
+        for(int i=0; i < 100; ++i) {
+            assertEquals(i, this.spill.nextQueuedTime());
+            assertEquals("document " + i, this.spill.peek().getDocument());
+            assertEquals(Integer.toString(i), this.spill.read().getId());
+        }
+        assertTrue(this.spill.isEmpty());
+        assertEquals(0, this.spill.getBytes());
+        assertEquals(-1, this.spill.nextQueuedTime());
+        assertNull(this.spill.read());
+        //one segment is kept to spill to next time
+        assertEquals(1, this.directory.listFiles().length);
+    }
+
+    @Test
+    public void testMetadataIsKept() throws Exception {
+        StreamsDatum datum = new StreamsDatum(new Activity());
+        datum.getMetadata().put("long", 5L);
+        datum.getMetadata().put("error", new IllegalStateException("failed"));
+        assertTrue(this.spill.write(datum, 0));
+        StreamsDatum read = this.spill.read();
+        assertTrue(read.getDocument() instanceof Activity);
+        assertEquals(5L, read.getMetadata().get("long"));
+        assertEquals("failed", ((Throwable) read.getMetadata().get("error")).getMessage());
+    }
+
+    @Test
+    public void testSerializableDocumentIsKept() throws Exception {
+        HashMap<String, Object> document = new HashMap<>();
+        document.put("count", 5L);
+        assertTrue(this.spill.write(new StreamsDatum(document), 0));
+        assertEquals(document, this.spill.read().getDocument());
+    }
+
+    @Test
+    public void testRefusesDatumsThatDoNotReadBack() throws Exception {
+        assertFalse(this.spill.write(new StreamsDatum(new Object()), 0));
+        assertTrue(this.spill.isEmpty());
+        assertNull(this.directory.listFiles());
+    }
+
+    @Test
+    public void testMappedBytesAreCapped() throws Exception {
+        this.spill.close();
+        this.spill = new DatumSpill(this.directory, "test-", 256, 512);
+        int written = 0;
+        while(this.spill.write(new StreamsDatum("document " + written, Integer.toString(written)), written)) {
+            ++written;
+        }
+        assertTrue(written > 0);
+        assertEquals(512, this.spill.getMappedBytes());
+        assertEquals(2, this.directory.listFiles().length);
+        for(int i=0; i < written; ++i) {
+            assertEquals(Integer.toString(i), this.spill.read().getId());
+        }
+        //the drained segments are unmapped and deleted, except for the one kept to spill to next time
+        assertEquals(256, this.spill.getMappedBytes());
+        assertEquals(1, this.directory.listFiles().length);
+        assertTrue(this.spill.write(new StreamsDatum("document"), 0));
+        this.spill.close();
+        assertEquals(0, this.spill.getMappedBytes());
+        assertEquals(0, this.directory.listFiles().length);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core.util;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.CompactStreamsDatum;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.pojo.json.Activity;
+import org.apache.streams.util.SerializationUtil;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.core.util.StreamsDatumCodec}
+ */
+public class StreamsDatumCodecTest {
+
+    private static final int NUM_ROUNDS = 10;
+    private static final int CLONES_PER_ROUND = 2000;
+
+    private final StreamsDatumCodec codec = StreamsDatumCodec.getInstance();
+
+    @Test
+    public void testStringRoundTrip() throws Exception {
+        StreamsDatum datum = new StreamsDatum("{\"id\":\"1\"}", "1", new DateTime(1000L), BigInteger.TEN);
+        datum.getMetadata().put("source", "test");
+        StreamsDatum decoded = codec.decode(codec.encode(datum));
+        assertEquals(datum, decoded);
+        assertEquals("1", decoded.getId());
+        assertEquals(1000L, decoded.getTimestamp().getMillis());
+        assertEquals("test", decoded.getMetadata().get("source"));
+    }
+
+    @Test
+    public void testObjectNodeRoundTrip() throws Exception {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("id", "1");
+        node.putArray("list").add(1).add(2);
+        StreamsDatum decoded = codec.decode(codec.encode(new StreamsDatum(node)));
+        assertTrue(decoded.getDocument() instanceof ObjectNode);
+        assertEquals(node, decoded.getDocument());
+    }
+
+    @Test
+    public void testActivityRoundTrip() throws Exception {
+        StreamsDatum decoded = codec.decode(codec.encode(new StreamsDatum(createActivity(), "1")));
+        assertTrue(decoded.getDocument() instanceof Activity);
+        Activity activity = (Activity) decoded.getDocument();
+        assertEquals("post", activity.getVerb());
+        assertEquals("content", activity.getContent());
+        assertEquals(createActivity().getPublished().getMillis(), activity.getPublished().getMillis());
+    }
+
+    @Test
+    public void testUnregisteredClassRoundTrip() throws Exception {
+        HashMap<String, Object> document = new HashMap<>();
+        document.put("key", "value");
+        StreamsDatum decoded = codec.decode(codec.encode(new StreamsDatum(document)));
+        assertTrue(decoded.getDocument() instanceof HashMap);
+        assertEquals(document, decoded.getDocument());
+    }
+
+    @Test
+    public void testCompactRoundTrip() throws Exception {
+        CompactStreamsDatum datum = new CompactStreamsDatum("doc", "1", 1000L, 42L);
+        StreamsDatum decoded = codec.decode(codec.encode(datum));
+        assertTrue(decoded instanceof CompactStreamsDatum);
+        assertEquals(42L, ((CompactStreamsDatum) decoded).getSequence());
+        assertEquals(1000L, ((CompactStreamsDatum) decoded).getTimestampMillis());
+        assertNull(decoded.metadata);
+    }
+
+    @Test
+    public void testLargeSequenceRoundTrip() throws Exception {
+        BigInteger sequence = BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN);
+        StreamsDatum decoded = codec.decode(codec.encode(new StreamsDatum("doc", sequence)));
+        assertEquals(sequence, decoded.getSequenceid());
+    }
+
+    @Test
+    public void testStreamRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(new StreamsDatum("first"), out);
+        codec.encode(new StreamsDatum("second"), out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("first", codec.decode(in).getDocument());
+        assertEquals("second", codec.decode(in).getDocument());
+    }
+
+    @Test
+    public void testCloneSharesMetadataCopyOnWrite() throws Exception {
+        StreamsDatum datum = new StreamsDatum(createActivity());
+        datum.getMetadata().put("key", "value");
+        StreamsDatum clone = codec.cloneDatum(datum);
+        assertNotSame(datum.getDocument(), clone.getDocument());
+        assertEquals("value", clone.getMetadata().get("key"));
+        clone.getMetadata().put("key", "changed");
+        assertEquals("value", datum.getMetadata().get("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedClassId() {
+        new StreamsDatumCodec().registerDocumentClass(1, Map.class);
+    }
+
+    @Test
+    public void testTimestampZoneRoundTrip() throws Exception {
+        DateTime timestamp = new DateTime(1000L, DateTimeZone.forID("America/New_York"));
+        StreamsDatum datum = new StreamsDatum("doc", "1", timestamp, BigInteger.ONE);
+        StreamsDatum clone = codec.cloneDatum(datum);
+        assertEquals(timestamp, clone.getTimestamp());
+        assertEquals(datum, clone);
+    }
+
+    /**
+     * Compares the codec with java serialization, the current fallback for cloning datums
+     */
+    @Test
+    public void testSizeAgainstJavaSerialization() throws Exception {
+        StreamsDatum datum = new StreamsDatum(createActivity(), "1", new DateTime(), BigInteger.ONE);
+        int codecSize = codec.encode(datum).length;
+        int javaSize = SerializationUtil.serialize(datum).length;
+        assertTrue("Expected smaller encoding, codec=" + codecSize + " java=" + javaSize, codecSize < javaSize);
+        assertEquals(datum.getTimestamp(), codec.cloneDatum(datum).getTimestamp());
+    }
+
+    /**
+     * Compares clone throughput with java serialization.  Rounds of each are interleaved and only the fastest round of
+     * each is compared, so a garbage collection or compilation pause in one round does not decide the result.  The
+     * codec is several times faster, so it only has to be twice as fast here.
+     */
+    @Test
+    public void testThroughputAgainstJavaSerialization() throws Exception {
+        StreamsDatum datum = new StreamsDatum(createActivity(), "1", new DateTime(), BigInteger.ONE);
+        datum.getMetadata().put("source", "test");
+        long codecBest = Long.MAX_VALUE;
+        long javaBest = Long.MAX_VALUE;
+        for(int round=0; round < NUM_ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for(int i=0; i < CLONES_PER_ROUND; ++i) {
+                codec.cloneDatum(datum);
+            }
+            codecBest = Math.min(codecBest, System.nanoTime() - start);
+            start = System.nanoTime();
+            for(int i=0; i < CLONES_PER_ROUND; ++i) {
+                SerializationUtil.cloneBySerialization(datum);
+            }
+            javaBest = Math.min(javaBest, System.nanoTime() - start);
+        }
+        assertTrue("Expected faster clones, codec=" + codecBest + "ns java=" + javaBest + "ns", 2 * codecBest < javaBest);
+    }
+
+    private Activity createActivity() {
+        Activity activity = new Activity();
+        activity.setId("id");
+        activity.setVerb("post");
+        activity.setContent("content");
+        activity.setPublished(new DateTime(1400000000000L));
+        return activity;
+    }
+}
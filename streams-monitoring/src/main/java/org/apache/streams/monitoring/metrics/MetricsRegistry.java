@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.metrics;
+
+import com.google.common.collect.Lists;
+import org.apache.streams.pojo.json.Broadcast;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In process registry of the metrics of a runtime's queues, counters and other components.  The broadcast monitor
+ * reads every registered {@link org.apache.streams.monitoring.metrics.MetricsSource} directly, without going through
+ * the MBeanServer or JSON.
+ *
+ * JMX is an optional view over the same sources.  When it is enabled, which is the default, every source is also
+ * registered as an MBean under its name, and unregistering the MBean removes the source from the registry.  Set the
+ * system property {@link #JMX_ENABLED_PROPERTY} to false, or call {@link #setJmxEnabled(boolean)}, to keep later
+ * registrations out of the MBeanServer.
+ */
+public class MetricsRegistry {
+
+    public static final String JMX_ENABLED_PROPERTY = "streams.monitoring.jmx";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentMap<String, MetricsSource> sources;
+    private final NotificationListener unregistrationListener;
+    private volatile boolean jmxEnabled;
+
+    MetricsRegistry() {
+        this.sources = new ConcurrentHashMap<>();
+        this.jmxEnabled = !"false".equalsIgnoreCase(System.getProperty(JMX_ENABLED_PROPERTY));
+        this.unregistrationListener = listenForUnregistration();
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isJmxEnabled() {
+        return this.jmxEnabled;
+    }
+
+    /**
+     * @param jmxEnabled true if sources registered from now on should also be registered as MBeans
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Registers a source, and also registers it as an MBean if JMX is enabled.  Throws runtime exception on errors,
+     * including a name that is already registered.
+     * @param name JMX style object name of the source
+     * @param source source to register, must be a compliant MBean if JMX is enabled
+     */
+    public void register(String name, MetricsSource source) {
+        ObjectName objectName = toObjectName(name);
+        if(this.sources.putIfAbsent(objectName.getCanonicalName(), source) != null) {
+            LOGGER.error("Metrics already registered under {}", name);
+            throw new RuntimeException("Metrics already registered under " + name);
+        }
+        if(this.jmxEnabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(source, objectName);
+            } catch (InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException e) {
+                this.sources.remove(objectName.getCanonicalName());
+                LOGGER.error("Failed to register MXBean : {}", e);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Removes a source from the registry and from the MBeanServer
+     * @param name name the source was registered under
+     */
+    public void unregister(String name) {
+        ObjectName objectName = toObjectName(name);
+        this.sources.remove(objectName.getCanonicalName());
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (InstanceNotFoundException | MBeanRegistrationException e) {
+            LOGGER.warn("Failed to unregister MXBean : {}", e);
+        }
+    }
+
+    /**
+     * Removes every source whose name matches a pattern, for example all the sources of a stream once it has stopped
+     * @param pattern JMX style object name pattern, such as {@code org.apache.streams.local:identifier=stream,*}
+     */
+    public void unregisterAll(String pattern) {
+        ObjectName objectPattern = toObjectName(pattern);
+        for(String name : this.sources.keySet()) {
+            if(objectPattern.apply(toObjectName(name))) {
+                unregister(name);
+            }
+        }
+    }
+
+    public int size() {
+        return this.sources.size();
+    }
+
+    /**
+     * Reads every registered source.  A source that throws is logged and left out.
+     * @return one broadcast per source, named after the canonical form of the source's name
+     */
+    public List<Broadcast> snapshot() {
+        List<Broadcast> broadcasts = Lists.newArrayListWithCapacity(this.sources.size());
+        for(Map.Entry<String, MetricsSource> entry : this.sources.entrySet()) {
+            try {
+                Broadcast broadcast = entry.getValue().toBroadcast();
+                if(broadcast != null) {
+                    broadcast.setName(entry.getKey());
+                    broadcasts.add(broadcast);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Exception while trying to read metrics {}: {}", entry.getKey(), e);
+            }
+        }
+        return broadcasts;
+    }
+
+    /**
+     * Keeps the registry in step with the JMX view, so that sources whose MBeans are unregistered, for example by
+     * tests cleaning up a domain, can be registered again.
+     */
+    private NotificationListener listenForUnregistration() {
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if(notification instanceof MBeanServerNotification) {
+                    sources.remove(((MBeanServerNotification) notification).getMBeanName().getCanonicalName());
+                }
+            }
+        };
+        try {
+            NotificationFilterSupport filter = new NotificationFilterSupport();
+            filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+            ManagementFactory.getPlatformMBeanServer().addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+        } catch (InstanceNotFoundException e) {
+            LOGGER.warn("Unable to listen for MBean unregistration: {}", e);
+        }
+        return listener;
+    }
+
+    /**
+     * Stops listening to the MBeanServer.  Only registries other than the shared instance, such as those created by
+     * tests, are closed.
+     */
+    void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this.unregistrationListener);
+        } catch (InstanceNotFoundException | ListenerNotFoundException e) {
+            LOGGER.warn("Unable to stop listening for MBean unregistration: {}", e);
+        }
+    }
+
+    private static ObjectName toObjectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Invalid metrics name {}: {}", name, e);
+            throw new RuntimeException(e);
+        }
+    }
+}
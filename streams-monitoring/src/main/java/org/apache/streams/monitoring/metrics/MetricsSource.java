@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.metrics;
+
+import org.apache.streams.pojo.json.Broadcast;
+
+/**
+ * A component whose metrics are read through the {@link org.apache.streams.monitoring.metrics.MetricsRegistry}
+ */
+public interface MetricsSource {
+
+    /**
+     * Returns the current values of the metrics.  Called from the broadcast monitor thread, so implementations should
+     * only read counters and never block.
+     * @return a new broadcast, the registry sets its name
+     */
+    Broadcast toBroadcast();
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with buckets of logarithmically increasing width.  Every power of two is split
+ * into {@link #SUB_BUCKETS} equal buckets, so a percentile is reported within 1/{@link #SUB_BUCKETS} of the actual
+ * value, in constant memory.
+ *
+ * Recording threads are spread over a number of stripes, each with its own buckets, so that threads recording at the
+ * same time rarely touch the same memory.  A recording is an increment of its bucket and an add to the total, plus a
+ * compare-and-set loop on the maximum when the value is a new maximum, all on the recording thread's own stripe.
+ * Reads merge the stripes into a {@link org.apache.streams.monitoring.metrics.StripedLatencyHistogram.Snapshot}.
+ *
+ * Each thread is given the next stripe index the first time it records anywhere, rather than picking a stripe from
+ * its thread id, since ids are not dense when threads come and go and would pile up on a few stripes.
+ *
+ * Thread safe.
+ */
+public class StripedLatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int TOTAL = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+    private static final int MAX_STRIPES = 16;
+
+    private static final AtomicInteger NEXT_STRIPE_INDEX = new AtomicInteger(0);
+    private static final ThreadLocal<Integer> STRIPE_INDEX = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return NEXT_STRIPE_INDEX.getAndIncrement();
+        }
+    };
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public StripedLatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency expected number of threads recording at the same time, rounded up to a power of two
+     */
+    public StripedLatencyHistogram(int concurrency) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, concurrency)) * 2 - 1);
+        this.stripes = new AtomicLongArray[size];
+        for(int i=0; i < size; ++i) {
+            this.stripes[i] = new AtomicLongArray(BUCKETS + 2);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a latency
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray stripe = this.stripes[STRIPE_INDEX.get() & this.mask];
+        stripe.incrementAndGet(bucketOf(value));
+        stripe.addAndGet(TOTAL, value);
+        long current;
+        while(value > (current = stripe.get(MAX)) && !stripe.compareAndSet(MAX, current, value));
+    }
+
+    /**
+     * Merges the stripes.  Recordings made while the snapshot is taken may or may not be included.
+     * @return the recorded latencies
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        for(AtomicLongArray stripe : this.stripes) {
+            for(int i=0; i < BUCKETS; ++i) {
+                long n = stripe.get(i);
+                buckets[i] += n;
+                count += n;
+            }
+            total += stripe.get(TOTAL);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new Snapshot(buckets, count, total, max);
+    }
+
+    static int bucketOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + subBucket * width;
+        return lower + width - 1;
+    }
+
+    /**
+     * The latencies recorded up to a point in time
+     */
+    public static class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] buckets, long count, long total, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public long getTotalNanos() {
+            return this.total;
+        }
+
+        public long getMaxNanos() {
+            return this.max;
+        }
+
+        public double getMeanNanos() {
+            return this.count == 0 ? 0.0 : this.total / (double) this.count;
+        }
+
+        /**
+         * Returns the latency in nanoseconds below which the given fraction of the recorded latencies fall, rounded
+         * up to the upper bound of its bucket
+         * @param fraction between 0 and 1
+         * @return latency in nanoseconds, 0 if nothing was recorded
+         */
+        public long getPercentileNanos(double fraction) {
+            if(this.count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * this.count));
+            long seen = 0;
+            for(int i=0; i < this.buckets.length; ++i) {
+                seen += this.buckets[i];
+                if(seen >= rank) {
+                    return Math.min(upperBoundOf(i), this.max);
+                }
+            }
+            return this.max;
+        }
+    }
+}
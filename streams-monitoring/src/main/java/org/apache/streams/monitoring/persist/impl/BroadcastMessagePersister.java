@@ -17,26 +17,64 @@
  */
 package org.apache.streams.monitoring.persist.impl;
 
-import com.google.common.collect.Lists;
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.apache.streams.monitoring.persist.MessagePersister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
-public class BroadcastMessagePersister implements MessagePersister {
+/**
+ * Broadcasts every batch of messages in a single POST, one JSON message per line (NDJSON).  The persister keeps a
+ * pooled HTTP client with keep-alive connections for its whole life, so a broadcast does not open a new connection.
+ */
+public class BroadcastMessagePersister implements MessagePersister, Closeable {
     private final static Logger LOGGER = LoggerFactory.getLogger(BroadcastMessagePersister.class);
+    private final static ContentType NDJSON = ContentType.create("application/x-ndjson", Charset.forName("UTF-8"));
+    private final static int TIMEOUT_MS = 10000;
+
     private String broadcastURI;
+    private final boolean gzip;
+    private final CloseableHttpClient client;
 
     public BroadcastMessagePersister(String broadcastURI) {
+        this(broadcastURI, false);
+    }
+
+    /**
+     * @param broadcastURI endpoint to POST messages to
+     * @param gzip true to gzip the body of every POST
+     */
+    public BroadcastMessagePersister(String broadcastURI, boolean gzip) {
         this.broadcastURI = broadcastURI;
+        this.gzip = gzip;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(2);
+        connectionManager.setDefaultMaxPerRoute(2);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(TIMEOUT_MS)
+                .setConnectionRequestTimeout(TIMEOUT_MS)
+                .setSocketTimeout(TIMEOUT_MS)
+                .build();
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent("Streams")
+                .build();
     }
 
     @Override
@@ -51,18 +89,22 @@ public class BroadcastMessagePersister implements MessagePersister {
 
         if(broadcastURI != null) {
             try {
-                HttpClient client = HttpClients.createDefault();
                 HttpPost post = new HttpPost(broadcastURI);
 
-                post.setHeader("User-Agent", "Streams");
-
-                List<NameValuePair> urlParameters = Lists.newArrayList();
-                urlParameters.add(new BasicNameValuePair("messages", serializeMessages(messages)));
+                ByteArrayEntity entity = new ByteArrayEntity(serializeMessages(messages), NDJSON);
+                if(gzip) {
+                    entity.setContentEncoding("gzip");
+                }
+                post.setEntity(entity);
 
-                post.setEntity(new UrlEncodedFormEntity(urlParameters, "UTF-8"));
-
-                HttpResponse response = client.execute(post);
-                responseCode = response.getStatusLine().getStatusCode();
+                CloseableHttpResponse response = client.execute(post);
+                try {
+                    responseCode = response.getStatusLine().getStatusCode();
+                    // read the whole response so the connection goes back to the pool
+                    EntityUtils.consume(response.getEntity());
+                } finally {
+                    response.close();
+                }
 
                 LOGGER.debug("Broadcast {} messages to URI: {}", messages.size(), broadcastURI);
             } catch (Exception e) {
@@ -73,22 +115,33 @@ public class BroadcastMessagePersister implements MessagePersister {
         return responseCode;
     }
 
+    @Override
+    public void close() throws IOException {
+        this.client.close();
+    }
+
     /**
-     * Given a List of String messages, convert them to a JSON array
+     * Given a List of String messages, write them one per line, gzipped if requested
      * @param messages
-     * @return Serialized version of this JSON array
+     * @return body of the POST
      */
-    private String serializeMessages(List<String> messages) {
-        String ser = "{\"messages\":[";
-
+    private byte[] serializeMessages(List<String> messages) throws IOException {
+        StringBuilder lines = new StringBuilder();
         for(String message : messages) {
-            if(messages.get(messages.size()-1).equals(message)) {
-                ser += message + "]}";
-            } else {
-                ser += message + ",";
-            }
+            lines.append(message).append('\n');
+        }
+        byte[] body = lines.toString().getBytes("UTF-8");
+        if(!gzip) {
+            return body;
         }
 
-        return ser;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        GZIPOutputStream gzipStream = new GZIPOutputStream(bytes);
+        try {
+            gzipStream.write(body);
+        } finally {
+            gzipStream.close();
+        }
+        return bytes.toByteArray();
     }
 }
@@ -21,26 +21,56 @@ import org.apache.streams.monitoring.persist.MessagePersister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
 import java.util.List;
-import java.util.concurrent.Executors;
 
-public class LogstashUdpMessagePersister implements MessagePersister {
+/**
+ * Sends messages to a Logstash UDP input, one JSON message per line.  Messages are packed into as few datagrams as
+ * fit in {@link #getMaxDatagramSize()} bytes, and the datagrams of every batch go out through one channel that the
+ * persister keeps open for its whole life.
+ */
+public class LogstashUdpMessagePersister implements MessagePersister, Closeable {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(LogstashUdpMessagePersister.class);
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int SUCCESS_STATUS = 0;
+    private final static int FAILURE_STATUS = -1;
+
+    /**
+     * Payload that fits in one IPv4 packet on an Ethernet MTU of 1500 bytes
+     */
+    public final static int DEFAULT_MAX_DATAGRAM_SIZE = 1472;
+
+    /**
+     * Largest payload of a UDP datagram over IPv4
+     */
+    public final static int MAX_UDP_PAYLOAD = 65507;
+
     private String broadcastURI;
+    private final int maxDatagramSize;
+    private final ByteBuffer buffer;
+    private DatagramChannel channel;
     URI uri;
 
     public LogstashUdpMessagePersister(String broadcastURI) {
+        this(broadcastURI, DEFAULT_MAX_DATAGRAM_SIZE);
+    }
+
+    /**
+     * @param broadcastURI udp://host:port to send messages to
+     * @param maxDatagramSize most bytes to pack in one datagram, at most {@link #MAX_UDP_PAYLOAD}
+     */
+    public LogstashUdpMessagePersister(String broadcastURI, int maxDatagramSize) {
         this.broadcastURI = broadcastURI;
+        this.maxDatagramSize = Math.max(1, Math.min(MAX_UDP_PAYLOAD, maxDatagramSize));
+        this.buffer = ByteBuffer.allocate(MAX_UDP_PAYLOAD);
         setup();
     }
 
@@ -53,52 +83,79 @@ public class LogstashUdpMessagePersister implements MessagePersister {
         }
 
     }
+
+    public int getMaxDatagramSize() {
+        return this.maxDatagramSize;
+    }
+
     @Override
     /**
      * Given a list of messages as Strings, broadcast them to the broadcastURI
      * (if one is defined)
      * @param messages
-     * @return int status code from POST response
+     * @return 0 if every datagram was sent, -1 otherwise
      */
-    public int persistMessages(List<String> messages) {
-        int responseCode = -1;
+    public synchronized int persistMessages(List<String> messages) {
+        if(broadcastURI == null || uri == null) {
+            return FAILURE_STATUS;
+        }
 
-        if(broadcastURI != null) {
-            DatagramSocket socket = null;
-            try {
-                socket = new DatagramSocket();
-            } catch (SocketException e) {
-                LOGGER.error("Metrics Broadcast Setup Failed: " + e.getMessage());
+        try {
+            DatagramChannel channel = getChannel();
+            buffer.clear();
+            for(String message : messages) {
+                byte[] line = (message + '\n').getBytes(UTF8);
+                if(line.length > MAX_UDP_PAYLOAD) {
+                    LOGGER.warn("Dropping metrics message of {} bytes, larger than a datagram", line.length);
+                    continue;
+                }
+                if(buffer.position() > 0 && buffer.position() + line.length > maxDatagramSize) {
+                    send(channel);
+                }
+                buffer.put(line);
             }
-            try {
-                ByteBuffer toWrite = ByteBuffer.wrap(serializeMessages(messages).getBytes());
-                byte[] byteArray = toWrite.array();
-                DatagramPacket packet = new DatagramPacket(byteArray, byteArray.length);
-                socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
-                socket.send(packet);
-            } catch( Exception e ) {
-                LOGGER.error("Metrics Broadcast Failed: " + e.getMessage());
-            } finally {
-                socket.close();
+            if(buffer.position() > 0) {
+                send(channel);
             }
+            return SUCCESS_STATUS;
+        } catch( Exception e ) {
+            LOGGER.error("Metrics Broadcast Failed: " + e.getMessage());
+            closeChannel();
+            return FAILURE_STATUS;
         }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeChannel();
+    }
 
-        return responseCode;
+    private void send(DatagramChannel channel) throws IOException {
+        buffer.flip();
+        channel.write(buffer);
+        buffer.clear();
     }
 
     /**
-     * Given a List of String messages, convert them to a JSON array
-     * @param messages
-     * @return Serialized version of this JSON array
+     * Opens the channel on first use, and again after a failed broadcast closed it
      */
-    private String serializeMessages(List<String> messages) {
-
-        StringBuilder json_lines = new StringBuilder();
-        for(String message : messages) {
-            json_lines.append(message).append('\n');
+    private DatagramChannel getChannel() throws IOException {
+        if(channel == null || !channel.isOpen()) {
+            channel = DatagramChannel.open();
+            channel.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
         }
+        return channel;
+    }
 
-        return json_lines.toString();
+    private void closeChannel() {
+        if(channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close metrics broadcast channel: {}", e.getMessage());
+            }
+            channel = null;
+        }
     }
 
 }
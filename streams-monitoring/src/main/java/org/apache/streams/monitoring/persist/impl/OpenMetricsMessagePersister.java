@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.persist.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.monitoring.persist.MessagePersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the latest broadcast messages to pull based collectors such as Prometheus, in the OpenMetrics text format.
+ *
+ * Every numeric field of a message becomes a metric family named after the type of the bean and the field, for
+ * example {@code streams_throughput_queue_current_size}, with the other keys of the bean's name as labels.  The
+ * families are rendered once per broadcast into a cached buffer, so a scrape only writes out that buffer no matter how
+ * many components the stream has.  Scrapes see values as fresh as the broadcast interval.
+ *
+ * The HTTP server is started on the first broadcast, or by {@link #start()}, and shared by every persister in the JVM
+ * that serves the same host and port.  Every stream of the JVM broadcasts the whole
+ * {@link org.apache.streams.monitoring.metrics.MetricsRegistry}, so persisters serving the same path share one buffer.
+ * The server is stopped once the last persister using it is closed.
+ */
+public class OpenMetricsMessagePersister implements MessagePersister, Closeable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(OpenMetricsMessagePersister.class);
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int SUCCESS_STATUS = 0;
+    private final static int FAILURE_STATUS = -1;
+
+    public final static String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public final static String DEFAULT_PATH = "/metrics";
+    public final static String PREFIX = "streams_";
+
+    /**
+     * Fields that only ever grow, exposed as counters
+     */
+    private final static Set<String> COUNTERS = ImmutableSet.of("added", "removed", "passed", "failed", "dropped",
+            "numEmitted", "numReceived", "numUnhandledErrors", "scaleUps", "scaleDowns", "count", "cpuTime",
+            "allocatedBytes");
+
+    /**
+     * Fields of every broadcast that are not metrics
+     */
+    private final static Set<String> IGNORED = ImmutableSet.of("name", "streamIdentifier", "startedAt");
+
+    /**
+     * Keys of the bean names that are not labels, startedAt changes with every run of a stream
+     */
+    private final static Set<String> IGNORED_KEYS = ImmutableSet.of("type", "startedAt");
+
+    /**
+     * Servers by host and port.  Every server, endpoint and persister field below is guarded by this map.
+     */
+    private final static Map<String, SharedServer> SERVERS = Maps.newHashMap();
+
+    private final static Pattern WORD_BOUNDARY = Pattern.compile("([a-z0-9])([A-Z])|([A-Z]+)([A-Z][a-z])");
+    private final static Pattern INVALID_NAME = Pattern.compile("[^a-zA-Z0-9_]");
+
+    private final ObjectMapper mapper;
+    private final String host;
+    private final int port;
+    private final String path;
+    private SharedServer server;
+    private Endpoint endpoint;
+    private boolean closed;
+
+    /**
+     * @param host address to listen on
+     * @param port port to listen on, 0 for any free port
+     * @param path path to serve the metrics under
+     */
+    public OpenMetricsMessagePersister(String host, int port, String path) {
+        this.mapper = StreamsJacksonMapper.getInstance();
+        this.host = host;
+        this.port = port;
+        this.path = path == null || path.isEmpty() ? DEFAULT_PATH : path;
+    }
+
+    /**
+     * Starts serving, sharing the server of another persister on the same host and port if there is one.  Does nothing
+     * if already started.
+     * @throws IOException if the server can not be started
+     */
+    public void start() throws IOException {
+        synchronized (SERVERS) {
+            if(this.closed) {
+                throw new IOException("Persister has been closed");
+            }
+            if(this.endpoint != null) {
+                return;
+            }
+            SharedServer shared = this.port == 0 ? null : SERVERS.get(this.host + ":" + this.port);
+            if(shared == null) {
+                shared = new SharedServer(this.host, this.port);
+                SERVERS.put(shared.key, shared);
+            }
+            Endpoint endpoint = shared.endpoints.get(this.path);
+            if(endpoint == null) {
+                endpoint = new Endpoint();
+                shared.server.createContext(this.path, endpoint);
+                shared.endpoints.put(this.path, endpoint);
+            }
+            ++endpoint.references;
+            ++shared.references;
+            this.server = shared;
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * @return the address served on, or null if not started
+     */
+    public InetSocketAddress getAddress() {
+        synchronized (SERVERS) {
+            return this.server == null ? null : this.server.server.getAddress();
+        }
+    }
+
+    /**
+     * Renders the messages into the buffer served to scrapes
+     * @param messages JSON broadcasts
+     * @return 0 once rendered, -1 if no message could be read
+     */
+    @Override
+    public int persistMessages(List<String> messages) {
+        Endpoint endpoint;
+        try {
+            start();
+            synchronized (SERVERS) {
+                endpoint = this.endpoint;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to serve OpenMetrics on {}:{}: {}", this.host, this.port, e);
+            return FAILURE_STATUS;
+        }
+
+        Map<String, StringBuilder> families = Maps.newTreeMap();
+        int read = 0;
+        for(String message : messages) {
+            try {
+                render(this.mapper.readTree(message), families);
+                ++read;
+            } catch (Exception e) {
+                LOGGER.warn("Unable to render metrics message: {}", e.getMessage());
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        for(StringBuilder family : families.values()) {
+            output.append(family);
+        }
+        output.append("# EOF\n");
+        endpoint.rendered = output.toString().getBytes(UTF8);
+
+        return read == 0 && !messages.isEmpty() ? FAILURE_STATUS : SUCCESS_STATUS;
+    }
+
+    /**
+     * Stops serving.  The server is stopped once no other persister uses it.
+     */
+    @Override
+    public void close() {
+        synchronized (SERVERS) {
+            this.closed = true;
+            if(this.endpoint == null) {
+                return;
+            }
+            if(--this.endpoint.references == 0) {
+                this.server.server.removeContext(this.path);
+                this.server.endpoints.remove(this.path);
+            }
+            if(--this.server.references == 0) {
+                SERVERS.remove(this.server.key);
+                this.server.stop();
+            }
+            this.endpoint = null;
+            this.server = null;
+        }
+    }
+
+    private void render(JsonNode message, Map<String, StringBuilder> families) throws MalformedObjectNameException {
+        JsonNode nameNode = message.get("name");
+        if(nameNode == null || !nameNode.isTextual()) {
+            return;
+        }
+        ObjectName name = new ObjectName(nameNode.asText());
+        String type = name.getKeyProperty("type");
+        if(type == null) {
+            return;
+        }
+        String prefix = PREFIX + toSnakeCase(type) + "_";
+        String labels = labelsOf(name);
+
+        Iterator<Map.Entry<String, JsonNode>> fields = message.fields();
+        while(fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if(IGNORED.contains(field.getKey())) {
+                continue;
+            }
+            JsonNode value = field.getValue();
+            if(value.isNumber()) {
+                sample(families, prefix + toSnakeCase(field.getKey()), COUNTERS.contains(field.getKey()), labels, null, value);
+            } else if(value.isArray()) {
+                for(int i=0; i < value.size(); ++i) {
+                    if(value.get(i).isNumber()) {
+                        sample(families, prefix + toSnakeCase(field.getKey()), false, labels, String.valueOf(i), value.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private void sample(Map<String, StringBuilder> families, String family, boolean counter, String labels, String index, JsonNode value) {
+        StringBuilder samples = families.get(family);
+        if(samples == null) {
+            samples = new StringBuilder();
+            samples.append("# TYPE ").append(family).append(counter ? " counter\n" : " gauge\n");
+            families.put(family, samples);
+        }
+        samples.append(family);
+        if(counter) {
+            samples.append("_total");
+        }
+        if(index == null) {
+            samples.append(labels);
+        } else if(labels.isEmpty()) {
+            samples.append("{index=\"").append(index).append("\"}");
+        } else {
+            samples.append(labels, 0, labels.length() - 1).append(",index=\"").append(index).append("\"}");
+        }
+        samples.append(' ').append(value.isIntegralNumber() ? value.asText() : formatDouble(value.asDouble())).append('\n');
+    }
+
+    private static String labelsOf(ObjectName name) {
+        StringBuilder labels = new StringBuilder();
+        for(Map.Entry<String, String> property : new TreeMap<String, String>(name.getKeyPropertyList()).entrySet()) {
+            if(IGNORED_KEYS.contains(property.getKey())) {
+                continue;
+            }
+            labels.append(labels.length() == 0 ? "{" : ",");
+            labels.append(toSnakeCase(property.getKey())).append("=\"").append(escape(property.getValue())).append('"');
+        }
+        if(labels.length() > 0) {
+            labels.append('}');
+        }
+        return labels.toString();
+    }
+
+    static String toSnakeCase(String name) {
+        String words = WORD_BOUNDARY.matcher(name).replaceAll("$1$3_$2$4");
+        return INVALID_NAME.matcher(words).replaceAll("_").toLowerCase();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatDouble(double value) {
+        if(Double.isNaN(value)) {
+            return "NaN";
+        } else if(Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * An HTTP server shared by the persisters serving the same host and port
+     */
+    private static class SharedServer {
+
+        private final HttpServer server;
+        private final ExecutorService executor;
+        private final String key;
+        private final Map<String, Endpoint> endpoints;
+        private int references;
+
+        private SharedServer(String host, int port) throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("openmetrics-%d").build());
+            this.server.setExecutor(this.executor);
+            this.server.start();
+            // a server on any free port is shared under the port it was given
+            this.key = host + ":" + this.server.getAddress().getPort();
+            this.endpoints = Maps.newHashMap();
+            LOGGER.info("Serving OpenMetrics on {}", this.server.getAddress());
+        }
+
+        private void stop() {
+            this.server.stop(0);
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * A path of a server, serving the buffer last rendered by any persister using it
+     */
+    private static class Endpoint implements HttpHandler {
+
+        private volatile byte[] rendered = "# EOF\n".getBytes(UTF8);
+        private int references;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = this.rendered;
+            try {
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                if("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -1,25 +1,26 @@
 package org.apache.streams.monitoring.tasks;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.collect.Lists;
 import org.apache.streams.jackson.*;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
 import org.apache.streams.monitoring.persist.MessagePersister;
 import org.apache.streams.monitoring.persist.impl.BroadcastMessagePersister;
 import org.apache.streams.monitoring.persist.impl.LogstashUdpMessagePersister;
+import org.apache.streams.monitoring.persist.impl.OpenMetricsMessagePersister;
 import org.apache.streams.monitoring.persist.impl.SLF4JMessagePersister;
 import org.apache.streams.pojo.json.*;
 import org.slf4j.Logger;
 
 import javax.management.MBeanServer;
-import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class LocalRuntimeBroadcastMonitorThread {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(LocalRuntimeBroadcastMonitorThread.class);
@@ -44,14 +45,18 @@ public class LocalRuntimeBroadcastMonitorThread {
 
         setBroadcastURI();
         setWaitTime();
+        setJmxEnabled();
 
         if( broadcastURI != null ) {
             if (broadcastURI.getScheme().equals("http")) {
-                messagePersister = new BroadcastMessagePersister(broadcastURI.toString());
+                messagePersister = new BroadcastMessagePersister(broadcastURI.toString(), getBroadcastGzip());
             } else if (broadcastURI.getScheme().equals("udp")) {
-                messagePersister = new LogstashUdpMessagePersister(broadcastURI.toString());
+                messagePersister = new LogstashUdpMessagePersister(broadcastURI.toString(), getBroadcastDatagramSize());
+            } else if (broadcastURI.getScheme().equals("openmetrics")) {
+                // the server is started on the first broadcast, so a stream that is never started holds no port
+                messagePersister = new OpenMetricsMessagePersister(broadcastURI.getHost(), broadcastURI.getPort(), broadcastURI.getPath());
             } else {
-                LOGGER.error("You need to specify a broadcast URI with either a HTTP or UDP protocol defined.");
+                LOGGER.error("You need to specify a broadcast URI with either a HTTP, UDP or OpenMetrics protocol defined.");
                 throw new RuntimeException();
             }
         } else {
@@ -64,51 +69,24 @@ public class LocalRuntimeBroadcastMonitorThread {
     }
 
     /**
-     * Initialize our object mapper with all of our bean's custom deserializers
-     * This way we can convert them to and from Strings dictated by our
-     * POJOs which are generated from JSON schemas
+     * Broadcasts are only ever serialized, so the shared mapper is used as it is
      */
     private void initializeObjectMapper() {
         objectMapper = StreamsJacksonMapper.getInstance();
-        SimpleModule simpleModule = new SimpleModule();
-
-        simpleModule.addDeserializer(MemoryUsageBroadcast.class, new MemoryUsageDeserializer());
-        simpleModule.addDeserializer(ThroughputQueueBroadcast.class, new ThroughputQueueDeserializer());
-        simpleModule.addDeserializer(StreamsTaskCounterBroadcast.class, new StreamsTaskCounterDeserializer());
-        simpleModule.addDeserializer(DatumStatusCounterBroadcast.class, new DatumStatusCounterDeserializer());
-
-        objectMapper.registerModule(simpleModule);
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
     /**
-     * Get all relevant JMX beans, convert their values to strings, and then persist them
+     * Read every source in the {@link org.apache.streams.monitoring.metrics.MetricsRegistry} and the JVM's memory
+     * usage, convert them to strings, and then persist them
      */
     public void persistMessages() {
         List<String> messages = Lists.newArrayList();
-        Set<ObjectName> beans = getServer().queryNames(null, null);
 
         try {
-            for (ObjectName name : beans) {
-                String item = getObjectMapper().writeValueAsString(name);
-                Broadcast broadcast = null;
-
-                if (name.getKeyPropertyList().get("type") != null) {
-                    if (name.getKeyPropertyList().get("type").equals("ThroughputQueue")) {
-                        broadcast = getObjectMapper().readValue(item, ThroughputQueueBroadcast.class);
-                    } else if (name.getKeyPropertyList().get("type").equals("StreamsTaskCounter")) {
-                        broadcast = getObjectMapper().readValue(item, StreamsTaskCounterBroadcast.class);
-                    } else if (name.getKeyPropertyList().get("type").equals("DatumCounter")) {
-                        broadcast = getObjectMapper().readValue(item, DatumStatusCounterBroadcast.class);
-                    } else if (name.getKeyPropertyList().get("type").equals("Memory")) {
-                        broadcast = getObjectMapper().readValue(item, MemoryUsageBroadcast.class);
-                    }
-
-                    if (broadcast != null) {
-                        messages.add(getObjectMapper().writeValueAsString(broadcast));
-                    }
-                }
+            for (Broadcast broadcast : getMetricsRegistry().snapshot()) {
+                messages.add(getObjectMapper().writeValueAsString(broadcast));
             }
+            messages.add(getObjectMapper().writeValueAsString(getMemoryUsage()));
 
             getMessagePersister().persistMessages(messages);
         } catch (Exception e) {
@@ -116,6 +94,21 @@ public class LocalRuntimeBroadcastMonitorThread {
         }
     }
 
+    /**
+     * Read the heap and non heap memory usage of the JVM
+     * @return broadcast named after the JVM's memory MBean
+     */
+    private MemoryUsageBroadcast getMemoryUsage() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsageBroadcast memoryUsageBroadcast = new MemoryUsageBroadcast();
+        memoryUsageBroadcast.setName(memory.getObjectName().getCanonicalName());
+        memoryUsageBroadcast.setVerbose(memory.isVerbose());
+        memoryUsageBroadcast.setObjectPendingFinalizationCount((long) memory.getObjectPendingFinalizationCount());
+        memoryUsageBroadcast.setHeapMemoryUsage(memory.getHeapMemoryUsage().getUsed());
+        memoryUsageBroadcast.setNonHeapMemoryUsage(memory.getNonHeapMemoryUsage().getUsed());
+        return memoryUsageBroadcast;
+    }
+
     /**
      * Go through streams config and set the broadcastURI (if present)
      */
@@ -156,8 +149,50 @@ public class LocalRuntimeBroadcastMonitorThread {
         }
     }
 
+    /**
+     * Go through streams config and turn the JMX view of the metrics registry on or off (if present).  Applies to
+     * components registered after this thread is created.
+     */
+    private void setJmxEnabled() {
+        if(streamConfig != null &&
+                streamConfig.containsKey("monitoring_jmx_enabled") &&
+                streamConfig.get("monitoring_jmx_enabled") != null) {
+            getMetricsRegistry().setJmxEnabled(Boolean.parseBoolean(streamConfig.get("monitoring_jmx_enabled").toString()));
+        }
+    }
+
+    /**
+     * Go through streams config and find out whether to gzip HTTP broadcasts (if present)
+     */
+    private boolean getBroadcastGzip() {
+        return streamConfig != null &&
+                streamConfig.get("monitoring_broadcast_gzip") != null &&
+                Boolean.parseBoolean(streamConfig.get("monitoring_broadcast_gzip").toString());
+    }
+
+    /**
+     * Go through streams config and find the most bytes to pack into one UDP broadcast (if present)
+     */
+    private int getBroadcastDatagramSize() {
+        try {
+            if (streamConfig != null && streamConfig.get("monitoring_broadcast_datagram_size") != null) {
+                return Integer.parseInt(streamConfig.get("monitoring_broadcast_datagram_size").toString());
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.error("Exception while trying to set the broadcast datagram size: {}", e);
+        }
+        return LogstashUdpMessagePersister.DEFAULT_MAX_DATAGRAM_SIZE;
+    }
+
     public void shutdown() {
         this.keepRunning = false;
+        if(messagePersister instanceof Closeable) {
+            try {
+                ((Closeable) messagePersister).close();
+            } catch (IOException e) {
+                LOGGER.warn("Exception while closing the message persister: {}", e);
+            }
+        }
         LOGGER.debug("Shutting down BroadcastMonitor Thread");
     }
 
@@ -181,6 +216,10 @@ public class LocalRuntimeBroadcastMonitorThread {
         return server;
     }
 
+    public MetricsRegistry getMetricsRegistry() {
+        return MetricsRegistry.getInstance();
+    }
+
     public ObjectMapper getObjectMapper() {
         return this.objectMapper;
     }
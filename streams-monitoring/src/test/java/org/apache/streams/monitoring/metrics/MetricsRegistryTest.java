@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.metrics;
+
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.DatumStatusCounterBroadcast;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link org.apache.streams.monitoring.metrics.MetricsRegistry}
+ */
+public class MetricsRegistryTest {
+
+    private static final String NAME = "org.apache.streams.local:type=DatumCounter,name=%s,identifier=test,startedAt=0";
+
+    private MetricsRegistry registry;
+
+    @Before
+    public void createRegistry() {
+        this.registry = new MetricsRegistry();
+    }
+
+    @After
+    public void closeRegistry() {
+        this.registry.close();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        String name = String.format(NAME, "snapshot");
+        registry.register(name, new TestSource(5));
+        registry.register(String.format(NAME, "broken"), new TestSource(-1));
+
+        List<Broadcast> broadcasts = registry.snapshot();
+        assertEquals("Broken source should be left out", 1, broadcasts.size());
+        DatumStatusCounterBroadcast broadcast = (DatumStatusCounterBroadcast) broadcasts.get(0);
+        assertEquals(new ObjectName(name).getCanonicalName(), broadcast.getName());
+        assertEquals(5L, broadcast.getPassed());
+
+        registry.unregister(name);
+        registry.unregister(String.format(NAME, "broken"));
+        assertEquals(0, registry.size());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+
+    @Test
+    public void testDuplicateName() {
+        String name = String.format(NAME, "duplicate");
+        registry.register(name, new TestSource(1));
+        try {
+            registry.register(name, new TestSource(2));
+            fail("Registering the same name twice should fail");
+        } catch (RuntimeException e) {
+            //expected
+        }
+        assertEquals(1, registry.size());
+        registry.unregister(name);
+    }
+
+    @Test
+    public void testJmxView() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(String.format(NAME, "jmx"));
+
+        registry.register(name.toString(), new TestSource(3));
+        assertTrue(server.isRegistered(name));
+        assertEquals(3L, server.getAttribute(name, "NumPassed"));
+
+        server.unregisterMBean(name);
+        assertEquals("Unregistering the MBean should remove the source", 0, registry.size());
+
+        registry.setJmxEnabled(false);
+        registry.register(name.toString(), new TestSource(4));
+        assertFalse(server.isRegistered(name));
+        assertEquals(1, registry.snapshot().size());
+        registry.unregister(name.toString());
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testUnregisterAll() throws Exception {
+        registry.setJmxEnabled(false);
+        registry.register(String.format(NAME, "first"), new TestSource(1));
+        registry.register(String.format(NAME, "second"), new TestSource(2));
+        String other = "org.apache.streams.local:type=DatumCounter,name=first,identifier=other,startedAt=0";
+        registry.register(other, new TestSource(3));
+
+        registry.unregisterAll("org.apache.streams.local:identifier=test,startedAt=0,*");
+        assertEquals(1, registry.size());
+        assertEquals(3L, ((DatumStatusCounterBroadcast) registry.snapshot().get(0)).getPassed());
+        registry.unregister(other);
+    }
+
+    @Test
+    public void testCloseStopsListening() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(String.format(NAME, "closed"));
+        registry.register(name.toString(), new TestSource(1));
+        registry.close();
+        server.unregisterMBean(name);
+        assertEquals("A closed registry no longer follows the MBeanServer", 1, registry.size());
+        registry = new MetricsRegistry();
+    }
+
+    public interface TestSourceMXBean {
+        public long getNumPassed();
+    }
+
+    public static class TestSource implements TestSourceMXBean, MetricsSource {
+
+        private final long passed;
+
+        public TestSource(long passed) {
+            this.passed = passed;
+        }
+
+        @Override
+        public long getNumPassed() {
+            return this.passed;
+        }
+
+        @Override
+        public Broadcast toBroadcast() {
+            if(this.passed < 0) {
+                throw new IllegalStateException("broken");
+            }
+            DatumStatusCounterBroadcast broadcast = new DatumStatusCounterBroadcast();
+            broadcast.setPassed(this.passed);
+            return broadcast;
+        }
+    }
+}
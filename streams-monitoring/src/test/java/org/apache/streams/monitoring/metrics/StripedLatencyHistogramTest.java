@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.monitoring.metrics.StripedLatencyHistogram}
+ */
+public class StripedLatencyHistogramTest {
+
+    /**
+     * Test that every value falls in a bucket whose upper bound is within 1/8th above it
+     */
+    @Test
+    public void testBuckets() {
+        Random random = new Random();
+        for(long value=0; value < 100000; ++value) {
+            assertBucket(value);
+        }
+        for(int i=0; i < 10000; ++i) {
+            assertBucket(random.nextLong() >>> 1);
+        }
+        assertBucket(Long.MAX_VALUE);
+    }
+
+    /**
+     * Test percentiles, mean and max of a known distribution
+     */
+    @Test
+    public void testPercentiles() {
+        StripedLatencyHistogram histogram = new StripedLatencyHistogram(4);
+        StripedLatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getPercentileNanos(.99));
+        assertEquals(0.0, empty.getMeanNanos(), 0.0);
+
+        for(long value=1; value <= 1000; ++value) {
+            histogram.record(value * 1000);
+        }
+        StripedLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000000, snapshot.getMaxNanos());
+        assertEquals(500500.0, snapshot.getMeanNanos(), 0.0);
+        assertWithin(500000, snapshot.getPercentileNanos(.5));
+        assertWithin(990000, snapshot.getPercentileNanos(.99));
+        assertWithin(999000, snapshot.getPercentileNanos(.999));
+        assertEquals(1000000, snapshot.getPercentileNanos(1.0));
+    }
+
+    /**
+     * Test that no recording is lost when many threads record at once
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final StripedLatencyHistogram histogram = new StripedLatencyHistogram(3);
+        final int threads = 8;
+        final int perThread = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for(int i=0; i < threads; ++i) {
+            final long value = i + 1;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for(int j=0; j < perThread; ++j) {
+                            histogram.record(value);
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        StripedLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * perThread, snapshot.getCount());
+        assertEquals((long) perThread * threads * (threads + 1) / 2, snapshot.getTotalNanos());
+        assertEquals(threads, snapshot.getMaxNanos());
+    }
+
+    private void assertBucket(long value) {
+        int bucket = StripedLatencyHistogram.bucketOf(value);
+        long upper = StripedLatencyHistogram.upperBoundOf(bucket);
+        assertTrue("Upper bound " + upper + " below " + value, upper >= value);
+        assertTrue("Upper bound " + upper + " too far above " + value, upper - value <= value / StripedLatencyHistogram.SUB_BUCKETS);
+        if(bucket > 0) {
+            assertTrue(value + " below bucket " + bucket, value > StripedLatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / StripedLatencyHistogram.SUB_BUCKETS);
+    }
+}
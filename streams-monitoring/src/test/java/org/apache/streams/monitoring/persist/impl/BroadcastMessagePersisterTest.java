@@ -17,10 +17,20 @@
  */
 package org.apache.streams.monitoring.persist.impl;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -57,4 +67,48 @@ public class BroadcastMessagePersisterTest {
         assertNotNull(statusCode);
         assertEquals(statusCode, -1);
     }
+
+    @Test
+    public void testNdjsonPost() throws Exception {
+        final List<String> bodies = Collections.synchronizedList(Lists.<String>newArrayList());
+        final List<String> encodings = Collections.synchronizedList(Lists.<String>newArrayList());
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/broadcast", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                InputStream body = "gzip".equals(encoding) ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody();
+                bodies.add(new String(ByteStreams.toByteArray(body), "UTF-8"));
+                encodings.add(String.valueOf(encoding));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        try {
+            String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/broadcast";
+            List<String> messages = Lists.newArrayList();
+            for(int x = 0; x < 10; x ++) {
+                messages.add("{\"message\":" + x + "}");
+            }
+
+            BroadcastMessagePersister plain = new BroadcastMessagePersister(uri);
+            assertEquals(200, plain.persistMessages(messages));
+            assertEquals(200, plain.persistMessages(messages));
+            plain.close();
+
+            BroadcastMessagePersister gzipped = new BroadcastMessagePersister(uri, true);
+            assertEquals(200, gzipped.persistMessages(messages));
+            gzipped.close();
+
+            assertEquals("One POST per batch", 3, bodies.size());
+            assertEquals(Lists.newArrayList("null", "null", "gzip"), encodings);
+            for(String body : bodies) {
+                assertEquals(Joiner.on('\n').join(messages) + "\n", body);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
 }
@@ -19,6 +19,7 @@ package org.apache.streams.monitoring.persist.impl;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -46,6 +47,13 @@ public class LogstashUdpMessagePersisterTest {
         }
     }
 
+    @After
+    public void teardown() {
+        if(socket != null) {
+            socket.close();
+        }
+    }
+
 
     @Test
     public void testFailedPersist() {
@@ -72,4 +80,37 @@ public class LogstashUdpMessagePersisterTest {
 
     }
 
+    @Test
+    public void testPackedDatagrams() throws IOException {
+        LogstashUdpMessagePersister persister = new LogstashUdpMessagePersister("udp://127.0.0.1:56789", 100);
+        socket.setSoTimeout(5000);
+
+        List<String> messageArray = Lists.newArrayList();
+        for(int x = 0; x < 50; x ++) {
+            messageArray.add("Fake_message #" + x);
+        }
+
+        // send two batches through the same channel
+        for(int batch = 0; batch < 2; batch ++) {
+            assertEquals(0, persister.persistMessages(messageArray));
+
+            List<String> received = Lists.newArrayList();
+            int datagrams = 0;
+            while(received.size() < messageArray.size()) {
+                byte[] receiveData = new byte[1024];
+                DatagramPacket messageDatagram = new DatagramPacket(receiveData, receiveData.length);
+                socket.receive(messageDatagram);
+                assertTrue("Datagram should fit in the configured size", messageDatagram.getLength() <= 100);
+                String payload = new String(messageDatagram.getData(), 0, messageDatagram.getLength(), "UTF-8");
+                assertTrue("Datagram should end with a complete message", payload.endsWith("\n"));
+                received.addAll(Lists.newArrayList(Splitter.on('\n').omitEmptyStrings().split(payload)));
+                datagrams ++;
+            }
+            assertEquals(messageArray, received);
+            assertTrue("Messages should be packed into few datagrams", datagrams < messageArray.size() / 2);
+        }
+
+        persister.close();
+    }
+
 }
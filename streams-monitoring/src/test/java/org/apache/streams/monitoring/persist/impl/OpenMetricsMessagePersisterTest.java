@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.monitoring.persist.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenMetricsMessagePersisterTest {
+
+    @Test
+    public void testSnakeCase() {
+        assertEquals("throughput_queue", OpenMetricsMessagePersister.toSnakeCase("ThroughputQueue"));
+        assertEquals("current_size", OpenMetricsMessagePersister.toSnakeCase("currentSize"));
+        assertEquals("last_cpu_observation", OpenMetricsMessagePersister.toSnakeCase("lastCPUObservation"));
+        assertEquals("p999", OpenMetricsMessagePersister.toSnakeCase("p999"));
+    }
+
+    @Test
+    public void testScrape() throws Exception {
+        OpenMetricsMessagePersister persister = new OpenMetricsMessagePersister("127.0.0.1", 0, "/metrics");
+        try {
+            persister.start();
+            String uri = "http://127.0.0.1:" + persister.getAddress().getPort() + "/metrics";
+            assertEquals("# EOF\n", scrape(uri));
+
+            List<String> messages = Lists.newArrayList(
+                    "{\"name\":\"org.apache.streams.local:type=ThroughputQueue,name=q1,identifier=s,startedAt=1\",\"currentSize\":5,\"avgWait\":1.5,\"added\":10}",
+                    "{\"name\":\"org.apache.streams.local:type=ThroughputQueue,name=q2,identifier=s,startedAt=1\",\"currentSize\":0,\"avgWait\":0.0,\"added\":3}",
+                    "{\"name\":\"org.apache.streams.local:type=StreamsTaskCounter,name=t\\\\1,identifier=s,startedAt=1\",\"numReceived\":7,\"inputDequeueCounts\":[4,3]}",
+                    "{\"name\":\"java.lang:type=Memory\",\"verbose\":false,\"heapMemoryUsage\":1024}",
+                    "not json");
+            assertEquals(0, persister.persistMessages(messages));
+
+            String body = scrape(uri);
+            String[] lines = body.split("\n");
+            assertEquals("# EOF", lines[lines.length - 1]);
+            assertTrue(body.contains("# TYPE streams_throughput_queue_current_size gauge\n" +
+                    "streams_throughput_queue_current_size{identifier=\"s\",name=\"q1\"} 5\n" +
+                    "streams_throughput_queue_current_size{identifier=\"s\",name=\"q2\"} 0\n"));
+            assertTrue(body.contains("# TYPE streams_throughput_queue_added counter\n" +
+                    "streams_throughput_queue_added_total{identifier=\"s\",name=\"q1\"} 10\n"));
+            assertTrue(body.contains("streams_throughput_queue_avg_wait{identifier=\"s\",name=\"q1\"} 1.5\n"));
+            assertTrue(body.contains("streams_streams_task_counter_num_received_total{identifier=\"s\",name=\"t\\\\1\"} 7\n"));
+            assertTrue(body.contains("streams_streams_task_counter_input_dequeue_counts{identifier=\"s\",name=\"t\\\\1\",index=\"1\"} 3\n"));
+            assertTrue(body.contains("streams_memory_heap_memory_usage 1024\n"));
+            assertTrue("Only numbers become metrics", !body.contains("verbose"));
+            assertTrue("The start time is not a label", !body.contains("started_at"));
+
+            int families = 0;
+            for(String line : lines) {
+                if(line.startsWith("# TYPE")) {
+                    ++families;
+                }
+            }
+            assertEquals(6, families);
+        } finally {
+            persister.close();
+        }
+    }
+
+    @Test
+    public void testSharedServer() throws Exception {
+        OpenMetricsMessagePersister unstarted = new OpenMetricsMessagePersister("127.0.0.1", 0, "/metrics");
+        assertNull("A persister only binds once started", unstarted.getAddress());
+        unstarted.close();
+
+        OpenMetricsMessagePersister first = new OpenMetricsMessagePersister("127.0.0.1", 0, "/metrics");
+        first.start();
+        int port = first.getAddress().getPort();
+        String uri = "http://127.0.0.1:" + port + "/metrics";
+        OpenMetricsMessagePersister second = new OpenMetricsMessagePersister("127.0.0.1", port, "/metrics");
+        try {
+            second.persistMessages(Lists.newArrayList("{\"name\":\"org.apache.streams.local:type=ThroughputQueue,name=q1,identifier=s,startedAt=1\",\"currentSize\":5}"));
+            assertEquals(first.getAddress(), second.getAddress());
+            assertTrue(scrape(uri).contains("streams_throughput_queue_current_size{identifier=\"s\",name=\"q1\"} 5\n"));
+
+            first.close();
+            assertTrue("The server is kept while a persister uses it", scrape(uri).contains("current_size"));
+        } finally {
+            first.close();
+            second.close();
+        }
+        // the port is released once the last persister is closed
+        new ServerSocket(port, 0, InetAddress.getByName("127.0.0.1")).close();
+    }
+
+    private String scrape(String uri) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(OpenMetricsMessagePersister.CONTENT_TYPE, connection.getContentType());
+        InputStream in = connection.getInputStream();
+        try {
+            return new String(ByteStreams.toByteArray(in), "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
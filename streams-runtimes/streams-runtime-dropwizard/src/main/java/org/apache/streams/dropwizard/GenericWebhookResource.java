@@ -3,9 +3,9 @@ package org.apache.streams.dropwizard;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Queues;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsProvider;
+import org.apache.streams.core.StreamsResultCursor;
 import org.apache.streams.core.StreamsResultSet;
 import org.apache.streams.jackson.StreamsJacksonMapper;
 import org.apache.streams.util.ComponentUtils;
@@ -26,8 +26,6 @@ import java.math.BigInteger;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
 /**
@@ -52,8 +50,6 @@ public class GenericWebhookResource implements StreamsProvider {
 
     protected Queue<StreamsDatum> providerQueue = new ConcurrentLinkedQueue<>();
 
-    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
-
     private static Pattern newLinePattern = Pattern.compile("(\\r\\n?|\\n)", Pattern.MULTILINE);
 
     @POST
@@ -69,9 +65,7 @@ public class GenericWebhookResource implements StreamsProvider {
 
             StreamsDatum datum = new StreamsDatum(body);
 
-            lock.writeLock().lock();
             ComponentUtils.offerUntilSuccess(datum, providerQueue);
-            lock.writeLock().unlock();
 
             Boolean success = true;
 
@@ -117,9 +111,7 @@ public class GenericWebhookResource implements StreamsProvider {
 
                 StreamsDatum datum = new StreamsDatum(item);
 
-                lock.writeLock().lock();
                 ComponentUtils.offerUntilSuccess(datum, providerQueue);
-                lock.writeLock().unlock();
 
             }
 
@@ -169,9 +161,7 @@ public class GenericWebhookResource implements StreamsProvider {
 
                 StreamsDatum datum = new StreamsDatum(item);
 
-                lock.writeLock().lock();
                 ComponentUtils.offerUntilSuccess(datum, providerQueue);
-                lock.writeLock().unlock();
             }
 
             Boolean success = true;
@@ -200,14 +190,8 @@ public class GenericWebhookResource implements StreamsProvider {
     @Override
     public StreamsResultSet readCurrent() {
 
-        StreamsResultSet current;
-
-        lock.writeLock().lock();
-        current = new StreamsResultSet(Queues.newConcurrentLinkedQueue(providerQueue));
-        providerQueue.clear();
-        lock.writeLock().unlock();
-
-        return current;
+        // the runtime drains the live queue, so posts arriving during the flush are picked up without a copy
+        return StreamsResultCursor.draining(providerQueue);
 
     }
 
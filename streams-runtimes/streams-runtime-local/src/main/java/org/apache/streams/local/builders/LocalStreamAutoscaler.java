@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.builders;
+
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.ThroughputQueueMXBean;
+import org.apache.streams.local.scaling.ComponentScaler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Periodically samples the processors of a stream run by a {@link org.apache.streams.local.builders.LocalStreamBuilder}
+ * and adds or retires tasks as their {@link org.apache.streams.local.scaling.ComponentScaler}s decide.
+ */
+public class LocalStreamAutoscaler implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalStreamAutoscaler.class);
+
+    private final LocalStreamBuilder builder;
+    private final Map<StreamComponent, ComponentScaler> scalers;
+    private final Map<StreamComponent, StreamsTaskCounter> counters;
+    private final long intervalMs;
+    private volatile boolean keepRunning;
+
+    /**
+     * @param builder builder running the stream
+     * @param scalers scaler of each component that may be scaled
+     * @param counters counter shared by the tasks of each component
+     * @param intervalMs time between samples in milliseconds
+     */
+    public LocalStreamAutoscaler(LocalStreamBuilder builder, Map<StreamComponent, ComponentScaler> scalers, Map<StreamComponent, StreamsTaskCounter> counters, long intervalMs) {
+        this.builder = builder;
+        this.scalers = scalers;
+        this.counters = counters;
+        this.intervalMs = intervalMs;
+        this.keepRunning = true;
+    }
+
+    @Override
+    public void run() {
+        while(this.keepRunning) {
+            try {
+                Thread.sleep(this.intervalMs);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                this.keepRunning = false;
+            }
+            if(this.keepRunning) {
+                scale();
+            }
+        }
+    }
+
+    /**
+     * Samples every component once and carries out the decisions
+     */
+    protected void scale() {
+        for(Map.Entry<StreamComponent, ComponentScaler> entry : this.scalers.entrySet()) {
+            StreamComponent comp = entry.getKey();
+            ComponentScaler scaler = entry.getValue();
+            try {
+                int running = this.builder.getRunningTaskCount(comp);
+                ComponentScaler.Decision decision = scaler.sample(System.currentTimeMillis(), (ThroughputQueueMXBean) comp.getInBoundQueue(), this.counters.get(comp), running);
+                boolean scaled = false;
+                if(decision == ComponentScaler.Decision.SCALE_UP) {
+                    scaled = this.builder.addComponentTask(comp);
+                } else if(decision == ComponentScaler.Decision.SCALE_DOWN) {
+                    scaled = this.builder.retireComponentTask(comp);
+                }
+                if(scaled) {
+                    LOGGER.info("{} component {}, wait={}ms, utilization={}", decision, comp.getId(), scaler.getIntervalWait(), scaler.getIntervalUtilization());
+                    scaler.scaled(decision, this.builder.getRunningTaskCount(comp));
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Failed to scale component {} : {}", comp.getId(), e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        this.keepRunning = false;
+    }
+}
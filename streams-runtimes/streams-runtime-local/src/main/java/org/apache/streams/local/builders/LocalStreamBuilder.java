@@ -21,17 +21,34 @@ package org.apache.streams.local.builders;
 import org.apache.streams.core.*;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.apache.streams.local.executors.ShutdownStreamOnUnhandleThrowableThreadPoolExecutor;
+import org.apache.streams.local.executors.VirtualThreads;
+import org.apache.streams.local.queues.PartitionedQueue;
+import org.apache.streams.local.queues.RingBufferThroughputQueue;
+import org.apache.streams.local.queues.SizeEstimator;
+import org.apache.streams.local.queues.SpillingThroughputQueue;
+import org.apache.streams.local.queues.StreamsDatumSizeEstimator;
 import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.local.queues.ThroughputQueueMXBean;
+import org.apache.streams.local.scaling.ComponentScaler;
 import org.apache.streams.local.tasks.*;
+import org.apache.streams.local.tracing.LatencyTracer;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
 import org.apache.streams.monitoring.tasks.BroadcastMonitorThread;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,6 +60,7 @@ public class LocalStreamBuilder implements StreamBuilder {
 
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(LocalStreamBuilder.class);
     private static final int DEFAULT_QUEUE_SIZE = 500;
+    private static final String METRICS_PATTERN = "org.apache.streams.local:identifier=%s,startedAt=%s,*";
 
     public static final String TIMEOUT_KEY = "TIMEOUT";
     public static final String BROADCAST_KEY = "broadcastURI";
@@ -50,6 +68,36 @@ public class LocalStreamBuilder implements StreamBuilder {
     public static final String BROADCAST_INTERVAL_KEY = "monitoring_broadcast_interval_ms";
     public static final String DEFAULT_STREAM_IDENTIFIER = "Unknown_Stream";
     public static final String DEFAULT_STARTED_AT_KEY = "startedAt";
+    public static final String QUEUE_TYPE_KEY = "queueType";
+    public static final String LINKED_QUEUE_TYPE = "linked";
+    public static final String RING_BUFFER_QUEUE_TYPE = "ringBuffer";
+    public static final String SPILLING_QUEUE_TYPE = "spilling";
+    public static final String SPILL_DIRECTORY_KEY = "spillDirectory";
+    public static final String SPILL_SEGMENT_BYTES_KEY = "spillSegmentBytes";
+    public static final String MAX_QUEUE_BYTES_KEY = "maxQueueBytes";
+    public static final String AUTOSCALE_KEY = "autoscale";
+    public static final String AUTOSCALE_INTERVAL_MS_KEY = "autoscaleIntervalMs";
+    public static final String AUTOSCALE_TARGET_WAIT_MS_KEY = "autoscaleTargetWaitMs";
+    public static final String AUTOSCALE_MIN_TASKS_KEY = "autoscaleMinTasks";
+    public static final String AUTOSCALE_MAX_TASKS_KEY = "autoscaleMaxTasks";
+    public static final long DEFAULT_AUTOSCALE_INTERVAL_MS = 5000;
+    public static final long DEFAULT_AUTOSCALE_TARGET_WAIT_MS = 100;
+    public static final String EXECUTOR_TYPE_KEY = "executorType";
+    public static final String PLATFORM_EXECUTOR_TYPE = "platform";
+    public static final String VIRTUAL_EXECUTOR_TYPE = "virtual";
+    public static final String TRACE_SAMPLE_RATE_KEY = "traceSampleRate";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final String BATCH_TIMEOUT_KEY = "batchTimeoutMs";
+    public static final String FUSE_PROCESSORS_KEY = "fuseProcessors";
+    public static final String RESOURCE_ACCOUNTING_KEY = "resourceAccounting";
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    public static final long DEFAULT_BATCH_TIMEOUT_MS = 100;
+
+    /**
+     * Upper bound on how long shut down waits for the tasks of a component to finish once its inbound queue is empty
+     */
+    private static final long TASK_SHUTDOWN_TIMEOUT_MS = 10000;
+    private static final long TASK_SHUTDOWN_POLL_MS = 500;
 
     private Map<String, StreamComponent> providers;
     private Map<String, StreamComponent> components;
@@ -67,6 +115,18 @@ public class LocalStreamBuilder implements StreamBuilder {
     private String streamIdentifier = DEFAULT_STREAM_IDENTIFIER;
     private DateTime startedAt = new DateTime();
     private boolean useDeprecatedMonitors;
+    private boolean useRingBufferQueues;
+    private boolean useSpillingQueues;
+    private boolean useVirtualThreads;
+    private long maxQueueBytes;
+    private SizeEstimator<StreamsDatum> queueSizeEstimator;
+    private Map<StreamComponent, StreamsTaskCounter> componentCounters;
+    private Map<StreamComponent, List<StreamsTaskCounter>> fusedComponentCounters;
+    private Set<StreamsTask> retiredTasks;
+    private LocalStreamAutoscaler autoscaler;
+    private LatencyTracer latencyTracer;
+    private final Object scalingLock = new Object();
+    private boolean scalingStopped;
 
     /**
      * Creates a local stream builder with no config object and default maximum internal queue size of 500
@@ -107,6 +167,11 @@ public class LocalStreamBuilder implements StreamBuilder {
         this.maxQueueCapacity = maxQueueCapacity;
 
         setQueueCapacity(streamConfig);
+        setQueueByteCapacity(streamConfig);
+        setQueueType(streamConfig);
+        setExecutorType(streamConfig);
+        FlightRecorderEvents.configure(streamConfig);
+        this.queueSizeEstimator = new StreamsDatumSizeEstimator();
 
         final LocalStreamBuilder self = this;
         this.shutdownHook = new Thread() {
@@ -125,6 +190,9 @@ public class LocalStreamBuilder implements StreamBuilder {
         this.broadcastMonitor = new BroadcastMonitorThread(this.streamConfig);
 
         this.futures = new HashMap<>();
+        this.componentCounters = new HashMap<>();
+        this.fusedComponentCounters = new HashMap<>();
+        this.retiredTasks = new HashSet<>();
     }
 
     public void setQueueCapacity(Map<String, Object> streamConfig) {
@@ -139,6 +207,58 @@ public class LocalStreamBuilder implements StreamBuilder {
         }
     }
 
+    /**
+     * Bounds the linked queues between components by the estimated size of the datums on them when
+     * {@link #MAX_QUEUE_BYTES_KEY} is set to a positive number of bytes.  The byte budget replaces the bound on the
+     * number of datums.
+     * @param streamConfig
+     */
+    public void setQueueByteCapacity(Map<String, Object> streamConfig) {
+        this.maxQueueBytes = -1;
+        try {
+            if (streamConfig != null && streamConfig.get(MAX_QUEUE_BYTES_KEY) != null) {
+                this.maxQueueBytes = Long.parseLong(streamConfig.get(MAX_QUEUE_BYTES_KEY).toString());
+            }
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Exception while trying to parse the max queue bytes from the Stream configuration object: {}", nfe);
+        }
+    }
+
+    /**
+     * Sets the estimator used to measure datums for byte bounded queues.  Defaults to a
+     * {@link org.apache.streams.local.queues.StreamsDatumSizeEstimator}.
+     * @param queueSizeEstimator
+     */
+    public void setQueueSizeEstimator(SizeEstimator<StreamsDatum> queueSizeEstimator) {
+        this.queueSizeEstimator = queueSizeEstimator;
+    }
+
+    /**
+     * Selects the {@link java.util.concurrent.BlockingQueue} implementation used between components.  Setting
+     * {@link #QUEUE_TYPE_KEY} to {@link #RING_BUFFER_QUEUE_TYPE} uses a pre-allocated
+     * {@link org.apache.streams.local.queues.RingBufferThroughputQueue}, setting it to {@link #SPILLING_QUEUE_TYPE}
+     * uses a {@link org.apache.streams.local.queues.SpillingThroughputQueue} that spills datums beyond the maximum queue
+     * size to {@link #SPILL_DIRECTORY_KEY}, otherwise a linked {@link org.apache.streams.local.queues.ThroughputQueue}
+     * is used.
+     * @param streamConfig
+     */
+    public void setQueueType(Map<String, Object> streamConfig) {
+        String queueType = streamConfig != null && streamConfig.get(QUEUE_TYPE_KEY) != null ? streamConfig.get(QUEUE_TYPE_KEY).toString() : null;
+        this.useRingBufferQueues = RING_BUFFER_QUEUE_TYPE.equals(queueType);
+        this.useSpillingQueues = SPILLING_QUEUE_TYPE.equals(queueType);
+    }
+
+    /**
+     * Selects the threads tasks run on.  Setting {@link #EXECUTOR_TYPE_KEY} to {@link #VIRTUAL_EXECUTOR_TYPE} runs every
+     * task on its own virtual thread, so that components blocked on I/O can run with thousands of tasks.  JVMs without
+     * virtual threads fall back to platform threads, which are used otherwise.
+     * @param streamConfig
+     */
+    public void setExecutorType(Map<String, Object> streamConfig) {
+        String executorType = streamConfig != null && streamConfig.get(EXECUTOR_TYPE_KEY) != null ? streamConfig.get(EXECUTOR_TYPE_KEY).toString() : null;
+        this.useVirtualThreads = VIRTUAL_EXECUTOR_TYPE.equals(executorType);
+    }
+
     public void setUseDeprecatedMonitors(boolean useDeprecatedMonitors) {
         this.useDeprecatedMonitors = useDeprecatedMonitors;
     }
@@ -186,7 +306,37 @@ public class LocalStreamBuilder implements StreamBuilder {
     @Override
     public StreamBuilder addStreamsProcessor(String id, StreamsProcessor processor, int numTasks, String... inBoundIds) {
         validateId(id);
-        StreamComponent comp = new StreamComponent(id, processor, new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis()), numTasks, streamConfig);
+        StreamComponent comp = new StreamComponent(id, processor, createInBoundQueue(id), numTasks, streamConfig);
+        this.components.put(id, comp);
+        connectToOtherComponents(inBoundIds, comp);
+        this.totalTasks += numTasks;
+        if(this.useDeprecatedMonitors && processor instanceof DatumStatusCountable )
+            ++this.monitorTasks;
+        return this;
+    }
+
+    /**
+     * Adds a processor whose tasks each read from their own inbound queue instead of sharing one.  Upstream components
+     * route every datum to a single task by the hash of its key, so all datums with an equal key are processed by the
+     * same task in the order they were produced.
+     * @param id unique id of the processor
+     * @param processor processor to run
+     * @param numTasks number of tasks, and partitions, to run the processor with
+     * @param keyExtractor extractor of the partition key, if null {@link org.apache.streams.core.StreamsDatum#getId()}
+     *                     is used.  Datums without a key are spread over the tasks round robin.
+     * @param inBoundIds ids of the components that feed this processor
+     * @return this builder
+     */
+    public StreamBuilder addStreamsProcessor(String id, StreamsProcessor processor, int numTasks, StreamsDatumKeyExtractor keyExtractor, String... inBoundIds) {
+        validateId(id);
+        if(numTasks < 1) {
+            throw new InvalidStreamException("A partitioned processor needs at least one task : "+id);
+        }
+        List<BlockingQueue<StreamsDatum>> partitions = new ArrayList<BlockingQueue<StreamsDatum>>(numTasks);
+        for(int i=0; i < numTasks; ++i) {
+            partitions.add(createInBoundQueue(id+"-partition"+i));
+        }
+        StreamComponent comp = new StreamComponent(id, processor, new PartitionedQueue(partitions, keyExtractor), numTasks, streamConfig);
         this.components.put(id, comp);
         connectToOtherComponents(inBoundIds, comp);
         this.totalTasks += numTasks;
@@ -198,7 +348,7 @@ public class LocalStreamBuilder implements StreamBuilder {
     @Override
     public StreamBuilder addStreamsPersistWriter(String id, StreamsPersistWriter writer, int numTasks, String... inBoundIds) {
         validateId(id);
-        StreamComponent comp = new StreamComponent(id, writer, new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis()), numTasks, streamConfig);
+        StreamComponent comp = new StreamComponent(id, writer, createInBoundQueue(id), numTasks, streamConfig);
         this.components.put(id, comp);
         connectToOtherComponents(inBoundIds, comp);
         this.totalTasks += numTasks;
@@ -213,9 +363,8 @@ public class LocalStreamBuilder implements StreamBuilder {
     @Override
     public void start() {
         attachShutdownHandler();
-        boolean isRunning = true;
-        this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(this.totalTasks, this);
-        this.monitor = Executors.newCachedThreadPool();
+        createExecutors();
+        this.latencyTracer = createLatencyTracer();
         Map<String, StreamsProviderTask> provTasks = new HashMap<String, StreamsProviderTask>();
         tasks = new HashMap<String, List<StreamsTask>>();
         boolean forcedShutDown = false;
@@ -225,30 +374,20 @@ public class LocalStreamBuilder implements StreamBuilder {
                 monitorThread = new LocalStreamProcessMonitorThread(executor, 10);
                 this.monitor.submit(monitorThread);
             }
+            if(isFuseProcessors()) {
+                fuseProcessorChains();
+            }
             setupComponentTasks(tasks);
             setupProviderTasks(provTasks);
+            if(isAutoscale()) {
+                setupAutoscaler();
+            }
             LOGGER.info("Started stream with {} components", tasks.size());
-            while(isRunning) {
-                isRunning = false;
-                for(StreamsProviderTask task : provTasks.values()) {
-                    isRunning = isRunning || task.isRunning();
-                }
-                for(StreamComponent task: components.values()) {
-                    boolean tasksRunning = false;
-                    for(StreamsTask t : task.getStreamsTasks()) {
-                        if(t instanceof BaseStreamsTask) {
-                            tasksRunning = tasksRunning || ((BaseStreamsTask) t).isRunning();
-                        }
-                    }
-                    isRunning = isRunning || (tasksRunning && task.getInBoundQueue().size() > 0);
-                }
-                if(isRunning) {
-                    Thread.sleep(3000);
-                } else {
-                    LOGGER.info("Stream has completed successfully, shutting down @ {}", System.currentTimeMillis());
-                }
+            //the rest of the stream is drained and shut down behind the providers, see shutDownTask
+            for(StreamComponent prov : this.providers.values()) {
+                prov.awaitCompletion();
             }
-            LOGGER.debug("Components are no longer running or timed out");
+            LOGGER.info("Stream providers have completed, shutting down @ {}", System.currentTimeMillis());
         } catch (InterruptedException e){
             LOGGER.warn("Runtime interrupted.  Beginning shutdown");
             forcedShutDown = true;
@@ -258,6 +397,29 @@ public class LocalStreamBuilder implements StreamBuilder {
 
     }
 
+    /**
+     * Creates the executor of the tasks and the executor of the monitors, on virtual threads if configured and
+     * supported by the JVM
+     */
+    private void createExecutors() {
+        ThreadFactory taskThreads = null;
+        ThreadFactory monitorThreads = null;
+        if(this.useVirtualThreads) {
+            taskThreads = VirtualThreads.newThreadFactory("streams-task-");
+            monitorThreads = VirtualThreads.newThreadFactory("streams-monitor-");
+            if(taskThreads == null || monitorThreads == null) {
+                LOGGER.warn("Virtual threads are not supported by this JVM, running tasks on platform threads");
+            }
+        }
+        if(taskThreads != null && monitorThreads != null) {
+            this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(this.totalTasks, taskThreads, this);
+            this.monitor = Executors.newCachedThreadPool(monitorThreads);
+        } else {
+            this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(this.totalTasks, this);
+            this.monitor = Executors.newCachedThreadPool();
+        }
+    }
+
     private void attachShutdownHandler() {
         LOGGER.debug("Attaching shutdown handler");
         Runtime.getRuntime().addShutdownHook(shutdownHook);
@@ -270,6 +432,7 @@ public class LocalStreamBuilder implements StreamBuilder {
 
     protected void forceShutdown(Map<String, List<StreamsTask>> streamsTasks) {
         LOGGER.debug("Shutdown failed.  Forcing shutdown");
+        stopScaling();
         for(List<StreamsTask> tasks : streamsTasks.values()) {
             for(StreamsTask task : tasks) {
                 task.stopTask();
@@ -291,15 +454,27 @@ public class LocalStreamBuilder implements StreamBuilder {
             this.executor.shutdownNow();
             this.monitor.shutdownNow();
             throw new RuntimeException(ie);
+        } finally {
+            closeQueues();
         }
     }
 
     protected void shutdown(Map<String, List<StreamsTask>> streamsTasks) throws InterruptedException {
         LOGGER.info("Attempting to shutdown tasks");
+        stopScaling();
         if (this.monitorThread != null) {
             this.monitorThread.shutdown();
         }
         this.executor.shutdown();
+        //stop any provider that is still running, e.g. when the stream is stopped from outside
+        for(StreamComponent prov : this.providers.values()) {
+            for(StreamsTask task : prov.getStreamsTasks()) {
+                task.stopTask();
+            }
+            if(!prov.awaitCompletion(TASK_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Provider {} failed to terminate in allotted timeframe", prov.getId());
+            }
+        }
         //complete stream shut down gracfully
         for(StreamComponent prov : this.providers.values()) {
             shutDownTask(prov, streamsTasks);
@@ -309,18 +484,23 @@ public class LocalStreamBuilder implements StreamBuilder {
             this.executor.shutdownNow();
             this.executor.awaitTermination(10, TimeUnit.SECONDS);
         }
-        if(!this.monitor.awaitTermination(5, TimeUnit.SECONDS)) { // all threads should have terminated already.
-            this.monitor.shutdownNow();
-            this.monitor.awaitTermination(5, TimeUnit.SECONDS);
+        //monitors only sleep between reports, so wake them rather than wait out their interval
+        this.broadcastMonitor.shutdown();
+        this.monitor.shutdownNow();
+        if(!this.monitor.awaitTermination(5, TimeUnit.SECONDS)) {
+            LOGGER.warn("Stream monitors failed to terminate in allotted timeframe");
         }
+        closeQueues();
     }
 
     protected void setupProviderTasks(Map<String, StreamsProviderTask> provTasks) {
         for(StreamComponent prov : this.providers.values()) {
             StreamsTask task = prov.createConnectedTask(getTimeout());
             task.setStreamConfig(this.streamConfig);
-            StreamsTaskCounter counter = new StreamsTaskCounter(prov.getId(), streamIdentifier, startedAt.getMillis());
-            task.setStreamsTaskCounter(counter);
+            task.setStreamsTaskCounter(createCounter(prov.getId()));
+            if(this.latencyTracer != null) {
+                ((BaseStreamsTask) task).setLatencyTracer(this.latencyTracer, prov.getId());
+            }
             this.executor.submit(task);
             provTasks.put(prov.getId(), (StreamsProviderTask) task);
             if(this.useDeprecatedMonitors && prov.isOperationCountable() ) {
@@ -334,17 +514,15 @@ public class LocalStreamBuilder implements StreamBuilder {
         for(StreamComponent comp : this.components.values()) {
             int tasks = comp.getNumTasks();
             List<StreamsTask> compTasks = new LinkedList<StreamsTask>();
-            StreamsTaskCounter counter = new StreamsTaskCounter(comp.getId(), streamIdentifier, startedAt.getMillis());
+            StreamsTaskCounter counter = createCounter(comp.getId());
+            List<StreamsTaskCounter> fusedCounters = new LinkedList<StreamsTaskCounter>();
+            for(StreamComponent fused : comp.getFusedComponents()) {
+                fusedCounters.add(createCounter(fused.getId()));
+            }
+            this.componentCounters.put(comp, counter);
+            this.fusedComponentCounters.put(comp, fusedCounters);
             for(int i=0; i < tasks; ++i) {
-                StreamsTask task = comp.createConnectedTask(getTimeout());
-                task.setStreamsTaskCounter(counter);
-                task.setStreamConfig(this.streamConfig);
-                this.futures.put(task, this.executor.submit(task));
-                compTasks.add(task);
-                if(this.useDeprecatedMonitors &&  comp.isOperationCountable() ) {
-                    this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) comp.getOperation(), 10));
-                    this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) task, 10));
-                }
+                startComponentTask(comp, compTasks);
                 this.monitor.submit(broadcastMonitor);
             }
             streamsTasks.put(comp.getId(), compTasks);
@@ -352,8 +530,275 @@ public class LocalStreamBuilder implements StreamBuilder {
     }
 
     /**
-     * Shutsdown the running tasks in sudo depth first search kind of way. Checks that the upstream components have
-     * finished running before shutting down. Waits till inbound queue is empty to shutdown.
+     * Creates a task for the component, connected to its counters, and submits it to the executor
+     * @param comp component to run a task for
+     * @param compTasks running tasks of the component, the new task is added to it
+     */
+    private void startComponentTask(StreamComponent comp, List<StreamsTask> compTasks) {
+        StreamsTask task = comp.createConnectedTask(getTimeout());
+        task.setStreamsTaskCounter(this.componentCounters.get(comp));
+        List<StreamsTaskCounter> fusedCounters = this.fusedComponentCounters.get(comp);
+        if(!fusedCounters.isEmpty()) {
+            ((StreamsProcessorTask) task).setFusedStreamsTaskCounters(fusedCounters);
+        }
+        task.setStreamConfig(this.streamConfig);
+        if(this.latencyTracer != null && task instanceof BaseStreamsTask) {
+            //fused components appear in the traced paths as if they ran in tasks of their own
+            StringBuilder tracedId = new StringBuilder(comp.getId());
+            for(StreamComponent fused : comp.getFusedComponents()) {
+                tracedId.append(LatencyTracer.PATH_SEPARATOR).append(fused.getId());
+            }
+            ((BaseStreamsTask) task).setLatencyTracer(this.latencyTracer, tracedId.toString());
+        }
+        this.futures.put(task, this.executor.submit(task));
+        compTasks.add(task);
+        if(this.useDeprecatedMonitors &&  comp.isOperationCountable() ) {
+            this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) comp.getOperation(), 10));
+            this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) task, 10));
+        }
+    }
+
+    /**
+     * Creates the tracer of the latency of sampled datums, when {@link #TRACE_SAMPLE_RATE_KEY} is set to trace one in
+     * every N datums the providers emit
+     * @return the tracer, or null if tracing is off
+     */
+    private LatencyTracer createLatencyTracer() {
+        long sampleRate = getConfiguredLong(TRACE_SAMPLE_RATE_KEY, 0);
+        if(sampleRate < 1) {
+            return null;
+        }
+        return new LatencyTracer(sampleRate, streamIdentifier, startedAt.getMillis());
+    }
+
+    /**
+     * Returns the tracer of the latency of sampled datums through the stream
+     * @return the tracer, or null if {@link #TRACE_SAMPLE_RATE_KEY} is not set or the stream has not started
+     */
+    public LatencyTracer getLatencyTracer() {
+        return this.latencyTracer;
+    }
+
+    /**
+     * Returns true if {@link #AUTOSCALE_KEY} is set to true in the stream configuration
+     * @return true, if the number of tasks of processors should adapt to load
+     */
+    protected boolean isAutoscale() {
+        return this.streamConfig != null &&
+                this.streamConfig.get(AUTOSCALE_KEY) != null &&
+                Boolean.parseBoolean(this.streamConfig.get(AUTOSCALE_KEY).toString());
+    }
+
+    /**
+     * Gives the datums a component receives from one of its upstream components their own inbound queue, read with the
+     * given weight and priority, e.g. so that a live stream is always processed before a backfill reader.  The
+     * datums of the other upstream components share the component's inbound queue, read with weight 1 and priority 0.
+     * Components with separate inputs are neither fused nor autoscaled.
+     * @param id id of a processor or writer
+     * @param inBoundId id of a component already connected upstream of it
+     * @param weight share of the datums taken from this input, relative to inputs of the same priority.  At least 1.
+     * @param priority inputs of a higher priority are always read first
+     * @return this builder
+     */
+    public StreamBuilder setInputPriority(String id, String inBoundId, int weight, int priority) {
+        StreamComponent comp = this.components.get(id);
+        if(comp == null) {
+            throw new InvalidStreamException("Cannot set input priority of id, "+id+", because id does not exist.");
+        }
+        StreamComponent upStream = this.providers.containsKey(inBoundId) ? this.providers.get(inBoundId) : this.components.get(inBoundId);
+        if(upStream == null) {
+            throw new InvalidStreamException("Cannot set input priority of id, "+inBoundId+", because id does not exist.");
+        }
+        comp.addSeparateInput(upStream, createInBoundQueue(id+"-"+inBoundId), weight, priority);
+        return this;
+    }
+
+    /**
+     * Sets the fewest and most tasks the autoscaler may run a component with.  Components without bounds are scaled
+     * between {@link #AUTOSCALE_MIN_TASKS_KEY}, 1 by default, and {@link #AUTOSCALE_MAX_TASKS_KEY}, the number of
+     * processors by default, widened to include the number of tasks the component was added with.
+     * @param id id of the component
+     * @param minTasks fewest tasks, at least 1
+     * @param maxTasks most tasks
+     */
+    public void setTaskBounds(String id, int minTasks, int maxTasks) {
+        StreamComponent comp = this.components.get(id);
+        if(comp == null) {
+            throw new InvalidStreamException("Cannot set task bounds of id, "+id+", because id does not exist.");
+        }
+        if(minTasks < 1 || maxTasks < minTasks) {
+            throw new InvalidStreamException("Invalid task bounds for id, "+id+" : ["+minTasks+", "+maxTasks+"]");
+        }
+        comp.setTaskBounds(minTasks, maxTasks);
+    }
+
+    /**
+     * Starts the autoscaler for every processor that does not read from a partitioned queue, whose number of tasks is
+     * fixed by its partitions.
+     */
+    private void setupAutoscaler() {
+        long intervalMs = getConfiguredLong(AUTOSCALE_INTERVAL_MS_KEY, DEFAULT_AUTOSCALE_INTERVAL_MS);
+        long targetWaitMs = getConfiguredLong(AUTOSCALE_TARGET_WAIT_MS_KEY, DEFAULT_AUTOSCALE_TARGET_WAIT_MS);
+        int defaultMin = (int) getConfiguredLong(AUTOSCALE_MIN_TASKS_KEY, 1);
+        int defaultMax = (int) getConfiguredLong(AUTOSCALE_MAX_TASKS_KEY, Runtime.getRuntime().availableProcessors());
+        Map<StreamComponent, ComponentScaler> scalers = new HashMap<>();
+        for(StreamComponent comp : this.components.values()) {
+            if(!(comp.getOperation() instanceof StreamsProcessor) || comp.isPartitioned() || comp.hasSeparateInputs() || !(comp.getInBoundQueue() instanceof ThroughputQueueMXBean)) {
+                continue;
+            }
+            int minTasks = comp.getMinTasks() > 0 ? comp.getMinTasks() : Math.max(1, Math.min(defaultMin, comp.getNumTasks()));
+            int maxTasks = comp.getMaxTasks() > 0 ? comp.getMaxTasks() : Math.max(defaultMax, comp.getNumTasks());
+            scalers.put(comp, new ComponentScaler(comp.getId(), comp.getNumTasks(), minTasks, maxTasks, targetWaitMs, streamIdentifier, startedAt.getMillis()));
+        }
+        if(!scalers.isEmpty()) {
+            this.autoscaler = new LocalStreamAutoscaler(this, scalers, this.componentCounters, intervalMs);
+            this.monitor.submit(this.autoscaler);
+        }
+    }
+
+    /**
+     * Stops the autoscaler and waits for any scaling in progress to finish, so the tasks of the stream no longer change
+     */
+    private void stopScaling() {
+        if(this.autoscaler != null) {
+            this.autoscaler.shutdown();
+        }
+        synchronized (this.scalingLock) {
+            this.scalingStopped = true;
+        }
+    }
+
+    /**
+     * Starts one more task for the component and grows the thread pool by one thread
+     * @param comp component to add a task to
+     * @return true, if a task was added
+     */
+    protected boolean addComponentTask(StreamComponent comp) {
+        synchronized (this.scalingLock) {
+            if(this.scalingStopped) {
+                return false;
+            }
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) this.executor;
+            pool.setMaximumPoolSize(pool.getMaximumPoolSize() + 1);
+            pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+            startComponentTask(comp, this.tasks.get(comp.getId()));
+            return true;
+        }
+    }
+
+    /**
+     * Stops the most recently started running task of the component and shrinks the thread pool by one thread.  The
+     * task finishes the datums it holds, and the remaining tasks take over the inbound queue.
+     * @param comp component to retire a task from
+     * @return true, if a task was retired
+     */
+    protected boolean retireComponentTask(StreamComponent comp) {
+        synchronized (this.scalingLock) {
+            if(this.scalingStopped) {
+                return false;
+            }
+            List<StreamsTask> compTasks = this.tasks.get(comp.getId());
+            ListIterator<StreamsTask> iterator = compTasks.listIterator(compTasks.size());
+            while(iterator.hasPrevious()) {
+                StreamsTask task = iterator.previous();
+                if(task.isRunning() && !this.retiredTasks.contains(task)) {
+                    this.retiredTasks.add(task);
+                    task.stopTask();
+                    ThreadPoolExecutor pool = (ThreadPoolExecutor) this.executor;
+                    pool.setCorePoolSize(pool.getCorePoolSize() - 1);
+                    pool.setMaximumPoolSize(pool.getMaximumPoolSize() - 1);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The number of tasks of the component that are running and have not been retired
+     * @param comp component
+     * @return number of running tasks
+     */
+    protected int getRunningTaskCount(StreamComponent comp) {
+        synchronized (this.scalingLock) {
+            int running = 0;
+            for(StreamsTask task : this.tasks.get(comp.getId())) {
+                if(task.isRunning() && !this.retiredTasks.contains(task)) {
+                    ++running;
+                }
+            }
+            return running;
+        }
+    }
+
+    private long getConfiguredLong(String key, long defaultValue) {
+        try {
+            if(this.streamConfig != null && this.streamConfig.get(key) != null) {
+                return Long.parseLong(this.streamConfig.get(key).toString());
+            }
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Exception while trying to parse {} from the Stream configuration object: {}", key, nfe);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Creates the counter of a component, sampling the CPU time and allocations of its tasks when
+     * {@link #RESOURCE_ACCOUNTING_KEY} is set to true in the stream configuration
+     * @param id id of the component
+     * @return the counter
+     */
+    private StreamsTaskCounter createCounter(String id) {
+        StreamsTaskCounter counter = new StreamsTaskCounter(id, streamIdentifier, startedAt.getMillis());
+        if(this.streamConfig != null &&
+                this.streamConfig.get(RESOURCE_ACCOUNTING_KEY) != null &&
+                Boolean.parseBoolean(this.streamConfig.get(RESOURCE_ACCOUNTING_KEY).toString())) {
+            counter.setResourceAccounting(true);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns true if {@link #FUSE_PROCESSORS_KEY} is set to true in the stream configuration
+     * @return true, if linear chains of processors should be fused
+     */
+    protected boolean isFuseProcessors() {
+        return this.streamConfig != null &&
+                this.streamConfig.get(FUSE_PROCESSORS_KEY) != null &&
+                Boolean.parseBoolean(this.streamConfig.get(FUSE_PROCESSORS_KEY).toString());
+    }
+
+    /**
+     * Collapses every linear chain of processors, where each link is the only input and only output of the other and
+     * both run the same number of tasks, into the first processor of the chain.  The tasks of that component call the
+     * processors of the chain in sequence on one thread, so datums are no longer handed between them over a queue.
+     * Each fused processor keeps its own {@link org.apache.streams.local.counters.StreamsTaskCounter}.
+     */
+    protected void fuseProcessorChains() {
+        boolean fused;
+        do {
+            fused = false;
+            for(StreamComponent comp : this.components.values()) {
+                Collection<StreamComponent> children = comp.getDownStreamComponents();
+                if(children.size() == 1) {
+                    StreamComponent child = children.iterator().next();
+                    if(comp.canFuse(child)) {
+                        LOGGER.debug("Fusing processor {} into processor {}", child.getId(), comp.getId());
+                        comp.fuse(child);
+                        this.components.remove(child.getId());
+                        fused = true;
+                        break;
+                    }
+                }
+            }
+        } while(fused);
+    }
+
+    /**
+     * Shutsdown the running tasks in sudo depth first search kind of way. Once every upstream component has finished,
+     * the tasks of a component are told that no more data is coming, drain their inbound queue and finish on their own.
+     * Waits for as long as the inbound queue still holds data, and then at most
+     * {@link #TASK_SHUTDOWN_TIMEOUT_MS} for the tasks to finish.
      * @param comp StreamComponent to shut down.
      * @param streamTasks the list of non-StreamsProvider tasks for this stream.
      * @throws InterruptedException
@@ -363,29 +808,26 @@ public class LocalStreamBuilder implements StreamBuilder {
         if(tasks != null) { //not a StreamProvider
             boolean parentsShutDown = true;
             for(StreamComponent parent : comp.getUpStreamComponents()) {
-                List<StreamsTask> parentTasks = streamTasks.get(parent.getId());
-                //if parentTask == null, its a provider and is not running anymore
-                if(parentTasks != null) {
-                    for(StreamsTask task : parentTasks) {
-                        parentsShutDown = parentsShutDown && !task.isRunning();
-                    }
-                }
+                parentsShutDown = parentsShutDown && parent.isComplete();
             }
-            if(parentsShutDown) {
-                for(StreamsTask task : tasks) {
-                    task.stopTask();
-                    if(task.isWaiting()) {
-                        this.futures.get(task).cancel(true); // no data to process, interrupt block queue
+            if(parentsShutDown && !comp.isComplete()) {
+                comp.upstreamComplete();
+                long waitedSinceDrained = 0;
+                while(!comp.awaitCompletion(TASK_SHUTDOWN_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if(isEmpty(comp.getInBoundQueues())) {
+                        waitedSinceDrained += TASK_SHUTDOWN_POLL_MS;
+                    }
+                    if(waitedSinceDrained >= TASK_SHUTDOWN_TIMEOUT_MS) {
+                        break;
                     }
                 }
                 for(StreamsTask task : tasks) {
-                    int count = 0;
-                    while(count < 20 && task.isRunning()) {
-                        Thread.sleep(500);
-                        count++;
-                    }
                     if(task.isRunning()) {
                         LOGGER.warn("Task {} failed to terminate in allotted timeframe", task.toString());
+                        task.stopTask();
+                        if(task.isWaiting()) {
+                            this.futures.get(task).cancel(true); // no data to process, interrupt block queue
+                        }
                     }
                 }
             }
@@ -415,12 +857,21 @@ public class LocalStreamBuilder implements StreamBuilder {
             LOGGER.error("Exception while trying to shutdown Stream: {}", e);
             forceShutdown(tasks);
         } finally {
+            unregisterMetrics();
             if(!systemExiting) {
                 detachShutdownHandler();
             }
         }
     }
 
+    /**
+     * Removes the metrics of every component of this stream from the
+     * {@link org.apache.streams.monitoring.metrics.MetricsRegistry}, and so from JMX, once the stream has stopped.
+     */
+    protected void unregisterMetrics() {
+        MetricsRegistry.getInstance().unregisterAll(String.format(METRICS_PATTERN, streamIdentifier, startedAt.getMillis()));
+    }
+
     private void connectToOtherComponents(String[] conntectToIds, StreamComponent toBeConnected) {
         for(String id : conntectToIds) {
             StreamComponent upStream = null;
@@ -438,6 +889,83 @@ public class LocalStreamBuilder implements StreamBuilder {
         }
     }
 
+    /**
+     * Creates the registered inbound queue for a component.  Ring buffers are always bounded, so an unbounded
+     * capacity falls back to a linked queue.  Spilling queues keep the maximum queue size in memory.  Linked queues are
+     * bounded by bytes instead of datums if a byte budget is configured.
+     * @param id id of the component the queue feeds
+     * @return inbound queue for the component
+     */
+    protected BlockingQueue<StreamsDatum> createInBoundQueue(String id) {
+        if(this.useSpillingQueues) {
+            int memoryCapacity = this.maxQueueCapacity > 0 ? this.maxQueueCapacity : DEFAULT_QUEUE_SIZE;
+            return new SpillingThroughputQueue(memoryCapacity, getSpillDirectory(), getSpillSegmentBytes(), id, streamIdentifier, startedAt.getMillis());
+        }
+        if(this.useRingBufferQueues) {
+            if(this.maxQueueCapacity > 0) {
+                return new RingBufferThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis());
+            }
+            LOGGER.warn("Ring buffer queues must be bounded, using an unbounded linked queue for component {}", id);
+        }
+        if(this.maxQueueBytes > 0 && this.queueSizeEstimator != null) {
+            return new ThroughputQueue<StreamsDatum>(-1, this.maxQueueBytes, this.queueSizeEstimator, id, streamIdentifier, startedAt.getMillis());
+        }
+        return new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis());
+    }
+
+    /**
+     * The directory spilling queues write their segments to, {@link #SPILL_DIRECTORY_KEY} if configured and otherwise
+     * a directory per stream under java.io.tmpdir
+     * @return spill directory
+     */
+    protected File getSpillDirectory() {
+        if(streamConfig != null && streamConfig.get(SPILL_DIRECTORY_KEY) != null) {
+            return new File(streamConfig.get(SPILL_DIRECTORY_KEY).toString());
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "streams-spill-"+streamIdentifier+"-"+startedAt.getMillis());
+    }
+
+    protected int getSpillSegmentBytes() {
+        return streamConfig != null && streamConfig.containsKey(SPILL_SEGMENT_BYTES_KEY) ? Integer.parseInt(streamConfig.get(SPILL_SEGMENT_BYTES_KEY).toString()) : SpillingThroughputQueue.DEFAULT_SEGMENT_BYTES;
+    }
+
+    /**
+     * Releases the resources held by the inbound queues of all components, e.g. the segment files of spilling queues
+     */
+    private void closeQueues() {
+        for(StreamComponent comp : this.components.values()) {
+            List<BlockingQueue<StreamsDatum>> queues = new ArrayList<BlockingQueue<StreamsDatum>>();
+            for(BlockingQueue<StreamsDatum> queue : comp.getInBoundQueues()) {
+                if(queue instanceof PartitionedQueue) {
+                    queues.addAll(((PartitionedQueue) queue).getPartitions());
+                } else {
+                    queues.add(queue);
+                }
+            }
+            for(BlockingQueue<StreamsDatum> q : queues) {
+                if(q instanceof Closeable) {
+                    try {
+                        ((Closeable) q).close();
+                    } catch (IOException ioe) {
+                        LOGGER.warn("Failed to close inbound queue of component {} : {}", comp.getId(), ioe);
+                    }
+                }
+            }
+        }
+        if(this.useSpillingQueues && (streamConfig == null || streamConfig.get(SPILL_DIRECTORY_KEY) == null)) {
+            getSpillDirectory().delete(); //only succeeds once every segment has been deleted
+        }
+    }
+
+    private static boolean isEmpty(List<BlockingQueue<StreamsDatum>> queues) {
+        for(BlockingQueue<StreamsDatum> queue : queues) {
+            if(!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void validateId(String id) {
         if(this.providers.containsKey(id) || this.components.containsKey(id)) {
             throw new InvalidStreamException("Duplicate id. "+id+" is already assigned to another component");
@@ -20,6 +20,8 @@ package org.apache.streams.local.builders;
 
 import com.google.common.collect.Lists;
 import org.apache.streams.core.*;
+import org.apache.streams.local.queues.PartitionedQueue;
+import org.apache.streams.local.tasks.BaseStreamsTask;
 import org.apache.streams.local.tasks.StreamsPersistWriterTask;
 import org.apache.streams.local.tasks.StreamsProcessorTask;
 import org.apache.streams.local.tasks.StreamsProviderTask;
@@ -30,6 +32,7 @@ import org.joda.time.DateTime;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Stores the implementations of {@link org.apache.streams.core.StreamsOperation}, the StreamsOperations it is connected
@@ -44,15 +47,19 @@ public class StreamComponent {
     private Set<StreamComponent> inBound;
     private Map<StreamComponent, BlockingQueue<StreamsDatum>> outBound;
     private BlockingQueue<StreamsDatum> inQueue;
+    private Map<StreamComponent, SeparateInput> separateInputs;
     private StreamsProvider provider;
     private StreamsProcessor processor;
     private StreamsPersistWriter writer;
     private DateTime[] dateRange;
     private BigInteger sequence;
     private int numTasks = 1;
+    private int minTasks = -1;
+    private int maxTasks = -1;
     private boolean perpetual;
 
     private List<StreamsTask> tasks;
+    private List<StreamComponent> fused;
 
     private Map<String, Object> streamConfig;
 
@@ -98,6 +105,7 @@ public class StreamComponent {
         this.provider = provider;
         this.sequence = sequence;
         this.streamConfig = streamConfig;
+        initializePrivateVariables();
     }
 
     /**
@@ -134,8 +142,10 @@ public class StreamComponent {
 
     private void initializePrivateVariables() {
         this.inBound = new HashSet<StreamComponent>();
+        this.separateInputs = new LinkedHashMap<StreamComponent, SeparateInput>();
         this.outBound = new HashMap<StreamComponent, BlockingQueue<StreamsDatum>>();
         this.tasks = Lists.newArrayList();
+        this.fused = Lists.newArrayList();
     }
 
     /**
@@ -155,6 +165,53 @@ public class StreamComponent {
         this.inBound.add(component);
     }
 
+    /**
+     * Reads the datums from an upstream component through their own inbound queue instead of the shared inbound queue,
+     * so the tasks of this component can favor them over, or read them in proportion to, the datums of other upstream
+     * components.  The shared inbound queue is read with the default weight and priority.
+     * @param upStream component already connected upstream of this one
+     * @param queue inbound queue for the datums of the upstream component
+     * @param weight share of the datums taken from this queue, relative to queues of the same priority.  At least 1.
+     * @param priority queues of a higher priority are always read first
+     */
+    public void addSeparateInput(StreamComponent upStream, BlockingQueue<StreamsDatum> queue, int weight, int priority) {
+        if(this.processor == null && this.writer == null) {
+            throw new InvalidStreamException("Only processors and writers have inputs : "+this.id);
+        }
+        if(isPartitioned()) {
+            throw new InvalidStreamException("A partitioned component can not have separate inputs : "+this.id);
+        }
+        if(!this.inBound.contains(upStream)) {
+            throw new InvalidStreamException(upStream.getId()+" is not upstream of "+this.id);
+        }
+        if(weight < 1) {
+            throw new InvalidStreamException("Input weight must be at least 1 : "+weight);
+        }
+        upStream.addOutBoundQueue(this, queue);
+        this.separateInputs.put(upStream, new SeparateInput(queue, weight, priority));
+    }
+
+    /**
+     * Returns true if any upstream component feeds this component through its own inbound queue
+     * @return true, if {@link #addSeparateInput(StreamComponent, java.util.concurrent.BlockingQueue, int, int)} was called
+     */
+    public boolean hasSeparateInputs() {
+        return !this.separateInputs.isEmpty();
+    }
+
+    /**
+     * The shared inbound queue followed by the inbound queues of the separate inputs
+     * @return every inbound queue of this component
+     */
+    public List<BlockingQueue<StreamsDatum>> getInBoundQueues() {
+        List<BlockingQueue<StreamsDatum>> queues = new ArrayList<BlockingQueue<StreamsDatum>>();
+        queues.add(this.inQueue);
+        for(SeparateInput input : this.separateInputs.values()) {
+            queues.add(input.queue);
+        }
+        return queues;
+    }
+
     /**
      * The components that are immediately downstream of this component (aka child nodes)
      * @return Collection of child nodes of this component
@@ -187,6 +244,32 @@ public class StreamComponent {
         return this.numTasks;
     }
 
+    /**
+     * The fewest tasks the autoscaler may run this component with, -1 if not set
+     * @return
+     */
+    public int getMinTasks() {
+        return this.minTasks;
+    }
+
+    /**
+     * The most tasks the autoscaler may run this component with, -1 if not set
+     * @return
+     */
+    public int getMaxTasks() {
+        return this.maxTasks;
+    }
+
+    /**
+     * Sets the bounds the autoscaler keeps the number of tasks of this component within
+     * @param minTasks
+     * @param maxTasks
+     */
+    public void setTaskBounds(int minTasks, int maxTasks) {
+        this.minTasks = minTasks;
+        this.maxTasks = maxTasks;
+    }
+
     /**
      * Creates a {@link org.apache.streams.local.tasks.StreamsTask} that is running a clone of this component whose
      * inbound and outbound queues are appropriately connected to the parent and child nodes.
@@ -197,27 +280,33 @@ public class StreamComponent {
     public StreamsTask createConnectedTask(int timeout) {
         StreamsTask task;
         if(this.processor != null) {
-            if(this.numTasks > 1) {
+            //tasks added after the first, by the autoscaler, need their own processor as well
+            boolean cloneProcessors = this.numTasks > 1 || !this.tasks.isEmpty();
+            if(cloneProcessors) {
                 task =  new StreamsProcessorTask((StreamsProcessor)SerializationUtil.cloneBySerialization(this.processor), streamConfig);
-                task.addInputQueue(this.inQueue);
-                for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
-                    task.addOutputQueue(q);
-                }
+                connectInputQueues(task);
+                connectOutputQueues(task);
             } else {
                 task = new StreamsProcessorTask(this.processor, streamConfig);
-                task.addInputQueue(this.inQueue);
-                for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
-                    task.addOutputQueue(q);
+                connectInputQueues(task);
+                connectOutputQueues(task);
+            }
+            ((StreamsProcessorTask) task).setComponentId(this.id);
+            for(StreamComponent fusedComponent : this.fused) {
+                StreamsProcessor fusedProcessor = fusedComponent.processor;
+                if(cloneProcessors) {
+                    fusedProcessor = (StreamsProcessor) SerializationUtil.cloneBySerialization(fusedProcessor);
                 }
+                ((StreamsProcessorTask) task).addFusedProcessor(fusedComponent.getId(), fusedProcessor);
             }
         }
         else if(this.writer != null) {
             if(this.numTasks > 1) {
                 task = new StreamsPersistWriterTask((StreamsPersistWriter) SerializationUtil.cloneBySerialization(this.writer), streamConfig);
-                task.addInputQueue(this.inQueue);
+                connectInputQueues(task);
             } else {
                 task = new StreamsPersistWriterTask(this.writer, streamConfig);
-                task.addInputQueue(this.inQueue);
+                connectInputQueues(task);
             }
         }
         else if(this.provider != null) {
@@ -237,9 +326,7 @@ public class StreamComponent {
             if(timeout != 0) {
                 ((StreamsProviderTask)task).setTimeout(timeout);
             }
-            for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
-                task.addOutputQueue(q);
-            }
+            connectOutputQueues(task);
         }
         else {
             throw new InvalidStreamException("Underlying StreamComponoent was NULL.");
@@ -252,10 +339,180 @@ public class StreamComponent {
         return task;
     }
 
+    /**
+     * The queue the next task created for this component reads from.  For a partitioned inbound queue every task gets
+     * its own partition, otherwise all tasks share the inbound queue.
+     * @return inbound queue of the next task
+     */
+    private BlockingQueue<StreamsDatum> nextTaskInputQueue() {
+        if(isPartitioned()) {
+            PartitionedQueue partitioned = (PartitionedQueue) this.inQueue;
+            return partitioned.getPartition(this.tasks.size() % partitioned.getNumPartitions());
+        }
+        return this.inQueue;
+    }
+
+    /**
+     * Connects the task to the inbound queue, or its partition, and to the queues of the separate inputs
+     * @param task task to connect
+     */
+    private void connectInputQueues(StreamsTask task) {
+        task.addInputQueue(nextTaskInputQueue());
+        for(SeparateInput input : this.separateInputs.values()) {
+            ((BaseStreamsTask) task).addInputQueue(input.queue, input.weight, input.priority);
+        }
+    }
+
+    /**
+     * Returns true if the inbound queue of this component routes datums to a partition per task by key.
+     * @return true, if the inbound queue is a {@link org.apache.streams.local.queues.PartitionedQueue}
+     */
+    public boolean isPartitioned() {
+        return this.inQueue instanceof PartitionedQueue;
+    }
+
+    /**
+     * Connects the task to the inbound queues of the child nodes, telling the task which children only read the datums
+     * they are given so that it can avoid cloning datums for them.  The output of a read only component is treated as
+     * shared, since it may be the datum the component was handed.
+     * @param task task to connect
+     */
+    private void connectOutputQueues(StreamsTask task) {
+        if(task instanceof BaseStreamsTask) {
+            ((BaseStreamsTask) task).setOutputShared(isReadOnly());
+        }
+        for(Map.Entry<StreamComponent, BlockingQueue<StreamsDatum>> entry : this.outBound.entrySet()) {
+            if(task instanceof BaseStreamsTask) {
+                ((BaseStreamsTask) task).addOutputQueue(entry.getValue(), entry.getKey().isReadOnly());
+            } else {
+                task.addOutputQueue(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the operation of this component never modifies the datums it is handed.
+     * @return true, if the operation, and any processor fused into this component, is a
+     * {@link org.apache.streams.core.ReadOnlyDatumOperation}
+     */
+    public boolean isReadOnly() {
+        boolean readOnly = getOperation() instanceof ReadOnlyDatumOperation;
+        for(StreamComponent fusedComponent : this.fused) {
+            readOnly = readOnly && fusedComponent.isReadOnly();
+        }
+        return readOnly;
+    }
+
+    /**
+     * Returns true if the child can be fused into this component.  Both must be processors running the same number of
+     * tasks, the child must be the only component downstream of this one, and this must be the only component
+     * upstream of the child.  A partitioned child is never fused, because its datums have to be rerouted by key, and
+     * neither is a child with separate inputs.
+     * @param child component downstream of this one
+     * @return true, if the child can be fused into this component
+     */
+    public boolean canFuse(StreamComponent child) {
+        return this.processor != null &&
+                child.processor != null &&
+                this.numTasks == child.numTasks &&
+                !child.isPartitioned() &&
+                !child.hasSeparateInputs() &&
+                this.outBound.size() == 1 &&
+                this.outBound.containsKey(child) &&
+                child.inBound.size() == 1 &&
+                child.inBound.contains(this);
+    }
+
+    /**
+     * Fuses the child into this component.  Tasks of this component will run the child's processor, on the same
+     * thread, on everything this component's processor outputs, and write the result straight to the inbound queues
+     * of the child's children.  The child's inbound queue is no longer used.
+     * @param child component to fuse into this one
+     */
+    public void fuse(StreamComponent child) {
+        if(!canFuse(child)) {
+            throw new InvalidStreamException("Component "+child.getId()+" can not be fused into component "+this.id);
+        }
+        this.fused.add(child);
+        this.fused.addAll(child.fused);
+        this.outBound = child.outBound;
+        for(StreamComponent grandChild : child.getDownStreamComponents()) {
+            grandChild.inBound.remove(child);
+            grandChild.inBound.add(this);
+        }
+    }
+
+    /**
+     * The components that have been fused into this component, in the order their processors run
+     * @return fused components
+     */
+    public List<StreamComponent> getFusedComponents() {
+        return this.fused;
+    }
+
     public List<StreamsTask> getStreamsTasks() {
         return this.tasks;
     }
 
+    /**
+     * Tells the tasks of this component that every upstream component has finished.  Each task drains what is left on
+     * the inbound queue and then finishes on its own.  Tasks that can not be told stop immediately.
+     */
+    public void upstreamComplete() {
+        for(StreamsTask task : this.tasks) {
+            if(task instanceof BaseStreamsTask) {
+                ((BaseStreamsTask) task).inputComplete();
+            } else {
+                task.stopTask();
+            }
+        }
+    }
+
+    /**
+     * Waits for every task of this component to finish.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true, if all tasks finished before the timeout elapsed
+     * @throws InterruptedException
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(StreamsTask task : this.tasks) {
+            if(task instanceof BaseStreamsTask) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0 || !((BaseStreamsTask) task).awaitCompletion(remaining, TimeUnit.NANOSECONDS)) {
+                    return isComplete();
+                }
+            }
+        }
+        return isComplete();
+    }
+
+    /**
+     * Waits, without a timeout, for every task of this component to finish.
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+        for(StreamsTask task : this.tasks) {
+            if(task instanceof BaseStreamsTask) {
+                ((BaseStreamsTask) task).awaitCompletion();
+            }
+        }
+    }
+
+    /**
+     * Returns true once every task of this component has finished
+     * @return true, if all tasks have finished
+     */
+    public boolean isComplete() {
+        for(StreamsTask task : this.tasks) {
+            if(task instanceof BaseStreamsTask ? !((BaseStreamsTask) task).isCompleted() : task.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * The unique of this component
      * @return
@@ -296,4 +553,20 @@ public class StreamComponent {
     protected boolean isOperationCountable() {
         return getOperation() instanceof DatumStatusCountable;
     }
+
+    /**
+     * An inbound queue read with its own weight and priority
+     */
+    private static class SeparateInput {
+
+        private final BlockingQueue<StreamsDatum> queue;
+        private final int weight;
+        private final int priority;
+
+        private SeparateInput(BlockingQueue<StreamsDatum> queue, int weight, int priority) {
+            this.queue = queue;
+            this.weight = weight;
+            this.priority = priority;
+        }
+    }
 }
@@ -19,7 +19,10 @@ package org.apache.streams.local.counters;
 
 import net.jcip.annotations.ThreadSafe;
 import org.apache.streams.local.builders.LocalStreamBuilder;
-import org.apache.streams.util.ComponentUtils;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.DatumStatusCounterBroadcast;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +34,7 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  */
 @ThreadSafe
-public class DatumStatusCounter implements DatumStatusCounterMXBean{
+public class DatumStatusCounter implements DatumStatusCounterMXBean, MetricsSource {
 
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=DatumCounter,name=%s,identifier=%s,startedAt=%s";
     private static final Logger LOGGER = LoggerFactory.getLogger(DatumStatusCounter.class);
@@ -46,7 +49,7 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     public DatumStatusCounter(String id, String streamIdentifier, long startedAt) {
         this.failed = new AtomicLong(0);
         this.passed = new AtomicLong(0);
-        ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
     }
 
     public void incrementFailedCount() {
@@ -85,4 +88,12 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     public long getNumPassed() {
         return this.passed.get();
     }
+
+    @Override
+    public Broadcast toBroadcast() {
+        DatumStatusCounterBroadcast datumStatusCounterBroadcast = new DatumStatusCounterBroadcast();
+        datumStatusCounterBroadcast.setFailed(getNumFailed());
+        datumStatusCounterBroadcast.setPassed(getNumPassed());
+        return datumStatusCounterBroadcast;
+    }
 }
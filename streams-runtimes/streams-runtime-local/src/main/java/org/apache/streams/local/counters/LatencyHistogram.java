@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.monitoring.metrics.StripedLatencyHistogram;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.LatencyHistogramBroadcast;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded in a
+ * {@link org.apache.streams.monitoring.metrics.StripedLatencyHistogram}.  Is also an {@code MBean} reporting in
+ * milliseconds, registered whenever the constructor receives a non-null stream identifier.
+ */
+@ThreadSafe
+public class LatencyHistogram implements LatencyHistogramMXBean, MetricsSource {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=LatencyHistogram,name=%s,identifier=%s,startedAt=%s";
+
+    private static final double NANOS_PER_MS = 1000000.0;
+
+    private final StripedLatencyHistogram histogram;
+
+    /**
+     * Creates a histogram that is not registered as an MBean
+     */
+    public LatencyHistogram() {
+        this(null, null, -1);
+    }
+
+    /**
+     * @param id name to register the bean under
+     * @param streamIdentifier stream identifier to register the bean under, if NULL then not registered
+     * @param startedAt
+     */
+    public LatencyHistogram(String id, String streamIdentifier, long startedAt) {
+        this.histogram = new StripedLatencyHistogram();
+        if(streamIdentifier != null) {
+            MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    /**
+     * Records a latency
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        this.histogram.record(nanos);
+    }
+
+    /**
+     * Returns the latency in nanoseconds below which the given fraction of the recorded latencies fall, rounded up to
+     * the upper bound of its bucket
+     * @param fraction between 0 and 1
+     * @return latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        return this.histogram.snapshot().getPercentileNanos(fraction);
+    }
+
+    @Override
+    public long getCount() {
+        return this.histogram.snapshot().getCount();
+    }
+
+    @Override
+    public double getMean() {
+        return this.histogram.snapshot().getMeanNanos() / NANOS_PER_MS;
+    }
+
+    @Override
+    public double getMax() {
+        return this.histogram.snapshot().getMaxNanos() / NANOS_PER_MS;
+    }
+
+    @Override
+    public double getP50() {
+        return getPercentileNanos(0.5) / NANOS_PER_MS;
+    }
+
+    @Override
+    public double getP99() {
+        return getPercentileNanos(0.99) / NANOS_PER_MS;
+    }
+
+    @Override
+    public double getP999() {
+        return getPercentileNanos(0.999) / NANOS_PER_MS;
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        StripedLatencyHistogram.Snapshot snapshot = this.histogram.snapshot();
+        LatencyHistogramBroadcast latencyHistogramBroadcast = new LatencyHistogramBroadcast();
+        latencyHistogramBroadcast.setCount(snapshot.getCount());
+        latencyHistogramBroadcast.setMean(snapshot.getMeanNanos() / NANOS_PER_MS);
+        latencyHistogramBroadcast.setMax(snapshot.getMaxNanos() / NANOS_PER_MS);
+        latencyHistogramBroadcast.setP50(snapshot.getPercentileNanos(0.5) / NANOS_PER_MS);
+        latencyHistogramBroadcast.setP99(snapshot.getPercentileNanos(0.99) / NANOS_PER_MS);
+        latencyHistogramBroadcast.setP999(snapshot.getPercentileNanos(0.999) / NANOS_PER_MS);
+        return latencyHistogramBroadcast;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+/**
+ * Distribution of the time sampled {@link org.apache.streams.core.StreamsDatum}s took to travel one path through a
+ * stream, from the provider that emitted them to the writer that wrote them
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     * Get the number of latencies recorded
+     * @return number of latencies
+     */
+    public long getCount();
+
+    /**
+     * Get the average latency in milliseconds
+     * @return average latency
+     */
+    public double getMean();
+
+    /**
+     * Get the largest latency in milliseconds
+     * @return largest latency
+     */
+    public double getMax();
+
+    /**
+     * Get the median latency in milliseconds
+     * @return 50th percentile
+     */
+    public double getP50();
+
+    /**
+     * Get the 99th percentile latency in milliseconds
+     * @return 99th percentile
+     */
+    public double getP99();
+
+    /**
+     * Get the 99.9th percentile latency in milliseconds
+     * @return 99.9th percentile
+     */
+    public double getP999();
+}
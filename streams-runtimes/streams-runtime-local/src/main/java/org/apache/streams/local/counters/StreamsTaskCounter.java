@@ -17,26 +17,36 @@
  */
 package org.apache.streams.local.counters;
 
+import com.google.common.primitives.Longs;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.streams.local.builders.LocalStreamBuilder;
-import org.apache.streams.util.ComponentUtils;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.StreamsTaskCounterBroadcast;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.management.*;
 import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Counts the datums a component received, emitted and failed on, and the wall time its tasks spent on them.  With
+ * resource accounting turned on it also accumulates the CPU time and the heap bytes allocated by the threads of its
+ * tasks while they process or write datums, as sampled from the {@link java.lang.management.ThreadMXBean}.
  */
 @ThreadSafe
-public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
+public class StreamsTaskCounter implements StreamsTaskCounterMXBean, MetricsSource {
 
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=StreamsTaskCounter,name=%s,identifier=%s,startedAt=%s";
     private static final Logger LOGGER = LoggerFactory.getLogger(StreamsTaskCounter.class);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean ?
+            (com.sun.management.ThreadMXBean) THREADS : null;
 
     private AtomicLong emitted;
     private AtomicLong received;
@@ -44,6 +54,12 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
     private AtomicLong totalTime;
     @GuardedBy("this")
     private volatile long maxTime;
+    @GuardedBy("this")
+    private volatile AtomicLong[] inputCounts;
+    private AtomicLong cpuTime;
+    private AtomicLong allocatedBytes;
+    private volatile boolean cpuAccounting;
+    private volatile boolean allocationAccounting;
 
     /**
      *
@@ -63,7 +79,10 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
         this.errors = new AtomicLong(0);
         this.totalTime = new AtomicLong(0);
         this.maxTime = -1;
-        ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamId, startedAt), this);
+        this.inputCounts = new AtomicLong[0];
+        this.cpuTime = new AtomicLong(0);
+        this.allocatedBytes = new AtomicLong(0);
+        MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, id, streamId, startedAt), this);
     }
 
     /**
@@ -124,6 +143,114 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
         this.totalTime.addAndGet(processTime);
     }
 
+    /**
+     * Add the time it takes to process a batch of datums in milliseconds.  The max time is tracked as the average
+     * time per datum in the batch.
+     * @param processTime
+     * @param numDatums number of datums in the batch
+     */
+    public void addTime(long processTime, int numDatums) {
+        long perDatum = numDatums > 1 ? processTime / numDatums : processTime;
+        synchronized (this) {
+            if(perDatum > this.maxTime) {
+                this.maxTime = perDatum;
+            }
+        }
+        this.totalTime.addAndGet(processTime);
+    }
+
+    /**
+     * Turns the sampling of CPU time and allocated bytes on or off.  Either is left off if the JVM cannot measure it.
+     * @param enabled true to sample the resources used by each call to a component
+     */
+    public void setResourceAccounting(boolean enabled) {
+        this.cpuAccounting = enabled && THREADS.isCurrentThreadCpuTimeSupported();
+        if(this.cpuAccounting && !THREADS.isThreadCpuTimeEnabled()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+        this.allocationAccounting = enabled && ALLOCATIONS != null && ALLOCATIONS.isThreadAllocatedMemorySupported();
+        if(this.allocationAccounting && !ALLOCATIONS.isThreadAllocatedMemoryEnabled()) {
+            ALLOCATIONS.setThreadAllocatedMemoryEnabled(true);
+        }
+        if(enabled && !this.cpuAccounting) {
+            LOGGER.warn("This JVM cannot measure thread CPU time, it will not be accounted");
+        }
+        if(enabled && !this.allocationAccounting) {
+            LOGGER.warn("This JVM cannot measure thread allocations, they will not be accounted");
+        }
+    }
+
+    /**
+     * Returns the CPU time the current thread has used so far, to be passed to
+     * {@link #addResources(long, long)} once the call being measured returns.
+     * @return CPU time in nanoseconds, or -1 if CPU time is not accounted
+     */
+    public long sampleCpuTime() {
+        return this.cpuAccounting ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the bytes the current thread has allocated so far, to be passed to
+     * {@link #addResources(long, long)} once the call being measured returns.
+     * @return allocated bytes, or -1 if allocations are not accounted
+     */
+    public long sampleAllocatedBytes() {
+        return this.allocationAccounting ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Add the CPU time and allocations of the current thread since the given samples.  Negative samples, taken while
+     * accounting was off or on a thread the JVM cannot measure, are ignored.
+     * @param cpuTimeSample value of {@link #sampleCpuTime()} before the call
+     * @param allocatedBytesSample value of {@link #sampleAllocatedBytes()} before the call
+     */
+    public void addResources(long cpuTimeSample, long allocatedBytesSample) {
+        if(cpuTimeSample >= 0) {
+            long now = THREADS.getCurrentThreadCpuTime();
+            if(now >= cpuTimeSample) {
+                this.cpuTime.addAndGet(now - cpuTimeSample);
+            }
+        }
+        if(allocatedBytesSample >= 0) {
+            long now = ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if(now >= allocatedBytesSample) {
+                this.allocatedBytes.addAndGet(now - allocatedBytesSample);
+            }
+        }
+    }
+
+    /**
+     * Increment the number of datums taken from one of the input queues of a task
+     * @param input index of the input queue
+     */
+    public void incrementInputCount(int input) {
+        AtomicLong[] counts = this.inputCounts;
+        if(input >= counts.length) {
+            synchronized (this) {
+                counts = this.inputCounts;
+                if(input >= counts.length) {
+                    AtomicLong[] grown = new AtomicLong[input + 1];
+                    System.arraycopy(counts, 0, grown, 0, counts.length);
+                    for(int i=counts.length; i < grown.length; ++i) {
+                        grown[i] = new AtomicLong(0);
+                    }
+                    this.inputCounts = counts = grown;
+                }
+            }
+        }
+        counts[input].incrementAndGet();
+    }
+
+    @Override
+    public long[] getInputDequeueCounts() {
+        AtomicLong[] counts = this.inputCounts;
+        long[] values = new long[counts.length];
+        for(int i=0; i < counts.length; ++i) {
+            values[i] = counts[i].get();
+        }
+        return values;
+    }
+
     @Override
     public double getErrorRate() {
         if(this.received.get() == 0) {
@@ -149,19 +276,64 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
 
     @Override
     public double getAvgTime() {
+        return average(this.totalTime.get());
+    }
+
+    @Override
+    public long getMaxTime() {
+        return this.maxTime;
+    }
+
+    @Override
+    public long getCpuTime() {
+        return this.cpuTime.get() / 1000000;
+    }
+
+    @Override
+    public double getAvgCpuTime() {
+        return average(this.cpuTime.get()) / 1000000.0;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.get();
+    }
+
+    @Override
+    public double getAvgAllocatedBytes() {
+        return average(this.allocatedBytes.get());
+    }
+
+    /**
+     * Averages a total over the datums the task handled: the datums it emitted for a provider, otherwise the datums
+     * it received without an unhandled error.
+     */
+    private double average(long total) {
         long rec = this.received.get();
         long emit = this.emitted.get();
         if(rec == 0 && emit == 0 ) {
             return 0.0;
         } else if( rec == 0) { //provider instance
-            return this.totalTime.get() / (double) emit;
+            return total / (double) emit;
         } else {
-            return this.totalTime.get() / ((double) this.received.get() - this.errors.get());
+            return total / ((double) rec - this.errors.get());
         }
     }
 
     @Override
-    public long getMaxTime() {
-        return this.maxTime;
+    public Broadcast toBroadcast() {
+        StreamsTaskCounterBroadcast streamsTaskCounterBroadcast = new StreamsTaskCounterBroadcast();
+        streamsTaskCounterBroadcast.setErrorRate(getErrorRate());
+        streamsTaskCounterBroadcast.setNumEmitted(getNumEmitted());
+        streamsTaskCounterBroadcast.setNumReceived(getNumReceived());
+        streamsTaskCounterBroadcast.setNumUnhandledErrors(getNumUnhandledErrors());
+        streamsTaskCounterBroadcast.setAvgTime(getAvgTime());
+        streamsTaskCounterBroadcast.setMaxTime(getMaxTime());
+        streamsTaskCounterBroadcast.setInputDequeueCounts(Longs.asList(getInputDequeueCounts()));
+        streamsTaskCounterBroadcast.setCpuTime(getCpuTime());
+        streamsTaskCounterBroadcast.setAvgCpuTime(getAvgCpuTime());
+        streamsTaskCounterBroadcast.setAllocatedBytes(getAllocatedBytes());
+        streamsTaskCounterBroadcast.setAvgAllocatedBytes(getAvgAllocatedBytes());
+        return streamsTaskCounterBroadcast;
     }
 }
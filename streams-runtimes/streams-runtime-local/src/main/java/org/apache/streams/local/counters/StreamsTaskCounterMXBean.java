@@ -60,4 +60,39 @@ public interface StreamsTaskCounterMXBean {
      */
     public long getMaxTime();
 
+    /**
+     * Returns the number of {@link org.apache.streams.core.StreamsDatum}s taken from each input queue of a task that
+     * reads from more than one, indexed in the order the inputs were added.  Empty for tasks with a single input.
+     * @return dequeue count per input
+     */
+    public long[] getInputDequeueCounts();
+
+    /**
+     * Returns the CPU time in milliseconds the task's threads spent processing or writing, when resource accounting
+     * is turned on.
+     * @return total CPU time
+     */
+    public long getCpuTime();
+
+    /**
+     * Returns the average CPU time in milliseconds the task's threads spent on each datum, when resource accounting
+     * is turned on.
+     * @return average CPU time
+     */
+    public double getAvgCpuTime();
+
+    /**
+     * Returns the bytes allocated on the heap by the task's threads while processing or writing, when resource
+     * accounting is turned on.
+     * @return total allocated bytes
+     */
+    public long getAllocatedBytes();
+
+    /**
+     * Returns the average bytes allocated on the heap by the task's threads for each datum, when resource accounting
+     * is turned on.
+     * @return average allocated bytes
+     */
+    public double getAvgAllocatedBytes();
+
 }
@@ -46,6 +46,19 @@ public class ShutdownStreamOnUnhandleThrowableThreadPoolExecutor extends ThreadP
         this.isStoped = false;
     }
 
+    /**
+     * Creates a fixed size thread pool where corePoolSize & maximumPoolSize equal numThreads with an unbounded queue,
+     * whose threads are created by threadFactory.
+     * @param numThreads number of threads in pool
+     * @param threadFactory factory of the threads of the pool
+     * @param streamBuilder streambuilder to call {@link org.apache.streams.core.StreamBuilder#stop()} on upon receiving an unhandled throwable
+     */
+    public ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(int numThreads, ThreadFactory threadFactory, LocalStreamBuilder streamBuilder) {
+        super(numThreads, numThreads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.streamBuilder = streamBuilder;
+        this.isStoped = false;
+    }
+
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
         if(t != null) {
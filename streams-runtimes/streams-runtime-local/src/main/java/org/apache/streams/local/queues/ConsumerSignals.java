@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * The signals of a {@link org.apache.streams.local.queues.SignallingQueue}.  Signals are kept in an array that is
+ * replaced when a signal is added, so running them does not allocate or lock.
+ */
+@ThreadSafe
+class ConsumerSignals {
+
+    private volatile Runnable[] signals = new Runnable[0];
+
+    synchronized void add(Runnable signal) {
+        Runnable[] added = Arrays.copyOf(this.signals, this.signals.length + 1);
+        added[this.signals.length] = signal;
+        this.signals = added;
+    }
+
+    void signal() {
+        for (Runnable signal : this.signals) {
+            signal.run();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.NotImplementedException;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDatumKeyExtractor;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link java.util.concurrent.BlockingQueue} that routes every {@link org.apache.streams.core.StreamsDatum} it is
+ * given to one of several partition queues.  Datums are routed by the hash of the key returned by a
+ * {@link org.apache.streams.core.StreamsDatumKeyExtractor}, or of {@link org.apache.streams.core.StreamsDatum#getId()}
+ * if no extractor is set, so that datums with equal keys always end up in the same partition.  Datums without a key
+ * are spread over the partitions round robin.
+ * <p/>
+ * Upstream tasks write to this queue as they would to any other inbound queue, while each downstream task reads from
+ * its own partition, see {@link #getPartition(int)}.
+ * <p/>
+ * !!! Warning !!!
+ * Blocking reads and drains have to be made against the partitions and throw a
+ * {@link org.apache.commons.lang.NotImplementedException}.
+ */
+public class PartitionedQueue extends AbstractQueue<StreamsDatum> implements BlockingQueue<StreamsDatum> {
+
+    private final List<BlockingQueue<StreamsDatum>> partitions;
+    private final StreamsDatumKeyExtractor keyExtractor;
+    private final AtomicInteger nextUnkeyed;
+
+    /**
+     * @param partitions queues to route datums to, must not be empty
+     * @param keyExtractor extractor of the partition key, if null the datum id is used
+     */
+    public PartitionedQueue(List<BlockingQueue<StreamsDatum>> partitions, StreamsDatumKeyExtractor keyExtractor) {
+        if(partitions == null || partitions.isEmpty()) {
+            throw new IllegalArgumentException("A partitioned queue needs at least one partition");
+        }
+        this.partitions = Collections.unmodifiableList(Lists.newArrayList(partitions));
+        this.keyExtractor = keyExtractor;
+        this.nextUnkeyed = new AtomicInteger(0);
+    }
+
+    /**
+     * The number of partitions datums are routed to
+     * @return number of partitions
+     */
+    public int getNumPartitions() {
+        return this.partitions.size();
+    }
+
+    /**
+     * The queue of a single partition
+     * @param partition index of the partition
+     * @return the partition queue
+     */
+    public BlockingQueue<StreamsDatum> getPartition(int partition) {
+        return this.partitions.get(partition);
+    }
+
+    /**
+     * All partition queues, in partition order
+     * @return unmodifiable list of the partition queues
+     */
+    public List<BlockingQueue<StreamsDatum>> getPartitions() {
+        return this.partitions;
+    }
+
+    /**
+     * Returns the index of the partition that the datum is routed to
+     * @param datum datum to route
+     * @return partition index
+     */
+    public int partitionFor(StreamsDatum datum) {
+        Object key = this.keyExtractor == null ? datum.getId() : this.keyExtractor.getKey(datum);
+        if(key == null) {
+            return (this.nextUnkeyed.getAndIncrement() & Integer.MAX_VALUE) % this.partitions.size();
+        }
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % this.partitions.size();
+    }
+
+    private BlockingQueue<StreamsDatum> route(StreamsDatum datum) {
+        if(datum == null) {
+            throw new NullPointerException();
+        }
+        return this.partitions.get(partitionFor(datum));
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        return route(datum).offer(datum);
+    }
+
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        route(datum).put(datum);
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        return route(datum).offer(datum, timeout, unit);
+    }
+
+    @Override
+    public StreamsDatum poll() {
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            StreamsDatum datum = partition.poll();
+            if(datum != null) {
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StreamsDatum peek() {
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            StreamsDatum datum = partition.peek();
+            if(datum != null) {
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            if(!partition.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        long remaining = 0;
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            remaining += partition.remainingCapacity();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public Iterator<StreamsDatum> iterator() {
+        List<Iterator<StreamsDatum>> iterators = Lists.newArrayListWithCapacity(this.partitions.size());
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            iterators.add(partition.iterator());
+        }
+        return Iterators.unmodifiableIterator(Iterators.concat(iterators.iterator()));
+    }
+
+    @Override
+    public StreamsDatum take() throws InterruptedException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public StreamsDatum poll(long timeout, TimeUnit unit) throws InterruptedException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c, int maxElements) {
+        throw new NotImplementedException();
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.ThroughputQueueBroadcast;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, pre-allocated {@link java.util.concurrent.BlockingQueue} backed by a power-of-two ring buffer that
+ * measures how data flows through it in the same way as {@link org.apache.streams.local.queues.ThroughputQueue}.
+ * Registers under {@link org.apache.streams.local.queues.ThroughputQueue#NAME_TEMPLATE} whenever a constructor
+ * receives a non-null id, so monitoring treats both implementations the same.
+ * <p/>
+ * Producers and consumers claim slots with a single CAS and never allocate; the time an element was queued is
+ * kept in a primitive array parallel to the element slots. Threads only take a lock when they have to block
+ * because the queue is full or empty. Slot sequences are published with volatile writes so that a thread about
+ * to block and a thread about to signal always observe each other.
+ * <p/>
+ * !!! Warning !!!
+ * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
+ * {@link org.apache.commons.lang.NotImplementedException}.
+ */
+public class RingBufferThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBean, MetricsSource, SignallingQueue {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] elements;
+    private final long[] queuedTimes;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong startTime;
+    private final AtomicLong totalQueueTime;
+    private final AtomicLong maxQueuedTime;
+    private volatile boolean active;
+
+    private final ReentrantLock waitLock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final AtomicInteger waitingConsumers;
+    private final AtomicInteger waitingProducers;
+    private final ConsumerSignals consumerSignals = new ConsumerSignals();
+
+    /**
+     * Creates an unregistered {@code RingBufferThroughputQueue}
+     *
+     * @param minCapacity minimum capacity of the queue, rounded up to the next power of two (at least 2)
+     */
+    public RingBufferThroughputQueue(int minCapacity) {
+        this(minCapacity, null, LocalStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
+    }
+
+    /**
+     * Creates a registered {@code RingBufferThroughputQueue}
+     *
+     * @param minCapacity minimum capacity of the queue, rounded up to the next power of two (at least 2)
+     * @param id unique id for this queue to be registered with. if id == NULL then not registered
+     * @param streamIdentifier
+     * @param startedAt
+     */
+    public RingBufferThroughputQueue(int minCapacity, String id, String streamIdentifier, long startedAt) {
+        if (minCapacity < 1 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30 : " + minCapacity);
+        }
+        // a single slot cannot tell a published element from a free slot of the next lap
+        this.capacity = nextPowerOfTwo(Math.max(2, minCapacity));
+        this.mask = this.capacity - 1;
+        this.elements = new Object[this.capacity];
+        this.queuedTimes = new long[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.head = new AtomicLong(0);
+        this.tail = new AtomicLong(0);
+        this.startTime = new AtomicLong(-1);
+        this.totalQueueTime = new AtomicLong(0);
+        this.maxQueuedTime = new AtomicLong(0);
+        this.active = false;
+        this.waitLock = new ReentrantLock();
+        this.notEmpty = this.waitLock.newCondition();
+        this.notFull = this.waitLock.newCondition();
+        this.waitingConsumers = new AtomicInteger(0);
+        this.waitingProducers = new AtomicInteger(0);
+        if (id != null) {
+            MetricsRegistry.getInstance().register(String.format(ThroughputQueue.NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    /**
+     * The actual capacity of the ring buffer
+     * @return capacity, always a power of two
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (offer(e)) {
+            return true;
+        }
+        throw new IllegalStateException("Queue full");
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (tryEnqueue(e)) {
+            signalConsumers();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (!tryEnqueue(e)) {
+            this.waitLock.lockInterruptibly();
+            try {
+                this.waitingProducers.incrementAndGet();
+                try {
+                    if (isFull()) {
+                        this.notFull.await();
+                    }
+                } finally {
+                    this.waitingProducers.decrementAndGet();
+                }
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+        signalConsumers();
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        while (!tryEnqueue(e)) {
+            if (nanos <= 0) {
+                return false;
+            }
+            this.waitLock.lockInterruptibly();
+            try {
+                this.waitingProducers.incrementAndGet();
+                try {
+                    if (isFull()) {
+                        nanos = this.notFull.awaitNanos(nanos);
+                    }
+                } finally {
+                    this.waitingProducers.decrementAndGet();
+                }
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+        signalConsumers();
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = tryDequeue()) == null) {
+            this.waitLock.lockInterruptibly();
+            try {
+                this.waitingConsumers.incrementAndGet();
+                try {
+                    if (isEmpty()) {
+                        this.notEmpty.await();
+                    }
+                } finally {
+                    this.waitingConsumers.decrementAndGet();
+                }
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+        signalProducers();
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        while ((e = tryDequeue()) == null) {
+            if (nanos <= 0) {
+                return null;
+            }
+            this.waitLock.lockInterruptibly();
+            try {
+                this.waitingConsumers.incrementAndGet();
+                try {
+                    if (isEmpty()) {
+                        nanos = this.notEmpty.awaitNanos(nanos);
+                    }
+                } finally {
+                    this.waitingConsumers.decrementAndGet();
+                }
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+        signalProducers();
+        return e;
+    }
+
+    @Override
+    public E poll() {
+        E e = tryDequeue();
+        if (e != null) {
+            signalProducers();
+        }
+        return e;
+    }
+
+    @Override
+    public E remove() {
+        E e = poll();
+        if (e == null) {
+            throw new NoSuchElementException();
+        }
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        for (;;) {
+            long pos = this.head.get();
+            int index = (int) (pos & this.mask);
+            if (this.sequences.get(index) != pos + 1) {
+                return null;
+            }
+            E e = (E) this.elements[index];
+            // make sure the slot was not recycled while reading it
+            if (this.head.get() == pos) {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Claims every published element up to maxElements with a single CAS and moves them to the collection in
+     * queue order.
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int max = Math.min(maxElements, this.capacity);
+        long pos;
+        int count;
+        do {
+            pos = this.head.get();
+            count = 0;
+            while (count < max && this.sequences.get((int) ((pos + count) & this.mask)) == pos + count + 1) {
+                ++count;
+            }
+            if (count == 0) {
+                return 0;
+            }
+        } while (!this.head.compareAndSet(pos, pos + count));
+
+        long now = System.currentTimeMillis();
+        long waited = 0;
+        long maxWaited = 0;
+        for (int i = 0; i < count; ++i) {
+            int index = (int) ((pos + i) & this.mask);
+            E e = (E) this.elements[index];
+            long queueTime = now - this.queuedTimes[index];
+            this.elements[index] = null;
+            this.sequences.set(index, pos + i + this.capacity);
+            waited += queueTime;
+            maxWaited = Math.max(maxWaited, queueTime);
+            c.add(e);
+        }
+        this.totalQueueTime.addAndGet(waited);
+        updateMaxQueuedTime(maxWaited);
+        signalProducers();
+        return count;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return this.capacity - size();
+    }
+
+    @Override
+    public int size() {
+        long size = this.tail.get() - this.head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, this.capacity);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peekQueuedTime() < 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public E element() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void clear() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public long getCurrentSize() {
+        return size();
+    }
+
+    /**
+     * If elements have been removed from the queue or no elements have been added, it returns the average wait time
+     * in milliseconds. If elements have been added, but none have been removed, it returns the time waited by the first
+     * element in the queue.
+     *
+     * @return the average wait time in milliseconds
+     */
+    @Override
+    public double getAvgWait() {
+        long removed = this.head.get();
+        if (removed == 0) {
+            long queuedTime = peekQueuedTime();
+            if (queuedTime < 0) {
+                return 0.0;
+            }
+            return System.currentTimeMillis() - queuedTime;
+        }
+        return (double) this.totalQueueTime.get() / (double) removed;
+    }
+
+    @Override
+    public long getMaxWait() {
+        long max = this.maxQueuedTime.get();
+        long queuedTime = peekQueuedTime();
+        if (queuedTime >= 0) {
+            max = Math.max(max, System.currentTimeMillis() - queuedTime);
+        }
+        return max;
+    }
+
+    @Override
+    public long getRemoved() {
+        return this.head.get();
+    }
+
+    @Override
+    public long getAdded() {
+        return this.tail.get();
+    }
+
+    @Override
+    public double getThroughput() {
+        if (this.active) {
+            return this.head.get() / ((System.currentTimeMillis() - this.startTime.get()) / 1000.0);
+        }
+        return 0.0;
+    }
+
+    /**
+     * Never spills
+     */
+    @Override
+    public long getSpilled() {
+        return 0;
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return 0;
+    }
+
+    @Override
+    public double getSpillRate() {
+        return 0.0;
+    }
+
+    @Override
+    public double getUnspillRate() {
+        return 0.0;
+    }
+
+    /**
+     * Does not estimate sizes
+     */
+    @Override
+    public long getCurrentBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getPeakBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return -1;
+    }
+
+    private boolean tryEnqueue(E e) {
+        long pos;
+        int index;
+        for (;;) {
+            pos = this.tail.get();
+            index = (int) (pos & this.mask);
+            long diff = this.sequences.get(index) - pos;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        long now = System.currentTimeMillis();
+        this.elements[index] = e;
+        this.queuedTimes[index] = now;
+        this.sequences.set(index, pos + 1);
+        if (!this.active) {
+            activate(now);
+        }
+        return true;
+    }
+
+    private E tryDequeue() {
+        long pos;
+        int index;
+        for (;;) {
+            pos = this.head.get();
+            index = (int) (pos & this.mask);
+            long diff = this.sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (this.head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+        E e = (E) this.elements[index];
+        long queueTime = System.currentTimeMillis() - this.queuedTimes[index];
+        this.elements[index] = null;
+        this.sequences.set(index, pos + this.capacity);
+        this.totalQueueTime.addAndGet(queueTime);
+        updateMaxQueuedTime(queueTime);
+        return e;
+    }
+
+    /**
+     * @return the time the element at the head of the queue was queued, or -1 if the queue is empty
+     */
+    private long peekQueuedTime() {
+        for (;;) {
+            long pos = this.head.get();
+            int index = (int) (pos & this.mask);
+            if (this.sequences.get(index) != pos + 1) {
+                return -1;
+            }
+            long queuedTime = this.queuedTimes[index];
+            if (this.head.get() == pos) {
+                return queuedTime;
+            }
+        }
+    }
+
+    private boolean isFull() {
+        long pos = this.tail.get();
+        return this.sequences.get((int) (pos & this.mask)) < pos;
+    }
+
+    private synchronized void activate(long now) {
+        if (!this.active) {
+            this.startTime.set(now);
+            this.active = true;
+        }
+    }
+
+    private void updateMaxQueuedTime(long queueTime) {
+        long max;
+        while (queueTime > (max = this.maxQueuedTime.get())) {
+            if (this.maxQueuedTime.compareAndSet(max, queueTime)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void addConsumerSignal(Runnable signal) {
+        this.consumerSignals.add(signal);
+    }
+
+    private void signalConsumers() {
+        this.consumerSignals.signal();
+        if (this.waitingConsumers.get() > 0) {
+            this.waitLock.lock();
+            try {
+                this.notEmpty.signal();
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    private void signalProducers() {
+        if (this.waitingProducers.get() > 0) {
+            this.waitLock.lock();
+            try {
+                this.notFull.signalAll();
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        ThroughputQueueBroadcast throughputQueueBroadcast = new ThroughputQueueBroadcast();
+        throughputQueueBroadcast.setCurrentSize(getCurrentSize());
+        throughputQueueBroadcast.setAvgWait(getAvgWait());
+        throughputQueueBroadcast.setMaxWait(getMaxWait());
+        throughputQueueBroadcast.setRemoved(getRemoved());
+        throughputQueueBroadcast.setAdded(getAdded());
+        throughputQueueBroadcast.setThroughput(getThroughput());
+        return throughputQueueBroadcast;
+    }
+}
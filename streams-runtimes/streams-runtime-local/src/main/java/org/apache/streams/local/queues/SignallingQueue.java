@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+/**
+ * A queue that tells its consumers whenever an element is added, so that a task reading from several queues can wait
+ * for any of them to have data instead of polling each in turn.
+ */
+public interface SignallingQueue {
+
+    /**
+     * Adds a signal that is run after every element added to the queue.  Signals run on the producer's thread, so
+     * they must be fast and must not block.
+     * @param signal signal to run
+     */
+    void addConsumerSignal(Runnable signal);
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+/**
+ * Estimates how many bytes of heap an element takes up, so that queues can be bounded by size instead of by the
+ * number of elements.  Estimates are made once per element per queue and should be cheap compared to serialising the
+ * element.
+ *
+ * @param <E> type of element
+ */
+public interface SizeEstimator<E> {
+
+    /**
+     * Estimate the size of the element.  Must return the same value every time it is called with the same element.
+     * @param element element to estimate, never null
+     * @return estimated size in bytes
+     */
+    public long estimateBytes(E element);
+
+}
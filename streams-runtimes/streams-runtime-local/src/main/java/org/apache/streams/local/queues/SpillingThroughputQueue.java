@@ -0,0 +1,561 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.util.DatumSpill;
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.ThroughputQueueBroadcast;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An unbounded {@link java.util.concurrent.BlockingQueue} of {@link org.apache.streams.core.StreamsDatum}s that keeps
+ * up to a fixed number of datums in memory and spills the rest to memory-mapped segment files, so that a slow consumer
+ * neither blocks its producers nor exhausts the heap.  Measures how data flows through it in the same way as
+ * {@link org.apache.streams.local.queues.ThroughputQueue} and registers under
+ * {@link org.apache.streams.local.queues.ThroughputQueue#NAME_TEMPLATE} whenever a constructor receives a non-null id.
+ * <p/>
+ * Once a datum has been spilled, every following datum is appended to the segments as well until the consumer has
+ * read all of them back, so datums always leave the queue in the order they were added.  Datums are written to a
+ * {@link org.apache.streams.core.util.DatumSpill}, which only accepts datums that read back unchanged; any other datum
+ * is kept in memory, and may then overtake spilled datums.  A spilled datum that can not be read back is left at the
+ * head of the queue and an {@link java.lang.IllegalStateException} is thrown to the consumer, rather than dropping it.
+ * All remaining segments are deleted by {@link #close()}.
+ * <p/>
+ * !!! Warning !!!
+ * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
+ * {@link org.apache.commons.lang.NotImplementedException}.
+ */
+public class SpillingThroughputQueue implements BlockingQueue<StreamsDatum>, ThroughputQueueMXBean, Closeable, MetricsSource, SignallingQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillingThroughputQueue.class);
+
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = DatumSpill.DEFAULT_SEGMENT_BYTES;
+
+    private final int memoryCapacity;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final ArrayDeque<QueuedDatum> memory;
+    private final DatumSpill spill;
+
+    private final AtomicLong added;
+    private final AtomicLong removed;
+    private final AtomicLong spilled;
+    private final AtomicLong unspilled;
+    private final AtomicLong spilledBytes;
+    private final AtomicLong startTime;
+    private final AtomicLong totalQueueTime;
+    private final AtomicLong maxQueuedTime;
+    private final ConsumerSignals consumerSignals = new ConsumerSignals();
+    private volatile long headQueuedTime;
+    private volatile boolean active;
+
+    /**
+     * Creates an unregistered {@code SpillingThroughputQueue}
+     *
+     * @param memoryCapacity number of datums kept in memory before datums are spilled to disk
+     * @param spillDirectory directory the segment files are created in, created if it does not exist
+     */
+    public SpillingThroughputQueue(int memoryCapacity, File spillDirectory) {
+        this(memoryCapacity, spillDirectory, DEFAULT_SEGMENT_BYTES, null, LocalStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
+    }
+
+    /**
+     * Creates a registered {@code SpillingThroughputQueue}
+     *
+     * @param memoryCapacity number of datums kept in memory before datums are spilled to disk
+     * @param spillDirectory directory the segment files are created in, created if it does not exist
+     * @param segmentBytes size of each segment file. Datums larger than a segment get a segment of their own
+     * @param id unique id for this queue to be registered with. if id == NULL then not registered
+     * @param streamIdentifier
+     * @param startedAt
+     */
+    public SpillingThroughputQueue(int memoryCapacity, File spillDirectory, int segmentBytes, String id, String streamIdentifier, long startedAt) {
+        if (memoryCapacity < 1) {
+            throw new IllegalArgumentException("Memory capacity must be at least 1 : " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.memory = new ArrayDeque<>();
+        this.spill = new DatumSpill(spillDirectory, (id == null ? "queue" : id) + "-", segmentBytes);
+        this.added = new AtomicLong(0);
+        this.removed = new AtomicLong(0);
+        this.spilled = new AtomicLong(0);
+        this.unspilled = new AtomicLong(0);
+        this.spilledBytes = new AtomicLong(0);
+        this.startTime = new AtomicLong(-1);
+        this.totalQueueTime = new AtomicLong(0);
+        this.maxQueuedTime = new AtomicLong(0);
+        this.headQueuedTime = -1;
+        this.active = false;
+        if (id != null) {
+            MetricsRegistry.getInstance().register(String.format(ThroughputQueue.NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    @Override
+    public boolean add(StreamsDatum datum) {
+        return offer(datum);
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        if (datum == null) {
+            throw new NullPointerException();
+        }
+        long now = System.currentTimeMillis();
+        this.lock.lock();
+        try {
+            if (this.spill.isEmpty() && this.memory.size() < this.memoryCapacity) {
+                this.memory.add(new QueuedDatum(datum, now));
+            } else if (!spill(datum, now)) {
+                this.memory.add(new QueuedDatum(datum, now));
+            }
+            this.added.incrementAndGet();
+            updateHeadQueuedTime();
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        if (!this.active) {
+            activate(now);
+        }
+        this.consumerSignals.signal();
+        return true;
+    }
+
+    /**
+     * Never blocks, datums that do not fit in memory are spilled to disk.
+     */
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        offer(datum);
+    }
+
+    /**
+     * Never blocks, datums that do not fit in memory are spilled to disk.
+     */
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        return offer(datum);
+    }
+
+    @Override
+    public void addConsumerSignal(Runnable signal) {
+        this.consumerSignals.add(signal);
+    }
+
+    @Override
+    public StreamsDatum take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            StreamsDatum datum;
+            while ((datum = dequeue()) == null) {
+                this.notEmpty.await();
+            }
+            return datum;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public StreamsDatum poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            StreamsDatum datum;
+            while ((datum = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            return datum;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public StreamsDatum poll() {
+        this.lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public StreamsDatum remove() {
+        StreamsDatum datum = poll();
+        if (datum == null) {
+            throw new java.util.NoSuchElementException();
+        }
+        return datum;
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c, int maxElements) {
+        int count = 0;
+        this.lock.lock();
+        try {
+            StreamsDatum datum;
+            while (count < maxElements && (datum = dequeue()) != null) {
+                c.add(datum);
+                ++count;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * @throws java.lang.IllegalStateException if the head of the queue is a spilled datum that can not be read back
+     */
+    @Override
+    public StreamsDatum peek() {
+        this.lock.lock();
+        try {
+            QueuedDatum head = this.memory.peek();
+            if (head != null) {
+                return head.datum;
+            }
+            return this.spill.peek();
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Failed to read spilled datum", ioe);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        this.lock.lock();
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, this.memory.size() + this.spill.size());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Deletes all segment files.  Spilled datums that have not been read back are lost.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            long lost = this.spill.size();
+            if (lost > 0) {
+                LOGGER.warn("Closing queue with {} spilled datums that were never read", lost);
+            }
+            this.spill.close();
+            this.unspilled.addAndGet(lost);
+            this.spilledBytes.set(0);
+            updateHeadQueuedTime();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public StreamsDatum element() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public Iterator<StreamsDatum> iterator() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends StreamsDatum> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void clear() {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public long getCurrentSize() {
+        return size();
+    }
+
+    /**
+     * If elements have been removed from the queue or no elements have been added, it returns the average wait time
+     * in milliseconds. If elements have been added, but none have been removed, it returns the time waited by the first
+     * element in the queue.
+     *
+     * @return the average wait time in milliseconds
+     */
+    @Override
+    public double getAvgWait() {
+        long removed = this.removed.get();
+        if (removed == 0) {
+            long queuedTime = this.headQueuedTime;
+            if (queuedTime < 0) {
+                return 0.0;
+            }
+            return System.currentTimeMillis() - queuedTime;
+        }
+        return (double) this.totalQueueTime.get() / (double) removed;
+    }
+
+    @Override
+    public long getMaxWait() {
+        long max = this.maxQueuedTime.get();
+        long queuedTime = this.headQueuedTime;
+        if (queuedTime >= 0) {
+            max = Math.max(max, System.currentTimeMillis() - queuedTime);
+        }
+        return max;
+    }
+
+    @Override
+    public long getRemoved() {
+        return this.removed.get();
+    }
+
+    @Override
+    public long getAdded() {
+        return this.added.get();
+    }
+
+    @Override
+    public double getThroughput() {
+        return rate(this.removed.get());
+    }
+
+    @Override
+    public long getSpilled() {
+        return this.spilled.get() - this.unspilled.get();
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return this.spilledBytes.get();
+    }
+
+    @Override
+    public double getSpillRate() {
+        return rate(this.spilled.get());
+    }
+
+    @Override
+    public double getUnspillRate() {
+        return rate(this.unspilled.get());
+    }
+
+    /**
+     * Does not estimate sizes
+     */
+    @Override
+    public long getCurrentBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getPeakBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return -1;
+    }
+
+    private double rate(long count) {
+        if (this.active) {
+            return count / ((System.currentTimeMillis() - this.startTime.get()) / 1000.0);
+        }
+        return 0.0;
+    }
+
+    /**
+     * Must hold the lock
+     * @return false, if the datum could not be spilled and has to be kept in memory
+     */
+    private boolean spill(StreamsDatum datum, long queuedTime) {
+        if (!this.spill.write(datum, queuedTime)) {
+            return false;
+        }
+        this.spilled.incrementAndGet();
+        this.spilledBytes.set(this.spill.getBytes());
+        return true;
+    }
+
+    /**
+     * Removes the datum at the head of the queue, reading it back from disk if memory is empty. Must hold the lock.
+     * @return the datum, or null if the queue is empty
+     * @throws java.lang.IllegalStateException if the head of the queue is a spilled datum that can not be read back
+     */
+    private StreamsDatum dequeue() {
+        QueuedDatum head = this.memory.poll();
+        if (head == null && !this.spill.isEmpty()) {
+            long queuedTime = this.spill.nextQueuedTime();
+            try {
+                head = new QueuedDatum(this.spill.read(), queuedTime);
+            } catch (IOException ioe) {
+                LOGGER.error("Failed to read spilled datum, leaving it at the head of the queue : {}", ioe);
+                throw new IllegalStateException("Failed to read spilled datum", ioe);
+            }
+            this.unspilled.incrementAndGet();
+            this.spilledBytes.set(this.spill.getBytes());
+        }
+        if (head == null) {
+            return null;
+        }
+        long queueTime = System.currentTimeMillis() - head.queuedTime;
+        this.removed.incrementAndGet();
+        this.totalQueueTime.addAndGet(queueTime);
+        updateMaxQueuedTime(queueTime);
+        updateHeadQueuedTime();
+        return head.datum;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void updateHeadQueuedTime() {
+        QueuedDatum head = this.memory.peek();
+        if (head != null) {
+            this.headQueuedTime = head.queuedTime;
+            return;
+        }
+        this.headQueuedTime = this.spill.nextQueuedTime();
+    }
+
+    private void updateMaxQueuedTime(long queueTime) {
+        long max;
+        while ((max = this.maxQueuedTime.get()) < queueTime) {
+            if (this.maxQueuedTime.compareAndSet(max, queueTime)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void activate(long now) {
+        if (!this.active) {
+            this.startTime.set(now);
+            this.active = true;
+        }
+    }
+
+    /**
+     * A datum and the time it was queued
+     */
+    private static class QueuedDatum {
+
+        private final StreamsDatum datum;
+        private final long queuedTime;
+
+        private QueuedDatum(StreamsDatum datum, long queuedTime) {
+            this.datum = datum;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        ThroughputQueueBroadcast throughputQueueBroadcast = new ThroughputQueueBroadcast();
+        throughputQueueBroadcast.setCurrentSize(getCurrentSize());
+        throughputQueueBroadcast.setAvgWait(getAvgWait());
+        throughputQueueBroadcast.setMaxWait(getMaxWait());
+        throughputQueueBroadcast.setRemoved(getRemoved());
+        throughputQueueBroadcast.setAdded(getAdded());
+        throughputQueueBroadcast.setThroughput(getThroughput());
+        return throughputQueueBroadcast;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.streams.core.StreamsDatum;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link org.apache.streams.local.queues.SizeEstimator} for {@link org.apache.streams.core.StreamsDatum}s that walks
+ * the document and metadata and adds up rough heap sizes for strings, byte arrays, json trees, maps and collections.
+ * Strings are counted at two bytes per character, so the estimate is of the same order as the heap the datum holds,
+ * not of its serialised size.  Documents of any other type, e.g. POJOs, are counted as a fixed number of bytes.
+ */
+public class StreamsDatumSizeEstimator implements SizeEstimator<StreamsDatum> {
+
+    /**
+     * Default number of bytes counted for documents and values whose size is not estimated
+     */
+    public static final long DEFAULT_OBJECT_BYTES = 1024;
+
+    private static final long DATUM_BYTES = 64;
+    private static final long OBJECT_HEADER_BYTES = 16;
+    private static final long STRING_BYTES = 40;
+    private static final long ENTRY_BYTES = 32;
+    private static final long SCALAR_BYTES = 24;
+
+    private final long defaultObjectBytes;
+
+    public StreamsDatumSizeEstimator() {
+        this(DEFAULT_OBJECT_BYTES);
+    }
+
+    /**
+     * @param defaultObjectBytes number of bytes counted for documents and values whose size is not estimated
+     */
+    public StreamsDatumSizeEstimator(long defaultObjectBytes) {
+        this.defaultObjectBytes = defaultObjectBytes;
+    }
+
+    @Override
+    public long estimateBytes(StreamsDatum datum) {
+        long bytes = DATUM_BYTES + estimate(datum.getId()) + estimate(datum.getDocument());
+        Map<String, Object> metadata = datum.getMetadata();
+        if (metadata != null && !metadata.isEmpty()) {
+            bytes += estimate(metadata);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the size of a value of a document or of the metadata
+     * @param value value to estimate, may be null
+     * @return estimated size in bytes
+     */
+    protected long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return STRING_BYTES + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return OBJECT_HEADER_BYTES + ((byte[]) value).length;
+        } else if (value instanceof JsonNode) {
+            return estimate((JsonNode) value);
+        } else if (value instanceof Map) {
+            long bytes = OBJECT_HEADER_BYTES;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += ENTRY_BYTES + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof Collection) {
+            long bytes = OBJECT_HEADER_BYTES;
+            for (Object element : (Collection<?>) value) {
+                bytes += 8 + estimate(element);
+            }
+            return bytes;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+            return SCALAR_BYTES;
+        }
+        return this.defaultObjectBytes;
+    }
+
+    private long estimate(JsonNode node) {
+        if (node.isTextual()) {
+            return STRING_BYTES + 2L * node.textValue().length();
+        } else if (node.isBinary()) {
+            return OBJECT_HEADER_BYTES + node.asText().length() * 3L / 4;
+        } else if (node.isObject()) {
+            long bytes = OBJECT_HEADER_BYTES;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                bytes += ENTRY_BYTES + STRING_BYTES + 2L * field.getKey().length() + estimate(field.getValue());
+            }
+            return bytes;
+        } else if (node.isArray()) {
+            long bytes = OBJECT_HEADER_BYTES;
+            for (JsonNode element : node) {
+                bytes += 8 + estimate(element);
+            }
+            return bytes;
+        }
+        return SCALAR_BYTES;
+    }
+}
@@ -18,31 +18,40 @@
 package org.apache.streams.local.queues;
 
 import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.ThroughputQueueBroadcast;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.lang.NotImplementedException;
 
-import javax.management.*;
-import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A {@link java.util.concurrent.BlockingQueue} implementation that allows the measure measurement of how
  * data flows through the queue.  Is also a {@code MBean} so the flow statistics can be viewed through
- * JMX. Registration of the bean happens whenever a constructor receives a non-null id.
+ * JMX. Registration of the bean happens whenever a constructor receives a non-null id.  Besides a maximum number of
+ * elements, the queue can be bounded by the estimated size of its elements in bytes, see
+ * {@link org.apache.streams.local.queues.SizeEstimator}.
  * <p/>
  * !!! Warning !!!
  * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
  * {@link org.apache.commons.lang.NotImplementedException}.
  */
-public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBean {
+public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBean, MetricsSource, SignallingQueue {
 
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=ThroughputQueue,name=%s,identifier=%s,startedAt=%s";
 
@@ -56,6 +65,14 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
     private long maxQueuedTime;
     private volatile boolean active;
     private ReadWriteLock maxQueueTimeLock;
+    private final long maxBytes;
+    private final SizeEstimator<? super E> sizeEstimator;
+    private final AtomicLong currentBytes;
+    private final AtomicLong peakBytes;
+    private final ReentrantLock bytesLock;
+    private final Condition bytesReleased;
+    private final String id;
+    private final ConsumerSignals consumerSignals = new ConsumerSignals();
 
     /**
      * Creates an unbounded, unregistered {@code ThroughputQueue}
@@ -128,6 +145,30 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
      * @param id      unique id for this queue to be registered with. if id == NULL then not registered
      */
     public ThroughputQueue(int maxSize, String id, String streamIdentifier, long startedAt) {
+        this(maxSize, -1, null, id, streamIdentifier, startedAt);
+    }
+
+    /**
+     * Creates a registered {@code ThroughputQueue} that is bounded by the estimated size of its elements in bytes.
+     * Producers block once the elements on the queue take up maxBytes.  An element larger than the budget is still
+     * accepted when the queue is empty, so it can never block forever.
+     *
+     * @param maxSize maximum capacity of queue, if maxSize < 1 then unbounded by count
+     * @param maxBytes maximum estimated bytes of the elements on the queue, if maxBytes < 1 then unbounded by size
+     * @param sizeEstimator estimates the bytes of each element, if NULL sizes are neither measured nor bounded
+     * @param id      unique id for this queue to be registered with. if id == NULL then not registered
+     */
+    public ThroughputQueue(int maxSize, long maxBytes, SizeEstimator<? super E> sizeEstimator, String id, String streamIdentifier, long startedAt) {
+        if (maxBytes > 0 && sizeEstimator == null) {
+            throw new IllegalArgumentException("A size estimator is required to bound the queue by bytes");
+        }
+        this.id = id;
+        this.maxBytes = maxBytes;
+        this.sizeEstimator = sizeEstimator;
+        this.currentBytes = new AtomicLong(0);
+        this.peakBytes = new AtomicLong(0);
+        this.bytesLock = new ReentrantLock();
+        this.bytesReleased = this.bytesLock.newCondition();
         if (maxSize < 1) {
             this.underlyingQueue = new LinkedBlockingQueue<>();
         } else {
@@ -141,60 +182,80 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
         this.maxQueueTimeLock = new ReentrantReadWriteLock();
         this.totalQueueTime = new AtomicLong(0);
         if (id != null) {
-            try {
-                ObjectName name = new ObjectName(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt));
-                MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
-                mbs.registerMBean(this, name);
-            } catch (MalformedObjectNameException | InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException e) {
-                LOGGER.error("Failed to register MXBean : {}", e);
-                throw new RuntimeException(e);
-            }
+            MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
         }
     }
 
     @Override
     public boolean add(E e) {
-        if (this.underlyingQueue.add(new ThroughputElement<E>(e))) {
-            internalAddElement();
+        if (offer(e)) {
             return true;
         }
-        return false;
+        throw new IllegalStateException("Queue full");
     }
 
     @Override
     public boolean offer(E e) {
-        if (this.underlyingQueue.offer(new ThroughputElement<E>(e))) {
+        ThroughputElement<E> element = new ThroughputElement<E>(e, estimateBytes(e));
+        if (!tryReserveBytes(element.getBytes())) {
+            return false;
+        }
+        if (this.underlyingQueue.offer(element)) {
             internalAddElement();
             return true;
         }
+        releaseBytes(element.getBytes());
         return false;
     }
 
     @Override
     public void put(E e) throws InterruptedException {
-        this.underlyingQueue.put(new ThroughputElement<E>(e));
+        ThroughputElement<E> element = new ThroughputElement<E>(e, estimateBytes(e));
+        reserveBytes(element.getBytes());
+        try {
+            this.underlyingQueue.put(element);
+        } catch (InterruptedException ie) {
+            releaseBytes(element.getBytes());
+            throw ie;
+        }
         internalAddElement();
     }
 
     @Override
     public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-        if (this.underlyingQueue.offer(new ThroughputElement<E>(e), timeout, unit)) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ThroughputElement<E> element = new ThroughputElement<E>(e, estimateBytes(e));
+        if (!reserveBytes(element.getBytes(), deadline)) {
+            return false;
+        }
+        boolean added = false;
+        try {
+            added = this.underlyingQueue.offer(element, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } finally {
+            if (!added) {
+                releaseBytes(element.getBytes());
+            }
+        }
+        if (added) {
             internalAddElement();
-            return true;
         }
-        return false;
+        return added;
     }
 
     @Override
     public E take() throws InterruptedException {
+        Object event = FlightRecorderEvents.QUEUE_WAIT.begin();
         ThroughputElement<E> e = this.underlyingQueue.take();
         internalRemoveElement(e);
+        commitWait(event, e);
         return e.getElement();
     }
 
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Object event = FlightRecorderEvents.QUEUE_WAIT.begin();
         ThroughputElement<E> e = this.underlyingQueue.poll(timeout, unit);
+        commitWait(event, e);
         if(e != null) {
             internalRemoveElement(e);
             return e.getElement();
@@ -210,7 +271,11 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
     @Override
     public boolean remove(Object o) {
         try {
-            return this.underlyingQueue.remove(new ThroughputElement<E>((E) o));
+            if (this.underlyingQueue.remove(new ThroughputElement<E>((E) o))) {
+                releaseBytes(estimateBytes((E) o));
+                return true;
+            }
+            return false;
         } catch (ClassCastException cce) {
             return false;
         }
@@ -227,12 +292,18 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        throw new NotImplementedException();
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        throw new NotImplementedException();
+        List<ThroughputElement<E>> drained = new ArrayList<>();
+        int count = this.underlyingQueue.drainTo(drained, maxElements);
+        for(ThroughputElement<E> e : drained) {
+            internalRemoveElement(e);
+            c.add(e.getElement());
+        }
+        return count;
     }
 
     @Override
@@ -247,7 +318,9 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
 
     @Override
     public E poll() {
+        Object event = FlightRecorderEvents.QUEUE_WAIT.begin();
         ThroughputElement<E> e = this.underlyingQueue.poll();
+        commitWait(event, e);
         if(e != null) {
             internalRemoveElement(e);
             return e.getElement();
@@ -379,6 +452,146 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
         return 0.0;
     }
 
+    @Override
+    public long getCurrentBytes() {
+        return this.currentBytes.get();
+    }
+
+    @Override
+    public long getPeakBytes() {
+        return this.peakBytes.get();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Never spills
+     */
+    @Override
+    public long getSpilled() {
+        return 0;
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return 0;
+    }
+
+    @Override
+    public double getSpillRate() {
+        return 0.0;
+    }
+
+    @Override
+    public double getUnspillRate() {
+        return 0.0;
+    }
+
+    private long estimateBytes(E e) {
+        return this.sizeEstimator == null || e == null ? 0 : Math.max(0, this.sizeEstimator.estimateBytes(e));
+    }
+
+    /**
+     * Claims room for an element without waiting
+     * @return true, if the element fits in the byte budget
+     */
+    private boolean tryReserveBytes(long bytes) {
+        if (this.maxBytes < 1) {
+            addBytes(bytes);
+            return true;
+        }
+        this.bytesLock.lock();
+        try {
+            if (fits(bytes)) {
+                addBytes(bytes);
+                return true;
+            }
+            return false;
+        } finally {
+            this.bytesLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until there is room for an element in the byte budget and claims it
+     */
+    private void reserveBytes(long bytes) throws InterruptedException {
+        if (this.maxBytes < 1) {
+            addBytes(bytes);
+            return;
+        }
+        this.bytesLock.lockInterruptibly();
+        try {
+            while (!fits(bytes)) {
+                this.bytesReleased.await();
+            }
+            addBytes(bytes);
+        } finally {
+            this.bytesLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until there is room for an element in the byte budget, or the deadline passes, and claims it
+     * @param deadline deadline in {@link System#nanoTime()}
+     * @return true, if room was claimed before the deadline
+     */
+    private boolean reserveBytes(long bytes, long deadline) throws InterruptedException {
+        if (this.maxBytes < 1) {
+            addBytes(bytes);
+            return true;
+        }
+        this.bytesLock.lockInterruptibly();
+        try {
+            while (!fits(bytes)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.bytesReleased.awaitNanos(remaining);
+            }
+            addBytes(bytes);
+            return true;
+        } finally {
+            this.bytesLock.unlock();
+        }
+    }
+
+    /**
+     * An element fits if the queue holds no bytes yet, so that an element larger than the budget is not blocked forever
+     */
+    private boolean fits(long bytes) {
+        long current = this.currentBytes.get();
+        return current == 0 || current + bytes <= this.maxBytes;
+    }
+
+    private void addBytes(long bytes) {
+        if (bytes > 0) {
+            long current = this.currentBytes.addAndGet(bytes);
+            long peak;
+            while ((peak = this.peakBytes.get()) < current && !this.peakBytes.compareAndSet(peak, current)) {
+                //retry
+            }
+        }
+    }
+
+    private void releaseBytes(long bytes) {
+        if (bytes > 0) {
+            this.currentBytes.addAndGet(-bytes);
+            if (this.maxBytes > 0) {
+                this.bytesLock.lock();
+                try {
+                    this.bytesReleased.signalAll();
+                } finally {
+                    this.bytesLock.unlock();
+                }
+            }
+        }
+    }
+
     /**
      * Handles updating the stats whenever elements are added to the queue
      */
@@ -390,6 +603,23 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
                 this.active = true;
             }
         }
+        this.consumerSignals.signal();
+    }
+
+    @Override
+    public void addConsumerSignal(Runnable signal) {
+        this.consumerSignals.add(signal);
+    }
+
+    /**
+     * Commits a flight recorder queue wait event, if one was begun.  A poll that timed out reports zero queued time.
+     * @param event event returned by {@link FlightRecorderEvents.EventType#begin()}, may be null
+     * @param e Element removed, may be null
+     */
+    private void commitWait(Object event, ThroughputElement<E> e) {
+        if(event != null) {
+            FlightRecorderEvents.QUEUE_WAIT.commit(event, this.id, e == null ? 0 : e.getWaited());
+        }
     }
 
     /**
@@ -398,6 +628,7 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
      */
     private void internalRemoveElement(ThroughputElement<E> e) {
         if(e != null) {
+            releaseBytes(e.getBytes());
             this.elementsRemoved.incrementAndGet();
             Long queueTime = e.getWaited();
             this.totalQueueTime.addAndGet(queueTime);
@@ -431,12 +662,27 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
 
         private long queuedTime;
         private E element;
+        private long bytes;
 
         protected ThroughputElement(E element) {
+            this(element, 0);
+        }
+
+        protected ThroughputElement(E element, long bytes) {
             this.element = element;
+            this.bytes = bytes;
             this.queuedTime = System.currentTimeMillis();
         }
 
+        /**
+         * Get the estimated size of the element in bytes
+         *
+         * @return estimated size in bytes, 0 if sizes are not measured
+         */
+        public long getBytes() {
+            return this.bytes;
+        }
+
         /**
          * Get the time this element has been waiting on the queue.
          * current time - time element was queued
@@ -477,4 +723,16 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
             return false;
         }
     }
+
+    @Override
+    public Broadcast toBroadcast() {
+        ThroughputQueueBroadcast throughputQueueBroadcast = new ThroughputQueueBroadcast();
+        throughputQueueBroadcast.setCurrentSize(getCurrentSize());
+        throughputQueueBroadcast.setAvgWait(getAvgWait());
+        throughputQueueBroadcast.setMaxWait(getMaxWait());
+        throughputQueueBroadcast.setRemoved(getRemoved());
+        throughputQueueBroadcast.setAdded(getAdded());
+        throughputQueueBroadcast.setThroughput(getThroughput());
+        return throughputQueueBroadcast;
+    }
 }
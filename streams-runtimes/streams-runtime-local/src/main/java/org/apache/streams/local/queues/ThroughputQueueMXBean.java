@@ -62,5 +62,47 @@ public interface ThroughputQueueMXBean {
      */
     public double getThroughput();
 
+    /**
+     * Get the number of items that have been spilled to disk and not yet read back.  Always 0 for queues that do not
+     * spill.
+     * @return number of items on disk
+     */
+    public long getSpilled();
+
+    /**
+     * Get the number of bytes of the items that have been spilled to disk and not yet read back
+     * @return bytes of the items on disk
+     */
+    public long getSpilledBytes();
+
+    /**
+     * Get the rate at which items are spilled to disk, measured over the time the queue has been active
+     * @return items spilled / time active in seconds
+     */
+    public double getSpillRate();
+
+    /**
+     * Get the rate at which spilled items are read back from disk, measured over the time the queue has been active
+     * @return items read back / time active in seconds
+     */
+    public double getUnspillRate();
+
+    /**
+     * Get the estimated size in bytes of the items on the queue.  Always 0 for queues that do not estimate sizes.
+     * @return estimated bytes on the queue
+     */
+    public long getCurrentBytes();
+
+    /**
+     * Get the largest estimated size in bytes the items on the queue have had at one time
+     * @return peak estimated bytes on the queue
+     */
+    public long getPeakBytes();
+
+    /**
+     * Get the byte budget of the queue
+     * @return maximum estimated bytes on the queue, or -1 if the queue is not bounded by size
+     */
+    public long getMaxBytes();
 
 }
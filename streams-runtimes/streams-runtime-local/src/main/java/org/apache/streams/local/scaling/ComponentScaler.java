@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.scaling;
+
+import org.apache.streams.local.counters.StreamsTaskCounterMXBean;
+import org.apache.streams.local.queues.ThroughputQueueMXBean;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.ComponentScalerBroadcast;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how many tasks a component should run with, from periodic samples of its inbound
+ * {@link org.apache.streams.local.queues.ThroughputQueueMXBean} and its
+ * {@link org.apache.streams.local.counters.StreamsTaskCounterMXBean}.  Is also an {@code MBean} so that the decisions
+ * can be viewed through JMX and broadcast. Registration of the bean happens whenever the constructor receives a
+ * non-null stream identifier.
+ * <p/>
+ * The queue and counter only keep totals, so each sample is compared with the previous one to get the average time
+ * datums waited on the queue and the fraction of time the tasks were busy during the interval.  A task is added when
+ * datums waited longer than the target wait and are still queued, and retired when the tasks were busy less than
+ * {@link #SCALE_DOWN_UTILIZATION} of the time and datums did not wait longer than the target.  The number of tasks
+ * changes by one at a time, and the interval after a change is only sampled, so that the effect of a change is
+ * measured before the next one.
+ */
+public class ComponentScaler implements ComponentScalerMXBean, MetricsSource {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=ComponentScaler,name=%s,identifier=%s,startedAt=%s";
+
+    /**
+     * Utilization below which a task is retired
+     */
+    public static final double SCALE_DOWN_UTILIZATION = 0.3;
+
+    public enum Decision {
+        SCALE_UP,
+        SCALE_DOWN,
+        HOLD
+    }
+
+    private final String componentId;
+    private final int minTasks;
+    private final int maxTasks;
+    private final long targetWaitMs;
+
+    private volatile int numTasks;
+    private volatile Decision lastDecision;
+    private volatile long lastScaleTime;
+    private volatile double intervalWait;
+    private volatile double intervalUtilization;
+    private final AtomicLong scaleUps;
+    private final AtomicLong scaleDowns;
+
+    private long sampleTime;
+    private long sampleRemoved;
+    private double sampleTotalWait;
+    private long sampleReceived;
+    private boolean settling;
+
+    /**
+     * @param componentId id of the component that is scaled
+     * @param numTasks number of tasks the component starts with
+     * @param minTasks fewest tasks to scale down to, at least 1
+     * @param maxTasks most tasks to scale up to
+     * @param targetWaitMs average time in milliseconds datums may wait on the inbound queue before a task is added
+     * @param streamIdentifier stream identifier to register the bean under, if NULL then not registered
+     * @param startedAt
+     */
+    public ComponentScaler(String componentId, int numTasks, int minTasks, int maxTasks, long targetWaitMs, String streamIdentifier, long startedAt) {
+        if (minTasks < 1 || maxTasks < minTasks) {
+            throw new IllegalArgumentException("Invalid task bounds for component " + componentId + " : [" + minTasks + ", " + maxTasks + "]");
+        }
+        this.componentId = componentId;
+        this.minTasks = minTasks;
+        this.maxTasks = maxTasks;
+        this.targetWaitMs = targetWaitMs;
+        this.numTasks = numTasks;
+        this.lastDecision = Decision.HOLD;
+        this.lastScaleTime = -1;
+        this.scaleUps = new AtomicLong(0);
+        this.scaleDowns = new AtomicLong(0);
+        this.sampleTime = -1;
+        if (streamIdentifier != null) {
+            MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, componentId, streamIdentifier, startedAt), this);
+        }
+    }
+
+    public String getComponentId() {
+        return this.componentId;
+    }
+
+    /**
+     * Takes a sample and decides whether the component should run with one task more, one task less, or as many as it
+     * does.
+     * @param now current time in milliseconds
+     * @param queue inbound queue of the component
+     * @param counter counter shared by the tasks of the component
+     * @param runningTasks number of tasks the component currently runs with
+     * @return the decision
+     */
+    public synchronized Decision sample(long now, ThroughputQueueMXBean queue, StreamsTaskCounterMXBean counter, int runningTasks) {
+        this.numTasks = runningTasks;
+        long removed = queue.getRemoved();
+        double totalWait = queue.getAvgWait() * removed;
+        long received = counter.getNumReceived();
+        Decision decision = Decision.HOLD;
+        if (this.sampleTime >= 0 && now > this.sampleTime) {
+            long removedDelta = removed - this.sampleRemoved;
+            long currentSize = queue.getCurrentSize();
+            if (removedDelta > 0) {
+                this.intervalWait = Math.max(0, (totalWait - this.sampleTotalWait) / removedDelta);
+            } else {
+                // nothing left the queue, so anything still queued has waited the whole interval
+                this.intervalWait = currentSize > 0 ? now - this.sampleTime : 0;
+            }
+            this.intervalUtilization = runningTasks > 0 ? (received - this.sampleReceived) * counter.getAvgTime() / ((now - this.sampleTime) * (double) runningTasks) : 0.0;
+            if (runningTasks < this.minTasks) {
+                decision = Decision.SCALE_UP;
+            } else if (runningTasks > this.maxTasks) {
+                decision = Decision.SCALE_DOWN;
+            } else if (this.settling) {
+                this.settling = false;
+            } else if (this.intervalWait > this.targetWaitMs && currentSize > 0 && runningTasks < this.maxTasks) {
+                decision = Decision.SCALE_UP;
+            } else if (this.intervalUtilization < SCALE_DOWN_UTILIZATION && this.intervalWait <= this.targetWaitMs && runningTasks > this.minTasks) {
+                decision = Decision.SCALE_DOWN;
+            }
+        }
+        this.sampleTime = now;
+        this.sampleRemoved = removed;
+        this.sampleTotalWait = totalWait;
+        this.sampleReceived = received;
+        this.lastDecision = decision;
+        return decision;
+    }
+
+    /**
+     * Records that a decision has been carried out
+     * @param decision decision that was carried out
+     * @param runningTasks number of tasks the component runs with afterwards
+     */
+    public synchronized void scaled(Decision decision, int runningTasks) {
+        this.numTasks = runningTasks;
+        if (decision == Decision.SCALE_UP) {
+            this.scaleUps.incrementAndGet();
+        } else if (decision == Decision.SCALE_DOWN) {
+            this.scaleDowns.incrementAndGet();
+        } else {
+            return;
+        }
+        this.lastScaleTime = System.currentTimeMillis();
+        this.settling = true;
+    }
+
+    @Override
+    public int getNumTasks() {
+        return this.numTasks;
+    }
+
+    @Override
+    public int getMinTasks() {
+        return this.minTasks;
+    }
+
+    @Override
+    public int getMaxTasks() {
+        return this.maxTasks;
+    }
+
+    @Override
+    public long getScaleUps() {
+        return this.scaleUps.get();
+    }
+
+    @Override
+    public long getScaleDowns() {
+        return this.scaleDowns.get();
+    }
+
+    @Override
+    public String getLastDecision() {
+        return this.lastDecision.name();
+    }
+
+    @Override
+    public long getLastScaleTime() {
+        return this.lastScaleTime;
+    }
+
+    @Override
+    public double getIntervalWait() {
+        return this.intervalWait;
+    }
+
+    @Override
+    public double getIntervalUtilization() {
+        return this.intervalUtilization;
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        ComponentScalerBroadcast componentScalerBroadcast = new ComponentScalerBroadcast();
+        componentScalerBroadcast.setNumTasks((long) getNumTasks());
+        componentScalerBroadcast.setMinTasks((long) getMinTasks());
+        componentScalerBroadcast.setMaxTasks((long) getMaxTasks());
+        componentScalerBroadcast.setScaleUps(getScaleUps());
+        componentScalerBroadcast.setScaleDowns(getScaleDowns());
+        componentScalerBroadcast.setLastDecision(getLastDecision());
+        componentScalerBroadcast.setLastScaleTime(getLastScaleTime());
+        componentScalerBroadcast.setIntervalWait(getIntervalWait());
+        componentScalerBroadcast.setIntervalUtilization(getIntervalUtilization());
+        return componentScalerBroadcast;
+    }
+}
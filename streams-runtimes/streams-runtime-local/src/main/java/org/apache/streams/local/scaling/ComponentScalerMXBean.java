@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.scaling;
+
+/**
+ * MXBean that exposes the number of tasks a component runs with and the scaling decisions made for it
+ */
+public interface ComponentScalerMXBean {
+
+    /**
+     * Get the number of tasks the component currently runs with
+     * @return number of running tasks
+     */
+    public int getNumTasks();
+
+    /**
+     * Get the fewest tasks the component is scaled down to
+     * @return minimum number of tasks
+     */
+    public int getMinTasks();
+
+    /**
+     * Get the most tasks the component is scaled up to
+     * @return maximum number of tasks
+     */
+    public int getMaxTasks();
+
+    /**
+     * Get the number of times a task has been added to the component
+     * @return number of scale ups
+     */
+    public long getScaleUps();
+
+    /**
+     * Get the number of times a task has been retired from the component
+     * @return number of scale downs
+     */
+    public long getScaleDowns();
+
+    /**
+     * Get the last decision made for the component, one of SCALE_UP, SCALE_DOWN or HOLD
+     * @return last decision
+     */
+    public String getLastDecision();
+
+    /**
+     * Get the time of the last scale up or scale down in milliseconds since the epoch
+     * @return time of the last change in the number of tasks, -1 if it never changed
+     */
+    public long getLastScaleTime();
+
+    /**
+     * Get the average time in milliseconds datums waited on the inbound queue of the component during the last
+     * sampling interval
+     * @return average wait in the last interval
+     */
+    public double getIntervalWait();
+
+    /**
+     * Get the fraction of the last sampling interval the tasks of the component spent processing
+     * @return utilization in the last interval, between 0 and 1 for a component that keeps up
+     */
+    public double getIntervalUtilization();
+
+}
@@ -20,10 +20,13 @@ package org.apache.streams.local.tasks;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.common.collect.Lists;
 import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.core.util.StreamsDatumCodec;
 import org.apache.streams.jackson.StreamsJacksonMapper;
 import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.tracing.LatencyTracer;
 import org.apache.streams.pojo.json.Activity;
 import org.apache.streams.util.ComponentUtils;
 import org.apache.streams.util.SerializationUtil;
@@ -33,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,13 +48,23 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
     private List<BlockingQueue<StreamsDatum>> inQueues = new ArrayList<BlockingQueue<StreamsDatum>>();
     private List<BlockingQueue<StreamsDatum>> outQueues = new LinkedList<BlockingQueue<StreamsDatum>>();
-    private int inIndex = 0;
+    private Set<BlockingQueue<StreamsDatum>> readOnlyOutQueues = Collections.newSetFromMap(new IdentityHashMap<BlockingQueue<StreamsDatum>, Boolean>());
+    private boolean outputShared = false;
+    private InputSelector inputSelector = new InputSelector();
+    private LatencyTracer latencyTracer;
+    private String tracedComponentId;
     private ObjectMapper mapper;
     protected Map<String, Object> streamConfig;
 
     private long startedAt;
     private String streamIdentifier;
 
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final Object inputLock = new Object();
+    private volatile boolean inputComplete = false;
+    private Thread pollingThread; //guarded by inputLock
+    private boolean wokenForCompletion = false; //guarded by inputLock
+
     public BaseStreamsTask(Map<String, Object> config) {
         this.mapper = StreamsJacksonMapper.getInstance();
         this.mapper.registerSubtypes(Activity.class);
@@ -63,12 +77,46 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
     @Override
     public void addInputQueue(BlockingQueue<StreamsDatum> inputQueue) {
+        this.addInputQueue(inputQueue, InputSelector.DEFAULT_WEIGHT, InputSelector.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Add an input queue for this task.  Tasks that read from more than one input take datums from the inputs of the
+     * highest priority that have data, and from inputs of equal priority in proportion to their weights.
+     * @param inputQueue queue to add
+     * @param weight share of the datums taken from this queue, relative to queues of the same priority.  At least 1.
+     * @param priority queues of a higher priority are always read first
+     */
+    public void addInputQueue(BlockingQueue<StreamsDatum> inputQueue, int weight, int priority) {
+        this.inputSelector.addInput(inputQueue, weight, priority);
         this.inQueues.add(inputQueue);
     }
 
     @Override
     public void addOutputQueue(BlockingQueue<StreamsDatum> outputQueue) {
+        this.addOutputQueue(outputQueue, false);
+    }
+
+    /**
+     * Add an output queue for this task.
+     * @param outputQueue queue to add
+     * @param readOnlyConsumer true, if the component reading from the queue never modifies the datums it receives
+     */
+    public void addOutputQueue(BlockingQueue<StreamsDatum> outputQueue, boolean readOnlyConsumer) {
         this.outQueues.add(outputQueue);
+        if(readOnlyConsumer) {
+            this.readOnlyOutQueues.add(outputQueue);
+        }
+    }
+
+    /**
+     * Tells the task whether the datums it emits may be shared with other components.  A read only component may
+     * emit the very datum it was handed, which other read only components share, so none of its output queues read
+     * by a component that modifies datums may take the datum itself.
+     * @param outputShared true, if this task runs a {@link org.apache.streams.core.ReadOnlyDatumOperation}
+     */
+    public void setOutputShared(boolean outputShared) {
+        this.outputShared = outputShared;
     }
 
     @Override
@@ -76,46 +124,279 @@ public abstract class BaseStreamsTask implements StreamsTask {
         return this.inQueues;
     }
 
+    /**
+     * Tells the task that every upstream component has finished, so nothing more will be added to its input queues.
+     * The task finishes as soon as it has drained them, and a task waiting on an empty queue is woken immediately
+     * rather than at the end of its poll timeout.
+     */
+    public void inputComplete() {
+        synchronized (this.inputLock) {
+            this.inputComplete = true;
+            this.inputSelector.signal();
+            if(this.pollingThread != null) {
+                this.wokenForCompletion = true;
+                this.pollingThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns true once {@link #inputComplete()} has been called
+     * @return true, if no more data will be added to the input queues
+     */
+    public boolean isInputComplete() {
+        return this.inputComplete;
+    }
+
+    /**
+     * Waits for the run method of this task to return.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true, if the task finished before the timeout elapsed
+     * @throws InterruptedException
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.completed.await(timeout, unit);
+    }
+
+    /**
+     * Waits, without a timeout, for the run method of this task to return.
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+        this.completed.await();
+    }
+
+    /**
+     * Returns true once the run method of this task has returned
+     * @return true, if the task has finished
+     */
+    public boolean isCompleted() {
+        return this.completed.getCount() == 0;
+    }
+
+    /**
+     * Signals anyone waiting on {@link #awaitCompletion(long, java.util.concurrent.TimeUnit)}.  Implementations call
+     * this as the last step of their run method.
+     */
+    protected void markCompleted() {
+        this.completed.countDown();
+    }
+
+    /**
+     * Polls the queue like {@link java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)}, but
+     * returns null as soon as {@link #inputComplete()} is called instead of waiting out the timeout.
+     * @param queue queue to poll
+     * @param timeout maximum time to wait for a datum
+     * @param unit unit of the timeout
+     * @return the next datum, or null if there is none
+     * @throws InterruptedException if the thread is interrupted for any other reason
+     */
+    protected StreamsDatum pollInput(BlockingQueue<StreamsDatum> queue, long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this.inputLock) {
+            if(this.inputComplete && queue.isEmpty()) {
+                return null;
+            }
+            this.pollingThread = Thread.currentThread();
+        }
+        try {
+            return queue.poll(timeout, unit);
+        } catch (InterruptedException ie) {
+            synchronized (this.inputLock) {
+                if(!this.wokenForCompletion) {
+                    throw ie;
+                }
+            }
+            return null;
+        } finally {
+            synchronized (this.inputLock) {
+                this.pollingThread = null;
+                if(this.wokenForCompletion) {
+                    //the wake up may have landed after the poll returned, so don't leak it into processing
+                    this.wokenForCompletion = false;
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the next datum from whichever input queue the {@link org.apache.streams.local.tasks.InputSelector} picks,
+     * waiting up to the timeout for any of them to have data.  A task with a single input waits on that queue, see
+     * {@link #pollInput(java.util.concurrent.BlockingQueue, long, java.util.concurrent.TimeUnit)}.  Returns null as
+     * soon as {@link #inputComplete()} is called and the inputs are empty.
+     * @param timeout maximum time to wait for a datum
+     * @param unit unit of the timeout
+     * @return the next datum, or null if there is none
+     * @throws InterruptedException
+     */
+    protected StreamsDatum pollInputs(long timeout, TimeUnit unit) throws InterruptedException {
+        if(this.inQueues.size() == 1) {
+            return pollInput(this.inQueues.get(0), timeout, unit);
+        }
+        if(this.inputComplete && this.inputSelector.isEmpty()) {
+            return null;
+        }
+        return this.inputSelector.poll(timeout, unit);
+    }
+
+    /**
+     * Moves up to maxElements datums that are already queued on the inputs into the collection, without waiting
+     * @param c collection to add the datums to
+     * @param maxElements most datums to move
+     * @return number of datums moved
+     */
+    protected int drainInputs(Collection<? super StreamsDatum> c, int maxElements) {
+        if(this.inQueues.size() == 1) {
+            return this.inQueues.get(0).drainTo(c, maxElements);
+        }
+        int count = 0;
+        StreamsDatum datum;
+        while(count < maxElements && (datum = this.inputSelector.poll()) != null) {
+            c.add(datum);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of datums waiting on the input queues
+     */
+    protected long getInputSize() {
+        long size = 0;
+        for(BlockingQueue<StreamsDatum> queue : this.inQueues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns true if every input queue is empty
+     * @return true, if no input has data
+     */
+    protected boolean isInputEmpty() {
+        return this.inputSelector.isEmpty();
+    }
+
+    /**
+     * Wakes the task if it is waiting in {@link #pollInputs(long, java.util.concurrent.TimeUnit)}.  Input queues that
+     * are a {@link org.apache.streams.local.queues.SignallingQueue} wake the task themselves; producers writing to any
+     * other queue can call this after adding to it so that the task does not wait out its back off.
+     */
+    public void signalInput() {
+        this.inputSelector.signal();
+    }
+
+    /**
+     * Records the number of datums taken from each input queue in the counter
+     * @param counter
+     */
+    protected void setInputCounter(StreamsTaskCounter counter) {
+        this.inputSelector.setCounter(counter);
+    }
+
+    /**
+     * Sets the tracer that measures the latency of sampled datums through the stream.  Must be called before the task
+     * is run.
+     * @param latencyTracer tracer of the stream
+     * @param componentId id this task's component appears under in the traced paths
+     */
+    public void setLatencyTracer(LatencyTracer latencyTracer, String componentId) {
+        this.latencyTracer = latencyTracer;
+        this.tracedComponentId = componentId;
+    }
+
+    /**
+     * Samples a datum emitted by a provider for tracing, see
+     * {@link org.apache.streams.local.tracing.LatencyTracer#start(org.apache.streams.core.StreamsDatum, String)}
+     * @param datum emitted datum
+     */
+    protected void traceStart(StreamsDatum datum) {
+        if(this.latencyTracer != null) {
+            this.latencyTracer.start(datum, this.tracedComponentId);
+        }
+    }
+
+    /**
+     * Extends the trace of a datum output by a processor, see
+     * {@link org.apache.streams.local.tracing.LatencyTracer#exit(org.apache.streams.core.StreamsDatum, org.apache.streams.core.StreamsDatum, String)}
+     * @param input datum the output was produced from, or null if not known
+     * @param output output datum
+     * @return the datum to emit in place of the output
+     */
+    protected StreamsDatum traceExit(StreamsDatum input, StreamsDatum output) {
+        if(this.latencyTracer != null) {
+            return this.latencyTracer.exit(input, output, this.tracedComponentId);
+        }
+        return output;
+    }
+
+    /**
+     * Records the latency of a datum about to be written by a writer, see
+     * {@link org.apache.streams.local.tracing.LatencyTracer#complete(org.apache.streams.core.StreamsDatum, String)}
+     * @param datum datum to write
+     * @return the datum to write, without the trace in its metadata
+     */
+    protected StreamsDatum traceComplete(StreamsDatum datum) {
+        if(this.latencyTracer != null) {
+            return this.latencyTracer.complete(datum, this.tracedComponentId);
+        }
+        return datum;
+    }
+
     @Override
     public List<BlockingQueue<StreamsDatum>> getOutputQueues() {
         return this.outQueues;
     }
 
     /**
-     * SHOULD NOT BE NECCESARY, WILL REMOVE.
-     * Round Robins through input queues to get the next StreamsDatum. If all input queues are empty, it will return null.
+     * Gets the next StreamsDatum from the input queues without waiting. If all input queues are empty, it will return
+     * null.
      * @return the next StreamsDatum or null if all input queues are empty.
+     * @deprecated use {@link #pollInputs(long, java.util.concurrent.TimeUnit)}, which waits for data
      */
     @Deprecated
     protected StreamsDatum getNextDatum() {
-        int startIndex = this.inIndex;
-        int index = startIndex;
-        StreamsDatum datum = null;
-        do {
-            datum = this.inQueues.get(index).poll();
-            index = getNextInputQueueIndex();
-        } while( datum == null && startIndex != index);
-        return datum;
+        return this.inputSelector.poll();
     }
 
     /**
-     * Adds a StreamDatum to the outgoing queues.  If there are multiple queues, it uses serialization to create
-     * clones of the datum and adds a new clone to each queue.
+     * Adds a StreamDatum to the outgoing queues.  The task gives up ownership of the datum once it is added.
+     *
+     * If there are multiple queues, queues read by read only components all share the datum.  Every other queue gets
+     * its own clone, except that the last of them gets the datum itself when no read only component shares it and
+     * the output of this task is not shared (see {@link #setOutputShared(boolean)}).
      * @param datum
      */
     protected void addToOutgoingQueue(StreamsDatum datum) throws InterruptedException{
-        if(this.outQueues.size() == 1) {
+        if(this.outQueues.size() == 1 && (!this.outputShared || this.readOnlyOutQueues.contains(this.outQueues.get(0)))) {
             outQueues.get(0).put(datum);
         }
         else {
-            List<BlockingQueue<StreamsDatum>> toOutput = Lists.newLinkedList(this.outQueues);
+            Map<BlockingQueue<StreamsDatum>, StreamsDatum> toOutput = new LinkedHashMap<BlockingQueue<StreamsDatum>, StreamsDatum>();
+            BlockingQueue<StreamsDatum> owner = null;
+            for(BlockingQueue<StreamsDatum> queue : this.outQueues) {
+                if(this.readOnlyOutQueues.contains(queue)) {
+                    toOutput.put(queue, datum);
+                } else {
+                    owner = queue;
+                }
+            }
+            boolean shared = this.outputShared || !toOutput.isEmpty();
+            for(BlockingQueue<StreamsDatum> queue : this.outQueues) {
+                if(!this.readOnlyOutQueues.contains(queue)) {
+                    StreamsDatum newDatum = queue == owner && !shared ? datum : cloneStreamsDatum(datum);
+                    if(newDatum != null) {
+                        toOutput.put(queue, newDatum);
+                    }
+                }
+            }
             while(!toOutput.isEmpty()) {
-                for (BlockingQueue<StreamsDatum> queue : toOutput) {
-                    StreamsDatum newDatum = cloneStreamsDatum(datum);
-                    if (newDatum != null) {
-                        if (queue.offer(newDatum, 500, TimeUnit.MILLISECONDS)) {
-                            toOutput.remove(queue);
-                        }
+                Iterator<Map.Entry<BlockingQueue<StreamsDatum>, StreamsDatum>> it = toOutput.entrySet().iterator();
+                while(it.hasNext()) {
+                    Map.Entry<BlockingQueue<StreamsDatum>, StreamsDatum> entry = it.next();
+                    if(entry.getKey().offer(entry.getValue(), 500, TimeUnit.MILLISECONDS)) {
+                        it.remove();
                     }
                 }
             }
@@ -144,9 +425,10 @@ public abstract class BaseStreamsTask implements StreamsTask {
      * This was seen as unacceptable for local mode.  So until we come up with a solution to enforce serialization and be
      * compatiable across multiple frame works, this hack is in place.
      *
-     * If datum.document is Serializable, we use serialization to clone a new copy.  If it is not Serializable we attempt
-     * different methods using an com.fasterxml.jackson.databind.ObjectMapper to copy/clone the StreamsDatum. If the object
-     * is not clonable by these methods, an error is reported to the logging and a NULL object is returned.
+     * ObjectNode documents are deep copied.  Documents of a class known to the
+     * {@link org.apache.streams.core.util.StreamsDatumCodec} are cloned through its binary encoding.  Any other
+     * Serializable document is cloned with java serialization.  If the object is not clonable by these methods, an
+     * error is reported to the logging and a NULL object is returned.
      *
      * @param datum
      * @return
@@ -155,13 +437,10 @@ public abstract class BaseStreamsTask implements StreamsTask {
         try {
 
             if(datum.document instanceof ObjectNode) {
-                return copyMetaData(datum, new StreamsDatum(((ObjectNode) datum.document).deepCopy(), datum.timestamp, datum.sequenceid));
+                return copyMetaData(datum, new StreamsDatum(((ObjectNode) datum.document).deepCopy(), datum.getTimestamp(), datum.getSequenceid()));
             }
-            else if(datum.document instanceof Activity) {
-
-                return copyMetaData(datum, new StreamsDatum(this.mapper.readValue(this.mapper.writeValueAsString(datum.document), Activity.class),
-                                        datum.timestamp,
-                                        datum.sequenceid));
+            else if(StreamsDatumCodec.getInstance().isRegistered(datum.document)) {
+                return StreamsDatumCodec.getInstance().cloneDatum(datum);
             }
 //            else if(this.mapper.canSerialize(datum.document.getClass())){
 //                return new StreamsDatum(this.mapper.readValue(this.mapper.writeValueAsString(datum.document), datum.document.getClass()),
@@ -179,25 +458,8 @@ public abstract class BaseStreamsTask implements StreamsTask {
         return null;
     }
 
-    private int getNextInputQueueIndex() {
-        ++this.inIndex;
-        if(this.inIndex >= this.inQueues.size()) {
-            this.inIndex = 0;
-        }
-        return this.inIndex;
-    }
-
     private StreamsDatum copyMetaData(StreamsDatum copyFrom, StreamsDatum copyTo) {
-        Map<String, Object> fromMeta = copyFrom.getMetadata();
-        Map<String, Object> toMeta = copyTo.getMetadata();
-        for(String key : fromMeta.keySet()) {
-            Object value = fromMeta.get(key);
-            if(value instanceof Serializable)
-                toMeta.put(key, SerializationUtil.cloneBySerialization(value));
-            else //hope for the best - should be serializable
-                toMeta.put(key, value);
-        }
-        return copyTo;
+        return DatumUtils.copyMetadata(copyFrom, copyTo);
     }
 
     public long getStartedAt() {
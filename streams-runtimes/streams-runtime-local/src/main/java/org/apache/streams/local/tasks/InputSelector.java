@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.tasks;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.SignallingQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Selects which of the input queues of a task the next {@link org.apache.streams.core.StreamsDatum} is taken from.
+ * <p/>
+ * Every input has a priority and a weight.  Datums are only taken from inputs of the highest priority that have data,
+ * so a live stream can be given priority over a backfill reader.  Among inputs of the same priority, datums are taken
+ * in proportion to their weights with smooth weighted round robin, which interleaves the inputs instead of draining
+ * them in bursts.  With the defaults, priority 0 and weight 1, inputs are read round robin.
+ * <p/>
+ * When every input is empty, {@link #poll(long, java.util.concurrent.TimeUnit)} waits on a signal shared by the
+ * inputs.  Inputs that are a {@link org.apache.streams.local.queues.SignallingQueue} wake the waiting task as soon as
+ * a datum is added, and {@link #signal()} wakes it at once.  If any input can not signal, its datums are noticed after
+ * a wait that doubles from {@link #MIN_WAIT_NANOS} up to {@link #MAX_WAIT_NANOS} while the inputs stay empty.
+ */
+@ThreadSafe
+public class InputSelector {
+
+    public static final int DEFAULT_WEIGHT = 1;
+    public static final int DEFAULT_PRIORITY = 0;
+
+    static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @GuardedBy("this")
+    private final List<BlockingQueue<StreamsDatum>> inputs = new ArrayList<>();
+    @GuardedBy("this")
+    private int[] weights = new int[0];
+    @GuardedBy("this")
+    private int[] priorities = new int[0];
+    @GuardedBy("this")
+    private int[] currentWeights = new int[0];
+    private volatile StreamsTaskCounter counter;
+    private volatile boolean allInputsSignal = true;
+    //run by the inputs on every datum added, so skips the lock while nobody waits
+    private final Runnable inputSignal = new Runnable() {
+        @Override
+        public void run() {
+            if(waiting) {
+                signal();
+            }
+        }
+    };
+
+    private final ReentrantLock signalLock = new ReentrantLock();
+    private final Condition dataAvailable = this.signalLock.newCondition();
+    @GuardedBy("signalLock")
+    private boolean signalled = false;
+    private volatile boolean waiting = false;
+
+    /**
+     * Adds an input with the default weight and priority
+     * @param queue input queue
+     */
+    public void addInput(BlockingQueue<StreamsDatum> queue) {
+        addInput(queue, DEFAULT_WEIGHT, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Adds an input
+     * @param queue input queue
+     * @param weight share of the datums taken from this input, relative to inputs of the same priority.  At least 1.
+     * @param priority inputs of a higher priority are always read first
+     */
+    public synchronized void addInput(BlockingQueue<StreamsDatum> queue, int weight, int priority) {
+        if(weight < 1) {
+            throw new IllegalArgumentException("Input weight must be at least 1 : "+weight);
+        }
+        this.inputs.add(queue);
+        if(queue instanceof SignallingQueue) {
+            ((SignallingQueue) queue).addConsumerSignal(this.inputSignal);
+        } else {
+            this.allInputsSignal = false;
+        }
+        this.weights = append(this.weights, weight);
+        this.priorities = append(this.priorities, priority);
+        this.currentWeights = append(this.currentWeights, 0);
+    }
+
+    /**
+     * Sets the counter that per input dequeue counts are recorded in, see
+     * {@link org.apache.streams.local.counters.StreamsTaskCounter#getInputDequeueCounts()}
+     * @param counter
+     */
+    public void setCounter(StreamsTaskCounter counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * Takes the next datum, without waiting
+     * @return the next datum, or null if every input is empty
+     */
+    public synchronized StreamsDatum poll() {
+        //an input can be emptied by another consumer between the check and the poll, so try every input at most once
+        for(int attempt=0; attempt < this.inputs.size(); ++attempt) {
+            int index = select();
+            if(index < 0) {
+                return null;
+            }
+            StreamsDatum datum = this.inputs.get(index).poll();
+            if(datum != null) {
+                StreamsTaskCounter counter = this.counter;
+                if(counter != null) {
+                    counter.incrementInputCount(index);
+                }
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next datum, waiting up to the timeout for any input to have data.  Returns early, possibly with null,
+     * when {@link #signal()} is called.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return the next datum, or null if every input is empty
+     * @throws InterruptedException
+     */
+    public StreamsDatum poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long wait = MIN_WAIT_NANOS;
+        while(true) {
+            StreamsDatum datum = poll();
+            long remaining = deadline - System.nanoTime();
+            if(datum != null || remaining <= 0) {
+                return datum;
+            }
+            boolean woken;
+            this.signalLock.lockInterruptibly();
+            try {
+                this.waiting = true;
+                //a datum added before the producer saw the waiting flag was not signalled, so check once more
+                if(!this.signalled && isEmpty()) {
+                    this.dataAvailable.awaitNanos(this.allInputsSignal ? remaining : Math.min(wait, remaining));
+                }
+                woken = this.signalled;
+                this.signalled = false;
+                this.waiting = false;
+            } finally {
+                this.signalLock.unlock();
+            }
+            if(woken) {
+                return poll();
+            }
+            wait = Math.min(wait * 2, MAX_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Wakes a task waiting in {@link #poll(long, java.util.concurrent.TimeUnit)}, e.g. because an input has data or
+     * because no more data will arrive
+     */
+    public void signal() {
+        this.signalLock.lock();
+        try {
+            this.signalled = true;
+            this.dataAvailable.signalAll();
+        } finally {
+            this.signalLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if every input is empty
+     * @return true, if no input has data
+     */
+    public synchronized boolean isEmpty() {
+        for(BlockingQueue<StreamsDatum> queue : this.inputs) {
+            if(!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks, with smooth weighted round robin, one of the non empty inputs of the highest priority that has data
+     * @return index of the input, or -1 if every input is empty
+     */
+    private int select() {
+        int size = this.inputs.size();
+        boolean found = false;
+        int priority = Integer.MIN_VALUE;
+        for(int i=0; i < size; ++i) {
+            if(this.priorities[i] >= priority && !this.inputs.get(i).isEmpty()) {
+                priority = this.priorities[i];
+                found = true;
+            }
+        }
+        if(!found) {
+            return -1;
+        }
+        int best = -1;
+        int total = 0;
+        for(int i=0; i < size; ++i) {
+            if(this.priorities[i] == priority && !this.inputs.get(i).isEmpty()) {
+                this.currentWeights[i] += this.weights[i];
+                total += this.weights[i];
+                if(best < 0 || this.currentWeights[i] > this.currentWeights[best]) {
+                    best = i;
+                }
+            }
+        }
+        if(best < 0) {
+            //emptied by another consumer since the first pass
+            return -1;
+        }
+        this.currentWeights[best] -= total;
+        return best;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] appended = new int[array.length + 1];
+        System.arraycopy(array, 0, appended, 0, array.length);
+        appended[array.length] = value;
+        return appended;
+    }
+}
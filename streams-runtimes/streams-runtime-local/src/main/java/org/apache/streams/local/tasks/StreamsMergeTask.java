@@ -20,9 +20,9 @@ package org.apache.streams.local.tasks;
 
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.local.counters.StreamsTaskCounter;
-import org.apache.commons.lang.NotImplementedException;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -35,11 +35,15 @@ public class StreamsMergeTask extends BaseStreamsTask {
 
     private AtomicBoolean keepRunning;
     private long sleepTime;
+    private StreamsTaskCounter counter;
 
     public StreamsMergeTask() {
         this(DEFAULT_SLEEP_TIME_MS, null);
     }
 
+    /**
+     * @param sleepTime longest time to wait for data before checking whether the task should stop
+     */
     public StreamsMergeTask(long sleepTime) {
         this(sleepTime, null);
     }
@@ -67,27 +71,37 @@ public class StreamsMergeTask extends BaseStreamsTask {
 
     @Override
     public void run() {
-        while(this.keepRunning.get()) {
-            StreamsDatum datum = super.getNextDatum();
-            if(datum != null) {
+        try {
+            while(this.keepRunning.get() && !(isInputComplete() && super.isWaiting())) {
+                StreamsDatum datum;
                 try {
-                    super.addToOutgoingQueue(datum);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            else {
-                try {
-                    Thread.sleep(this.sleepTime);
+                    datum = super.pollInputs(this.sleepTime, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     this.keepRunning.set(false);
+                    break;
+                }
+                if(datum != null) {
+                    if(this.counter != null) {
+                        this.counter.incrementReceivedCount();
+                    }
+                    try {
+                        super.addToOutgoingQueue(datum);
+                        if(this.counter != null) {
+                            this.counter.incrementEmittedCount();
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
             }
+        } finally {
+            markCompleted();
         }
     }
 
     @Override
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
-        throw new NotImplementedException();
+        this.counter = counter;
+        super.setInputCounter(counter);
     }
 }
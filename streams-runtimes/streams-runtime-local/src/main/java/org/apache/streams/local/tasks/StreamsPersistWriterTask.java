@@ -40,7 +40,6 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
     private long sleepTime;
     private AtomicBoolean keepRunning;
     private Map<String, Object> streamConfig;
-    private BlockingQueue<StreamsDatum> inQueue;
     private AtomicBoolean isRunning;
     private AtomicBoolean blocked;
     private StreamsTaskCounter counter;
@@ -81,7 +80,7 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
 
     @Override
     public boolean isWaiting() {
-        return this.inQueue.isEmpty() && this.blocked.get();
+        return isInputEmpty() && this.blocked.get();
     }
 
     @Override
@@ -89,11 +88,6 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
         this.streamConfig = config;
     }
 
-    @Override
-    public void addInputQueue(BlockingQueue<StreamsDatum> inputQueue) {
-        this.inQueue = inputQueue;
-    }
-
     @Override
     public boolean isRunning() {
         return this.isRunning.get();
@@ -106,16 +100,16 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
             if(this.counter == null) {
                 this.counter = new StreamsTaskCounter(this.writer.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
             }
-            while(this.keepRunning.get()) {
+            while(this.keepRunning.get() && !(isInputComplete() && isInputEmpty())) {
                 StreamsDatum datum = null;
                 try {
                     this.blocked.set(true);
-                    datum = this.inQueue.poll(5, TimeUnit.SECONDS);
+                    datum = pollInputs(5, TimeUnit.SECONDS);
                 } catch (InterruptedException ie) {
                     LOGGER.debug("Received InterruptedException. Shutting down and re-applying interrupt status.");
                     this.keepRunning.set(false);
-                    if(!this.inQueue.isEmpty()) {
-                        LOGGER.error("Received InteruptedException and input queue still has data, count={}, processor={}",this.inQueue.size(), this.writer.getClass().getName());
+                    if(!isInputEmpty()) {
+                        LOGGER.error("Received InteruptedException and input queue still has data, count={}, processor={}",getInputSize(), this.writer.getClass().getName());
                     }
                     Thread.currentThread().interrupt();
                 } finally {
@@ -124,8 +118,12 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
                 if(datum != null) {
                     this.counter.incrementReceivedCount();
                     try {
+                        datum = super.traceComplete(datum);
                         long startTime = System.currentTimeMillis();
+                        long cpuTime = this.counter.sampleCpuTime();
+                        long allocatedBytes = this.counter.sampleAllocatedBytes();
                         this.writer.write(datum);
+                        this.counter.addResources(cpuTime, allocatedBytes);
                         this.counter.addTime(System.currentTimeMillis() - startTime);
                         statusCounter.incrementStatus(DatumStatus.SUCCESS);
                     } catch (Exception e) {
@@ -143,13 +141,9 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
         } catch(Exception e) {
             LOGGER.error("Failed to execute Persist Writer {}",this.writer.getClass().getSimpleName(), e);
         } finally {
-            try {
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
-                LOGGER.error("Sleep interrupted: {}", e);
-            }
             this.writer.cleanUp();
             this.isRunning.set(false);
+            markCompleted();
         }
     }
 
@@ -164,15 +158,9 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
         throw new UnsupportedOperationException(this.getClass().getName()+" does not support method - setOutputQueue()");
     }
 
-    @Override
-    public List<BlockingQueue<StreamsDatum>> getInputQueues() {
-        List<BlockingQueue<StreamsDatum>> queues = new LinkedList<>();
-        queues.add(this.inQueue);
-        return queues;
-    }
-
     @Override
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
         this.counter = counter;
+        super.setInputCounter(counter);
     }
 }
@@ -21,12 +21,13 @@ package org.apache.streams.local.tasks;
 import com.google.common.collect.Maps;
 import org.apache.streams.core.*;
 import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.local.builders.LocalStreamBuilder;
 import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,10 +43,15 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
     private long sleepTime;
     private AtomicBoolean keepRunning;
     private Map<String, Object> streamConfig;
-    private BlockingQueue<StreamsDatum> inQueue;
     private AtomicBoolean isRunning;
     private AtomicBoolean blocked;
     private StreamsTaskCounter counter;
+    private int batchSize;
+    private long batchTimeoutMs;
+    private String componentId;
+    private List<StreamsProcessor> fusedProcessors = new ArrayList<StreamsProcessor>();
+    private List<String> fusedIds = new ArrayList<String>();
+    private List<StreamsTaskCounter> fusedCounters = new ArrayList<StreamsTaskCounter>();
 
     private DatumStatusCounter statusCounter = new DatumStatusCounter();
 
@@ -81,11 +87,12 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
         this.keepRunning = new AtomicBoolean(true);
         this.isRunning = new AtomicBoolean(true);
         this.blocked = new AtomicBoolean(true);
+        setBatchConfig(streamConfig);
     }
 
     @Override
     public boolean isWaiting() {
-        return this.inQueue.isEmpty() && this.blocked.get();
+        return isInputEmpty() && this.blocked.get();
     }
 
     @Override
@@ -98,11 +105,6 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
         this.streamConfig = config;
     }
 
-    @Override
-    public void addInputQueue(BlockingQueue<StreamsDatum> inputQueue) {
-        this.inQueue = inputQueue;
-    }
-
     @Override
     public boolean isRunning() {
         return this.isRunning.get();
@@ -115,44 +117,43 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
             if(this.counter == null) {
                 this.counter = new StreamsTaskCounter(this.processor.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
             }
-            while(this.keepRunning.get()) {
-                StreamsDatum datum = null;
+            for(int i=0; i < this.fusedProcessors.size(); ++i) {
+                StreamsProcessor fused = this.fusedProcessors.get(i);
+                fused.prepare(this.streamConfig);
+                if(this.fusedCounters.size() <= i) {
+                    this.fusedCounters.add(new StreamsTaskCounter(fused.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt()));
+                }
+            }
+            List<StreamsDatum> batch = new ArrayList<>(this.batchSize);
+            while(this.keepRunning.get() && !(isInputComplete() && isInputEmpty())) {
+                batch.clear();
                 try {
                     this.blocked.set(true);
-                    datum = this.inQueue.poll(5, TimeUnit.SECONDS);
+                    StreamsDatum datum = pollInputs(5, TimeUnit.SECONDS);
+                    if(datum != null) {
+                        //a partially filled batch is work in progress, so don't report as waiting while filling it
+                        this.blocked.set(false);
+                        batch.add(datum);
+                        fillBatch(batch);
+                    }
                 } catch (InterruptedException ie) {
                     LOGGER.debug("Received InteruptedException, shutting down and re-applying interrupt status.");
                     this.keepRunning.set(false);
-                    if(!this.inQueue.isEmpty()) {
-                        LOGGER.error("Received InteruptedException and input queue still has data, count={}, processor={}",this.inQueue.size(), this.processor.getClass().getName());
+                    if(!isInputEmpty()) {
+                        LOGGER.error("Received InteruptedException and input queue still has data, count={}, processor={}",getInputSize(), this.processor.getClass().getName());
                     }
                     Thread.currentThread().interrupt();
                 } finally {
                     this.blocked.set(false);
                 }
-                if(datum != null) {
-                    this.counter.incrementReceivedCount();
-                    try {
-                        long startTime = System.currentTimeMillis();
-                        List<StreamsDatum> output = this.processor.process(datum);
-                        this.counter.addTime(System.currentTimeMillis() - startTime);
-                        if(output != null) {
-                            for(StreamsDatum outDatum : output) {
-                                super.addToOutgoingQueue(outDatum);
-                                this.counter.incrementEmittedCount();
-                                statusCounter.incrementStatus(DatumStatus.SUCCESS);
-                            }
+                if(!batch.isEmpty()) {
+                    this.counter.incrementReceivedCount(batch.size());
+                    if(this.processor instanceof StreamsBatchProcessor) {
+                        processBatch(batch);
+                    } else {
+                        for(StreamsDatum datum : batch) {
+                            processDatum(datum);
                         }
-                    } catch (InterruptedException ie) {
-                        LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
-                        this.keepRunning.set(false);
-                        Thread.currentThread().interrupt();
-                    } catch (Throwable t) {
-                        this.counter.incrementErrorCount();
-                        LOGGER.warn("Caught Throwable in processor, {} : {}", this.processor.getClass().getName(), t.getMessage());
-                        statusCounter.incrementStatus(DatumStatus.FAIL);
-                        //Add the error to the metadata, but keep processing
-                        DatumUtils.addErrorToMetadata(datum, t, this.processor.getClass());
                     }
                 } else {
                     //LOGGER.debug("Removed NULL datum from queue at processor : {}", this.processor.getClass().getName());
@@ -161,19 +162,234 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
         } finally {
             this.isRunning.set(false);
             this.processor.cleanUp();
+            for(StreamsProcessor fused : this.fusedProcessors) {
+                fused.cleanUp();
+            }
+            markCompleted();
         }
     }
 
-    @Override
-    public List<BlockingQueue<StreamsDatum>> getInputQueues() {
-        List<BlockingQueue<StreamsDatum>> queues = new LinkedList<BlockingQueue<StreamsDatum>>();
-        queues.add(this.inQueue);
-        return queues;
+    /**
+     * Drains up to batchSize datums that are already queued.  Batch processors will also wait up to the batch timeout
+     * for the batch to fill.
+     * @param batch batch holding the first datum
+     * @throws InterruptedException
+     */
+    private void fillBatch(List<StreamsDatum> batch) throws InterruptedException {
+        if(this.batchSize <= 1) {
+            return;
+        }
+        drainInputs(batch, this.batchSize - batch.size());
+        if(this.batchTimeoutMs > 0 && this.processor instanceof StreamsBatchProcessor) {
+            long deadline = System.currentTimeMillis() + this.batchTimeoutMs;
+            long remaining;
+            while(batch.size() < this.batchSize && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                StreamsDatum datum = pollInputs(remaining, TimeUnit.MILLISECONDS);
+                if(datum == null) {
+                    break;
+                }
+                batch.add(datum);
+                drainInputs(batch, this.batchSize - batch.size());
+            }
+        }
+    }
+
+    private void processDatum(StreamsDatum datum) {
+        try {
+            long startTime = System.currentTimeMillis();
+            long cpuTime = this.counter.sampleCpuTime();
+            long allocatedBytes = this.counter.sampleAllocatedBytes();
+            Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+            List<StreamsDatum> output = this.processor.process(datum);
+            FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, getComponentId(), 1);
+            this.counter.addResources(cpuTime, allocatedBytes);
+            this.counter.addTime(System.currentTimeMillis() - startTime);
+            emit(datum, processFused(output));
+        } catch (InterruptedException ie) {
+            LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
+            this.keepRunning.set(false);
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            this.counter.incrementErrorCount();
+            LOGGER.warn("Caught Throwable in processor, {} : {}", this.processor.getClass().getName(), t.getMessage());
+            statusCounter.incrementStatus(DatumStatus.FAIL);
+            //Add the error to the metadata, but keep processing
+            DatumUtils.addErrorToMetadata(datum, t, this.processor.getClass());
+        }
+    }
+
+    private void processBatch(List<StreamsDatum> batch) {
+        try {
+            long startTime = System.currentTimeMillis();
+            long cpuTime = this.counter.sampleCpuTime();
+            long allocatedBytes = this.counter.sampleAllocatedBytes();
+            Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+            List<StreamsDatum> output = ((StreamsBatchProcessor) this.processor).processBatch(batch);
+            FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, getComponentId(), batch.size());
+            this.counter.addResources(cpuTime, allocatedBytes);
+            this.counter.addTime(System.currentTimeMillis() - startTime, batch.size());
+            emit(null, processFused(output));
+        } catch (InterruptedException ie) {
+            LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
+            this.keepRunning.set(false);
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            this.counter.incrementErrorCount(batch.size());
+            LOGGER.warn("Caught Throwable in batch processor, {} : {}", this.processor.getClass().getName(), t.getMessage());
+            for(StreamsDatum datum : batch) {
+                statusCounter.incrementStatus(DatumStatus.FAIL);
+                //Add the error to the metadata, but keep processing
+                DatumUtils.addErrorToMetadata(datum, t, this.processor.getClass());
+            }
+        }
+    }
+
+    /**
+     * Runs the output of this task's processor through each fused processor in turn, on this thread.  Each fused
+     * processor is measured by its own counter, exactly as if it were running in a task of its own.
+     * @param output output of this task's processor
+     * @return output of the last fused processor
+     */
+    private List<StreamsDatum> processFused(List<StreamsDatum> output) {
+        StreamsTaskCounter upstreamCounter = this.counter;
+        for(int i=0; i < this.fusedProcessors.size() && output != null && !output.isEmpty(); ++i) {
+            StreamsProcessor fused = this.fusedProcessors.get(i);
+            String fusedId = this.fusedIds.get(i);
+            StreamsTaskCounter fusedCounter = this.fusedCounters.get(i);
+            upstreamCounter.incrementEmittedCount(output.size());
+            fusedCounter.incrementReceivedCount(output.size());
+            List<StreamsDatum> fusedOutput;
+            if(fused instanceof StreamsBatchProcessor) {
+                fusedOutput = processFusedBatch((StreamsBatchProcessor) fused, fusedId, fusedCounter, output);
+            } else {
+                fusedOutput = new ArrayList<StreamsDatum>(output.size());
+                for(StreamsDatum datum : output) {
+                    try {
+                        long startTime = System.currentTimeMillis();
+                        long cpuTime = fusedCounter.sampleCpuTime();
+                        long allocatedBytes = fusedCounter.sampleAllocatedBytes();
+                        Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+                        List<StreamsDatum> result = fused.process(datum);
+                        FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, fusedId, 1);
+                        fusedCounter.addResources(cpuTime, allocatedBytes);
+                        fusedCounter.addTime(System.currentTimeMillis() - startTime);
+                        if(result != null) {
+                            fusedOutput.addAll(result);
+                        }
+                    } catch (Throwable t) {
+                        fusedCounter.incrementErrorCount();
+                        LOGGER.warn("Caught Throwable in processor, {} : {}", fused.getClass().getName(), t.getMessage());
+                        statusCounter.incrementStatus(DatumStatus.FAIL);
+                        DatumUtils.addErrorToMetadata(datum, t, fused.getClass());
+                    }
+                }
+            }
+            output = fusedOutput;
+            upstreamCounter = fusedCounter;
+        }
+        return output;
+    }
+
+    private List<StreamsDatum> processFusedBatch(StreamsBatchProcessor fused, String fusedId, StreamsTaskCounter fusedCounter, List<StreamsDatum> batch) {
+        try {
+            long startTime = System.currentTimeMillis();
+            long cpuTime = fusedCounter.sampleCpuTime();
+            long allocatedBytes = fusedCounter.sampleAllocatedBytes();
+            Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+            List<StreamsDatum> result = fused.processBatch(batch);
+            FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, fusedId, batch.size());
+            fusedCounter.addResources(cpuTime, allocatedBytes);
+            fusedCounter.addTime(System.currentTimeMillis() - startTime, batch.size());
+            return result;
+        } catch (Throwable t) {
+            fusedCounter.incrementErrorCount(batch.size());
+            LOGGER.warn("Caught Throwable in batch processor, {} : {}", fused.getClass().getName(), t.getMessage());
+            for(StreamsDatum datum : batch) {
+                statusCounter.incrementStatus(DatumStatus.FAIL);
+                DatumUtils.addErrorToMetadata(datum, t, fused.getClass());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Adds the output to the outgoing queues
+     * @param input datum the output was produced from, or null if produced from a batch
+     * @param output output of the processor, and any fused processors
+     * @throws InterruptedException
+     */
+    private void emit(StreamsDatum input, List<StreamsDatum> output) throws InterruptedException {
+        if(output != null) {
+            StreamsTaskCounter emitCounter = this.fusedCounters.isEmpty() ? this.counter : this.fusedCounters.get(this.fusedCounters.size() - 1);
+            for(StreamsDatum outDatum : output) {
+                super.addToOutgoingQueue(super.traceExit(input, outDatum));
+                emitCounter.incrementEmittedCount();
+                statusCounter.incrementStatus(DatumStatus.SUCCESS);
+            }
+        }
+    }
+
+    private void setBatchConfig(Map<String, Object> streamConfig) {
+        this.batchSize = LocalStreamBuilder.DEFAULT_BATCH_SIZE;
+        this.batchTimeoutMs = LocalStreamBuilder.DEFAULT_BATCH_TIMEOUT_MS;
+        if(streamConfig != null) {
+            Object size = streamConfig.get(LocalStreamBuilder.BATCH_SIZE_KEY);
+            if(size instanceof Number && ((Number) size).intValue() > 0) {
+                this.batchSize = ((Number) size).intValue();
+            }
+            Object timeout = streamConfig.get(LocalStreamBuilder.BATCH_TIMEOUT_KEY);
+            if(timeout instanceof Number && ((Number) timeout).longValue() >= 0) {
+                this.batchTimeoutMs = ((Number) timeout).longValue();
+            }
+        }
     }
 
     @Override
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
         this.counter = counter;
+        super.setInputCounter(counter);
+    }
+
+    /**
+     * Appends a processor that is run, on this task's thread, on everything the processors before it output.  The
+     * local runtime uses this to fuse a linear chain of processors into one task instead of connecting them with
+     * queues.  Must be called before the task is run.
+     * @param processor processor to append to the chain
+     */
+    public void addFusedProcessor(StreamsProcessor processor) {
+        addFusedProcessor(processor.getClass().getName(), processor);
+    }
+
+    /**
+     * Appends a processor to the chain, see {@link #addFusedProcessor(org.apache.streams.core.StreamsProcessor)}
+     * @param componentId id of the fused processor's component, used to label its events
+     * @param processor processor to append to the chain
+     */
+    public void addFusedProcessor(String componentId, StreamsProcessor processor) {
+        this.fusedIds.add(componentId);
+        this.fusedProcessors.add(processor);
+    }
+
+    /**
+     * Sets the id of the component this task runs, used to label the events of the processor.  Defaults to the class
+     * name of the processor.
+     * @param componentId id of the component
+     */
+    public void setComponentId(String componentId) {
+        this.componentId = componentId;
+    }
+
+    private String getComponentId() {
+        return this.componentId == null ? this.processor.getClass().getName() : this.componentId;
+    }
+
+    /**
+     * Sets the counters for the fused processors, in the order the processors were added.  A fused processor without
+     * a counter gets one of its own when the task starts.
+     * @param counters counters for the fused processors
+     */
+    public void setFusedStreamsTaskCounters(List<StreamsTaskCounter> counters) {
+        this.fusedCounters = new ArrayList<StreamsTaskCounter>(counters);
     }
 
 
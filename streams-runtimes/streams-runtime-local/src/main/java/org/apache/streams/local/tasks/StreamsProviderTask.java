@@ -27,7 +27,6 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.Map;
-import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -163,16 +162,16 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
                             long startTime = System.currentTimeMillis();
                             resultSet = provider.readCurrent();
                             this.counter.addTime(System.currentTimeMillis() - startTime);
-                            if( resultSet.size() == 0 )
+                            if( flushResults(resultSet) == 0 )
                                 zeros++;
                             else {
                                 zeros = 0;
                             }
-                            flushResults(resultSet);
                             // the way this works needs to change...
                             if(zeros > maxZeros)
                                 this.keepRunning.set(false);
-                            if(zeros > 0)
+                            //no point waiting for more data once the provider has finished
+                            if(zeros > 0 && this.isRunning())
                                 Thread.sleep(sleepTime);
                         } catch (InterruptedException e) {
                             this.counter.incrementErrorCount();
@@ -208,6 +207,7 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
             //before started would normally be set to true n the run method.
             this.started.set(true);
             this.keepRunning.set(false);
+            markCompleted();
         }
     }
 
@@ -220,16 +220,24 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
         return !this.started.get() || this.flushing.get() || (this.provider.isRunning() && this.keepRunning.get());
     }
 
-    public void flushResults(StreamsResultSet resultSet) {
-        Queue<StreamsDatum> queue = resultSet.getQueue();
+    /**
+     * Pulls datums out of the result set one at a time and hands each to the outbound queues before pulling the next,
+     * so a provider that streams into its result set is held back whenever the downstream queues are full.
+     * @param resultSet result set to flush
+     * @return the number of datums pulled from the result set
+     */
+    public int flushResults(StreamsResultSet resultSet) {
+        int flushed = 0;
+        if(resultSet == null) {
+            return flushed;
+        }
         this.flushing.set(true);
-        while(!queue.isEmpty()) {
-            StreamsDatum datum = queue.poll();
-            if(!this.keepRunning.get()) {
-                break;
-            }
-            if(datum != null) {
+        try {
+            StreamsDatum datum;
+            while(this.keepRunning.get() && (datum = resultSet.poll()) != null) {
+                ++flushed;
                 try {
+                    super.traceStart(datum);
                     super.addToOutgoingQueue(datum);
                     this.counter.incrementEmittedCount();
                     statusCounter.incrementStatus(DatumStatus.SUCCESS);
@@ -239,8 +247,10 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
                     DatumUtils.addErrorToMetadata(datum, e, this.provider.getClass());
                 }
             }
+        } finally {
+            this.flushing.set(false);
         }
-        this.flushing.set(false);
+        return flushed;
     }
 
     @Override
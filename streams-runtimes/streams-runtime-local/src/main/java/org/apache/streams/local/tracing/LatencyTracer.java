@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.tracing;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.util.CopyOnWriteMetadata;
+import org.apache.streams.local.counters.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long {@link org.apache.streams.core.StreamsDatum}s take to travel through a stream.  Providers stamp one
+ * in every sampleRate datums they emit with the time they were emitted, under {@link #TRACE_START_KEY} in the
+ * metadata.  Every task the datum passes through appends its component id to the path under {@link #TRACE_PATH_KEY},
+ * and the writer that writes the datum records the time since it was emitted in the
+ * {@link org.apache.streams.local.counters.LatencyHistogram} of the full path, e.g. {@code provider>processor>writer}.
+ * <p/>
+ * Outputs of a processor that do not carry the metadata of the datum they were produced from are given a copy of its
+ * trace, so that processors creating new datums do not end the trace.  Outputs of batch processors can not be matched
+ * to their inputs, so only outputs that carry a trace themselves are traced further.
+ */
+@ThreadSafe
+public class LatencyTracer {
+
+    public static final String TRACE_START_KEY = "traceStartNanos";
+    public static final String TRACE_PATH_KEY = "tracePath";
+    public static final String PATH_SEPARATOR = ">";
+
+    private final long sampleRate;
+    private final String streamIdentifier;
+    private final long startedAt;
+    private final AtomicLong emitted;
+    private final ConcurrentMap<String, LatencyHistogram> histograms;
+
+    /**
+     * @param sampleRate one in every sampleRate emitted datums is traced, at least 1
+     * @param streamIdentifier stream identifier to register the histograms under, if NULL then not registered
+     * @param startedAt
+     */
+    public LatencyTracer(long sampleRate, String streamIdentifier, long startedAt) {
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1 : "+sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.streamIdentifier = streamIdentifier;
+        this.startedAt = startedAt;
+        this.emitted = new AtomicLong(0);
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Called by providers for every datum they emit.  Stamps the datum if it is sampled.
+     * @param datum emitted datum, not yet shared with any other task
+     * @param componentId id of the provider
+     */
+    public void start(StreamsDatum datum, String componentId) {
+        if(this.emitted.incrementAndGet() % this.sampleRate == 0) {
+            Map<String, Object> metadata = CopyOnWriteMetadata.copyOf(datum.metadata);
+            metadata.put(TRACE_START_KEY, System.nanoTime());
+            metadata.put(TRACE_PATH_KEY, componentId);
+            datum.setMetadata(metadata);
+        }
+    }
+
+    /**
+     * Called by processors for every datum they output.  Extends the trace of the datum, which is copied from the input
+     * the datum was produced from if the datum does not carry one itself.
+     * <p/>
+     * The metadata of the output is never written to, since it may be shared with other branches of the stream.  A
+     * traced output is given a copy of its metadata, and an output that is the input itself is replaced by a copy of
+     * the datum that shares its document.
+     * @param input datum the output was produced from, or null if not known
+     * @param output output datum
+     * @param componentId id of the processor
+     * @return the datum to emit in place of the output
+     */
+    public StreamsDatum exit(StreamsDatum input, StreamsDatum output, String componentId) {
+        StreamsDatum traced = output;
+        String path = getPath(output);
+        if(path == null && input != null && input != output) {
+            traced = input;
+            path = getPath(input);
+        }
+        if(path == null) {
+            return output;
+        }
+        Map<String, Object> metadata = CopyOnWriteMetadata.copyOf(output.metadata);
+        metadata.put(TRACE_START_KEY, traced.metadata.get(TRACE_START_KEY));
+        metadata.put(TRACE_PATH_KEY, path + PATH_SEPARATOR + componentId);
+        StreamsDatum result = output == input ? copyOf(output) : output;
+        result.setMetadata(metadata);
+        return result;
+    }
+
+    /**
+     * Called by writers for every datum they are about to write.  Records the latency of the datum if it is traced.
+     * <p/>
+     * The trace is removed from the datum the writer is given, so it is not persisted with the rest of the metadata.
+     * The datum may be shared with other writers, so a traced datum is replaced by a copy without the trace.
+     * @param datum datum to write
+     * @param componentId id of the writer
+     * @return the datum to write in place of the given datum
+     */
+    public StreamsDatum complete(StreamsDatum datum, String componentId) {
+        String path = getPath(datum);
+        if(path == null) {
+            return datum;
+        }
+        Object start = datum.metadata.get(TRACE_START_KEY);
+        if(start instanceof Number) {
+            getHistogram(path + PATH_SEPARATOR + componentId).record(System.nanoTime() - ((Number) start).longValue());
+        }
+        Map<String, Object> metadata = CopyOnWriteMetadata.copyOf(datum.metadata);
+        metadata.remove(TRACE_START_KEY);
+        metadata.remove(TRACE_PATH_KEY);
+        StreamsDatum untraced = copyOf(datum);
+        untraced.setMetadata(metadata);
+        return untraced;
+    }
+
+    /**
+     * Returns the histogram of every path a traced datum completed
+     * @return histograms by path
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(this.histograms);
+    }
+
+    private LatencyHistogram getHistogram(String path) {
+        LatencyHistogram histogram = this.histograms.get(path);
+        if(histogram == null) {
+            synchronized (this.histograms) {
+                histogram = this.histograms.get(path);
+                if(histogram == null) {
+                    histogram = new LatencyHistogram(path, this.streamIdentifier, this.startedAt);
+                    this.histograms.put(path, histogram);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private static StreamsDatum copyOf(StreamsDatum datum) {
+        return new StreamsDatum(datum.getDocument(), datum.getId(), datum.getTimestamp(), datum.getSequenceid());
+    }
+
+    private static String getPath(StreamsDatum datum) {
+        //read the field so datums allocating metadata lazily are not made to allocate it here
+        if(datum.metadata == null) {
+            return null;
+        }
+        Object path = datum.metadata.get(TRACE_PATH_KEY);
+        return path instanceof String ? (String) path : null;
+    }
+}
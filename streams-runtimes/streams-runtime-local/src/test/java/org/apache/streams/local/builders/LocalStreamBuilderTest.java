@@ -20,7 +20,9 @@ package org.apache.streams.local.builders;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -43,13 +45,17 @@ import org.apache.streams.core.StreamBuilder;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsPersistWriter;
 import org.apache.streams.core.StreamsProcessor;
+import org.apache.streams.local.counters.LatencyHistogram;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.local.test.processors.BatchPassthroughDatumCounterProcessor;
+import org.apache.streams.local.test.processors.KeyRecordingProcessor;
 import org.apache.streams.local.test.processors.PassthroughDatumCounterProcessor;
 import org.apache.streams.local.test.processors.SlowProcessor;
 import org.apache.streams.local.test.providers.EmptyResultSetProvider;
 import org.apache.streams.local.test.providers.NumericMessageProvider;
 import org.apache.streams.local.test.writer.DatumCounterWriter;
+import org.apache.streams.local.test.writer.ReadOnlyDatumRecordingWriter;
 import org.apache.streams.local.test.writer.SystemOutWriter;
 import org.apache.streams.util.ComponentUtils;
 import org.joda.time.DateTime;
@@ -189,6 +195,257 @@ public class LocalStreamBuilderTest extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testRingBufferQueueLinearStream() {
+        int numDatums = randomIntBetween(1, 100000);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.RING_BUFFER_QUEUE_TYPE);
+            config.put("maxQueueSize", 16);
+            StreamBuilder builder = new LocalStreamBuilder(config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums))
+                    .addStreamsProcessor("proc1", new PassthroughDatumCounterProcessor("proc1"), 2, "numeric_provider")
+                    .addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc1");
+            builder.start();
+            assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get("proc1").get());
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+        } finally {
+            removeRegisteredMBeans("proc1", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testReadOnlyWritersShareDatums() {
+        int numDatums = randomIntBetween(1, 1000);
+        try {
+            StreamBuilder builder = new LocalStreamBuilder();
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums))
+                    .addStreamsProcessor("proc1", new PassthroughDatumCounterProcessor("proc1"), 1, "numeric_provider")
+                    .addStreamsPersistWriter("readOnly1", new ReadOnlyDatumRecordingWriter("readOnly1"), 1, "proc1")
+                    .addStreamsPersistWriter("readOnly2", new ReadOnlyDatumRecordingWriter("readOnly2"), 1, "proc1")
+                    .addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc1");
+            builder.start();
+            List<StreamsDatum> readOnly1 = ReadOnlyDatumRecordingWriter.RECEIVED.get("readOnly1");
+            List<StreamsDatum> readOnly2 = ReadOnlyDatumRecordingWriter.RECEIVED.get("readOnly2");
+            assertEquals(numDatums, readOnly1.size());
+            assertEquals(numDatums, readOnly2.size());
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            for(int i=0; i < numDatums; ++i) {
+                assertSame("Expected read only writers to share datum : "+i, readOnly1.get(i), readOnly2.get(i));
+            }
+        } finally {
+            removeRegisteredMBeans("proc1", "readOnly1", "readOnly2", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testBatchProcessorLinearStream() {
+        int numDatums = randomIntBetween(1, 100000);
+        int batchSize = randomIntBetween(2, 100);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.BATCH_SIZE_KEY, batchSize);
+            config.put(LocalStreamBuilder.BATCH_TIMEOUT_KEY, 10);
+            StreamBuilder builder = new LocalStreamBuilder(config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums))
+                    .addStreamsProcessor("proc1", new BatchPassthroughDatumCounterProcessor("proc1"), 1, "numeric_provider")
+                    .addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc1");
+            builder.start();
+            assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get("proc1").get());
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertTrue(BatchPassthroughDatumCounterProcessor.MAX_BATCH_SIZE.get() <= batchSize);
+        } finally {
+            removeRegisteredMBeans("proc1", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testFusedLinearStream() throws Exception {
+        String processorId = "fused";
+        final int numProcessors = randomIntBetween(2, 5);
+        int numTasks = randomIntBetween(1, 3);
+        int numDatums = randomIntBetween(1, 100000);
+        try {
+            final Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.FUSE_PROCESSORS_KEY, true);
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            //the metrics are unregistered once the stream stops, so read them just before
+            final Map<ObjectName, List<Object>> attributes = Maps.newHashMap();
+            StreamBuilder builder = new LocalStreamBuilder(config) {
+                @Override
+                protected void unregisterMetrics() {
+                    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+                    Object startedAt = config.get(LocalStreamBuilder.DEFAULT_STARTED_AT_KEY);
+                    try {
+                        for(int i=0; i < numProcessors; ++i) {
+                            ObjectName counterName = new ObjectName(String.format(StreamsTaskCounter.NAME_TEMPLATE, "fused"+i, STREAM_ID, startedAt));
+                            ObjectName queueName = new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, "fused"+i, STREAM_ID, startedAt));
+                            attributes.put(counterName, Lists.newArrayList(mbs.getAttribute(counterName, "NumReceived"), mbs.getAttribute(counterName, "NumEmitted")));
+                            attributes.put(queueName, Lists.newArrayList(mbs.getAttribute(queueName, "Added")));
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    super.unregisterMetrics();
+                }
+            };
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            String connectTo = "numeric_provider";
+            for(int i=0; i < numProcessors; ++i) {
+                builder.addStreamsProcessor(processorId+i, new PassthroughDatumCounterProcessor(processorId+i), numTasks, connectTo);
+                connectTo = processorId+i;
+            }
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, connectTo);
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            Object startedAt = config.get(LocalStreamBuilder.DEFAULT_STARTED_AT_KEY);
+            for(int i=0; i < numProcessors; ++i) {
+                assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get(processorId+i).get());
+                //every processor keeps its own counter
+                ObjectName counterName = new ObjectName(String.format(StreamsTaskCounter.NAME_TEMPLATE, processorId+i, STREAM_ID, startedAt));
+                assertEquals((long) numDatums, attributes.get(counterName).get(0));
+                assertEquals((long) numDatums, attributes.get(counterName).get(1));
+                //only the head of the chain is fed through a queue
+                ObjectName queueName = new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, processorId+i, STREAM_ID, startedAt));
+                assertEquals(i == 0 ? (long) numDatums : 0L, attributes.get(queueName).get(0));
+                //and nothing is left registered once the stream has stopped
+                assertFalse(mbs.isRegistered(counterName));
+                assertFalse(mbs.isRegistered(queueName));
+            }
+        } finally {
+            for(int i=0; i < numProcessors; ++i) {
+                removeRegisteredMBeans(processorId+i);
+            }
+            removeRegisteredMBeans("writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testPartitionedStream() throws Exception {
+        int numTasks = randomIntBetween(2, 5);
+        int numKeys = randomIntBetween(1, 50);
+        int numDatums = randomIntBetween(1, 100000);
+        KeyRecordingProcessor.KEY_OWNERS.clear();
+        KeyRecordingProcessor.OUT_OF_ORDER.set(0);
+        try {
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, Maps.<String, Object>newHashMap());
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("partitioned", new KeyRecordingProcessor(numKeys), numTasks, new KeyRecordingProcessor.ModuloKeyExtractor(numKeys), "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "partitioned");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals(Math.min(numKeys, numDatums), KeyRecordingProcessor.KEY_OWNERS.size());
+            for(Set<Integer> owners : KeyRecordingProcessor.KEY_OWNERS.values()) {
+                assertEquals(1, owners.size());
+            }
+            assertEquals(0, KeyRecordingProcessor.OUT_OF_ORDER.get());
+        } finally {
+            for(int i=0; i < numTasks; ++i) {
+                removeRegisteredMBeans("partitioned-partition"+i);
+            }
+            removeRegisteredMBeans("partitioned", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testSeparateInputStream() {
+        int numDatums = randomIntBetween(1, 10000);
+        try {
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, Maps.<String, Object>newHashMap());
+            builder.newPerpetualStream("backfill_provider", new NumericMessageProvider(numDatums));
+            builder.newPerpetualStream("live_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 1, "backfill_provider", "live_provider");
+            builder.setInputPriority("proc", "live_provider", 1, 1);
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            assertEquals(2 * numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            try {
+                builder.setInputPriority("proc", "writer", 1, 1);
+                fail("Expected an exception for a component that is not upstream");
+            } catch (InvalidStreamException ise) {
+                //expected
+            }
+        } finally {
+            removeRegisteredMBeans("proc", "proc-live_provider", "writer", "backfill_provider", "live_provider");
+        }
+    }
+
+    @Test
+    public void testAutoscaledStream() {
+        int numDatums = randomIntBetween(1, 100000);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.AUTOSCALE_KEY, true);
+            config.put(LocalStreamBuilder.AUTOSCALE_INTERVAL_MS_KEY, 50);
+            config.put(LocalStreamBuilder.AUTOSCALE_TARGET_WAIT_MS_KEY, 1);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 1, "numeric_provider");
+            builder.setTaskBounds("proc", 1, 4);
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals(numDatums, new HashSet<Object>(DatumCounterWriter.RECEIVED.get("writer")).size());
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testVirtualThreadStream() {
+        int numDatums = randomIntBetween(1, 100000);
+        int numTasks = randomIntBetween(1, 500);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.EXECUTOR_TYPE_KEY, LocalStreamBuilder.VIRTUAL_EXECUTOR_TYPE);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), numTasks, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testTracedStream() {
+        int numDatums = randomIntBetween(1, 100000);
+        int sampleRate = randomIntBetween(1, 100);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.TRACE_SAMPLE_RATE_KEY, sampleRate);
+            config.put(LocalStreamBuilder.FUSE_PROCESSORS_KEY, randomBoolean());
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc1", new PassthroughDatumCounterProcessor("proc1"), 1, "numeric_provider");
+            builder.addStreamsProcessor("proc2", new PassthroughDatumCounterProcessor("proc2"), 1, "proc1");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc2");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            Map<String, LatencyHistogram> histograms = builder.getLatencyTracer().getHistograms();
+            if(numDatums >= sampleRate) {
+                assertEquals(1, histograms.size());
+                LatencyHistogram histogram = histograms.get("numeric_provider>proc1>proc2>writer");
+                assertNotNull(histogram);
+                assertEquals(numDatums / sampleRate, histogram.getCount());
+                assertTrue(histogram.getP50() <= histogram.getP999());
+            } else {
+                assertTrue(histograms.isEmpty());
+            }
+        } finally {
+            removeRegisteredMBeans("proc1", "proc2", "writer", "numeric_provider");
+        }
+    }
+
     @Test
     public void testParallelLinearStream1() {
         String processorId = "proc";
@@ -292,6 +549,25 @@ public class LocalStreamBuilderTest extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testReadCurrentStreamCompletesPromptly() {
+        try {
+            int numDatums = randomIntBetween(1, 100);
+            StreamBuilder builder = new LocalStreamBuilder();
+            builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                    .addStreamsProcessor("proc1", new PassthroughDatumCounterProcessor("proc1"), randomIntBetween(1, 3), "prov1")
+                    .addStreamsPersistWriter("w1", new DatumCounterWriter("writer"), 1, "proc1");
+            long start = System.currentTimeMillis();
+            builder.start();
+            long end = System.currentTimeMillis();
+            assertEquals(numDatums, DatumCounterWriter.COUNTS.get("writer").get());
+            //completion is signalled through the stream, so nothing should wait out a poll or sleep interval
+            assertThat((int) (end - start), is(lessThan(3000)));
+        } finally {
+            removeRegisteredMBeans("prov1", "proc1", "w1");
+        }
+    }
+
     @Test
     public void testConfiguredProviderTimeout() {
         try {
@@ -355,6 +631,7 @@ public class LocalStreamBuilderTest extends RandomizedTest {
         DatumCounterWriter.CLAIMED_ID.clear();
         DatumCounterWriter.SEEN_DATA.clear();
         DatumCounterWriter.RECEIVED.clear();
+        ReadOnlyDatumRecordingWriter.RECEIVED.clear();
     }
 
 
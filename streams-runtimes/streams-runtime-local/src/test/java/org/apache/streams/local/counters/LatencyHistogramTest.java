@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.apache.streams.util.ComponentUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.counters.LatencyHistogram}
+ */
+public class LatencyHistogramTest extends RandomizedTest {
+
+    private static final String MBEAN_ID = "test_id";
+    private static final String STREAM_ID = "test_stream";
+    private static final long STREAM_START_TIME = 0;
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that the bean reports in milliseconds, within the precision of the buckets
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        for(long i=1; i <= 1000; ++i) {
+            histogram.record(i * 1000000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertEquals(1000.0, histogram.getMax(), 0.0);
+        assertEquals(500.0, histogram.getP50(), 500.0 / 8);
+        assertEquals(990.0, histogram.getP99(), 990.0 / 8);
+        assertEquals(999.0, histogram.getP999(), 999.0 / 8);
+        assertTrue(histogram.getP999() <= histogram.getMax());
+    }
+
+    /**
+     * Test that the mbean registers
+     * @throws Exception
+     */
+    @Test
+    public void testMBeanRegistration() throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        LatencyHistogram histogram = new LatencyHistogram(MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        histogram.record(2000000);
+        ObjectName name = new ObjectName(String.format(LatencyHistogram.NAME_TEMPLATE, MBEAN_ID, STREAM_ID, STREAM_START_TIME));
+        assertEquals(1L, mbs.getAttribute(name, "Count"));
+        assertEquals(2.0, (Double) mbs.getAttribute(name, "P50"), 2.0 / 8);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.streams.local.counters;
 
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.apache.streams.pojo.json.StreamsTaskCounterBroadcast;
 import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Test;
@@ -158,4 +159,63 @@ public class StreamsTaskCounterTest extends RandomizedTest {
         assertEquals((double)failures / (double)(received), counter.getErrorRate(), 0);
     }
 
+    /**
+     * Test resources are not sampled unless resource accounting is turned on
+     * @throws Exception
+     */
+    @Test
+    public void testResourceAccountingOff() throws Exception {
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        assertEquals(-1, counter.sampleCpuTime());
+        assertEquals(-1, counter.sampleAllocatedBytes());
+        counter.addResources(counter.sampleCpuTime(), counter.sampleAllocatedBytes());
+        assertEquals(0, counter.getCpuTime());
+        assertEquals(0, counter.getAllocatedBytes());
+        assertEquals(0.0, counter.getAvgAllocatedBytes(), 0);
+    }
+
+    /**
+     * Test allocations and CPU time of the current thread are accumulated and averaged over received datums
+     * @throws Exception
+     */
+    @Test
+    public void testResourceAccounting() throws Exception {
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        counter.setResourceAccounting(true);
+        long cpuTime = counter.sampleCpuTime();
+        long allocatedBytes = counter.sampleAllocatedBytes();
+        assumeTrue(cpuTime >= 0 && allocatedBytes >= 0);
+        byte[][] garbage = new byte[10][];
+        for(int i=0; i < garbage.length; ++i) {
+            garbage[i] = new byte[1024 * 1024];
+        }
+        counter.addResources(cpuTime, allocatedBytes);
+        counter.incrementReceivedCount(garbage.length);
+        assertTrue(counter.getAllocatedBytes() >= 10 * 1024 * 1024);
+        assertTrue(counter.getCpuTime() >= 0);
+        assertEquals(counter.getAllocatedBytes() / 10.0, counter.getAvgAllocatedBytes(), 0);
+    }
+
+    /**
+     * Test accumulated CPU time and allocations are reported in the broadcast
+     * @throws Exception
+     */
+    @Test
+    public void testResourcesInBroadcast() throws Exception {
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        counter.setResourceAccounting(true);
+        long cpuTime = counter.sampleCpuTime();
+        long allocatedBytes = counter.sampleAllocatedBytes();
+        assumeTrue(cpuTime >= 0 && allocatedBytes >= 0);
+        byte[] garbage = new byte[1024 * 1024];
+        counter.addResources(cpuTime, allocatedBytes);
+        counter.incrementReceivedCount();
+        StreamsTaskCounterBroadcast broadcast = (StreamsTaskCounterBroadcast) counter.toBroadcast();
+        assertEquals(counter.getCpuTime(), (long) broadcast.getCpuTime());
+        assertEquals(Double.valueOf(counter.getAvgCpuTime()), broadcast.getAvgCpuTime());
+        assertEquals(counter.getAllocatedBytes(), (long) broadcast.getAllocatedBytes());
+        assertEquals(Double.valueOf(counter.getAvgAllocatedBytes()), broadcast.getAvgAllocatedBytes());
+        assertTrue(broadcast.getAllocatedBytes() >= garbage.length);
+    }
+
 }
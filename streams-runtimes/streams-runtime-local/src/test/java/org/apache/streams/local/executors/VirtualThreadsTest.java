@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.executors;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.executors.VirtualThreads}
+ */
+public class VirtualThreadsTest {
+
+    /**
+     * Test that a factory is only created on JVMs that support virtual threads, and that its threads run
+     */
+    @Test
+    public void testNewThreadFactory() throws Exception {
+        ThreadFactory factory = VirtualThreads.newThreadFactory("test-");
+        if(!VirtualThreads.isSupported()) {
+            assertNull(factory);
+            return;
+        }
+        assertNotNull(factory);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertEquals("test-0", thread.getName());
+        assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+        thread.start();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that the executor runs tasks on the threads of the given factory
+     */
+    @Test
+    public void testExecutorUsesThreadFactory() throws Exception {
+        final AtomicBoolean created = new AtomicBoolean(false);
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                created.set(true);
+                return new Thread(r);
+            }
+        };
+        final CountDownLatch latch = new CountDownLatch(1);
+        ShutdownStreamOnUnhandleThrowableThreadPoolExecutor executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(1, factory, null);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(created.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDatumKeyExtractor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.PartitionedQueue}
+ */
+public class PartitionedQueueTest extends RandomizedTest {
+
+    /**
+     * Test that datums with equal ids always go to the same partition and that size and emptiness cover all partitions
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testRoutesByDatumId() throws Exception {
+        int numPartitions = randomIntBetween(1, 8);
+        int numIds = randomIntBetween(1, 100);
+        PartitionedQueue queue = new PartitionedQueue(createPartitions(numPartitions), null);
+        for(int i=0; i < numIds * 10; ++i) {
+            queue.put(new StreamsDatum(i, Integer.toString(i % numIds)));
+        }
+        assertEquals(numIds * 10, queue.size());
+        assertFalse(queue.isEmpty());
+        Set<String> seen = new HashSet<>();
+        for(int p=0; p < numPartitions; ++p) {
+            Set<String> inPartition = new HashSet<>();
+            for(StreamsDatum datum : queue.getPartition(p)) {
+                inPartition.add(datum.getId());
+            }
+            for(String id : inPartition) {
+                assertTrue("Id "+id+" was routed to more than one partition", seen.add(id));
+            }
+        }
+        assertEquals(numIds, seen.size());
+        while(queue.poll() != null);
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Test that the key extractor decides the partition, and that datums without a key are spread over all partitions
+     */
+    @Test
+    public void testKeyExtractorAndUnkeyedDatums() {
+        int numPartitions = randomIntBetween(2, 8);
+        PartitionedQueue queue = new PartitionedQueue(createPartitions(numPartitions), new StreamsDatumKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                return datum.getDocument().equals("keyed") ? "key" : null;
+            }
+        });
+        int expected = queue.partitionFor(new StreamsDatum("keyed"));
+        for(int i=0; i < 10; ++i) {
+            assertTrue(queue.offer(new StreamsDatum("keyed")));
+        }
+        assertEquals(10, queue.getPartition(expected).size());
+        for(int i=0; i < numPartitions; ++i) {
+            assertTrue(queue.offer(new StreamsDatum("unkeyed")));
+        }
+        for(BlockingQueue<StreamsDatum> partition : queue.getPartitions()) {
+            assertFalse(partition.isEmpty());
+        }
+    }
+
+    private List<BlockingQueue<StreamsDatum>> createPartitions(int numPartitions) {
+        List<BlockingQueue<StreamsDatum>> partitions = new ArrayList<>();
+        for(int i=0; i < numPartitions; ++i) {
+            partitions.add(new LinkedBlockingQueue<StreamsDatum>());
+        }
+        return partitions;
+    }
+}
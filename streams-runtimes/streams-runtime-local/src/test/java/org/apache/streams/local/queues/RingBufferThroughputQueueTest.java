@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.apache.streams.util.ComponentUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.RingBufferThroughputQueue}
+ */
+public class RingBufferThroughputQueueTest extends RandomizedTest {
+    private static final String MBEAN_ID = "test_id";
+    private static final String STREAM_ID = "test_stream";
+    private static long STREAM_START_TIME = (new DateTime()).getMillis();
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that capacity is rounded up to a power of two and that the queue refuses elements once full
+     */
+    @Test
+    public void testCapacity() {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(100);
+        assertEquals(128, queue.getCapacity());
+        for(int i=0; i < 128; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(128));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(2, new RingBufferThroughputQueue<Integer>(1).getCapacity());
+    }
+
+    /**
+     * Test that take and put queue and dequeue data in order and all measurements form the queue are returning data.
+     * @throws Exception
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testTakeAndPut() throws Exception {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(1000);
+        int putCount = randomIntBetween(1, 1000);
+        for(int i=0; i < putCount; ++i) {
+            queue.put(i);
+            assertEquals(i+1, queue.size());
+            assertEquals(queue.size(), queue.getCurrentSize());
+        }
+        safeSleep(100); //ensure measurable wait time
+        int takeCount = randomIntBetween(1, putCount);
+        for(int i=0; i < takeCount; ++i) {
+            Integer element = queue.take();
+            assertNotNull(element);
+            assertEquals(i, element.intValue());
+            assertEquals(putCount - (1+i), queue.size());
+        }
+        assertEquals(putCount-takeCount, queue.size());
+        assertTrue(0.0 < queue.getMaxWait());
+        assertTrue(0.0 < queue.getAvgWait());
+        assertTrue(0.0 < queue.getThroughput());
+        assertEquals(putCount, queue.getAdded());
+        assertEquals(takeCount, queue.getRemoved());
+    }
+
+    /**
+     * Test that drainTo removes at most maxElements in order and updates the measurements
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testDrainTo() {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(1000);
+        int putCount = randomIntBetween(1, 1000);
+        for(int i=0; i < putCount; ++i) {
+            queue.offer(i);
+        }
+        int max = randomIntBetween(1, putCount);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(max, queue.drainTo(drained, max));
+        assertEquals(max, drained.size());
+        for(int i=0; i < max; ++i) {
+            assertEquals(i, drained.get(i).intValue());
+        }
+        assertEquals(putCount - max, queue.size());
+        assertEquals(max, queue.getRemoved());
+        drained.clear();
+        assertEquals(putCount - max, queue.drainTo(drained));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Test that many producers and consumers see every element exactly once through a small buffer
+     * @throws Exception
+     */
+    @Test
+    public void testMultiProducerMultiConsumer() throws Exception {
+        final RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(8);
+        final int producers = randomIntBetween(1, 4);
+        final int consumers = randomIntBetween(1, 4);
+        final int perProducer = randomIntBetween(1, 10000);
+        final AtomicLong sum = new AtomicLong(0);
+        final AtomicLong count = new AtomicLong(0);
+        final long total = (long) producers * perProducer;
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        for(int p=0; p < producers; ++p) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i=0; i < perProducer; ++i) {
+                            queue.put(i);
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        for(int c=0; c < consumers; ++c) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    List<Integer> batch = new ArrayList<>();
+                    try {
+                        while(count.get() < total) {
+                            batch.clear();
+                            if(queue.drainTo(batch, 3) == 0) {
+                                Integer i = queue.poll(10, TimeUnit.MILLISECONDS);
+                                if(i != null) {
+                                    batch.add(i);
+                                }
+                            }
+                            for(Integer i : batch) {
+                                sum.addAndGet(i);
+                                count.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(total, count.get());
+        assertEquals((long) producers * ((long) perProducer * (perProducer - 1) / 2), sum.get());
+        assertEquals(total, queue.getAdded());
+        assertEquals(total, queue.getRemoved());
+        assertEquals(0, queue.getCurrentSize());
+    }
+
+    /**
+     * Test that the mbean registers under the ThroughputQueue name
+     */
+    @Test
+    public void testMBeanRegistration() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            Integer beanCount = mbs.getMBeanCount();
+            new RingBufferThroughputQueue<Integer>(10, MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+            assertEquals("Expected bean to be registered", new Integer(beanCount+1), mbs.getMBeanCount());
+            ObjectInstance mBean = mbs.getObjectInstance(new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, MBEAN_ID, STREAM_ID, STREAM_START_TIME)));
+            assertNotNull(mBean);
+        } catch (Exception e) {
+            fail("Failed to register MXBean : "+e.getMessage());
+        }
+    }
+
+    private void safeSleep(long sleep) {
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.util.ComponentUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.SpillingThroughputQueue}
+ */
+public class SpillingThroughputQueueTest extends RandomizedTest {
+    private static final String MBEAN_ID = "test_id";
+    private static final String STREAM_ID = "test_stream";
+    private static long STREAM_START_TIME = (new DateTime()).getMillis();
+
+    private File spillDirectory;
+
+    @Before
+    public void createSpillDirectory() {
+        this.spillDirectory = new File(System.getProperty("java.io.tmpdir"), "spilling-queue-test-"+System.nanoTime());
+    }
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+        File[] files = this.spillDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        this.spillDirectory.delete();
+    }
+
+    /**
+     * Test that datums beyond the memory capacity are spilled, and that all datums come back in order
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testSpillsAndUnspillsInOrder() throws Exception {
+        int memoryCapacity = randomIntBetween(1, 100);
+        int putCount = randomIntBetween(memoryCapacity + 1, 5000);
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(memoryCapacity, this.spillDirectory, 1024, null, STREAM_ID, STREAM_START_TIME);
+        for(int i=0; i < putCount; ++i) {
+            queue.put(new StreamsDatum(i, Integer.toString(i)));
+        }
+        assertEquals(putCount, queue.size());
+        assertEquals(putCount - memoryCapacity, queue.getSpilled());
+        assertTrue(queue.getSpilledBytes() > 0);
+        assertTrue(this.spillDirectory.listFiles().length > 1);
+        int takeCount = randomIntBetween(1, putCount);
+        for(int i=0; i < takeCount; ++i) {
+            StreamsDatum datum = queue.take();
+            assertEquals(i, datum.getDocument());
+            assertEquals(Integer.toString(i), datum.getId());
+        }
+        List<StreamsDatum> drained = new ArrayList<>();
+        assertEquals(putCount - takeCount, queue.drainTo(drained));
+        for(int i=0; i < drained.size(); ++i) {
+            assertEquals(takeCount + i, drained.get(i).getDocument());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertEquals(0, queue.getSpilled());
+        assertEquals(0, queue.getSpilledBytes());
+        assertEquals(putCount, queue.getAdded());
+        assertEquals(putCount, queue.getRemoved());
+        assertTrue(queue.getSpillRate() > 0.0);
+        assertTrue(queue.getUnspillRate() > 0.0);
+        queue.close();
+        assertEquals(0, this.spillDirectory.listFiles().length);
+    }
+
+    /**
+     * Test that datums stay in memory while the consumer keeps up, and go back to memory once the spill is read
+     */
+    @Test
+    public void testReturnsToMemoryAfterUnspill() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(2, this.spillDirectory);
+        queue.put(new StreamsDatum(0));
+        queue.put(new StreamsDatum(1));
+        assertNull(this.spillDirectory.listFiles());
+        queue.put(new StreamsDatum(2));
+        assertEquals(1, queue.getSpilled());
+        assertEquals(0, queue.poll().getDocument());
+        //once anything is spilled, later datums are spilled too so they can not overtake it
+        queue.put(new StreamsDatum(3));
+        assertEquals(2, queue.getSpilled());
+        assertEquals(1, queue.poll().getDocument());
+        assertEquals(2, queue.peek().getDocument());
+        assertEquals(2, queue.poll().getDocument());
+        assertEquals(3, queue.poll().getDocument());
+        queue.put(new StreamsDatum(4));
+        assertEquals(0, queue.getSpilled());
+        assertEquals(4, queue.poll(10, TimeUnit.MILLISECONDS).getDocument());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        queue.close();
+    }
+
+    /**
+     * Test that datums that would not read back unchanged from disk are kept in memory rather than spilled
+     */
+    @Test
+    public void testUnspillableDatumsStayInMemory() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory);
+        Object unspillable = new Object();
+        queue.put(new StreamsDatum(0));
+        queue.put(new StreamsDatum(unspillable));
+        assertEquals(0, queue.getSpilled());
+        assertNull(this.spillDirectory.listFiles());
+        assertEquals(2, queue.size());
+        assertEquals(0, queue.poll().getDocument());
+        assertSame(unspillable, queue.poll().getDocument());
+        assertEquals(2, queue.getRemoved());
+        queue.close();
+    }
+
+    /**
+     * Test that a producer is never blocked by a slow consumer and that the consumer sees every datum in order
+     * @throws Exception
+     */
+    @Test
+    public void testSlowConsumer() throws Exception {
+        final SpillingThroughputQueue queue = new SpillingThroughputQueue(10, this.spillDirectory, 4096, null, STREAM_ID, STREAM_START_TIME);
+        final int putCount = randomIntBetween(1, 20000);
+        final List<Integer> received = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while(received.size() < putCount) {
+                        StreamsDatum datum = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if(datum != null) {
+                            received.add((Integer) datum.getDocument());
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for(int i=0; i < putCount; ++i) {
+            assertTrue(queue.offer(new StreamsDatum(i), 0, TimeUnit.MILLISECONDS));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(putCount, received.size());
+        for(int i=0; i < putCount; ++i) {
+            assertEquals(i, received.get(i).intValue());
+        }
+        queue.close();
+    }
+
+    /**
+     * Test that the mbean registers under the ThroughputQueue name and exposes the spill statistics
+     */
+    @Test
+    public void testMBeanRegistration() throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Integer beanCount = mbs.getMBeanCount();
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        assertEquals("Expected bean to be registered", new Integer(beanCount+1), mbs.getMBeanCount());
+        queue.put(new StreamsDatum(0));
+        queue.put(new StreamsDatum(1));
+        ObjectName name = new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, MBEAN_ID, STREAM_ID, STREAM_START_TIME));
+        assertEquals(1L, mbs.getAttribute(name, "Spilled"));
+        assertTrue((Long) mbs.getAttribute(name, "SpilledBytes") > 0);
+        queue.close();
+    }
+}
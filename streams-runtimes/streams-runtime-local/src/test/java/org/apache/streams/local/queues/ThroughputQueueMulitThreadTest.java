@@ -92,6 +92,50 @@ public class ThroughputQueueMulitThreadTest extends RandomizedTest {
         executor.awaitTermination(500, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Test that puts block once the estimated bytes on the queue reach the byte budget
+     * @throws InterruptedException
+     */
+    @Test
+    public void testBlockOnByteBudget() throws InterruptedException {
+        final int fits = randomIntBetween(1, 100);
+        final ThroughputQueue<Integer> queue = new ThroughputQueue<>(-1, fits * 10, new SizeEstimator<Integer>() {
+            @Override
+            public long estimateBytes(Integer element) {
+                return 10;
+            }
+        }, null, STREAM_ID, STREAM_START_TIME);
+        final CountDownLatch full = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for(int i=0; i < fits; ++i) {
+                        queue.put(i);
+                    }
+                    full.countDown();
+                    queue.put(fits);
+                    finished.countDown();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        full.await();
+        safeSleep(500);
+        assertEquals(1, finished.getCount()); //blocked on the byte budget
+        assertEquals(fits, queue.size());
+        assertEquals(fits * 10, queue.getCurrentBytes());
+        queue.take();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(fits, queue.size());
+        assertEquals(fits * 10, queue.getPeakBytes());
+        executor.shutdownNow();
+        executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Test that queue will block on Take when queue is empty
      * @throws InterruptedException
@@ -29,6 +29,8 @@ import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -148,6 +150,28 @@ public class ThroughputQueueSingleThreadTest extends RandomizedTest {
 
 
 
+    /**
+     * Test that drainTo dequeues data in order and updates the measurements from the queue
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testDrainTo() {
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        int putCount = randomIntBetween(1, 1000);
+        for(int i=0; i < putCount; ++i) {
+            queue.offer(i);
+        }
+        int max = randomIntBetween(1, putCount);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(max, queue.drainTo(drained, max));
+        for(int i=0; i < max; ++i) {
+            assertEquals(i, drained.get(i).intValue());
+        }
+        assertEquals(putCount - max, queue.size());
+        assertEquals(queue.size(), queue.getCurrentSize());
+        assertEquals(max, queue.getRemoved());
+    }
+
     /**
      * Test that max wait and avg wait return expected values
      * @throws Exception
@@ -220,6 +244,43 @@ public class ThroughputQueueSingleThreadTest extends RandomizedTest {
         }
     }
 
+    /**
+     * Test that the byte budget rejects offers once it is used up, admits an oversized element into an empty queue, and
+     * that current and peak bytes are tracked
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testByteBudget() {
+        SizeEstimator<String> estimator = new SizeEstimator<String>() {
+            @Override
+            public long estimateBytes(String element) {
+                return element.length();
+            }
+        };
+        int maxBytes = randomIntBetween(10, 1000);
+        ThroughputQueue<String> queue = new ThroughputQueue<>(-1, maxBytes, estimator, null, STREAM_ID, STREAM_START_TIME);
+        int count = 0;
+        while(queue.offer("0123456789")) {
+            ++count;
+        }
+        assertEquals(maxBytes / 10, count);
+        assertEquals(count * 10, queue.getCurrentBytes());
+        assertEquals(count * 10, queue.getPeakBytes());
+        assertEquals(maxBytes, queue.getMaxBytes());
+        List<String> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        assertEquals(0, queue.getCurrentBytes());
+        StringBuilder large = new StringBuilder();
+        for(int i=0; i <= maxBytes; ++i) {
+            large.append('x');
+        }
+        assertTrue(queue.offer(large.toString()));
+        assertFalse(queue.offer("0"));
+        assertEquals(maxBytes + 1, queue.getPeakBytes());
+        assertEquals(large.toString(), queue.poll());
+        assertEquals(0, queue.getCurrentBytes());
+    }
+
     /**
      * Test that mulitple mbeans of the same type with a different name can be registered
      */
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.scaling;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.util.ComponentUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.scaling.ComponentScaler}
+ */
+public class ComponentScalerTest extends RandomizedTest {
+    private static final String MBEAN_ID = "test_id";
+    private static final String STREAM_ID = "test_stream";
+    private static long STREAM_START_TIME = (new DateTime()).getMillis();
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that a task is added when datums wait longer than the target, and that the interval after a change is only
+     * sampled
+     * @throws Exception
+     */
+    @Test
+    public void testScaleUpWhenDatumsWait() throws Exception {
+        ComponentScaler scaler = new ComponentScaler(MBEAN_ID, 1, 1, 4, 10, null, STREAM_START_TIME);
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID);
+        long now = System.currentTimeMillis();
+        assertEquals(ComponentScaler.Decision.HOLD, scaler.sample(now, queue, counter, 1));
+        int putCount = randomIntBetween(2, 100);
+        for(int i=0; i < putCount; ++i) {
+            queue.put(i);
+        }
+        Thread.sleep(50);
+        for(int i=0; i < putCount / 2; ++i) {
+            queue.take();
+        }
+        assertEquals(ComponentScaler.Decision.SCALE_UP, scaler.sample(now += 1000, queue, counter, 1));
+        assertTrue(scaler.getIntervalWait() > 10);
+        scaler.scaled(ComponentScaler.Decision.SCALE_UP, 2);
+        assertEquals(1, scaler.getScaleUps());
+        assertEquals(2, scaler.getNumTasks());
+        assertTrue(scaler.getLastScaleTime() > 0);
+        assertEquals(ComponentScaler.Decision.HOLD, scaler.sample(now += 1000, queue, counter, 2));
+        //nothing left the queue for the whole interval, so the remaining datums waited the whole interval
+        assertEquals(ComponentScaler.Decision.SCALE_UP, scaler.sample(now += 1000, queue, counter, 2));
+        assertEquals(1000.0, scaler.getIntervalWait(), 0.0);
+    }
+
+    /**
+     * Test that a task is retired when the tasks are mostly idle, but never below the minimum
+     */
+    @Test
+    public void testScaleDownWhenIdle() {
+        ComponentScaler scaler = new ComponentScaler(MBEAN_ID, 3, 2, 4, 10, null, STREAM_START_TIME);
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID);
+        long now = System.currentTimeMillis();
+        scaler.sample(now, queue, counter, 3);
+        for(int i=0; i < 10; ++i) {
+            counter.incrementReceivedCount();
+            counter.addTime(1);
+        }
+        assertEquals(ComponentScaler.Decision.SCALE_DOWN, scaler.sample(now += 1000, queue, counter, 3));
+        assertTrue(scaler.getIntervalUtilization() < ComponentScaler.SCALE_DOWN_UTILIZATION);
+        scaler.scaled(ComponentScaler.Decision.SCALE_DOWN, 2);
+        assertEquals(1, scaler.getScaleDowns());
+        assertEquals(ComponentScaler.Decision.HOLD, scaler.sample(now += 1000, queue, counter, 2));
+        assertEquals(ComponentScaler.Decision.HOLD, scaler.sample(now += 1000, queue, counter, 2));
+    }
+
+    /**
+     * Test that a component running outside of its bounds is brought back within them
+     */
+    @Test
+    public void testBounds() {
+        ComponentScaler scaler = new ComponentScaler(MBEAN_ID, 3, 2, 4, 10, null, STREAM_START_TIME);
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID);
+        long now = System.currentTimeMillis();
+        scaler.sample(now, queue, counter, 3);
+        assertEquals(ComponentScaler.Decision.SCALE_UP, scaler.sample(now += 1000, queue, counter, 1));
+        assertEquals(ComponentScaler.Decision.SCALE_DOWN, scaler.sample(now += 1000, queue, counter, 5));
+        try {
+            new ComponentScaler(MBEAN_ID, 1, 0, 4, 10, null, STREAM_START_TIME);
+            fail("Expected an exception for a minimum of 0 tasks");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        try {
+            new ComponentScaler(MBEAN_ID, 1, 3, 2, 10, null, STREAM_START_TIME);
+            fail("Expected an exception for a maximum below the minimum");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+
+    /**
+     * Test that the mbean registers
+     */
+    @Test
+    public void testMBeanRegistration() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            Integer beanCount = mbs.getMBeanCount();
+            new ComponentScaler(MBEAN_ID, 1, 1, 4, 10, STREAM_ID, STREAM_START_TIME);
+            assertEquals("Expected bean to be registered", new Integer(beanCount+1), mbs.getMBeanCount());
+            ObjectInstance mBean = mbs.getObjectInstance(new ObjectName(String.format(ComponentScaler.NAME_TEMPLATE, MBEAN_ID, STREAM_ID, STREAM_START_TIME)));
+            assertNotNull(mBean);
+        } catch (Exception e) {
+            fail("Failed to register MXBean : "+e.getMessage());
+        }
+    }
+}
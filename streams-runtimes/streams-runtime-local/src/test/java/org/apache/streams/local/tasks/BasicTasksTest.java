@@ -319,6 +319,110 @@ public class BasicTasksTest {
         assertNotEquals(datum1, datum2);
     }
 
+    @Test
+    public void testBranchingReadOnlyConsumers() {
+        StreamsProcessorTask task = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""));
+        BlockingQueue<StreamsDatum> readOnly1 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> readOnly2 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> mutating = new LinkedBlockingQueue<>();
+        task.addOutputQueue(readOnly1, true);
+        task.addOutputQueue(readOnly2, true);
+        task.addOutputQueue(mutating, false);
+        StreamsDatum datum = new StreamsDatum(1);
+        datum.getMetadata().put("key", "value");
+        try {
+            task.addToOutgoingQueue(datum);
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        assertSame(datum, readOnly1.poll());
+        assertSame(datum, readOnly2.poll());
+        StreamsDatum clone = mutating.poll();
+        assertNotNull(clone);
+        assertNotSame(datum, clone);
+        assertEquals(datum, clone);
+        clone.getMetadata().put("key", "changed");
+        assertEquals("value", datum.getMetadata().get("key"));
+    }
+
+    @Test
+    public void testBranchingMutatingConsumerOwnsDatum() {
+        StreamsProcessorTask task = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""));
+        BlockingQueue<StreamsDatum> mutating1 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> mutating2 = new LinkedBlockingQueue<>();
+        task.addOutputQueue(mutating1);
+        task.addOutputQueue(mutating2);
+        StreamsDatum datum = new StreamsDatum(1);
+        try {
+            task.addToOutgoingQueue(datum);
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        StreamsDatum datum1 = mutating1.poll();
+        StreamsDatum datum2 = mutating2.poll();
+        assertNotSame(datum, datum1);
+        assertSame(datum, datum2);
+    }
+
+    @Test
+    public void testSharedOutputIsClonedForMutatingConsumer() {
+        StreamsProcessorTask task = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""));
+        BlockingQueue<StreamsDatum> mutating = new LinkedBlockingQueue<>();
+        task.addOutputQueue(mutating, false);
+        task.setOutputShared(true);
+        StreamsDatum datum = new StreamsDatum(1);
+        datum.getMetadata().put("key", "value");
+        try {
+            task.addToOutgoingQueue(datum);
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        StreamsDatum clone = mutating.poll();
+        assertNotNull(clone);
+        assertNotSame(datum, clone);
+        clone.getMetadata().put("key", "changed");
+        assertEquals("value", datum.getMetadata().get("key"));
+
+        StreamsProcessorTask readOnlyTask = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""));
+        BlockingQueue<StreamsDatum> readOnly = new LinkedBlockingQueue<>();
+        readOnlyTask.addOutputQueue(readOnly, true);
+        readOnlyTask.setOutputShared(true);
+        try {
+            readOnlyTask.addToOutgoingQueue(datum);
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        assertSame(datum, readOnly.poll());
+    }
+
+    /**
+     * Test that a task told its input is complete drains its queue and finishes without waiting out its poll timeout
+     */
+    @Test
+    public void testInputCompleteFinishesTasks() throws Exception {
+        int numMessages = 100;
+        DatumCounterWriter writer = new DatumCounterWriter("input_complete");
+        StreamsPersistWriterTask writerTask = new StreamsPersistWriterTask(writer);
+        writerTask.setStreamsTaskCounter(new StreamsTaskCounter(MBEAN_ID, null, -1));
+        BlockingQueue<StreamsDatum> writerQueue = new LinkedBlockingQueue<>();
+        writerTask.addInputQueue(writerQueue);
+        StreamsProcessorTask processorTask = new StreamsProcessorTask(new PassthroughDatumCounterProcessor("input_complete"));
+        processorTask.setStreamsTaskCounter(new StreamsTaskCounter(MBEAN_ID+"_proc", null, -1));
+        processorTask.addInputQueue(createInputQueue(numMessages));
+        processorTask.addOutputQueue(writerQueue);
+        ExecutorService service = Executors.newFixedThreadPool(2);
+        service.submit(processorTask);
+        service.submit(writerTask);
+        processorTask.inputComplete();
+        assertTrue("Processor should finish once its queue is drained", processorTask.awaitCompletion(2, TimeUnit.SECONDS));
+        writerTask.inputComplete();
+        assertTrue("Writer should finish once its queue is drained", writerTask.awaitCompletion(2, TimeUnit.SECONDS));
+        assertFalse(writerTask.isRunning());
+        assertEquals(numMessages, DatumCounterWriter.COUNTS.get("input_complete").get());
+        service.shutdown();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
     private BlockingQueue<StreamsDatum> createInputQueue(int numDatums) {
         BlockingQueue<StreamsDatum> queue = new LinkedBlockingQueue<>();
         for(int i=0; i < numDatums; ++i) {
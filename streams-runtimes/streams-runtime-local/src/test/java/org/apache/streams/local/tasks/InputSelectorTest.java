@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.tasks;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.util.ComponentUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.tasks.InputSelector}
+ */
+public class InputSelectorTest {
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that inputs of equal priority are read in proportion to their weights, interleaved
+     */
+    @Test
+    public void testWeights() {
+        InputSelector selector = new InputSelector();
+        BlockingQueue<StreamsDatum> heavy = createInputQueue("heavy", 100);
+        BlockingQueue<StreamsDatum> light = createInputQueue("light", 100);
+        selector.addInput(heavy, 3, 0);
+        selector.addInput(light, 1, 0);
+        int heavyCount = 0;
+        for(int i=0; i < 40; ++i) {
+            if("heavy".equals(selector.poll().getDocument())) {
+                ++heavyCount;
+            }
+            if(i % 4 == 3) {
+                //every window of 4 holds exactly 3 heavy datums
+                assertEquals((i + 1) / 4 * 3, heavyCount);
+            }
+        }
+        //once the light input is drained, the heavy input gets everything
+        light.clear();
+        assertEquals("heavy", selector.poll().getDocument());
+        assertEquals("heavy", selector.poll().getDocument());
+    }
+
+    /**
+     * Test that an input of a higher priority is always read first
+     */
+    @Test
+    public void testPriority() {
+        InputSelector selector = new InputSelector();
+        BlockingQueue<StreamsDatum> backfill = createInputQueue("backfill", 10);
+        BlockingQueue<StreamsDatum> live = createInputQueue("live", 10);
+        selector.addInput(backfill, 100, 0);
+        selector.addInput(live, 1, 1);
+        for(int i=0; i < 10; ++i) {
+            assertEquals("live", selector.poll().getDocument());
+        }
+        assertEquals("backfill", selector.poll().getDocument());
+        live.add(new StreamsDatum("live"));
+        assertEquals("live", selector.poll().getDocument());
+        for(int i=0; i < 9; ++i) {
+            assertEquals("backfill", selector.poll().getDocument());
+        }
+        assertNull(selector.poll());
+        assertTrue(selector.isEmpty());
+    }
+
+    /**
+     * Test that a waiting poll returns as soon as it is signalled, and otherwise notices data added without a signal
+     * @throws Exception
+     */
+    @Test
+    public void testBlockingPoll() throws Exception {
+        final InputSelector selector = new InputSelector();
+        final BlockingQueue<StreamsDatum> input = new LinkedBlockingQueue<>();
+        selector.addInput(input);
+        long start = System.currentTimeMillis();
+        assertNull(selector.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+
+        final CountDownLatch polling = new CountDownLatch(1);
+        Thread signaller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    polling.await();
+                    Thread.sleep(50);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                input.add(new StreamsDatum("signalled"));
+                selector.signal();
+            }
+        });
+        signaller.start();
+        start = System.currentTimeMillis();
+        polling.countDown();
+        assertEquals("signalled", selector.poll(10, TimeUnit.SECONDS).getDocument());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        signaller.join();
+
+        input.add(new StreamsDatum("unsignalled"));
+        assertEquals("unsignalled", selector.poll(10, TimeUnit.SECONDS).getDocument());
+    }
+
+    /**
+     * Test that a waiting poll is woken by a signalling input as soon as a datum is added to it
+     * @throws Exception
+     */
+    @Test
+    public void testSignallingInputsWakePoll() throws Exception {
+        final InputSelector selector = new InputSelector();
+        final BlockingQueue<StreamsDatum> input = new ThroughputQueue<>();
+        selector.addInput(new ThroughputQueue<StreamsDatum>());
+        selector.addInput(input);
+        final CountDownLatch polling = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    polling.await();
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                input.add(new StreamsDatum("added"));
+            }
+        });
+        producer.start();
+        long start = System.currentTimeMillis();
+        polling.countDown();
+        StreamsDatum datum = selector.poll(30, TimeUnit.SECONDS);
+        while(datum == null && System.currentTimeMillis() - start < 30000) {
+            datum = selector.poll(30, TimeUnit.SECONDS);
+        }
+        assertEquals("added", datum.getDocument());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        producer.join();
+    }
+
+    /**
+     * Test that the datums taken from each input are counted
+     */
+    @Test
+    public void testInputCounts() {
+        InputSelector selector = new InputSelector();
+        StreamsTaskCounter counter = new StreamsTaskCounter("input_counts");
+        selector.setCounter(counter);
+        selector.addInput(createInputQueue("a", 5));
+        selector.addInput(createInputQueue("b", 3));
+        while(selector.poll() != null);
+        assertArrayEquals(new long[] {5, 3}, counter.getInputDequeueCounts());
+    }
+
+    private BlockingQueue<StreamsDatum> createInputQueue(String document, int numDatums) {
+        BlockingQueue<StreamsDatum> queue = new LinkedBlockingQueue<>();
+        for(int i=0; i < numDatums; ++i) {
+            queue.add(new StreamsDatum(document));
+        }
+        return queue;
+    }
+}
@@ -21,14 +21,17 @@ package org.apache.streams.local.tasks;
 
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsProvider;
+import org.apache.streams.core.StreamsResultCursor;
 import org.apache.streams.core.StreamsResultSet;
 import org.apache.streams.util.ComponentUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -85,6 +88,46 @@ public class StreamsProviderTaskTest {
         assertThat(out.size(), is(equalTo(3)));
     }
 
+    @Test
+    public void pullsCursorAsDownstreamAccepts() throws Exception {
+        final AtomicInteger produced = new AtomicInteger(0);
+        final int total = 10;
+        BlockingQueue<StreamsDatum> out = new LinkedBlockingQueue<>(2);
+        StreamsProviderTask task = new StreamsProviderTask(mockProvider, false, null);
+        when(mockProvider.isRunning()).thenReturn(true);
+        when(mockProvider.readCurrent()).thenReturn(new StreamsResultCursor(new Iterator<StreamsDatum>() {
+            @Override
+            public boolean hasNext() {
+                return produced.get() < total;
+            }
+
+            @Override
+            public StreamsDatum next() {
+                return new StreamsDatum(produced.getAndIncrement());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }));
+        task.getOutputQueues().add(out);
+        Future<?> taskResult = pool.submit(task);
+        int count = 0;
+        while(produced.get() < 3 && ++count < 50) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(100);
+        //Two datums fit downstream and the third is waiting to be offered, nothing more should have been read
+        assertThat(produced.get(), is(equalTo(3)));
+        for(int i=0; i < total; ++i) {
+            StreamsDatum datum = out.poll(5, TimeUnit.SECONDS);
+            assertThat(datum.getDocument(), is(equalTo((Object) i)));
+        }
+        taskResult.get(5, TimeUnit.SECONDS);
+        assertThat(produced.get(), is(equalTo(total)));
+    }
+
     protected Queue<StreamsDatum> getQueue(int numElems) {
         Queue<StreamsDatum> results = new LinkedBlockingQueue<>();
         for(int i=0; i<numElems; i++) {
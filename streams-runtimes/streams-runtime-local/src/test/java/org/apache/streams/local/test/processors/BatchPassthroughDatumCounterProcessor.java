@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link org.apache.streams.local.test.processors.PassthroughDatumCounterProcessor} that also accepts batches and
+ * records the largest batch it was handed.
+ */
+public class BatchPassthroughDatumCounterProcessor extends PassthroughDatumCounterProcessor implements StreamsBatchProcessor {
+
+    /**
+     * The largest batch seen by any instance
+     */
+    public static final AtomicInteger MAX_BATCH_SIZE = new AtomicInteger(0);
+
+    public BatchPassthroughDatumCounterProcessor(String procId) {
+        super(procId);
+    }
+
+    @Override
+    public List<StreamsDatum> processBatch(List<StreamsDatum> entries) {
+        int max = MAX_BATCH_SIZE.get();
+        while(entries.size() > max && !MAX_BATCH_SIZE.compareAndSet(max, entries.size())) {
+            max = MAX_BATCH_SIZE.get();
+        }
+        List<StreamsDatum> result = new ArrayList<>(entries.size());
+        for(StreamsDatum entry : entries) {
+            result.addAll(process(entry));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDatumKeyExtractor;
+import org.apache.streams.core.StreamsProcessor;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test StreamsProcessor for numeric datums that records which instance saw each key, and whether the datums of a key
+ * arrived in order.  The key of a datum is its number modulo the number of keys of the {@link ModuloKeyExtractor}.
+ */
+public class KeyRecordingProcessor implements StreamsProcessor {
+
+    /**
+     * Instance ids, by key, of the instances that received datums with the key
+     */
+    public static final ConcurrentHashMap<Integer, Set<Integer>> KEY_OWNERS = new ConcurrentHashMap<>();
+    /**
+     * Number of datums with a key that arrived after a larger datum with the same key
+     */
+    public static final AtomicInteger OUT_OF_ORDER = new AtomicInteger(0);
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(0);
+
+    private final int numKeys;
+    private int id;
+    private Map<Integer, Integer> lastSeen;
+
+    public KeyRecordingProcessor(int numKeys) {
+        this.numKeys = numKeys;
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        int value = (Integer) entry.getDocument();
+        int key = value % this.numKeys;
+        Set<Integer> owners = KEY_OWNERS.get(key);
+        if(owners == null) {
+            KEY_OWNERS.putIfAbsent(key, Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>()));
+            owners = KEY_OWNERS.get(key);
+        }
+        owners.add(this.id);
+        Integer last = this.lastSeen.put(key, value);
+        if(last != null && last > value) {
+            OUT_OF_ORDER.incrementAndGet();
+        }
+        List<StreamsDatum> result = new LinkedList<StreamsDatum>();
+        result.add(entry);
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+        this.id = NEXT_ID.incrementAndGet();
+        this.lastSeen = new HashMap<>();
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    /**
+     * Partitions numeric datums by their number modulo the number of keys
+     */
+    public static class ModuloKeyExtractor implements StreamsDatumKeyExtractor {
+
+        private final int numKeys;
+
+        public ModuloKeyExtractor(int numKeys) {
+            this.numKeys = numKeys;
+        }
+
+        @Override
+        public Object getKey(StreamsDatum datum) {
+            return (Integer) datum.getDocument() % this.numKeys;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.test.writer;
+
+import org.apache.streams.core.ReadOnlyDatumOperation;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsPersistWriter;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read only writer that records the datum instances it is handed, so tests can check which datums were shared with
+ * other components and which were cloned.
+ */
+public class ReadOnlyDatumRecordingWriter implements StreamsPersistWriter, ReadOnlyDatumOperation {
+
+    /**
+     * The datums received, by writer id
+     */
+    public static final ConcurrentHashMap<String, List<StreamsDatum>> RECEIVED = new ConcurrentHashMap<>();
+
+    private String writerId;
+
+    public ReadOnlyDatumRecordingWriter(String writerId) {
+        this.writerId = writerId;
+    }
+
+    @Override
+    public void write(StreamsDatum entry) {
+        List<StreamsDatum> datums = RECEIVED.get(this.writerId);
+        if(datums == null) {
+            RECEIVED.putIfAbsent(this.writerId, Collections.synchronizedList(new LinkedList<StreamsDatum>()));
+            datums = RECEIVED.get(this.writerId);
+        }
+        datums.add(entry);
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+}
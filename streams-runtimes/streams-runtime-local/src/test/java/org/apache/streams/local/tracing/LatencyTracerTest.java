@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.tracing;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.counters.LatencyHistogram;
+import org.apache.streams.util.ComponentUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.tracing.LatencyTracer}
+ */
+public class LatencyTracerTest {
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that one in every sample rate datums is traced
+     */
+    @Test
+    public void testSampling() {
+        LatencyTracer tracer = new LatencyTracer(10, null, -1);
+        int traced = 0;
+        for(int i=0; i < 1000; ++i) {
+            StreamsDatum datum = new StreamsDatum(i);
+            tracer.start(datum, "provider");
+            if(datum.getMetadata().containsKey(LatencyTracer.TRACE_START_KEY)) {
+                ++traced;
+                assertEquals("provider", datum.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+            }
+        }
+        assertEquals(100, traced);
+    }
+
+    /**
+     * Test that the path is extended by processors, carried over to new datums, and recorded by writers
+     */
+    @Test
+    public void testPath() {
+        LatencyTracer tracer = new LatencyTracer(1, null, -1);
+        StreamsDatum datum = new StreamsDatum("doc");
+        tracer.start(datum, "provider");
+        StreamsDatum passed = tracer.exit(datum, datum, "passthrough");
+        StreamsDatum created = tracer.exit(passed, new StreamsDatum("new doc"), "creator");
+        assertEquals("provider>passthrough>creator", created.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+        assertEquals(datum.getMetadata().get(LatencyTracer.TRACE_START_KEY), created.getMetadata().get(LatencyTracer.TRACE_START_KEY));
+        tracer.complete(created, "writer");
+        tracer.complete(passed, "other_writer");
+        StreamsDatum untraced = new StreamsDatum("untraced");
+        assertSame(untraced, tracer.exit(null, untraced, "batch"));
+        assertSame(untraced, tracer.complete(untraced, "writer"));
+
+        assertEquals(2, tracer.getHistograms().size());
+        LatencyHistogram histogram = tracer.getHistograms().get("provider>passthrough>creator>writer");
+        assertNotNull(histogram);
+        assertEquals(1, histogram.getCount());
+        assertNotNull(tracer.getHistograms().get("provider>passthrough>other_writer"));
+    }
+
+    /**
+     * Test that branches passing on the same datum do not write to each other's trace
+     */
+    @Test
+    public void testSiblingBranches() {
+        LatencyTracer tracer = new LatencyTracer(1, null, -1);
+        StreamsDatum datum = new StreamsDatum("doc");
+        tracer.start(datum, "provider");
+        StreamsDatum left = tracer.exit(datum, datum, "left");
+        StreamsDatum right = tracer.exit(datum, datum, "right");
+
+        assertEquals("provider", datum.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+        assertEquals("provider>left", left.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+        assertEquals("provider>right", right.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+        assertSame(datum.getDocument(), left.getDocument());
+        assertSame(datum.getDocument(), right.getDocument());
+    }
+
+    /**
+     * Test that writers are given datums without the trace, leaving the datum they received untouched
+     */
+    @Test
+    public void testTraceNotWritten() {
+        LatencyTracer tracer = new LatencyTracer(1, null, -1);
+        StreamsDatum datum = new StreamsDatum("doc");
+        datum.getMetadata().put("id", "doc");
+        tracer.start(datum, "provider");
+        StreamsDatum written = tracer.complete(datum, "writer");
+
+        assertEquals("doc", written.getMetadata().get("id"));
+        assertFalse(written.getMetadata().containsKey(LatencyTracer.TRACE_START_KEY));
+        assertFalse(written.getMetadata().containsKey(LatencyTracer.TRACE_PATH_KEY));
+        assertEquals("provider", datum.getMetadata().get(LatencyTracer.TRACE_PATH_KEY));
+        assertEquals(1, tracer.getHistograms().get("provider>writer").getCount());
+    }
+}
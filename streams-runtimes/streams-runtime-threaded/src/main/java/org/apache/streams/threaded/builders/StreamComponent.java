@@ -19,6 +19,7 @@ package org.apache.streams.threaded.builders;
 
 import org.apache.streams.threaded.controller.ThreadingController;
 import org.apache.streams.core.*;
+import org.apache.streams.threaded.tasks.BaseStreamsTask;
 import org.apache.streams.threaded.tasks.StreamsPersistWriterTask;
 import org.apache.streams.threaded.tasks.StreamsProcessorTask;
 import org.apache.streams.threaded.tasks.StreamsProviderTask;
@@ -180,7 +181,7 @@ class StreamComponent {
      */
     public StreamsTask createConnectedTask(Map<String, Object> config) {
 
-        StreamsTask task;
+        BaseStreamsTask task;
 
         if(this.processor != null) {
             // create the task
@@ -206,6 +207,7 @@ class StreamComponent {
             throw new InvalidStreamException("Underlying StreamComponent was NULL.");
         }
 
+        task.setParallelism(this.numTasks);
         return task;
     }
 
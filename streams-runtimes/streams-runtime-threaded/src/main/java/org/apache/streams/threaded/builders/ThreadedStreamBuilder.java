@@ -24,10 +24,12 @@ import org.apache.streams.threaded.tasks.StreamsPersistWriterTask;
 import org.apache.streams.threaded.tasks.StreamsProcessorTask;
 import org.apache.streams.threaded.tasks.StreamsProviderTask;
 import org.apache.streams.threaded.tasks.StreamsTask;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.apache.streams.util.SerializationUtil;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 
+import java.io.Closeable;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.*;
@@ -47,6 +49,18 @@ public class ThreadedStreamBuilder implements StreamBuilder {
     private final List<StreamsGraphElement> graphElements = new ArrayList<>();
 
     public static final String TIMEOUT_KEY = "TIMEOUT";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final String BATCH_TIMEOUT_KEY = "batchTimeoutMs";
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    public static final long DEFAULT_BATCH_TIMEOUT_MS = 100;
+    public static final String THREADING_CONTROLLER_KEY = "threadingController";
+    public static final String THREADS_KEY = "threads";
+    public static final String MAX_THREADS_KEY = "maxThreads";
+    public static final String MAX_CONCURRENCY_KEY = "maxConcurrency";
+    public static final String CPU_SHARE_KEY = "cpuShare";
+    public static final String MAILBOX_CAPACITY_KEY = "mailboxCapacity";
+    public static final String MAILBOX_OVERFLOW_KEY = "mailboxOverflow";
+    public static final String MAILBOX_SPILL_DIRECTORY_KEY = "mailboxSpillDirectory";
     private static final List<ThreadedStreamBuilder> CURRENTLY_EXECUTING = Collections.synchronizedList(new ArrayList<ThreadedStreamBuilder>());
 
     private ExecutorService providerExecutor;
@@ -75,7 +89,7 @@ public class ThreadedStreamBuilder implements StreamBuilder {
     }
 
     public ThreadedStreamBuilder(Map<String, Object> streamConfig) {
-        this(new ArrayBlockingQueue<StreamsDatum>(50), streamConfig, ThreadingController.getInstance());
+        this(new ArrayBlockingQueue<StreamsDatum>(50), streamConfig, threadingControllerFor(streamConfig));
     }
 
     public ThreadedStreamBuilder(Queue<StreamsDatum> queue, Map<String, Object> streamConfig, ThreadingController threadingController) {
@@ -83,9 +97,41 @@ public class ThreadedStreamBuilder implements StreamBuilder {
         this.providers = new LinkedHashMap<>();
         this.components = new LinkedHashMap<>();
         this.streamConfig = streamConfig;
+        FlightRecorderEvents.configure(streamConfig);
         this.threadingController = threadingController;
     }
 
+    /**
+     * The threading controller a stream config asks for.  When {@link #THREADING_CONTROLLER_KEY} names a controller,
+     * the stream runs on that controller's own pool, sized by {@link #THREADS_KEY} and {@link #MAX_THREADS_KEY} and
+     * held to the {@link #MAX_CONCURRENCY_KEY} and {@link #CPU_SHARE_KEY} quotas when they are given.  Otherwise the
+     * stream shares the default controller.
+     * @param streamConfig stream config, may be null
+     * @return the threading controller to run the stream on
+     */
+    public static ThreadingController threadingControllerFor(Map<String, Object> streamConfig) {
+        if(streamConfig == null || streamConfig.get(THREADING_CONTROLLER_KEY) == null) {
+            return ThreadingController.getInstance();
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = getConfiguredInt(streamConfig, THREADS_KEY, processors);
+        int maxThreads = getConfiguredInt(streamConfig, MAX_THREADS_KEY, Math.max(threads, processors * 5));
+        ThreadingController controller = ThreadingController.getInstance(streamConfig.get(THREADING_CONTROLLER_KEY).toString(),
+                threads, maxThreads, Thread.NORM_PRIORITY);
+        if(streamConfig.get(MAX_CONCURRENCY_KEY) instanceof Number) {
+            controller.setMaxConcurrency(((Number) streamConfig.get(MAX_CONCURRENCY_KEY)).intValue());
+        }
+        if(streamConfig.get(CPU_SHARE_KEY) instanceof Number) {
+            controller.setCpuShare(((Number) streamConfig.get(CPU_SHARE_KEY)).doubleValue());
+        }
+        return controller;
+    }
+
+    private static int getConfiguredInt(Map<String, Object> streamConfig, String key, int defaultValue) {
+        Object value = streamConfig.get(key);
+        return value instanceof Number && ((Number) value).intValue() > 0 ? ((Number) value).intValue() : defaultValue;
+    }
+
     public List<StreamsGraphElement> getGraphElements() {
         if(this.graphElements.size() == 0) {
             buildGraphElements();
@@ -309,6 +355,9 @@ public class ThreadedStreamBuilder implements StreamBuilder {
                 updateTask.cancel();
             }
 
+            // let the event handlers release their metrics
+            closeEventHandlers();
+
         }
     }
 
@@ -329,6 +378,18 @@ public class ThreadedStreamBuilder implements StreamBuilder {
         }
     }
 
+    private void closeEventHandlers() {
+        for (StreamBuilderEventHandler eventHandler : eventHandlers) {
+            if (eventHandler instanceof Closeable) {
+                try {
+                    ((Closeable) eventHandler).close();
+                } catch (Throwable e) {
+                    LOGGER.warn("Exception while trying to close event handler: {}", e);
+                }
+            }
+        }
+    }
+
     private Condition getOffendingLock() {
         for(StreamsTask t : this.tasks.values()) {
             if(t instanceof StreamsProviderTask) {
@@ -18,6 +18,7 @@
 package org.apache.streams.threaded.builders.impl;
 
 import com.google.common.collect.Maps;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
 import org.apache.streams.monitoring.tasks.LocalRuntimeBroadcastMonitorThread;
 import org.apache.streams.threaded.builders.StreamBuilderEventHandler;
 import org.apache.streams.threaded.builders.StreamsGraphElement;
@@ -26,15 +27,17 @@ import org.apache.streams.threaded.counters.DatumStatusCounter;
 import org.apache.streams.threaded.tasks.StatusCounts;
 import org.slf4j.Logger;
 
+import java.io.Closeable;
 import java.util.List;
 import java.util.Map;
 
-public class JMXStreamBuilderEventHandler extends LocalRuntimeBroadcastMonitorThread implements StreamBuilderEventHandler {
+public class JMXStreamBuilderEventHandler extends LocalRuntimeBroadcastMonitorThread implements StreamBuilderEventHandler, Closeable {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(JMXStreamBuilderEventHandler.class);
 
     private static Map<String, StatusCounts> graph;
     private Map<String, DatumStatusCounter> counterBeans;
     private String streamName;
+    private long startedAt;
 
     public JMXStreamBuilderEventHandler(Map<String, Object> streamConfig) {
         super(streamConfig);
@@ -68,8 +71,9 @@ public class JMXStreamBuilderEventHandler extends LocalRuntimeBroadcastMonitorTh
         this.graph = graph;
 
         try {
+            this.startedAt = System.currentTimeMillis();
             for(Map.Entry<String, StatusCounts> element : graph.entrySet()) {
-                DatumStatusCounter counter = new DatumStatusCounter(element.getValue().getId(), this.streamName, System.currentTimeMillis());
+                DatumStatusCounter counter = new DatumStatusCounter(element.getValue().getId(), this.streamName, this.startedAt);
 
                 counterBeans.put(element.getValue().getId(), counter);
             }
@@ -96,6 +100,14 @@ public class JMXStreamBuilderEventHandler extends LocalRuntimeBroadcastMonitorTh
             //Set the failed count
             delta = count.getFailed() - currentBean.getNumFailed();
             currentBean.incrementFailedCount(delta);
+
+            //Set the dropped count and the mailbox depth
+            delta = count.getDropped() - currentBean.getNumDropped();
+            currentBean.incrementDroppedCount(delta);
+            currentBean.setMailboxDepth(count.getMailboxDepth());
+
+            //Set the latency percentiles
+            currentBean.setLatencies(count.getLatencyP50(), count.getLatencyP99(), count.getLatencyP999(), count.getLatencyMax());
         }
     }
 
@@ -108,4 +120,17 @@ public class JMXStreamBuilderEventHandler extends LocalRuntimeBroadcastMonitorTh
             setGraph(counts);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Unregisters the counters of the stream, and stops broadcasting, once the stream has finished
+     */
+    @Override
+    public void close() {
+        for(String id : this.counterBeans.keySet()) {
+            MetricsRegistry.getInstance().unregister(String.format(DatumStatusCounter.NAME_TEMPLATE, id, this.streamName, this.startedAt));
+        }
+        this.counterBeans.clear();
+        this.graph = null;
+        shutdown();
+    }
+}
@@ -19,45 +19,85 @@ package org.apache.streams.threaded.controller;
 
 import com.google.common.util.concurrent.*;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.ThreadingControllerBroadcast;
 import org.slf4j.Logger;
 
-import java.util.Date;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Condition;
 import org.slf4j.LoggerFactory;
 
-public class ThreadingController {
+/**
+ * Runs the work of the threaded runtime on a shared, self sizing thread pool.
+ *
+ * Admission is handled by a semaphore holding one permit per pool thread, so submitting a datum never serialises on
+ * this controller.  The CPU load is sampled by a background thread, and every {@link #getScaleCheck()} millis the pool
+ * is resized by a step proportional to how far the average load is from {@link #getScaleThreshold()}.
+ *
+ * Besides the three shared controllers, named controllers can be created with
+ * {@link #getInstance(String, int, int, int)} so that streams running in the same JVM do not compete for the same
+ * threads.  A controller can be held to a maximum concurrency, or to a share of the machine's CPU measured from the
+ * CPU time of its own threads.
+ */
+public class ThreadingController implements ThreadingControllerMXBean, MetricsSource {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=ThreadingController,name=%s";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ThreadingController.class);
 
     private final String name;
+    private final int minNumberOfThreads;
     private final int maxNumberOfThreads;
     private final int priority;
     private ThreadPoolExecutor threadPoolExecutor;
     private ListeningExecutorService listeningExecutorService;
-    private final Condition lock = new SimpleCondition();
+    private ScheduledExecutorService cpuSampler;
+    private final AdjustableSemaphore permits;
     private final AtomicInteger usingCount = new AtomicInteger(0);
     private final AtomicInteger numThreads;
-    private final AtomicLong lastWorked = new AtomicLong(new Date().getTime());
+    private final AtomicLong lastWorked = new AtomicLong(System.currentTimeMillis());
     private final AtomicLong numberOfObservations = new AtomicLong(0);
     private final AtomicDouble sumOfObservations = new AtomicDouble(0);
     private final AtomicInteger workingNow = new AtomicInteger(0);
+    private final AtomicBoolean saturated = new AtomicBoolean(false);
+    private final Map<Thread, Long> poolThreadCpuTimes = new ConcurrentHashMap<>();
+    private final AtomicLong windowCpuTime = new AtomicLong(0);
 
     private volatile double lastCPUObservation = 0.0;
+    private volatile double lastCpuShareObservation = 0.0;
+    private volatile int maxConcurrency = 0;
+    private volatile double cpuShare = 0.0;
 
     private static final long SCALE_CHECK = 2000;
+    private static final long SAMPLE_INTERVAL = 250;
+    private static final double DEAD_BAND = .1;
+    private static final double PROPORTIONAL_GAIN = 1.0;
     private static final Integer NUM_PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
 
     private Double scaleThreshold = .85;
-    private ThreadingControllerCPUObserver threadingControllerCPUObserver = new DefaultThreadingControllerCPUObserver();
+    private volatile ThreadingControllerCPUObserver threadingControllerCPUObserver = new DefaultThreadingControllerCPUObserver();
 
     private static ThreadingController instanceLowPriority;
     private static ThreadingController instance;
     private static ThreadingController instanceHighPriority;
+    private static final Map<String, ThreadingController> NAMED_INSTANCES = new HashMap<>();
 
     /**
      * Use for very low priority items... The thread-pool that runs this runs at priority
@@ -68,7 +108,7 @@ public class ThreadingController {
     public static ThreadingController getInstanceLowPriority() {
         synchronized (ThreadingController.class) {
             if(instanceLowPriority == null) {
-                instanceLowPriority = new ThreadingController("Apache Streams [low]", NUM_PROCESSORS, NUM_PROCESSORS * 2, Thread.NORM_PRIORITY - 2);
+                instanceLowPriority = register(new ThreadingController("Apache Streams [low]", NUM_PROCESSORS, NUM_PROCESSORS * 2, Thread.NORM_PRIORITY - 2));
             }
             return instanceLowPriority;
         }
@@ -77,7 +117,7 @@ public class ThreadingController {
     public static ThreadingController getInstance() {
         synchronized (ThreadingController.class) {
             if (instance == null) {
-                instance = new ThreadingController("Apache Streams [default]", NUM_PROCESSORS, NUM_PROCESSORS * 5, Thread.NORM_PRIORITY);
+                instance = register(new ThreadingController("Apache Streams [default]", NUM_PROCESSORS, NUM_PROCESSORS * 5, Thread.NORM_PRIORITY));
             }
             return instance;
         }
@@ -86,17 +126,55 @@ public class ThreadingController {
     public static ThreadingController getInstanceHighPriority() {
         synchronized (ThreadingController.class) {
             if (instanceHighPriority == null) {
-                instanceHighPriority = new ThreadingController("Apache Streams [high]", NUM_PROCESSORS, NUM_PROCESSORS * 7, Thread.NORM_PRIORITY + 2);
+                instanceHighPriority = register(new ThreadingController("Apache Streams [high]", NUM_PROCESSORS, NUM_PROCESSORS * 7, Thread.NORM_PRIORITY + 2));
             }
             return instanceHighPriority;
         }
     }
 
-    private ThreadingController(final String name, final int startThreadCount, final int maxNumberOfThreads, final int priority) {
+    /**
+     * A controller with its own thread pool, shared only by the streams that ask for the same name.  The sizing is
+     * taken from the first call for a name and ignored on later calls.  Like the shared controllers, named controllers
+     * live for as long as the JVM and release their threads whenever no stream is using them.
+     * @param name unique name of the controller, also used for its JMX name
+     * @param startThreadCount number of threads to start with.  Like the shared controllers, the pool shrinks no
+     *                         further than the number of processors, or than this count if it is lower
+     * @param maxNumberOfThreads most threads the pool will grow to
+     * @param priority priority of the pool's threads
+     * @return
+     * The threading controller
+     */
+    public static ThreadingController getInstance(String name, int startThreadCount, int maxNumberOfThreads, int priority) {
+        if(startThreadCount < 1 || maxNumberOfThreads < startThreadCount) {
+            throw new IllegalArgumentException("A threading controller needs at least one thread and no more than its maximum: " + startThreadCount + " / " + maxNumberOfThreads);
+        }
+        synchronized (ThreadingController.class) {
+            ThreadingController controller = NAMED_INSTANCES.get(name);
+            if(controller == null) {
+                controller = register(new ThreadingController(name, startThreadCount, maxNumberOfThreads, priority));
+                NAMED_INSTANCES.put(name, controller);
+            }
+            return controller;
+        }
+    }
+
+    private static ThreadingController register(ThreadingController controller) {
+        try {
+            MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, controller.getName()), controller);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to register threading controller {} with JMX: {}", controller.getName(), e.getMessage());
+        }
+        return controller;
+    }
+
+    ThreadingController(final String name, final int startThreadCount, final int maxNumberOfThreads, final int priority) {
         this.name = name;
         this.numThreads = new AtomicInteger(startThreadCount);
+        // the pool has always been kept at one thread per processor or more, a controller started smaller stays smaller
+        this.minNumberOfThreads = Math.min(startThreadCount, NUM_PROCESSORS);
         this.maxNumberOfThreads = maxNumberOfThreads;
         this.priority = priority;
+        this.permits = new AdjustableSemaphore(startThreadCount);
     }
 
     public String getName() {
@@ -186,6 +264,8 @@ public class ThreadingController {
     public void release() {
         synchronized (this) {
             if(this.usingCount.decrementAndGet() == 0) {
+                this.cpuSampler.shutdownNow();
+                this.cpuSampler = null;
                 this.threadPoolExecutor.shutdown();
                 this.threadPoolExecutor = null;
                 this.listeningExecutorService = null;
@@ -212,6 +292,93 @@ public class ThreadingController {
         this.threadingControllerCPUObserver = threadingControllerCPUObserver;
     }
 
+    /**
+     * The number of threads this pool will never shrink below, the number of processors or the number of threads it
+     * was started with if that is lower
+     * @return
+     * Integer representing the minimum number of threads in the core pool.
+     */
+    public Integer getMinNumThreads() {
+        return this.minNumberOfThreads;
+    }
+
+    /**
+     * The number of threads this pool will never grow beyond
+     * @return
+     * Integer representing the maximum number of threads in the core pool.
+     */
+    public Integer getMaxNumThreads() {
+        return this.maxNumberOfThreads;
+    }
+
+    /**
+     * The most items this controller will run at once, regardless of how far the pool could grow
+     * @return
+     * Integer representing the concurrency quota, 0 when there is none
+     */
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+
+    /**
+     * Hold this controller to running at most the given number of items at once.  The pool is shrunk straight away
+     * if it is larger.
+     * @param maxConcurrency
+     * The concurrency quota, 0 to remove it
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if(maxConcurrency < 0) {
+            throw new IllegalArgumentException("Max concurrency cannot be negative: " + maxConcurrency);
+        }
+        synchronized (this) {
+            this.maxConcurrency = maxConcurrency;
+            resize(Math.max(getLowerBound(), Math.min(getUpperBound(), this.numThreads.get())));
+        }
+    }
+
+    /**
+     * The share of the machine's CPU this controller's threads steer towards
+     * @return
+     * Double between 0 and 1 representing the CPU quota, 0 when there is none
+     */
+    public double getCpuShare() {
+        return this.cpuShare;
+    }
+
+    /**
+     * Hold this controller's threads to a share of the machine's CPU.  The pool shrinks when its threads use more
+     * than the share and will not grow while they are near it.  Needs thread CPU time measurement from the JVM.
+     * @param cpuShare
+     * Share between 0 and 1 of all processors, 0 to remove the quota
+     */
+    public void setCpuShare(double cpuShare) {
+        if(cpuShare < 0 || cpuShare > 1) {
+            throw new IllegalArgumentException("CPU share must be between 0 and 1: " + cpuShare);
+        }
+        if(cpuShare > 0 && !isThreadCpuTimeEnabled()) {
+            LOGGER.warn("Thread CPU time is not available in this JVM, the CPU share of {} will not be enforced", this.name);
+        }
+        this.cpuShare = cpuShare;
+    }
+
+    /**
+     * The share of the machine's CPU used by this controller's threads during the last scale check
+     * @return
+     * Double between 0 and 1 representing the observed CPU share
+     */
+    public Double getLastCpuShareObservation() {
+        return this.lastCpuShareObservation;
+    }
+
+    /**
+     * The number of items that may still be submitted before submitters have to wait for a thread.
+     * @return
+     * An integer of the free permits, negative while the pool is shrinking below the items already executing.
+     */
+    public Integer getAvailablePermits() {
+        return this.permits.availablePermits();
+    }
+
     /**
      * A double representing when the thread-pool will be adjusted if > 10% of the value.
      * Or decreased if the pool is under utilized by 10% of the value.
@@ -232,107 +399,271 @@ public class ThreadingController {
                         TimeUnit.MILLISECONDS,
                         new LinkedBlockingQueue<Runnable>());
 
-                this.threadPoolExecutor.setThreadFactory(new BasicThreadFactory.Builder()
+                final ThreadFactory threadFactory = new BasicThreadFactory.Builder()
                         .priority(this.priority)
                         .namingPattern(this.name + "- %d")
-                        .build());
+                        .build();
+
+                this.threadPoolExecutor.setThreadFactory(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = threadFactory.newThread(r);
+                        poolThreadCpuTimes.put(thread, 0L);
+                        return thread;
+                    }
+                });
 
                 this.listeningExecutorService = MoreExecutors.listeningDecorator(this.threadPoolExecutor);
+
+                this.cpuSampler = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                        .namingPattern(this.name + " - CPU Sampler - %d")
+                        .daemon(true)
+                        .build());
+
+                this.cpuSampler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            sample();
+                        } catch (Throwable e) {
+                            LOGGER.warn("Unable to sample the CPU for {}: {}", name, e.getMessage());
+                        }
+                    }
+                }, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
             }
         }
     }
 
-    private class ThreadedCallbackWrapper implements FutureCallback<Object> {
-
-        private final ThreadingControllerCallback callback;
+    /**
+     * Takes one CPU observation and, once every {@link #SCALE_CHECK} millis, resizes the pool from the average of the
+     * observations taken since the last resize.
+     */
+    void sample() {
+        this.numberOfObservations.incrementAndGet();
+        this.sumOfObservations.addAndGet(this.getProcessCpuLoad());
+        samplePoolCpuTime();
 
-        public ThreadedCallbackWrapper(ThreadingControllerCallback callback) {
-            this.callback = callback;
+        long now = System.currentTimeMillis();
+        long elapsed = now - this.lastWorked.get();
+        if(elapsed <= SCALE_CHECK) {
+            return;
         }
 
-        @Override
-        public void onSuccess(Object o) {
-            callback.onSuccess(o);
-            workingNow.decrementAndGet();
-            lock.signal();
+        double average = this.sumOfObservations.doubleValue() / this.numberOfObservations.doubleValue();
+        this.lastCPUObservation = average;
+        this.lastCpuShareObservation = this.windowCpuTime.getAndSet(0) / (elapsed * 1000000.0 * NUM_PROCESSORS);
+
+        double error = loadError(average, this.scaleThreshold);
+        double share = this.cpuShare;
+        if(share > 0 && isThreadCpuTimeEnabled()) {
+            error = Math.min(error, loadError(this.lastCpuShareObservation, share));
         }
 
-        @Override
-        public void onFailure(Throwable t) {
-            callback.onFailure(t);
-            workingNow.decrementAndGet();
-            lock.signal();
+        int currentThreadCount = this.numThreads.get();
+        int newThreadCount = computeThreadCount(currentThreadCount, error, this.saturated.getAndSet(false), getLowerBound(), getUpperBound());
+
+        if(newThreadCount > currentThreadCount) {
+            LOGGER.info("+++++++ SCALING UP THREAD POOL TO {} THREADS (CPU @ {}) ++++++++", newThreadCount, average);
+        } else if(newThreadCount < currentThreadCount) {
+            LOGGER.info("------- SCALING DOWN THREAD POOL TO {} THREADS (CPU @ {}) --------", newThreadCount, average);
         }
-    }
+        resize(newThreadCount);
 
-    public synchronized void execute(final Runnable command, final ThreadingControllerCallback callback) {
+        // reset our counters
+        this.lastWorked.set(now);
+        this.numberOfObservations.set(0);
+        this.sumOfObservations.set(0);
+    }
 
-        this.numberOfObservations.incrementAndGet();
-        this.sumOfObservations.addAndGet(this.getProcessCpuLoad());
+    /**
+     * Adds the CPU time each pool thread used since the last sample to the current window.  Threads that have died
+     * since are forgotten.
+     */
+    private void samplePoolCpuTime() {
+        if(!isThreadCpuTimeEnabled()) {
+            return;
+        }
+        for(Map.Entry<Thread, Long> entry : this.poolThreadCpuTimes.entrySet()) {
+            long cpuTime = entry.getKey().isAlive() ? THREAD_MX_BEAN.getThreadCpuTime(entry.getKey().getId()) : -1;
+            if(cpuTime < 0) {
+                this.poolThreadCpuTimes.remove(entry.getKey());
+            } else {
+                this.windowCpuTime.addAndGet(cpuTime - entry.getValue());
+                entry.setValue(cpuTime);
+            }
+        }
+    }
 
-        if((new Date().getTime() > (SCALE_CHECK + this.lastWorked.get())) && this.numberOfObservations.get() > Math.max(NUM_PROCESSORS/2, 2)) {
+    private static boolean isThreadCpuTimeEnabled() {
+        return THREAD_MX_BEAN.isThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+    }
 
-            double average = this.sumOfObservations.doubleValue() / this.numberOfObservations.doubleValue();
-            this.lastCPUObservation = average;
+    private int getUpperBound() {
+        int quota = this.maxConcurrency;
+        return quota > 0 ? Math.min(quota, this.maxNumberOfThreads) : this.maxNumberOfThreads;
+    }
 
-            /* re-size the shared thread-pool if we aren't under significant stress */
-            int currentThreadCount = this.numThreads.get();
-            int newThreadCount = this.numThreads.get();
+    private int getLowerBound() {
+        return Math.min(this.minNumberOfThreads, getUpperBound());
+    }
 
-            /* Adjust to keep the processor between 72% & 88% */
-            if (average < this.scaleThreshold * .9) {
-                /* The processor isn't being worked that hard, we can add the unit here */
-                newThreadCount = Math.min(this.maxNumberOfThreads, (newThreadCount + 1));
-                if(newThreadCount != currentThreadCount) {
-                    LOGGER.info("+++++++ SCALING UP THREAD POOL TO {} THREADS (CPU @ {}) ++++++++", newThreadCount, average);
-                }
-            } else if (average > this.scaleThreshold * 1.1) {
-                newThreadCount = Math.max((newThreadCount - 1), NUM_PROCESSORS);
-                if(newThreadCount != currentThreadCount) {
-                    LOGGER.info("------- SCALING DOWN THREAD POOL TO {} THREADS (CPU @ {}) --------", newThreadCount, average);
-                }
+    /**
+     * Resizes the pool and the admission permits together.  Shrinking takes permits away before the threads, so
+     * items already executing finish normally and new items wait until the pool is back under its size.
+     * @param newThreadCount the new number of threads
+     */
+    void resize(int newThreadCount) {
+        synchronized (this) {
+            int delta = newThreadCount - this.numThreads.get();
+            if(delta == 0) {
+                return;
             }
-
             this.numThreads.set(newThreadCount);
-
-            // wait
-            while (this.workingNow.get() >= this.numThreads.get()) {
-                try {
-                    this.lock.await();
-                } catch (InterruptedException e) {
-                    LOGGER.error("Exception while trying to get lock: {}", e);
+            if(this.threadPoolExecutor != null) {
+                if(delta > 0) {
+                    this.threadPoolExecutor.setMaximumPoolSize(newThreadCount);
+                    this.threadPoolExecutor.setCorePoolSize(newThreadCount);
+                } else {
+                    this.threadPoolExecutor.setCorePoolSize(newThreadCount);
+                    this.threadPoolExecutor.setMaximumPoolSize(newThreadCount);
                 }
             }
+            if(delta > 0) {
+                this.permits.release(delta);
+            } else {
+                this.permits.reducePermits(-delta);
+            }
+        }
+    }
+
+    /**
+     * Proportional controller for the size of the pool, steering the CPU load towards a threshold.
+     * @param current the current number of threads
+     * @param cpu the observed CPU load
+     * @param threshold the CPU load to steer towards
+     * @param saturated whether any submitter had to wait for a permit since the last check
+     * @param min the smallest allowed number of threads
+     * @param max the largest allowed number of threads
+     * @return the new number of threads
+     */
+    static int computeThreadCount(int current, double cpu, double threshold, boolean saturated, int min, int max) {
+        return computeThreadCount(current, loadError(cpu, threshold), saturated, min, max);
+    }
+
+    /**
+     * The relative distance of an observed load from its target, positive when there is head room
+     * @param observed the observed load
+     * @param target the load to steer towards
+     * @return the relative error, NaN when the load could not be observed
+     */
+    static double loadError(double observed, double target) {
+        return (target - observed) / target;
+    }
 
-            if(newThreadCount != currentThreadCount) {
-                this.threadPoolExecutor.setCorePoolSize(this.numThreads.get());
-                this.threadPoolExecutor.setMaximumPoolSize(this.numThreads.get());
+    /**
+     * Proportional controller for the size of the pool.  Errors within {@link #DEAD_BAND} leave the pool alone.
+     * Outside of it the pool moves by its current size times the error, and always by at least one thread.  The pool
+     * only grows when submitters had to wait for a permit, since idle CPU without a backlog does not call for more
+     * threads.
+     * @param current the current number of threads
+     * @param error the relative distance of the load from its target, positive when there is head room
+     * @param saturated whether any submitter had to wait for a permit since the last check
+     * @param min the smallest allowed number of threads
+     * @param max the largest allowed number of threads
+     * @return the new number of threads
+     */
+    static int computeThreadCount(int current, double error, boolean saturated, int min, int max) {
+        int step = 0;
+        if(!Double.isNaN(error) && Math.abs(error) > DEAD_BAND && (error < 0 || saturated)) {
+            step = (int) Math.round(current * error * PROPORTIONAL_GAIN);
+            if(step == 0) {
+                step = error > 0 ? 1 : -1;
             }
+        }
+        return Math.max(min, Math.min(max, current + step));
+    }
+
+    private class ThreadedCallbackWrapper implements FutureCallback<Object> {
+
+        private final ThreadingControllerCallback callback;
 
-            // reset our counters
-            this.lastWorked.set(new Date().getTime());
-            this.numberOfObservations.set(0);
-            this.sumOfObservations.set(0);
+        public ThreadedCallbackWrapper(ThreadingControllerCallback callback) {
+            this.callback = callback;
         }
-        else {
-            if(new Date().getTime() > (SCALE_CHECK + this.lastWorked.get())) {
-                // not enough observations reset the counters.
-                this.lastWorked.set(new Date().getTime());
-                this.numberOfObservations.set(0);
-                this.sumOfObservations.set(0);
+
+        @Override
+        public void onSuccess(Object o) {
+            try {
+                callback.onSuccess(o);
+            } finally {
+                done();
             }
+        }
 
-            while (this.workingNow.get() >= this.numThreads.get()) {
-                try {
-                    this.lock.await();
-                } catch (InterruptedException e) {
-                    LOGGER.error("Exception while trying to get lock: {}", e);
-                }
+        @Override
+        public void onFailure(Throwable t) {
+            try {
+                callback.onFailure(t);
+            } finally {
+                done();
             }
         }
+    }
+
+    private void done() {
+        this.workingNow.decrementAndGet();
+        this.permits.release();
+    }
+
+    /**
+     * Runs the command on the pool, waiting for a free thread if every thread is busy.
+     * @param command the work to run
+     * @param callback notified once the command has finished
+     */
+    public void execute(final Runnable command, final ThreadingControllerCallback callback) {
+
+        if(!this.permits.tryAcquire()) {
+            this.saturated.set(true);
+            this.permits.acquireUninterruptibly();
+        }
 
         this.workingNow.incrementAndGet();
 
-        Futures.addCallback(this.listeningExecutorService.submit(command), new ThreadedCallbackWrapper(callback));
+        try {
+            Futures.addCallback(this.listeningExecutorService.submit(command), new ThreadedCallbackWrapper(callback));
+        } catch (RejectedExecutionException e) {
+            done();
+            throw e;
+        }
+    }
+
+    /**
+     * A semaphore whose number of permits can be taken away as well as added.
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+
+        AdjustableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        ThreadingControllerBroadcast threadingControllerBroadcast = new ThreadingControllerBroadcast();
+        threadingControllerBroadcast.setNumThreads((long) getNumThreads());
+        threadingControllerBroadcast.setMinNumThreads((long) getMinNumThreads());
+        threadingControllerBroadcast.setMaxNumThreads((long) getMaxNumThreads());
+        threadingControllerBroadcast.setWorkingNow((long) getWorkingNow());
+        threadingControllerBroadcast.setAvailablePermits((long) getAvailablePermits());
+        threadingControllerBroadcast.setMaxConcurrency((long) getMaxConcurrency());
+        threadingControllerBroadcast.setLastCPUObservation(getLastCPUObservation());
+        threadingControllerBroadcast.setCpuShare(getCpuShare());
+        threadingControllerBroadcast.setLastCpuShareObservation(getLastCpuShareObservation());
+        return threadingControllerBroadcast;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.threaded.controller;
+
+/**
+ * JMX view of a {@link org.apache.streams.threaded.controller.ThreadingController}
+ */
+public interface ThreadingControllerMXBean {
+
+    /**
+     * Get the name of the controller
+     * @return name of the controller
+     */
+    public String getName();
+
+    /**
+     * Get the number of threads in the pool
+     * @return number of threads in the pool
+     */
+    public Integer getNumThreads();
+
+    /**
+     * Get the fewest threads the pool will shrink to
+     * @return fewest threads in the pool
+     */
+    public Integer getMinNumThreads();
+
+    /**
+     * Get the most threads the pool will grow to
+     * @return most threads in the pool
+     */
+    public Integer getMaxNumThreads();
+
+    /**
+     * Get the priority of the pool's threads
+     * @return thread priority
+     */
+    public int getPriority();
+
+    /**
+     * Get the time between two resizes of the pool
+     * @return scale check interval in milliseconds
+     */
+    public Long getScaleCheck();
+
+    /**
+     * Whether any items are executing right now
+     * @return true if any items are executing
+     */
+    public boolean isRunning();
+
+    /**
+     * Get the CPU load as reported by the observer right now
+     * @return CPU load
+     */
+    public Double getProcessCpuLoad();
+
+    /**
+     * Get the average CPU load used for the last resize
+     * @return CPU load
+     */
+    public Double getLastCPUObservation();
+
+    /**
+     * Get the number of items executing right now
+     * @return number of executing items
+     */
+    public Integer getWorkingNow();
+
+    /**
+     * Get the number of items that can still be submitted without waiting
+     * @return free permits, negative while the pool is shrinking
+     */
+    public Integer getAvailablePermits();
+
+    /**
+     * Get the class observing the CPU load
+     * @return canonical class name of the observer
+     */
+    public String getProcessCpuLoadClass();
+
+    /**
+     * Get the CPU load the pool steers towards
+     * @return CPU load threshold
+     */
+    public Double getScaleThreshold();
+
+    /**
+     * Get the most items the controller will run at once
+     * @return concurrency quota, 0 when there is none
+     */
+    public int getMaxConcurrency();
+
+    /**
+     * Set the most items the controller will run at once
+     * @param maxConcurrency concurrency quota, 0 to remove it
+     */
+    public void setMaxConcurrency(int maxConcurrency);
+
+    /**
+     * Get the share of the machine's CPU the controller's threads steer towards
+     * @return CPU quota between 0 and 1, 0 when there is none
+     */
+    public double getCpuShare();
+
+    /**
+     * Set the share of the machine's CPU the controller's threads steer towards
+     * @param cpuShare CPU quota between 0 and 1, 0 to remove it
+     */
+    public void setCpuShare(double cpuShare);
+
+    /**
+     * Get the share of the machine's CPU used by the controller's threads during the last scale check
+     * @return observed CPU share between 0 and 1
+     */
+    public Double getLastCpuShareObservation();
+
+}
@@ -18,8 +18,11 @@
 package org.apache.streams.threaded.counters;
 
 import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.monitoring.metrics.MetricsRegistry;
+import org.apache.streams.monitoring.metrics.MetricsSource;
+import org.apache.streams.pojo.json.Broadcast;
+import org.apache.streams.pojo.json.DatumStatusCounterBroadcast;
 import org.apache.streams.threaded.builders.ThreadedStreamBuilder;
-import org.apache.streams.util.ComponentUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,13 +32,19 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  */
 @ThreadSafe
-public class DatumStatusCounter implements DatumStatusCounterMXBean{
+public class DatumStatusCounter implements DatumStatusCounterMXBean, MetricsSource {
 
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=DatumCounter,name=%s,identifier=%s,startedAt=%s";
     private static final Logger LOGGER = LoggerFactory.getLogger(DatumStatusCounter.class);
 
     private AtomicLong failed;
     private AtomicLong passed;
+    private AtomicLong dropped;
+    private AtomicLong mailboxDepth;
+    private volatile double latencyP50;
+    private volatile double latencyP99;
+    private volatile double latencyP999;
+    private volatile double latencyMax;
 
     public DatumStatusCounter(String id) {
         this(id, ThreadedStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
@@ -44,7 +53,9 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     public DatumStatusCounter(String id, String streamIdentifier, long startedAt) {
         this.failed = new AtomicLong(0);
         this.passed = new AtomicLong(0);
-        ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        this.dropped = new AtomicLong(0);
+        this.mailboxDepth = new AtomicLong(0);
+        MetricsRegistry.getInstance().register(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
     }
 
     public void incrementFailedCount() {
@@ -64,6 +75,21 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     }
 
 
+    public void incrementDroppedCount(long delta) {
+        this.dropped.addAndGet(delta);
+    }
+
+    public void setMailboxDepth(long mailboxDepth) {
+        this.mailboxDepth.set(mailboxDepth);
+    }
+
+    public void setLatencies(double p50, double p99, double p999, double max) {
+        this.latencyP50 = p50;
+        this.latencyP99 = p99;
+        this.latencyP999 = p999;
+        this.latencyMax = max;
+    }
+
     @Override
     public double getFailRate() {
         double failed = this.failed.get();
@@ -83,4 +109,48 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     public long getNumPassed() {
         return this.passed.get();
     }
+
+    @Override
+    public long getNumDropped() {
+        return this.dropped.get();
+    }
+
+    @Override
+    public long getMailboxDepth() {
+        return this.mailboxDepth.get();
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return this.latencyP50;
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return this.latencyP99;
+    }
+
+    @Override
+    public double getLatencyP999() {
+        return this.latencyP999;
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return this.latencyMax;
+    }
+
+    @Override
+    public Broadcast toBroadcast() {
+        DatumStatusCounterBroadcast datumStatusCounterBroadcast = new DatumStatusCounterBroadcast();
+        datumStatusCounterBroadcast.setFailed(getNumFailed());
+        datumStatusCounterBroadcast.setPassed(getNumPassed());
+        datumStatusCounterBroadcast.setDropped(getNumDropped());
+        datumStatusCounterBroadcast.setMailboxDepth(getMailboxDepth());
+        datumStatusCounterBroadcast.setLatencyP50(getLatencyP50());
+        datumStatusCounterBroadcast.setLatencyP99(getLatencyP99());
+        datumStatusCounterBroadcast.setLatencyP999(getLatencyP999());
+        datumStatusCounterBroadcast.setLatencyMax(getLatencyMax());
+        return datumStatusCounterBroadcast;
+    }
 }
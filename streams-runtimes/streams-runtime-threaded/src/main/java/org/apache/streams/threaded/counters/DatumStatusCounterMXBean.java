@@ -40,4 +40,40 @@ public interface DatumStatusCounterMXBean {
      */
     public double getFailRate();
 
+    /**
+     * Get number of datums dropped by a full mailbox
+     * @return number of dropped datums
+     */
+    public long getNumDropped();
+
+    /**
+     * Get number of datums waiting in the mailbox at the last update
+     * @return mailbox depth
+     */
+    public long getMailboxDepth();
+
+    /**
+     * Get the median time in milliseconds spent on a datum at the last update
+     * @return median latency
+     */
+    public double getLatencyP50();
+
+    /**
+     * Get the 99th percentile of the time in milliseconds spent on a datum at the last update
+     * @return 99th percentile latency
+     */
+    public double getLatencyP99();
+
+    /**
+     * Get the 99.9th percentile of the time in milliseconds spent on a datum at the last update
+     * @return 99.9th percentile latency
+     */
+    public double getLatencyP999();
+
+    /**
+     * Get the longest time in milliseconds spent on a datum at the last update
+     * @return max latency
+     */
+    public double getLatencyMax();
+
 }
@@ -23,21 +23,33 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.lang.SerializationException;
 import org.apache.streams.core.*;
+import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.core.util.StreamsDatumCodec;
 import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.monitoring.metrics.StripedLatencyHistogram;
+import org.apache.streams.threaded.builders.ThreadedStreamBuilder;
 import org.apache.streams.threaded.controller.ThreadingController;
-import org.apache.streams.util.SerializationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class BaseStreamsTask implements StreamsTask {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseStreamsTask.class);
 
+    /**
+     * Returned by {@link #processInternal(StreamsDatum)} when the datum has only been set aside, for instance to be
+     * processed in a batch.  The task then counts the datum through {@link #recordOutcome(DatumStatus, int, long)}
+     * once it has really been processed, and hands the output to the children itself.
+     */
+    protected static final Collection<StreamsDatum> DEFERRED = Collections.unmodifiableList(new ArrayList<StreamsDatum>(0));
+
     private final ThreadingController threadingController;
     private final StreamsOperation streamsOperation;
     private final String id;
@@ -49,6 +61,12 @@ public abstract class BaseStreamsTask implements StreamsTask {
     private final AtomicLong workingCounter = new AtomicLong(0);
     private final AtomicLong timeSpentSuccess = new AtomicLong(0);
     private final AtomicLong timeSpentFailure = new AtomicLong(0);
+    private final StripedLatencyHistogram latencies = new StripedLatencyHistogram();
+    private final AtomicInteger drainers = new AtomicInteger(0);
+    private int mailboxCapacity;
+    private TaskMailbox.OverflowPolicy overflowPolicy;
+    private TaskMailbox mailbox;
+    private volatile int parallelism = 1;
 
     private boolean isPrepared = false;
     private boolean isCleanedUp = false;
@@ -69,6 +87,7 @@ public abstract class BaseStreamsTask implements StreamsTask {
             this.type = "unknown";
         }
 
+        setMailboxConfig(config);
     }
 
     public void initialize(final Map<String, StreamsTask> ctx) {
@@ -83,15 +102,63 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
     @Override
     public StatusCounts getCurrentStatus() {
+        long mailboxDepth = this.mailbox == null ? 0 : this.mailbox.getDepth();
+        long dropped = this.mailbox == null ? 0 : this.mailbox.getDropped();
+        StripedLatencyHistogram.Snapshot latencies = this.latencies.snapshot();
         if(this.streamsOperation instanceof DatumStatusCountable) {
             DatumStatusCounter datumStatusCounter = ((DatumStatusCountable)this.streamsOperation).getDatumStatusCounter();
-            return new StatusCounts(this.id, this.type, this.workingCounter.get(), datumStatusCounter.getSuccess(), datumStatusCounter.getFail(), this.timeSpentSuccess.get(), this.timeSpentFailure.get());
+            return new StatusCounts(this.id, this.type, this.workingCounter.get(), datumStatusCounter.getSuccess(), datumStatusCounter.getFail(), toMillis(this.timeSpentSuccess.get()), toMillis(this.timeSpentFailure.get()), mailboxDepth, dropped, latencies);
         }
         else {
-            return new StatusCounts(this.id, this.type, this.workingCounter.get(), this.statusCounter.getSuccess(), this.statusCounter.getFail(), this.timeSpentSuccess.get(), this.timeSpentFailure.get());
+            return new StatusCounts(this.id, this.type, this.workingCounter.get(), this.statusCounter.getSuccess(), this.statusCounter.getFail(), toMillis(this.timeSpentSuccess.get()), toMillis(this.timeSpentFailure.get()), mailboxDepth, dropped, latencies);
         }
     }
 
+    /**
+     * The most threads that work through this task's mailbox at once.  Has no effect when the stream runs without
+     * mailboxes, in which case every thread that hands this task a datum processes it.
+     * @param parallelism number of threads, at least 1
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * The mailbox datums wait in before this task processes them
+     * @return the mailbox, or null if the stream runs without mailboxes
+     */
+    public TaskMailbox getMailbox() {
+        return this.mailbox;
+    }
+
+    @Override
+    public boolean isBackPressured() {
+        return getBlockingMailbox() != null;
+    }
+
+    @Override
+    public TaskMailbox getBlockingMailbox() {
+        if(this.mailbox != null && this.mailbox.isBlocking()) {
+            return this.mailbox;
+        }
+        for(StreamsTask child : this.downStreamTasks) {
+            TaskMailbox blocking = child.getBlockingMailbox();
+            if(blocking != null) {
+                return blocking;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the stream's mailboxes make producers wait, so that providers should hold back while any task
+     * downstream of them is {@link #isBackPressured()}
+     * @return true if the stream runs with blocking mailboxes
+     */
+    protected boolean isBackPressureEnabled() {
+        return this.mailboxCapacity > 0 && this.overflowPolicy == TaskMailbox.OverflowPolicy.BLOCK;
+    }
+
     @Override
     public final String getId() {
         return this.id;
@@ -128,6 +195,14 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
     @Override
     public final void cleanup() {
+        try {
+            if(!isCleanedUp) {
+                this.flush();
+            }
+        }
+        catch(Throwable e) {
+            LOGGER.warn("Problem Flushing Component[{}]: {}", this.getId(), e.getMessage());
+        }
         try {
             if(!isCleanedUp)
                 this.streamsOperation.cleanUp();
@@ -135,12 +210,37 @@ public abstract class BaseStreamsTask implements StreamsTask {
         catch(Throwable e) {
             LOGGER.warn("Problem Cleaning Up Component[{}]: {}", this.getId(), e.getMessage());
         }
+        if(this.mailbox != null) {
+            this.mailbox.close();
+        }
         this.isCleanedUp = true;
     }
 
 
+    /**
+     * Processes the datum on the calling thread, or, when the stream runs with mailboxes, adds it to this task's
+     * mailbox.  The calling thread then works through the mailbox itself, unless {@link #setParallelism(int)} threads
+     * are already doing so, in which case it returns straight away and leaves the datum to them.
+     * @param datum datum to process
+     */
     @Override
     public final void process(StreamsDatum datum) {
+        if(this.mailbox == null) {
+            processNow(datum);
+            return;
+        }
+        try {
+            this.mailbox.put(datum);
+        } catch (InterruptedException e) {
+            // keep the datum rather than lose it, the mailbox goes over capacity by one
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for room in the mailbox of Component[{}], adding the datum anyway", this.getId());
+            this.mailbox.add(datum);
+        }
+        drainMailbox();
+    }
+
+    private void processNow(StreamsDatum datum) {
         Collection<StreamsDatum> myDatums = this.fetch(datum);
         if(myDatums != null) {
             for(StreamsDatum d : myDatums)
@@ -148,26 +248,102 @@ public abstract class BaseStreamsTask implements StreamsTask {
         }
     }
 
+    /**
+     * Works through the mailbox until it is empty, if fewer than {@link #setParallelism(int)} threads are doing so.
+     * A thread only stops after seeing the mailbox empty, and checks again once it has stopped, so a datum added
+     * while the last thread was stopping is never left behind.
+     */
+    private void drainMailbox() {
+        while(true) {
+            int current = this.drainers.get();
+            if(current >= this.parallelism) {
+                return;
+            }
+            if(!this.drainers.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            try {
+                StreamsDatum datum;
+                while((datum = this.mailbox.poll()) != null) {
+                    processNow(datum);
+                }
+            } finally {
+                this.drainers.decrementAndGet();
+            }
+            if(this.mailbox.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands the datum to every child.  Read only children share the datum.  Every other child gets its own clone,
+     * except that one of them gets the datum itself when no read only child shares it and this task is not read only.
+     * The output of a read only task may be the datum it was handed, which its siblings share, so it is never handed
+     * as is to a child that modifies it.  All clones are made before any child is handed the datum, so children never
+     * see each other's changes.
+     * @param datum datum emitted by this task
+     */
     protected final void sendToChildren(final StreamsDatum datum) {
+        if(this.downStreamTasks.size() == 1) {
+            StreamsTask child = this.downStreamTasks.iterator().next();
+            if(!isReadOnly() || child.isReadOnly()) {
+                child.process(datum);
+                return;
+            }
+        }
+        List<StreamsTask> sharing = new ArrayList<StreamsTask>();
+        List<StreamsTask> owning = new ArrayList<StreamsTask>();
         for (StreamsTask t : this.downStreamTasks) {
+            if(t.isReadOnly()) {
+                sharing.add(t);
+            } else {
+                owning.add(t);
+            }
+        }
+        StreamsTask owner = sharing.isEmpty() && !isReadOnly() && !owning.isEmpty() ? owning.remove(owning.size() - 1) : null;
+        List<StreamsDatum> clones = new ArrayList<StreamsDatum>(owning.size());
+        for (StreamsTask t : owning) {
+            try {
+                clones.add(cloneStreamsDatum(datum));
+            } catch(Throwable e) {
+                LOGGER.warn("Unable to clone datum for Component[{}]: {}", t.getId(), e.getMessage());
+                clones.add(null);
+            }
+        }
+        for (int i = 0; i < owning.size(); i++) {
+            if(clones.get(i) != null) {
+                owning.get(i).process(clones.get(i));
+            }
+        }
+        for (StreamsTask t : sharing) {
             t.process(datum);
         }
+        if(owner != null) {
+            owner.process(datum);
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return this.streamsOperation instanceof ReadOnlyDatumOperation;
     }
 
     private Collection<StreamsDatum> fetch(StreamsDatum datum) {
         // start a timer to find out how long this process takes.
-        long startTime = new Date().getTime();
+        long startTime = System.nanoTime();
         Collection<StreamsDatum> toReturn = null;
         this.workingCounter.incrementAndGet();
 
         try {
-            toReturn = this.processInternal(cloneStreamsDatum(datum));
-            this.statusCounter.incrementStatus(DatumStatus.SUCCESS);
-            this.timeSpentSuccess.addAndGet(new Date().getTime() - startTime);
+            toReturn = this.processInternal(datum);
+            if(toReturn == DEFERRED) {
+                return null;
+            }
+            recordOutcome(DatumStatus.SUCCESS, 1, System.nanoTime() - startTime);
         } catch(Throwable e) {
             LOGGER.warn("Datum failed", e);
-            this.statusCounter.incrementStatus(DatumStatus.FAIL);
-            this.timeSpentFailure.addAndGet(new Date().getTime() - startTime);
+            recordOutcome(DatumStatus.FAIL, 1, System.nanoTime() - startTime);
         } finally  {
             this.workingCounter.decrementAndGet();
         }
@@ -175,23 +351,92 @@ public abstract class BaseStreamsTask implements StreamsTask {
         return toReturn;
     }
 
+    /**
+     * Counts datums that were processed together as succeeded or failed, and records their share of the time spent
+     * as the latency of each
+     * @param status {@link org.apache.streams.core.DatumStatus#SUCCESS} or {@link org.apache.streams.core.DatumStatus#FAIL}
+     * @param datums number of datums processed
+     * @param elapsedNanos time spent processing them
+     */
+    protected final void recordOutcome(DatumStatus status, int datums, long elapsedNanos) {
+        if(datums <= 0) {
+            return;
+        }
+        this.statusCounter.incrementStatus(status, datums);
+        if(status == DatumStatus.SUCCESS) {
+            this.timeSpentSuccess.addAndGet(elapsedNanos);
+        } else {
+            this.timeSpentFailure.addAndGet(elapsedNanos);
+        }
+        long perDatum = elapsedNanos / datums;
+        for(int i=0; i < datums; ++i) {
+            this.latencies.record(perDatum);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     protected abstract Collection<StreamsDatum> processInternal(StreamsDatum datum);
 
+    private void setMailboxConfig(Map<String, Object> config) {
+        this.mailboxCapacity = 0;
+        this.overflowPolicy = TaskMailbox.OverflowPolicy.BLOCK;
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+        if(config != null) {
+            Object capacity = config.get(ThreadedStreamBuilder.MAILBOX_CAPACITY_KEY);
+            if(capacity instanceof Number && ((Number) capacity).intValue() > 0) {
+                this.mailboxCapacity = ((Number) capacity).intValue();
+            }
+            Object policy = config.get(ThreadedStreamBuilder.MAILBOX_OVERFLOW_KEY);
+            if(policy != null) {
+                this.overflowPolicy = TaskMailbox.OverflowPolicy.fromConfig(policy.toString());
+            }
+            Object directory = config.get(ThreadedStreamBuilder.MAILBOX_SPILL_DIRECTORY_KEY);
+            if(directory != null) {
+                spillDirectory = new File(directory.toString());
+            }
+        }
+        // providers are never handed datums, so they do not need a mailbox
+        if(this.mailboxCapacity > 0 && !(this instanceof StreamsProviderTask)) {
+            this.mailbox = new TaskMailbox(this.id, this.mailboxCapacity, this.overflowPolicy, spillDirectory);
+        }
+    }
+
+    /**
+     * Called before the operation is cleaned up so that tasks holding on to datums can hand them downstream.
+     * Tasks are cleaned up in the order they were added, so children are flushed after their parents.
+     */
+    protected void flush() {
+        // No Operation
+    }
+
     /**
      * In order for our data streams to ported to other data flow frame works(Storm, Hadoop, Spark, etc) we need to be able to
      * enforce the serialization required by each framework.  This needs some thought and design before a final solution is
      * made.
      * <p/>
-     * The object must be either marked as serializable OR be of instance ObjectNode in order to be cloned
+     * The object must be either marked as serializable OR be of instance ObjectNode OR be of a class known to the
+     * {@link org.apache.streams.core.util.StreamsDatumCodec} in order to be cloned
      *
      * @param datum The datum you wish to clone
      * @return A Streams datum
      * @throws SerializationException (runtime) if the serialization fails
      */
     private StreamsDatum cloneStreamsDatum(StreamsDatum datum) throws SerializationException {
+        Object document = datum.getDocument();
         // this is difficult to clone due to it's nature. To clone it we will use the "deepCopy" function available.
-        if (datum.document instanceof ObjectNode) {
-            return copyMetaData(datum, new StreamsDatum(((ObjectNode) datum.getDocument()).deepCopy(), datum.getTimestamp(), datum.getSequenceid()));
+        if (document instanceof ObjectNode) {
+            return copyMetaData(datum, new StreamsDatum(((ObjectNode) document).deepCopy(), datum.getTimestamp(), datum.getSequenceid()));
+        } else if (StreamsDatumCodec.getInstance().isRegistered(document)) {
+            try {
+                // known document types go through the binary codec, which is much cheaper than java serialization
+                return StreamsDatumCodec.getInstance().cloneDatum(datum);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to clone datum Codec Error: {} - {}", e.getMessage(), datum);
+                throw new SerializationException("Unable to clone datum");
+            }
         } else {
             try {
                 // Try to serialize the document using standard serialization methods
@@ -200,9 +445,9 @@ public abstract class BaseStreamsTask implements StreamsTask {
             catch(SerializationException ser) {
                 try {
                     // Use the bruce force method for serialization.
-                    String value = StreamsJacksonMapper.getInstance().writeValueAsString(datum.document);
-                    Object object = StreamsJacksonMapper.getInstance().readValue(value, datum.getDocument().getClass());
-                    return copyMetaData(datum, new StreamsDatum(object, datum.getId(), datum.timestamp, datum.sequenceid));
+                    String value = StreamsJacksonMapper.getInstance().writeValueAsString(document);
+                    Object object = StreamsJacksonMapper.getInstance().readValue(value, document.getClass());
+                    return copyMetaData(datum, new StreamsDatum(object, datum.getId(), datum.getTimestamp(), datum.getSequenceid()));
                 } catch (JsonMappingException e) {
                     LOGGER.warn("Unable to clone datum Mapper Error: {} - {}", e.getMessage(), datum);
                 } catch (JsonParseException e) {
@@ -218,16 +463,6 @@ public abstract class BaseStreamsTask implements StreamsTask {
     }
 
     private StreamsDatum copyMetaData(StreamsDatum copyFrom, StreamsDatum copyTo) {
-        Map<String, Object> fromMeta = copyFrom.getMetadata();
-        Map<String, Object> toMeta = copyTo.getMetadata();
-        for (String key : fromMeta.keySet()) {
-            Object value = fromMeta.get(key);
-            if (value instanceof Serializable) {
-                toMeta.put(key, SerializationUtil.cloneBySerialization(value));
-            } else {//hope for the best - should be serializable
-                toMeta.put(key, value);
-            }
-        }
-        return copyTo;
+        return DatumUtils.copyMetadata(copyFrom, copyTo);
     }
-}
\ No newline at end of file
+}
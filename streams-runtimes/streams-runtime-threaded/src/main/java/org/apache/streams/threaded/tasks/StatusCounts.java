@@ -19,6 +19,7 @@ package org.apache.streams.threaded.tasks;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.monitoring.metrics.StripedLatencyHistogram;
 
 import java.io.Serializable;
 
@@ -31,6 +32,12 @@ public class StatusCounts implements Serializable {
     private long failed;
     private long timeSpentSuccess;
     private long timeSpentFailure;
+    private long mailboxDepth;
+    private long dropped;
+    private double latencyP50;
+    private double latencyP99;
+    private double latencyP999;
+    private double latencyMax;
 
     public String getId() {
         return id;
@@ -60,6 +67,48 @@ public class StatusCounts implements Serializable {
         return this.timeSpentFailure;
     }
 
+    /**
+     * @return number of datums waiting in the task's mailbox, 0 when the stream runs without mailboxes
+     */
+    public long getMailboxDepth() {
+        return this.mailboxDepth;
+    }
+
+    /**
+     * @return number of datums the task's mailbox dropped to make room
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    /**
+     * @return median time in milliseconds the task spent on a datum, successful or not
+     */
+    public double getLatencyP50() {
+        return this.latencyP50;
+    }
+
+    /**
+     * @return 99th percentile of the time in milliseconds the task spent on a datum
+     */
+    public double getLatencyP99() {
+        return this.latencyP99;
+    }
+
+    /**
+     * @return 99.9th percentile of the time in milliseconds the task spent on a datum
+     */
+    public double getLatencyP999() {
+        return this.latencyP999;
+    }
+
+    /**
+     * @return longest time in milliseconds the task spent on a datum
+     */
+    public double getLatencyMax() {
+        return this.latencyMax;
+    }
+
     public double getAverageSuccessTime() {
         return this.success == 0 ? 0 : (double)this.timeSpentSuccess / (double)this.success;
     }
@@ -73,6 +122,10 @@ public class StatusCounts implements Serializable {
     }
 
     StatusCounts(String id, String type, long working, long success, long failed, long timeSpentSuccess, long timeSpentFailure) {
+        this(id, type, working, success, failed, timeSpentSuccess, timeSpentFailure, 0, 0);
+    }
+
+    StatusCounts(String id, String type, long working, long success, long failed, long timeSpentSuccess, long timeSpentFailure, long mailboxDepth, long dropped) {
         this.id = id;
         this.type = type;
         this.working = working;
@@ -80,6 +133,20 @@ public class StatusCounts implements Serializable {
         this.failed = failed;
         this.timeSpentSuccess = timeSpentSuccess;
         this.timeSpentFailure = timeSpentFailure;
+        this.mailboxDepth = mailboxDepth;
+        this.dropped = dropped;
+    }
+
+    StatusCounts(String id, String type, long working, long success, long failed, long timeSpentSuccess, long timeSpentFailure, long mailboxDepth, long dropped, StripedLatencyHistogram.Snapshot latencies) {
+        this(id, type, working, success, failed, timeSpentSuccess, timeSpentFailure, mailboxDepth, dropped);
+        this.latencyP50 = toMillis(latencies.getPercentileNanos(.5));
+        this.latencyP99 = toMillis(latencies.getPercentileNanos(.99));
+        this.latencyP999 = toMillis(latencies.getPercentileNanos(.999));
+        this.latencyMax = toMillis(latencies.getMaxNanos());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
     }
 
     public String toString() {
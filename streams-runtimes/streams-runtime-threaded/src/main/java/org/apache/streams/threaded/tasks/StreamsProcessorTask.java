@@ -17,30 +17,165 @@
  */
 package org.apache.streams.threaded.tasks;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.streams.core.DatumStatus;
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.threaded.builders.ThreadedStreamBuilder;
 import org.apache.streams.threaded.controller.ThreadingController;
+import org.apache.streams.threaded.controller.ThreadingControllerCallback;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsProcessor;
+import org.apache.streams.util.FlightRecorderEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Processor task that is multi-threaded
+ * Processor task that is multi-threaded.  When the processor is a {@link org.apache.streams.core.StreamsBatchProcessor}
+ * and the stream is configured with a batch size greater than one, datums are buffered until the batch is full or the
+ * batch timeout has elapsed since the first datum of the batch arrived.  Other processors are called once per datum.
  */
 public class StreamsProcessorTask extends BaseStreamsTask {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(StreamsProcessorTask.class);
 
+    private static final ScheduledExecutorService BATCH_FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder()
+                    .namingPattern("Apache Streams - Batch Flush - %d")
+                    .daemon(true)
+                    .build());
+
     protected final StreamsProcessor processor;
 
+    private final List<StreamsDatum> pending = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private int batchSize;
+    private long batchTimeoutMs;
+
     public StreamsProcessorTask(ThreadingController threadingController, String id, Map<String, Object> config, StreamsProcessor processor) {
         super(threadingController, id, config, processor);
         this.processor = processor;
+        setBatchConfig(config);
     }
 
     protected Collection<StreamsDatum> processInternal(StreamsDatum datum) {
-        return this.processor.process(datum);
+        if(this.batchSize <= 1 || !(this.processor instanceof StreamsBatchProcessor)) {
+            Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+            Collection<StreamsDatum> output = this.processor.process(datum);
+            FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, this.getId(), 1);
+            return output;
+        }
+        List<StreamsDatum> batch = null;
+        synchronized (this.pending) {
+            this.pending.add(datum);
+            if(this.pending.size() >= this.batchSize) {
+                batch = new ArrayList<>(this.pending);
+                this.pending.clear();
+            } else if(this.pending.size() == 1) {
+                scheduleFlush();
+            }
+        }
+        if(batch != null) {
+            processBatch(batch);
+        }
+        // buffered datums are counted once their batch has been processed
+        return DEFERRED;
+    }
+
+    @Override
+    protected void flush() {
+        synchronized (this.flushLock) {
+            List<StreamsDatum> batch;
+            synchronized (this.pending) {
+                if(this.pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(this.pending);
+                this.pending.clear();
+            }
+            processBatch(batch);
+        }
+    }
+
+    /**
+     * Processes a batch, counts each of its datums as succeeded or failed and hands the output to the children
+     * @param batch datums to process
+     */
+    private void processBatch(List<StreamsDatum> batch) {
+        long startTime = System.nanoTime();
+        List<StreamsDatum> output;
+        try {
+            Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+            output = ((StreamsBatchProcessor) this.processor).processBatch(batch);
+            FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, this.getId(), batch.size());
+        } catch (Throwable e) {
+            LOGGER.warn("Batch of {} datums failed in processor[{}]: {}", batch.size(), this.getId(), e.getMessage());
+            for(StreamsDatum datum : batch) {
+                DatumUtils.addErrorToMetadata(datum, e, this.processor.getClass());
+            }
+            recordOutcome(DatumStatus.FAIL, batch.size(), System.nanoTime() - startTime);
+            return;
+        }
+        recordOutcome(DatumStatus.SUCCESS, batch.size(), System.nanoTime() - startTime);
+        if(output != null) {
+            for(StreamsDatum d : output) {
+                sendToChildren(d);
+            }
+        }
+    }
+
+    /**
+     * Flushes the pending batch once the batch timeout has elapsed.  The timer only triggers the flush, which runs on
+     * the stream's {@link org.apache.streams.threaded.controller.ThreadingController} like any other work.
+     */
+    private void scheduleFlush() {
+        BATCH_FLUSHER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getThreadingController().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, new ThreadingControllerCallback() {
+                        @Override
+                        public void onSuccess(Object o) {
+                            // No Operation
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            LOGGER.warn("Unable to flush batch for processor[{}]: {}", getId(), t.getMessage());
+                        }
+                    });
+                } catch (Throwable e) {
+                    LOGGER.warn("Unable to flush batch for processor[{}]: {}", getId(), e.getMessage());
+                }
+            }
+        }, this.batchTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void setBatchConfig(Map<String, Object> config) {
+        this.batchSize = ThreadedStreamBuilder.DEFAULT_BATCH_SIZE;
+        this.batchTimeoutMs = ThreadedStreamBuilder.DEFAULT_BATCH_TIMEOUT_MS;
+        if(config != null) {
+            Object size = config.get(ThreadedStreamBuilder.BATCH_SIZE_KEY);
+            if(size instanceof Number && ((Number) size).intValue() > 0) {
+                this.batchSize = ((Number) size).intValue();
+            }
+            Object timeout = config.get(ThreadedStreamBuilder.BATCH_TIMEOUT_KEY);
+            if(timeout instanceof Number && ((Number) timeout).longValue() >= 0) {
+                this.batchTimeoutMs = ((Number) timeout).longValue();
+            }
+        }
     }
-}
\ No newline at end of file
+}
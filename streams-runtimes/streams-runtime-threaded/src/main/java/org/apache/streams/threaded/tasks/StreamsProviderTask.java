@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -50,6 +51,7 @@ public class StreamsProviderTask extends BaseStreamsTask implements Runnable {
     }
 
     private static final int TIMEOUT = 100000000;
+    private static final long BACK_PRESSURE_WAIT_MS = 100;
 
     public StreamsProviderTask(ThreadingController threadingController, String id, Map<String, Object> config, StreamsProvider provider, Type type) {
         super(threadingController, id, config, provider);
@@ -82,12 +84,11 @@ public class StreamsProviderTask extends BaseStreamsTask implements Runnable {
                     int zeros = 0;
                     while (this.keepRunning.get()) {
                         resultSet = provider.readCurrent();
-                        if (resultSet.size() == 0) {
+                        if (flushResults(resultSet) == 0) {
                             zeros++;
                         } else {
                             zeros = 0;
                         }
-                        flushResults(resultSet);
                         // the way this works needs to change...
                         if (zeros > TIMEOUT) {
                             this.keepRunning.set(false);
@@ -104,24 +105,26 @@ public class StreamsProviderTask extends BaseStreamsTask implements Runnable {
                     throw new RuntimeException("Type has not been added to StreamsProviderTask.");
             }
 
-            if(resultSet != null && resultSet.getQueue() != null) {
+            if(resultSet != null) {
                 if(provider == null) {
                     throw new RuntimeException("Unknown Error - Provider is equal to Null.");
                 }
 
-                while((provider.isRunning() && this.keepRunning.get()) || resultSet.getQueue().size() > 0) {
-                    // Is there anything to do?
-                    if (resultSet.getQueue().isEmpty()) {
-                        // Check to see if they are going to give us a new streams result-set.
-                        StreamsResultSet streamsResultSet = this.provider.readCurrent();
-                        // They decided to give us a new result set... nifty!
-                        if(resultSet!= streamsResultSet) {
-                            resultSet = streamsResultSet;
-                        }
-                        safeQuickRest(1);
-                    } else {
-                        flushResults(resultSet);    // then work
+                // work until the result set runs dry and the provider has nothing more to give us
+                while(true) {
+                    if(flushResults(resultSet) > 0) {
+                        continue;
+                    }
+                    if(!(provider.isRunning() && this.keepRunning.get())) {
+                        break;
+                    }
+                    // Check to see if they are going to give us a new streams result-set.
+                    StreamsResultSet streamsResultSet = this.provider.readCurrent();
+                    // They decided to give us a new result set... nifty!
+                    if(streamsResultSet != null && resultSet != streamsResultSet) {
+                        resultSet = streamsResultSet;
                     }
+                    safeQuickRest(1);
                 }
             }
         } catch (Throwable e) {
@@ -135,20 +138,27 @@ public class StreamsProviderTask extends BaseStreamsTask implements Runnable {
         LOGGER.debug("Finished Provider: {}", this.getId());
     }
 
-    public void flushResults(StreamsResultSet streamsResultSet) {
+    /**
+     * Pulls datums out of the result set one at a time, so that a provider streaming into it only gets ahead of the
+     * stream by as much as the threading controller lets through.
+     * @param streamsResultSet result set to flush
+     * @return the number of datums pulled from the result set
+     */
+    public int flushResults(StreamsResultSet streamsResultSet) {
+        int flushed = 0;
+        if(streamsResultSet == null) {
+            return flushed;
+        }
         try {
             StreamsDatum datum;
-            while (!streamsResultSet.getQueue().isEmpty() && (datum = streamsResultSet.getQueue().poll()) != null) {
-                /**
-                 * This is meant to be a hard exit from the system. If we are running
-                 * and this flag gets set to false, we are to exit immediately and
-                 * abandon anything that is in this queue. The remaining processors
-                 * will shutdown gracefully once they have depleted their queue
-                 */
-                if (!this.keepRunning.get()) {
-                    break;
-                }
-
+            /**
+             * This is meant to be a hard exit from the system. If we are running
+             * and this flag gets set to false, we are to exit immediately and
+             * abandon anything that is in this queue. The remaining processors
+             * will shutdown gracefully once they have depleted their queue
+             */
+            while (this.keepRunning.get() && (datum = streamsResultSet.poll()) != null) {
+                flushed++;
                 workMe(datum);
             }
         }
@@ -156,10 +166,25 @@ public class StreamsProviderTask extends BaseStreamsTask implements Runnable {
             e.printStackTrace();
             LOGGER.warn("Unknown problem reading the queue, no datums affected: {}", e.getMessage());
         }
+        return flushed;
     }
 
     private void workMe(final StreamsDatum datum) {
 
+        // hold back while a blocking mailbox downstream is full, so that only this stream waits on the slow branch
+        if(isBackPressureEnabled()) {
+            TaskMailbox blocking;
+            while(this.keepRunning.get() && (blocking = getBlockingMailbox()) != null) {
+                try {
+                    // woken as soon as the mailbox is drained, the timeout only bounds how late a stop is noticed
+                    blocking.awaitRoom(BACK_PRESSURE_WAIT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
         outStanding.incrementAndGet();
 
         getThreadingController().execute(new Runnable() {
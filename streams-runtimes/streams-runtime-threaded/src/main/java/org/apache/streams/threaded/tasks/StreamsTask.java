@@ -34,8 +34,29 @@ public interface StreamsTask {
 
     public String getId();
 
+    /**
+     * Hands the datum to this task.  The task owns the datum unless it is read only, in which case the datum may be
+     * shared with other read only tasks.
+     * @param datum datum to process
+     */
     public void process(StreamsDatum datum);
 
+    /**
+     * @return true, if this task never modifies the datums handed to {@link #process(org.apache.streams.core.StreamsDatum)}
+     */
+    public boolean isReadOnly();
+
+    /**
+     * @return true, if this task or any task downstream of it would make a producer wait for room in its mailbox
+     */
+    public boolean isBackPressured();
+
+    /**
+     * @return the mailbox of this task or a task downstream of it that would make a producer wait for room, or null if
+     * none would
+     */
+    public TaskMailbox getBlockingMailbox();
+
     public void initialize(final Map<String, StreamsTask> ctx);
 
     public void addOutputQueue(String id);
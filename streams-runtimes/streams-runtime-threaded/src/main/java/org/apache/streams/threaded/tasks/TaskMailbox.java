@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.threaded.tasks;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.util.DatumSpill;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, first in first out buffer of the datums waiting for a {@link org.apache.streams.threaded.tasks.StreamsTask}.
+ * What happens to a datum that arrives while the mailbox holds {@link #getCapacity()} datums depends on the
+ * {@link org.apache.streams.threaded.tasks.TaskMailbox.OverflowPolicy}.
+ *
+ * Spilled datums are written to a {@link org.apache.streams.core.util.DatumSpill}, whose files are created on the
+ * first spill and deleted when the mailbox is closed.  Once anything is spilled, new datums are spilled behind it until
+ * the spill has been read back, so the order of the datums is kept.  The spill only accepts datums that read back
+ * unchanged, any other datum is kept in memory instead.
+ */
+@ThreadSafe
+public class TaskMailbox implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskMailbox.class);
+
+    public static enum OverflowPolicy {
+        /**
+         * The producer waits until there is room
+         */
+        BLOCK,
+        /**
+         * The oldest datum in the mailbox is dropped to make room
+         */
+        DROP_OLDEST,
+        /**
+         * The datum is written to disk and read back once the mailbox has room
+         */
+        SPILL;
+
+        /**
+         * Reads a policy from a stream config value such as "block", "dropOldest" or "spill"
+         * @param value config value, case insensitive
+         * @return the policy
+         * @throws IllegalArgumentException if the value is not a policy
+         */
+        public static OverflowPolicy fromConfig(String value) {
+            String name = value.trim().replaceAll("([a-z])([A-Z])", "$1_$2").replace('-', '_').toUpperCase();
+            for(OverflowPolicy policy : values()) {
+                if(policy.name().equals(name)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown mailbox overflow policy: " + value);
+        }
+    }
+
+    private final String id;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = this.lock.newCondition();
+    @GuardedBy("lock")
+    private final ArrayDeque<StreamsDatum> memory = new ArrayDeque<>();
+    @GuardedBy("lock")
+    private final DatumSpill spill;
+
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong spilled = new AtomicLong(0);
+
+    /**
+     * @param id id of the task the mailbox belongs to, used to name the spill file
+     * @param capacity number of datums held in memory, must be positive
+     * @param policy what to do with datums that arrive while the mailbox is full
+     * @param spillDirectory directory the spill files are created in, only used by {@link OverflowPolicy#SPILL}
+     */
+    public TaskMailbox(String id, int capacity, OverflowPolicy policy, File spillDirectory) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive: " + capacity);
+        }
+        this.id = id;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.spill = new DatumSpill(spillDirectory, "mailbox-" + id + "-", DatumSpill.DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Adds a datum to the mailbox, applying the overflow policy if the mailbox is full.
+     * @param datum datum to add
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public void put(StreamsDatum datum) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            switch (this.policy) {
+                case DROP_OLDEST:
+                    if(this.memory.size() >= this.capacity) {
+                        this.memory.poll();
+                        this.dropped.incrementAndGet();
+                    }
+                    break;
+                case SPILL:
+                    if(mustSpill() && spill(datum)) {
+                        return;
+                    }
+                    break;
+                case BLOCK:
+                default:
+                    while(this.memory.size() >= this.capacity) {
+                        this.notFull.await();
+                    }
+                    break;
+            }
+            this.memory.add(datum);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a datum without waiting for room, even if the mailbox is full.  Used to keep a datum whose producer was
+     * interrupted while waiting in {@link #put(org.apache.streams.core.StreamsDatum)}.
+     * @param datum datum to add
+     */
+    public void add(StreamsDatum datum) {
+        this.lock.lock();
+        try {
+            if(this.policy != OverflowPolicy.SPILL || !mustSpill() || !spill(datum)) {
+                this.memory.add(datum);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the mailbox has room, or the timeout elapses.  Signalled by {@link #poll()} whenever it takes a datum
+     * from a full mailbox.
+     * @param timeout longest time to wait
+     * @param unit unit of the timeout
+     * @return true, if the mailbox has room
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitRoom(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while(this.memory.size() >= this.capacity) {
+                if(nanos <= 0) {
+                    return false;
+                }
+                nanos = this.notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest datum from the mailbox
+     * @return the oldest datum, or null if the mailbox is empty
+     * @throws java.lang.IllegalStateException if the oldest datum is spilled and can not be read back, in which case it
+     * is left in the mailbox
+     */
+    public StreamsDatum poll() {
+        this.lock.lock();
+        try {
+            boolean full = this.memory.size() >= this.capacity;
+            StreamsDatum datum = this.memory.poll();
+            if(datum == null && !this.spill.isEmpty()) {
+                try {
+                    datum = this.spill.read();
+                } catch (IOException ioe) {
+                    LOGGER.error("Failed to read spilled datum for mailbox[{}], leaving it in the mailbox : {}", this.id, ioe);
+                    throw new IllegalStateException("Failed to read spilled datum", ioe);
+                }
+            }
+            if(full && datum != null) {
+                // wake producers waiting in put and providers waiting in awaitRoom
+                this.notFull.signalAll();
+            }
+            return datum;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return getDepth() == 0;
+    }
+
+    /**
+     * Whether a producer adding a datum right now would have to wait for room
+     * @return true if the policy is {@link OverflowPolicy#BLOCK} and the mailbox is full
+     */
+    public boolean isBlocking() {
+        return this.policy == OverflowPolicy.BLOCK && getDepth() >= this.capacity;
+    }
+
+    /**
+     * The number of datums waiting in the mailbox, in memory and on disk
+     * @return number of waiting datums
+     */
+    public long getDepth() {
+        this.lock.lock();
+        try {
+            return this.memory.size() + this.spill.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * @return number of datums dropped to make room
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return number of datums that have been spilled to disk
+     */
+    public long getSpilled() {
+        return this.spilled.get();
+    }
+
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.spill.close();
+            this.memory.clear();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Datums are spilled while memory is full, and behind anything already spilled so that order is kept
+     */
+    @GuardedBy("lock")
+    private boolean mustSpill() {
+        return !this.spill.isEmpty() || this.memory.size() >= this.capacity;
+    }
+
+    @GuardedBy("lock")
+    private boolean spill(StreamsDatum datum) {
+        if(!this.spill.write(datum, System.currentTimeMillis())) {
+            LOGGER.debug("Datum can not be spilled by mailbox[{}], keeping it in memory", this.id);
+            return false;
+        }
+        this.spilled.incrementAndGet();
+        return true;
+    }
+}
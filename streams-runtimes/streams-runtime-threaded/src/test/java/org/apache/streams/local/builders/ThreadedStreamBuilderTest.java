@@ -19,6 +19,8 @@ package org.apache.streams.local.builders;
 
 import org.apache.streams.core.StreamBuilder;
 import org.apache.streams.threaded.builders.ThreadedStreamBuilder;
+import org.apache.streams.threaded.tasks.StatusCounts;
+import org.apache.streams.local.test.processors.BatchPassThroughStaticCounterProcessor;
 import org.apache.streams.local.test.processors.PassThroughStaticCounterProcessor;
 import org.apache.streams.local.test.providers.NumericMessageProvider;
 import org.apache.streams.local.test.providers.NumericMessageProviderDelayed;
@@ -29,9 +31,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
@@ -249,4 +254,128 @@ public class ThreadedStreamBuilderTest {
         assertTrue("cleanup called", writer.wasCleanupCalled());
         assertTrue("cleanup called", writer.wasPrepeareCalled());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMailboxBlock() {
+        int numDatums = 200;
+        Map<String, Object> config = new HashMap<>();
+        config.put(ThreadedStreamBuilder.MAILBOX_CAPACITY_KEY, 5);
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder(config);
+        DatumCounterWriter writer = new DatumCounterWriter(1);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsProcessor("proc1", new PassThroughStaticCounterProcessor(), 2, "prov1")
+                .addStreamsPersistWriter("w1", writer, 1, "proc1");
+
+        builder.start();
+
+        assertEquals("Number in should equal number out", numDatums, writer.getDatumsCounted());
+        StatusCounts counts = builder.getUpdateCounts().get("w1");
+        assertEquals("Mailbox should be empty", 0, counts.getMailboxDepth());
+        assertEquals("Nothing should be dropped", 0, counts.getDropped());
+        assertTrue("cleanup called", writer.wasCleanupCalled());
+    }
+
+    @Test
+    public void testMailboxDropOldest() {
+        int numDatums = 200;
+        Map<String, Object> config = new HashMap<>();
+        config.put(ThreadedStreamBuilder.MAILBOX_CAPACITY_KEY, 2);
+        config.put(ThreadedStreamBuilder.MAILBOX_OVERFLOW_KEY, "dropOldest");
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder(config);
+        DatumCounterWriter writer = new DatumCounterWriter(2);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsProcessor("proc1", new PassThroughStaticCounterProcessor(), 2, "prov1")
+                .addStreamsPersistWriter("w1", writer, 1, "proc1");
+
+        builder.start();
+
+        StatusCounts counts = builder.getUpdateCounts().get("w1");
+        assertEquals("Every datum should be written or dropped", numDatums, writer.getDatumsCounted() + counts.getDropped());
+        assertEquals("Mailbox should be empty", 0, counts.getMailboxDepth());
+    }
+
+    @Test
+    public void testMailboxSpill() {
+        int numDatums = 200;
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "mailbox-spill-" + System.nanoTime());
+        Map<String, Object> config = new HashMap<>();
+        config.put(ThreadedStreamBuilder.MAILBOX_CAPACITY_KEY, 2);
+        config.put(ThreadedStreamBuilder.MAILBOX_OVERFLOW_KEY, "spill");
+        config.put(ThreadedStreamBuilder.MAILBOX_SPILL_DIRECTORY_KEY, spillDirectory.getAbsolutePath());
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder(config);
+        DatumCounterWriter writer = new DatumCounterWriter(1);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsProcessor("proc1", new PassThroughStaticCounterProcessor(), 2, "prov1")
+                .addStreamsPersistWriter("w1", writer, 1, "proc1");
+
+        builder.start();
+
+        assertEquals("Number in should equal number out", numDatums, writer.getDatumsCounted());
+        assertEquals("Mailbox should be empty", 0, builder.getUpdateCounts().get("w1").getMailboxDepth());
+        if(spillDirectory.exists()) {
+            assertEquals("Spill files should be removed", 0, spillDirectory.listFiles().length);
+            spillDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        int numDatums = 50;
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder();
+        DatumCounterWriter writer = new DatumCounterWriter(2);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsPersistWriter("w1", writer, 1, "prov1");
+
+        builder.start();
+
+        assertEquals("Number in should equal number out", numDatums, writer.getDatumsCounted());
+        StatusCounts counts = builder.getUpdateCounts().get("w1");
+        assertTrue("Median should include the writer's delay", counts.getLatencyP50() >= 2.0);
+        assertTrue("Percentiles should be ordered", counts.getLatencyP50() <= counts.getLatencyP99());
+        assertTrue("Percentiles should be ordered", counts.getLatencyP99() <= counts.getLatencyP999());
+        assertTrue("Percentiles should be ordered", counts.getLatencyP999() <= counts.getLatencyMax());
+        assertTrue("Time spent should be in milliseconds", counts.getAverageSuccessTime() >= 2.0 && counts.getAverageSuccessTime() < 1000.0);
+    }
+
+    @Test
+    public void testBatching() {
+        int numDatums = 95;
+        Map<String, Object> config = new HashMap<>();
+        config.put(ThreadedStreamBuilder.BATCH_SIZE_KEY, 10);
+        config.put(ThreadedStreamBuilder.BATCH_TIMEOUT_KEY, 20L);
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder(config);
+        BatchPassThroughStaticCounterProcessor processor = new BatchPassThroughStaticCounterProcessor();
+        DatumCounterWriter writer = new DatumCounterWriter(0);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsProcessor("proc1", processor, 1, "prov1")
+                .addStreamsPersistWriter("w1", writer, 1, "proc1");
+
+        builder.start();
+
+        assertEquals("Number in should equal number out", numDatums, writer.getDatumsCounted());
+        assertTrue("Batches should not exceed the batch size", processor.getMaxBatchSize() <= 10);
+        StatusCounts counts = builder.getUpdateCounts().get("proc1");
+        assertEquals("Every datum should be counted once it is processed", numDatums, counts.getSuccess());
+        assertEquals("No datum should fail", 0, counts.getFailed());
+    }
+
+    @Test
+    public void testBatchFailuresAreCounted() {
+        int numDatums = 25;
+        Map<String, Object> config = new HashMap<>();
+        config.put(ThreadedStreamBuilder.BATCH_SIZE_KEY, 1000);
+        config.put(ThreadedStreamBuilder.BATCH_TIMEOUT_KEY, 20L);
+        ThreadedStreamBuilder builder = new ThreadedStreamBuilder(config);
+        DatumCounterWriter writer = new DatumCounterWriter(0);
+        builder.newReadCurrentStream("prov1", new NumericMessageProvider(numDatums))
+                .addStreamsProcessor("proc1", new BatchPassThroughStaticCounterProcessor(Integer.MAX_VALUE), 1, "prov1")
+                .addStreamsPersistWriter("w1", writer, 1, "proc1");
+
+        builder.start();
+
+        assertEquals("Nothing should be written", 0, writer.getDatumsCounted());
+        StatusCounts counts = builder.getUpdateCounts().get("proc1");
+        assertEquals("Buffered datums should not be counted as succeeded", 0, counts.getSuccess());
+        assertEquals("Every datum of a failed batch should be counted", numDatums, counts.getFailed());
+    }
+}
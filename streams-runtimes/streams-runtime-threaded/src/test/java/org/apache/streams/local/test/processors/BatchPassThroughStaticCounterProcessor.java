@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link org.apache.streams.local.test.processors.PassThroughStaticCounterProcessor} that also accepts batches.  It
+ * records the largest batch it was handed and fails the first batches it is handed, if asked to.
+ */
+public class BatchPassThroughStaticCounterProcessor extends PassThroughStaticCounterProcessor implements StreamsBatchProcessor {
+
+    private final int numBatchesToFail;
+    private final AtomicInteger batches = new AtomicInteger(0);
+    private final AtomicInteger maxBatchSize = new AtomicInteger(0);
+
+    public BatchPassThroughStaticCounterProcessor() {
+        this(0);
+    }
+
+    public BatchPassThroughStaticCounterProcessor(int numBatchesToFail) {
+        this.numBatchesToFail = numBatchesToFail;
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize.get();
+    }
+
+    @Override
+    public List<StreamsDatum> processBatch(List<StreamsDatum> entries) {
+        int max = this.maxBatchSize.get();
+        while(entries.size() > max && !this.maxBatchSize.compareAndSet(max, entries.size())) {
+            max = this.maxBatchSize.get();
+        }
+        if(this.batches.getAndIncrement() < this.numBatchesToFail) {
+            throw new RuntimeException("Failing batch of " + entries.size());
+        }
+        List<StreamsDatum> result = new ArrayList<>(entries.size());
+        for(StreamsDatum entry : entries) {
+            result.addAll(process(entry));
+        }
+        return result;
+    }
+}
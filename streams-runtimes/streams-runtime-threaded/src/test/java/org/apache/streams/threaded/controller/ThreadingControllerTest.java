@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.threaded.controller;
+
+import org.apache.streams.threaded.builders.ThreadedStreamBuilder;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.threaded.controller.ThreadingController}
+ */
+public class ThreadingControllerTest {
+
+    /**
+     * Test that the pool only moves outside of the dead band, proportionally, within its bounds and only grows when
+     * submitters had to wait
+     */
+    @Test
+    public void testComputeThreadCount() {
+        assertEquals(8, ThreadingController.computeThreadCount(8, .8, .85, true, 2, 32));
+        assertEquals(8, ThreadingController.computeThreadCount(8, Double.NaN, .85, true, 2, 32));
+        assertEquals(8, ThreadingController.computeThreadCount(8, .2, .85, false, 2, 32));
+        assertEquals(14, ThreadingController.computeThreadCount(8, .2, .85, true, 2, 32));
+        assertEquals(10, ThreadingController.computeThreadCount(8, .2, .85, true, 2, 10));
+        assertEquals(3, ThreadingController.computeThreadCount(2, .7, .85, true, 2, 32));
+        assertEquals(7, ThreadingController.computeThreadCount(8, 1.0, .85, true, 2, 32));
+        assertEquals(7, ThreadingController.computeThreadCount(8, 1.0, .85, false, 2, 32));
+        assertEquals(2, ThreadingController.computeThreadCount(2, 1.0, .85, false, 2, 32));
+    }
+
+    /**
+     * Test that no more commands run at once than the pool has threads, including after the pool shrinks, and that
+     * every callback is called
+     * @throws Exception
+     */
+    @Test
+    public void testAdmission() throws Exception {
+        ThreadingController controller = new ThreadingController("test", 4, 4, Thread.NORM_PRIORITY);
+        controller.setThreadingControllerCPUObserver(fixedLoad(.85));
+        controller.lock();
+        try {
+            assertEquals(4, runAndMeasureConcurrency(controller, 200));
+            assertEquals(Integer.valueOf(4), controller.getAvailablePermits());
+
+            controller.resize(2);
+            assertEquals(Integer.valueOf(2), controller.getNumThreads());
+            assertTrue(runAndMeasureConcurrency(controller, 200) <= 2);
+            assertEquals(Integer.valueOf(2), controller.getAvailablePermits());
+            assertEquals(Integer.valueOf(0), controller.getWorkingNow());
+        } finally {
+            controller.release();
+        }
+    }
+
+    /**
+     * Test that the background sampler grows a saturated pool when the CPU has head room
+     * @throws Exception
+     */
+    @Test
+    public void testScalesUpWhenSaturated() throws Exception {
+        ThreadingController controller = new ThreadingController("test", 2, 16, Thread.NORM_PRIORITY);
+        controller.setThreadingControllerCPUObserver(fixedLoad(.2));
+        controller.lock();
+        try {
+            long end = System.currentTimeMillis() + 3 * controller.getScaleCheck();
+            while(controller.getNumThreads() == 2 && System.currentTimeMillis() < end) {
+                runAndMeasureConcurrency(controller, 20);
+            }
+            assertTrue(controller.getNumThreads() > 2);
+            assertTrue(controller.getNumThreads() <= 16);
+            assertEquals(.2, controller.getLastCPUObservation(), .0001);
+        } finally {
+            controller.release();
+        }
+    }
+
+    /**
+     * Test that named controllers are independent of the shared ones, shared by name, and registered with JMX
+     * @throws Exception
+     */
+    @Test
+    public void testNamedInstances() throws Exception {
+        ThreadingController controller = ThreadingController.getInstance("testNamedInstances", 2, 6, Thread.NORM_PRIORITY);
+        assertSame(controller, ThreadingController.getInstance("testNamedInstances", 3, 9, Thread.MIN_PRIORITY));
+        assertNotSame(controller, ThreadingController.getInstance());
+        assertEquals(Integer.valueOf(2), controller.getNumThreads());
+        assertEquals(Integer.valueOf(6), controller.getMaxNumThreads());
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(String.format(ThreadingController.NAME_TEMPLATE, "testNamedInstances"));
+        assertTrue(mbs.isRegistered(name));
+        assertEquals(2, mbs.getAttribute(name, "NumThreads"));
+        assertEquals(0, mbs.getAttribute(name, "MaxConcurrency"));
+    }
+
+    /**
+     * Test that pools shrink no further than one thread per processor, unless they were started with fewer threads
+     */
+    @Test
+    public void testMinimumPoolSize() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        assertEquals(Integer.valueOf(processors), ThreadingController.getInstance().getMinNumThreads());
+        assertEquals(Integer.valueOf(processors), new ThreadingController("test", processors * 2, processors * 4, Thread.NORM_PRIORITY).getMinNumThreads());
+        assertEquals(Integer.valueOf(1), new ThreadingController("test", 1, 16, Thread.NORM_PRIORITY).getMinNumThreads());
+    }
+
+    /**
+     * Test that a stream config names its own controller and applies the quotas to it
+     */
+    @Test
+    public void testStreamConfig() {
+        Map<String, Object> config = new HashMap<>();
+        assertSame(ThreadingController.getInstance(), ThreadedStreamBuilder.threadingControllerFor(config));
+        config.put(ThreadedStreamBuilder.THREADING_CONTROLLER_KEY, "testStreamConfig");
+        config.put(ThreadedStreamBuilder.THREADS_KEY, 3);
+        config.put(ThreadedStreamBuilder.MAX_THREADS_KEY, 12);
+        config.put(ThreadedStreamBuilder.MAX_CONCURRENCY_KEY, 8);
+        config.put(ThreadedStreamBuilder.CPU_SHARE_KEY, .25);
+        ThreadingController controller = new ThreadedStreamBuilder(config).getThreadingController();
+        assertEquals("testStreamConfig", controller.getName());
+        assertEquals(Integer.valueOf(Math.min(3, Runtime.getRuntime().availableProcessors())), controller.getMinNumThreads());
+        assertEquals(Integer.valueOf(12), controller.getMaxNumThreads());
+        assertEquals(8, controller.getMaxConcurrency());
+        assertEquals(.25, controller.getCpuShare(), .0001);
+    }
+
+    /**
+     * Test that the concurrency quota caps the pool, shrinking it straight away, and that the CPU share holds a
+     * saturated pool back once its threads use more than their share
+     * @throws Exception
+     */
+    @Test
+    public void testQuotas() throws Exception {
+        ThreadingController controller = new ThreadingController("test", 4, 16, Thread.NORM_PRIORITY);
+        controller.setThreadingControllerCPUObserver(fixedLoad(.2));
+        controller.setMaxConcurrency(2);
+        assertEquals(Integer.valueOf(2), controller.getNumThreads());
+        controller.lock();
+        try {
+            long end = System.currentTimeMillis() + 2 * controller.getScaleCheck();
+            while(System.currentTimeMillis() < end) {
+                assertTrue(runAndMeasureConcurrency(controller, 20) <= 2);
+            }
+            assertEquals(Integer.valueOf(2), controller.getNumThreads());
+
+        } finally {
+            controller.release();
+        }
+
+        controller = new ThreadingController("test", 1, 16, Thread.NORM_PRIORITY);
+        controller.setThreadingControllerCPUObserver(fixedLoad(.2));
+        controller.setCpuShare(.0001);
+        controller.lock();
+        try {
+            long end = System.currentTimeMillis() + 3 * controller.getScaleCheck();
+            while(controller.getLastCpuShareObservation() == 0 && System.currentTimeMillis() < end) {
+                runBusy(controller, 4);
+            }
+            assertTrue(controller.getLastCpuShareObservation() > .0001);
+            assertEquals(Integer.valueOf(1), controller.getNumThreads());
+        } finally {
+            controller.release();
+        }
+    }
+
+    private void runBusy(ThreadingController controller, int count) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(count);
+        for(int i=0; i < count; ++i) {
+            controller.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long end = System.nanoTime() + 5000000;
+                    while(System.nanoTime() < end) {
+                        // burn CPU so that the pool's threads have CPU time to measure
+                    }
+                }
+            }, new ThreadingControllerCallback() {
+                @Override
+                public void onSuccess(Object o) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+
+    private int runAndMeasureConcurrency(ThreadingController controller, int count) throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(count);
+        for(int i=0; i < count; ++i) {
+            controller.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    while(true) {
+                        int max = maxRunning.get();
+                        if(now <= max || maxRunning.compareAndSet(max, now)) {
+                            break;
+                        }
+                    }
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }
+            }, new ThreadingControllerCallback() {
+                @Override
+                public void onSuccess(Object o) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        // the permit is handed back just after the callback runs
+        long end = System.currentTimeMillis() + 1000;
+        while(controller.getWorkingNow() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        return maxRunning.get();
+    }
+
+    private ThreadingControllerCPUObserver fixedLoad(final double load) {
+        return new ThreadingControllerCPUObserver() {
+            @Override
+            public double getCPUPercentUtilization() {
+                return load;
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.threaded.tasks;
+
+import org.apache.streams.core.StreamsDatum;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link org.apache.streams.threaded.tasks.TaskMailbox}
+ */
+public class TaskMailboxTest {
+
+    /**
+     * Test that a full blocking mailbox holds the producer back until a datum is taken out
+     * @throws Exception
+     */
+    @Test
+    public void testBlock() throws Exception {
+        final TaskMailbox mailbox = new TaskMailbox("test", 2, TaskMailbox.OverflowPolicy.BLOCK, null);
+        mailbox.put(new StreamsDatum(0));
+        assertFalse(mailbox.isBlocking());
+        mailbox.put(new StreamsDatum(1));
+        assertTrue(mailbox.isBlocking());
+
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mailbox.put(new StreamsDatum(2));
+                    added.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, mailbox.poll().getDocument());
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mailbox.poll().getDocument());
+        assertEquals(2, mailbox.poll().getDocument());
+        assertNull(mailbox.poll());
+        assertTrue(mailbox.isEmpty());
+    }
+
+    /**
+     * Test that a full mailbox drops its oldest datums and counts them
+     * @throws Exception
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        TaskMailbox mailbox = new TaskMailbox("test", 3, TaskMailbox.OverflowPolicy.DROP_OLDEST, null);
+        for(int i=0; i < 10; ++i) {
+            mailbox.put(new StreamsDatum(i));
+        }
+        assertEquals(3, mailbox.getDepth());
+        assertEquals(7, mailbox.getDropped());
+        assertFalse(mailbox.isBlocking());
+        for(int i=7; i < 10; ++i) {
+            assertEquals(i, mailbox.poll().getDocument());
+        }
+        assertNull(mailbox.poll());
+    }
+
+    /**
+     * Test that datums spilled to disk come back in order, interleaved with new datums, and that the spill file is
+     * removed on close
+     * @throws Exception
+     */
+    @Test
+    public void testSpill() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mailbox-test-" + System.nanoTime());
+        TaskMailbox mailbox = new TaskMailbox("test", 4, TaskMailbox.OverflowPolicy.SPILL, directory);
+        int next = 0;
+        int expected = 0;
+        for(int round=0; round < 5; ++round) {
+            for(int i=0; i < 20; ++i) {
+                mailbox.put(new StreamsDatum("datum " + next++));
+            }
+            assertFalse(mailbox.isBlocking());
+            for(int i=0; i < 15; ++i) {
+                assertEquals("datum " + expected++, mailbox.poll().getDocument());
+            }
+        }
+        assertEquals(next - expected, mailbox.getDepth());
+        assertTrue(mailbox.getSpilled() > 0);
+        StreamsDatum datum;
+        while((datum = mailbox.poll()) != null) {
+            assertEquals("datum " + expected++, datum.getDocument());
+        }
+        assertEquals(next, expected);
+        assertEquals(1, directory.listFiles().length);
+        mailbox.close();
+        assertEquals(0, directory.listFiles().length);
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * Test that a thread waiting for room is woken when a datum is taken out of the full mailbox
+     * @throws Exception
+     */
+    @Test
+    public void testAwaitRoom() throws Exception {
+        final TaskMailbox mailbox = new TaskMailbox("test", 1, TaskMailbox.OverflowPolicy.BLOCK, null);
+        assertTrue(mailbox.awaitRoom(0, TimeUnit.MILLISECONDS));
+        mailbox.put(new StreamsDatum(0));
+        assertFalse(mailbox.awaitRoom(10, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch room = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if(mailbox.awaitRoom(1, TimeUnit.MINUTES)) {
+                        room.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiter.start();
+        assertFalse(room.await(100, TimeUnit.MILLISECONDS));
+        mailbox.poll();
+        assertTrue(room.await(5, TimeUnit.SECONDS));
+
+        mailbox.put(new StreamsDatum(1));
+        mailbox.add(new StreamsDatum(2));
+        assertEquals(2, mailbox.getDepth());
+    }
+
+    /**
+     * Test that a datum that can not be spilled is kept in memory, in order
+     * @throws Exception
+     */
+    @Test
+    public void testUnspillableDatumStaysInMemory() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mailbox-test-" + System.nanoTime());
+        TaskMailbox mailbox = new TaskMailbox("test", 1, TaskMailbox.OverflowPolicy.SPILL, directory);
+        Object unspillable = new Object();
+        mailbox.put(new StreamsDatum("datum 0"));
+        mailbox.put(new StreamsDatum(unspillable));
+        assertEquals(0, mailbox.getSpilled());
+        assertEquals(2, mailbox.getDepth());
+        assertEquals("datum 0", mailbox.poll().getDocument());
+        assertEquals(unspillable, mailbox.poll().getDocument());
+        assertNull(mailbox.poll());
+        mailbox.close();
+        if(directory.exists()) {
+            assertTrue(directory.delete());
+        }
+    }
+
+    /**
+     * Test that policies are read from config values
+     */
+    @Test
+    public void testPolicyFromConfig() {
+        assertEquals(TaskMailbox.OverflowPolicy.BLOCK, TaskMailbox.OverflowPolicy.fromConfig("block"));
+        assertEquals(TaskMailbox.OverflowPolicy.DROP_OLDEST, TaskMailbox.OverflowPolicy.fromConfig("dropOldest"));
+        assertEquals(TaskMailbox.OverflowPolicy.DROP_OLDEST, TaskMailbox.OverflowPolicy.fromConfig("DROP_OLDEST"));
+        assertEquals(TaskMailbox.OverflowPolicy.SPILL, TaskMailbox.OverflowPolicy.fromConfig("Spill"));
+        try {
+            TaskMailbox.OverflowPolicy.fromConfig("discard");
+            fail("Should have had an illegal argument exception");
+        } catch (IllegalArgumentException e) {
+            // no Operation
+        }
+    }
+}
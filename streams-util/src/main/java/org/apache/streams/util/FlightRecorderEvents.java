@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional Java Flight Recorder events for the hot paths of a stream: processor invocations, queue waits and bulk
+ * writer flushes.  The events are off unless the stream configuration sets {@link #CONFIG_KEY} to true, and while
+ * they are off {@link EventType#begin()} returns null after a single volatile read, so instrumented code pays nothing
+ * beyond a null check.
+ *
+ * The project still targets Java 7, so the event types are defined at runtime through {@code jdk.jfr.EventFactory}
+ * by reflection rather than by subclassing {@code jdk.jfr.Event}.  On a JVM without JFR the events stay disabled and a
+ * warning is logged once.
+ *
+ * Usage:
+ * <pre>
+ *     Object event = FlightRecorderEvents.WRITER_FLUSH.begin();
+ *     ... flush ...
+ *     FlightRecorderEvents.WRITER_FLUSH.commit(event, id, documents, bytes);
+ * </pre>
+ */
+public class FlightRecorderEvents {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+    /**
+     * Stream configuration key that enables the events.
+     */
+    public static final String CONFIG_KEY = "flightRecorderEvents";
+
+    private static final String CATEGORY = "Apache Streams";
+
+    /**
+     * Time one processor spent on a datum or a batch of datums.
+     */
+    public static final EventType PROCESSOR_INVOCATION = new EventType("org.apache.streams.ProcessorInvocation",
+            "Processor Invocation", "Time a processor spent processing one datum or one batch",
+            new String[]{"component", "datums"}, new Class<?>[]{String.class, long.class});
+
+    /**
+     * Time a consumer spent waiting on a queue, along with how long the element it received had been queued.
+     */
+    public static final EventType QUEUE_WAIT = new EventType("org.apache.streams.QueueWait",
+            "Queue Wait", "Time a consumer waited to take an element from a queue",
+            new String[]{"queue", "queuedMillis"}, new Class<?>[]{String.class, long.class});
+
+    /**
+     * One bulk flush of a persist writer.  Writers that do not measure the size of a flush report zero bytes.
+     */
+    public static final EventType WRITER_FLUSH = new EventType("org.apache.streams.WriterFlush",
+            "Writer Flush", "One bulk flush of a persist writer",
+            new String[]{"writer", "documents", "bytes"}, new Class<?>[]{String.class, long.class, long.class});
+
+    private static volatile boolean enabled = false;
+
+    private FlightRecorderEvents() {}
+
+    /**
+     * Enables or disables the events from a stream configuration.  Configurations that do not mention
+     * {@link #CONFIG_KEY} leave the current setting alone.
+     * @param streamConfig stream configuration, may be null
+     */
+    public static void configure(Map<String, Object> streamConfig) {
+        if(streamConfig != null && streamConfig.get(CONFIG_KEY) != null) {
+            setEnabled(Boolean.parseBoolean(streamConfig.get(CONFIG_KEY).toString()));
+        }
+    }
+
+    public static synchronized void setEnabled(boolean enable) {
+        if(enable && !isAvailable()) {
+            LOGGER.warn("Flight recorder events were requested but JFR is not available in this JVM, leaving them disabled");
+            enable = false;
+        }
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if this JVM provides the JFR event API
+     */
+    public static boolean isAvailable() {
+        return Jfr.ERROR == null;
+    }
+
+    private static synchronized void disable(Throwable cause) {
+        if(enabled) {
+            LOGGER.warn("Disabling flight recorder events after an error : {}", cause.toString());
+            enabled = false;
+        }
+    }
+
+    /**
+     * A flight recorder event type whose fields are a leading label followed by numeric values.  The underlying JFR
+     * type is created the first time an event of this type is begun while the events are enabled.
+     */
+    public static class EventType {
+
+        private final String name;
+        private final String label;
+        private final String description;
+        private final String[] fieldNames;
+        private final Class<?>[] fieldTypes;
+
+        private volatile Object factory;
+        private volatile Object jfrType;
+
+        EventType(String name, String label, String description, String[] fieldNames, Class<?>[] fieldTypes) {
+            this.name = name;
+            this.label = label;
+            this.description = description;
+            this.fieldNames = fieldNames;
+            this.fieldTypes = fieldTypes;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Starts timing an event.
+         * @return the event to pass to commit, or null if the events are disabled or no recording wants this type
+         */
+        public Object begin() {
+            if(!enabled) {
+                return null;
+            }
+            try {
+                Object eventFactory = factory();
+                if(!(Boolean) Jfr.TYPE_IS_ENABLED.invoke(this.jfrType)) {
+                    return null;
+                }
+                Object event = Jfr.NEW_EVENT.invoke(eventFactory);
+                Jfr.BEGIN.invoke(event);
+                return event;
+            } catch (Throwable t) {
+                disable(t);
+                return null;
+            }
+        }
+
+        public void commit(Object event, String first, long second) {
+            if(event != null) {
+                write(event, first, second);
+            }
+        }
+
+        public void commit(Object event, String first, long second, long third) {
+            if(event != null) {
+                write(event, first, second, third);
+            }
+        }
+
+        private void write(Object event, Object... values) {
+            try {
+                Jfr.END.invoke(event);
+                if((Boolean) Jfr.SHOULD_COMMIT.invoke(event)) {
+                    for(int i=0; i < values.length; ++i) {
+                        Jfr.SET.invoke(event, i, values[i]);
+                    }
+                    Jfr.COMMIT.invoke(event);
+                }
+            } catch (Throwable t) {
+                disable(t);
+            }
+        }
+
+        private Object factory() throws Exception {
+            Object eventFactory = this.factory;
+            if(eventFactory == null) {
+                synchronized (this) {
+                    eventFactory = this.factory;
+                    if(eventFactory == null) {
+                        eventFactory = create();
+                        this.jfrType = Jfr.GET_EVENT_TYPE.invoke(eventFactory);
+                        this.factory = eventFactory;
+                    }
+                }
+            }
+            return eventFactory;
+        }
+
+        private Object create() throws Exception {
+            List<Object> annotations = new ArrayList<Object>();
+            annotations.add(Jfr.ANNOTATION_ELEMENT.newInstance(Jfr.NAME, this.name));
+            annotations.add(Jfr.ANNOTATION_ELEMENT.newInstance(Jfr.LABEL, this.label));
+            annotations.add(Jfr.ANNOTATION_ELEMENT.newInstance(Jfr.DESCRIPTION, this.description));
+            annotations.add(Jfr.ANNOTATION_ELEMENT.newInstance(Jfr.CATEGORY, new String[]{CATEGORY}));
+            List<Object> fields = new ArrayList<Object>();
+            for(int i=0; i < this.fieldNames.length; ++i) {
+                fields.add(Jfr.VALUE_DESCRIPTOR.newInstance(this.fieldTypes[i], this.fieldNames[i], Collections.emptyList()));
+            }
+            return Jfr.CREATE.invoke(null, annotations, fields);
+        }
+    }
+
+    /**
+     * Reflective handles on the JFR API, resolved when the events are first enabled.
+     */
+    private static class Jfr {
+
+        static final Throwable ERROR;
+        static Method CREATE;
+        static Method GET_EVENT_TYPE;
+        static Method TYPE_IS_ENABLED;
+        static Method NEW_EVENT;
+        static Method BEGIN;
+        static Method END;
+        static Method SHOULD_COMMIT;
+        static Method SET;
+        static Method COMMIT;
+        static Constructor<?> ANNOTATION_ELEMENT;
+        static Constructor<?> VALUE_DESCRIPTOR;
+        static Class<? extends Annotation> NAME;
+        static Class<? extends Annotation> LABEL;
+        static Class<? extends Annotation> DESCRIPTION;
+        static Class<? extends Annotation> CATEGORY;
+
+        static {
+            Throwable error = null;
+            try {
+                Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+                Class<?> eventType = Class.forName("jdk.jfr.EventType");
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                CREATE = factory.getMethod("create", List.class, List.class);
+                GET_EVENT_TYPE = factory.getMethod("getEventType");
+                TYPE_IS_ENABLED = eventType.getMethod("isEnabled");
+                NEW_EVENT = factory.getMethod("newEvent");
+                BEGIN = event.getMethod("begin");
+                END = event.getMethod("end");
+                SHOULD_COMMIT = event.getMethod("shouldCommit");
+                SET = event.getMethod("set", int.class, Object.class);
+                COMMIT = event.getMethod("commit");
+                ANNOTATION_ELEMENT = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+                VALUE_DESCRIPTOR = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+                NAME = Class.forName("jdk.jfr.Name").asSubclass(Annotation.class);
+                LABEL = Class.forName("jdk.jfr.Label").asSubclass(Annotation.class);
+                DESCRIPTION = Class.forName("jdk.jfr.Description").asSubclass(Annotation.class);
+                CATEGORY = Class.forName("jdk.jfr.Category").asSubclass(Annotation.class);
+            } catch (Throwable t) {
+                error = t;
+            }
+            ERROR = error;
+        }
+    }
+}
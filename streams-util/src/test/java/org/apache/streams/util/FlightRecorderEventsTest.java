@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.util;
+
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.util.FlightRecorderEvents}
+ */
+public class FlightRecorderEventsTest {
+
+    @After
+    public void disable() {
+        FlightRecorderEvents.setEnabled(false);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(FlightRecorderEvents.isEnabled());
+        Object event = FlightRecorderEvents.PROCESSOR_INVOCATION.begin();
+        assertNull(event);
+        FlightRecorderEvents.PROCESSOR_INVOCATION.commit(event, "processor", 1);
+    }
+
+    @Test
+    public void testConfigure() {
+        assumeTrue(FlightRecorderEvents.isAvailable());
+        Map<String, Object> config = Maps.newHashMap();
+        FlightRecorderEvents.configure(config);
+        assertFalse(FlightRecorderEvents.isEnabled());
+        config.put(FlightRecorderEvents.CONFIG_KEY, "true");
+        FlightRecorderEvents.configure(config);
+        assertTrue(FlightRecorderEvents.isEnabled());
+        config.put(FlightRecorderEvents.CONFIG_KEY, false);
+        FlightRecorderEvents.configure(config);
+        assertFalse(FlightRecorderEvents.isEnabled());
+    }
+
+    @Test
+    public void testNoRecording() {
+        assumeTrue(FlightRecorderEvents.isAvailable());
+        FlightRecorderEvents.setEnabled(true);
+        Object event = FlightRecorderEvents.WRITER_FLUSH.begin();
+        assertNull(event);
+        FlightRecorderEvents.WRITER_FLUSH.commit(event, "writer", 10, 1024);
+        assertTrue(FlightRecorderEvents.isEnabled());
+    }
+}